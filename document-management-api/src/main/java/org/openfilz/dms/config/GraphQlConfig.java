@@ -3,14 +3,20 @@ package org.openfilz.dms.config;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import graphql.scalars.ExtendedScalars;
 import lombok.RequiredArgsConstructor;
+import org.openfilz.dms.dto.response.FullDocumentInfo;
 import org.openfilz.dms.mapper.DocumentMapper;
+import org.openfilz.dms.repository.DocumentContentDAO;
+import org.openfilz.dms.repository.impl.ContentSearchDataFetcher;
 import org.openfilz.dms.repository.impl.DocumentDataFetcherImpl;
+import org.openfilz.dms.repository.impl.DocumentKey;
 import org.openfilz.dms.repository.impl.ListFolderCountDataFetcher;
 import org.openfilz.dms.repository.impl.ListFolderCriteria;
 import org.openfilz.dms.repository.impl.ListFolderDataFetcherImpl;
+import org.openfilz.dms.repository.impl.ListFolderPageDataFetcherImpl;
 import org.openfilz.dms.utils.SqlUtils;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.graphql.execution.BatchLoaderRegistry;
 import org.springframework.graphql.execution.RuntimeWiringConfigurer;
 import org.springframework.r2dbc.core.DatabaseClient;
 
@@ -32,9 +38,15 @@ public class GraphQlConfig {
 
     private final ListFolderCriteria listFolderCriteria;
 
+    private final DocumentContentDAO documentContentDAO;
+
 
     @Bean
-    public RuntimeWiringConfigurer runtimeWiringConfigurer() {
+    public RuntimeWiringConfigurer runtimeWiringConfigurer(BatchLoaderRegistry batchLoaderRegistry) {
+        DocumentDataFetcherImpl documentDataFetcher = new DocumentDataFetcherImpl(databaseClient, mapper, objectMapper, sqlUtils);
+        batchLoaderRegistry.forTypePair(DocumentKey.class, FullDocumentInfo.class)
+                .withName(DOCUMENT_LOADER)
+                .registerMappedBatchLoader((keys, _) -> documentDataFetcher.loadDocuments(keys));
         return wiringBuilder -> wiringBuilder
                 .scalar(ExtendedScalars.Json)
                 .scalar(ExtendedScalars.UUID)
@@ -42,8 +54,11 @@ public class GraphQlConfig {
                 .scalar(ExtendedScalars.DateTime)
                 .type(QUERY, builder -> builder.dataFetchers(Map.of(
                         LIST_FOLDER, new ListFolderDataFetcherImpl(databaseClient, mapper, objectMapper, sqlUtils, listFolderCriteria),
+                        LIST_FOLDER_PAGE, new ListFolderPageDataFetcherImpl(databaseClient, mapper, objectMapper, sqlUtils, listFolderCriteria),
                         LIST_FOLDER_COUNT, new ListFolderCountDataFetcher(databaseClient, mapper, objectMapper, sqlUtils, listFolderCriteria),
-                        DOCUMENT_BY_ID, new DocumentDataFetcherImpl(databaseClient, mapper, objectMapper, sqlUtils))));
+                        DOCUMENT_BY_ID, documentDataFetcher,
+                        SEARCH_CONTENT, new ContentSearchDataFetcher(documentContentDAO, objectMapper))))
+                .type(DOCUMENT_INFO, builder -> builder.dataFetcher(PARENT, documentDataFetcher));
     }
 
 
@@ -2,8 +2,14 @@ package org.openfilz.dms.config;
 
 public interface GraphQlQueryConfig {
     String LIST_FOLDER = "listFolder";
+    String LIST_FOLDER_PAGE = "listFolderPage";
     String LIST_FOLDER_COUNT = "count";
     String QUERY = "Query";
     String DOCUMENT_BY_ID = "documentById";
+    String SEARCH_CONTENT = "searchContent";
+    String DOCUMENT_INFO = "DocumentInfo";
+    String PARENT = "parent";
+    String DOCUMENT_LOADER = "documentLoader";
     String GRAPHQL_REQUEST = "request";
+    String GRAPHQL_PAGE = "page";
 }
@@ -0,0 +1,86 @@
+package org.openfilz.dms.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.spi.ConnectionFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.core.Scannable;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.function.Supplier;
+
+/**
+ * Metrics of the resources shared by the requests : the boundedElastic scheduler running the blocking calls, and the
+ * acquisition of the database connections. They are exposed with the other metrics by the actuator.
+ */
+@Configuration
+public class MetricsConfig {
+
+    private static final String BOUNDED_ELASTIC = "dms.scheduler.bounded-elastic";
+
+    /**
+     * Live threads and queued tasks of the boundedElastic scheduler : tasks are queued once the max threads are live and
+     * busy (an idle thread stays live until evicted, so live threads are an upper bound of the busy ones)
+     */
+    @Bean
+    public MeterBinder boundedElasticMetrics() {
+        return registry -> {
+            // BUFFERED of the scheduler is its number of live workers, busy or idle
+            Gauge.builder(BOUNDED_ELASTIC + ".threads.live", () -> scanBoundedElastic(Scannable.Attr.BUFFERED))
+                    .description("Live threads of the boundedElastic scheduler, busy or idle")
+                    .register(registry);
+            Gauge.builder(BOUNDED_ELASTIC + ".threads.max", () -> scanBoundedElastic(Scannable.Attr.CAPACITY))
+                    .description("Max threads of the boundedElastic scheduler")
+                    .register(registry);
+            Gauge.builder(BOUNDED_ELASTIC + ".tasks.queued", MetricsConfig::countBoundedElasticQueuedTasks)
+                    .description("Tasks of the boundedElastic scheduler waiting for a thread")
+                    .register(registry);
+        };
+    }
+
+    private static int scanBoundedElastic(Scannable.Attr<Integer> attribute) {
+        Integer value = Scannable.from(Schedulers.boundedElastic()).scan(attribute);
+        return value != null ? value : 0;
+    }
+
+    /**
+     * The tasks queued by each thread of the scheduler : the cached scheduler returned by
+     * {@link Schedulers#boundedElastic()} does not expose the threads, they are read from the actual scheduler.
+     */
+    private static int countBoundedElasticQueuedTasks() {
+        Scheduler scheduler = Schedulers.boundedElastic();
+        if (scheduler instanceof Supplier<?> cached && cached.get() instanceof Scheduler actual) {
+            scheduler = actual;
+        }
+        return Scannable.from(scheduler).inners()
+                .map(thread -> thread.scan(Scannable.Attr.BUFFERED))
+                .mapToInt(queued -> queued != null ? queued : 0)
+                .sum();
+    }
+
+    /**
+     * Wraps the connection pool to time the acquisition of the connections, and to account the statements executed
+     * by each request (see {@link QueryAccountingWebFilter})
+     */
+    @Bean
+    public static BeanPostProcessor timedConnectionPoolPostProcessor(ObjectProvider<MeterRegistry> meterRegistry,
+                                                                     @Value("${query-accounting.enabled:true}") boolean queryAccountingEnabled) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof ConnectionPool connectionPool) {
+                    ConnectionFactory timed = new TimedConnectionFactory(connectionPool, meterRegistry.getObject());
+                    return queryAccountingEnabled ? new QueryAccountingConnectionFactory(timed) : timed;
+                }
+                return bean;
+            }
+        };
+    }
+}
@@ -0,0 +1,269 @@
+package org.openfilz.dms.config;
+
+import io.r2dbc.spi.*;
+import io.r2dbc.spi.Readable;
+import org.openfilz.dms.utils.QueryStats;
+import org.openfilz.dms.utils.QueryStats.StatementStats;
+import org.reactivestreams.Publisher;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Connection factory wrapper adding the statements executed in the database to the {@link QueryStats} of the Reactor
+ * context they are executed in. Outside of a request (no stats in the context), the statements are executed as is.
+ */
+public class QueryAccountingConnectionFactory implements ConnectionFactory, Wrapped<ConnectionFactory>, Disposable {
+
+    private final ConnectionFactory delegate;
+
+    public QueryAccountingConnectionFactory(ConnectionFactory delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Mono<Connection> create() {
+        return Mono.<Connection>from(delegate.create()).map(AccountedConnection::new);
+    }
+
+    @Override
+    public ConnectionFactoryMetadata getMetadata() {
+        return delegate.getMetadata();
+    }
+
+    @Override
+    public ConnectionFactory unwrap() {
+        return delegate;
+    }
+
+    @Override
+    public void dispose() {
+        if (delegate instanceof Disposable disposable) {
+            disposable.dispose();
+        }
+    }
+
+    @Override
+    public boolean isDisposed() {
+        return delegate instanceof Disposable disposable && disposable.isDisposed();
+    }
+
+    private record AccountedConnection(Connection delegate) implements Connection, Wrapped<Connection> {
+
+        @Override
+        public Statement createStatement(String sql) {
+            return new AccountedStatement(delegate.createStatement(sql), sql);
+        }
+
+        @Override
+        public Publisher<Void> beginTransaction() {
+            return delegate.beginTransaction();
+        }
+
+        @Override
+        public Publisher<Void> beginTransaction(TransactionDefinition definition) {
+            return delegate.beginTransaction(definition);
+        }
+
+        @Override
+        public Publisher<Void> close() {
+            return delegate.close();
+        }
+
+        @Override
+        public Publisher<Void> commitTransaction() {
+            return delegate.commitTransaction();
+        }
+
+        @Override
+        public Batch createBatch() {
+            return delegate.createBatch();
+        }
+
+        @Override
+        public Publisher<Void> createSavepoint(String name) {
+            return delegate.createSavepoint(name);
+        }
+
+        @Override
+        public boolean isAutoCommit() {
+            return delegate.isAutoCommit();
+        }
+
+        @Override
+        public ConnectionMetadata getMetadata() {
+            return delegate.getMetadata();
+        }
+
+        @Override
+        public IsolationLevel getTransactionIsolationLevel() {
+            return delegate.getTransactionIsolationLevel();
+        }
+
+        @Override
+        public Publisher<Void> releaseSavepoint(String name) {
+            return delegate.releaseSavepoint(name);
+        }
+
+        @Override
+        public Publisher<Void> rollbackTransaction() {
+            return delegate.rollbackTransaction();
+        }
+
+        @Override
+        public Publisher<Void> rollbackTransactionToSavepoint(String name) {
+            return delegate.rollbackTransactionToSavepoint(name);
+        }
+
+        @Override
+        public Publisher<Void> setAutoCommit(boolean autoCommit) {
+            return delegate.setAutoCommit(autoCommit);
+        }
+
+        @Override
+        public Publisher<Void> setLockWaitTimeout(Duration timeout) {
+            return delegate.setLockWaitTimeout(timeout);
+        }
+
+        @Override
+        public Publisher<Void> setStatementTimeout(Duration timeout) {
+            return delegate.setStatementTimeout(timeout);
+        }
+
+        @Override
+        public Publisher<Void> setTransactionIsolationLevel(IsolationLevel isolationLevel) {
+            return delegate.setTransactionIsolationLevel(isolationLevel);
+        }
+
+        @Override
+        public Publisher<Boolean> validate(ValidationDepth depth) {
+            return delegate.validate(depth);
+        }
+
+        @Override
+        public Connection unwrap() {
+            return delegate;
+        }
+    }
+
+    private static class AccountedStatement implements Statement {
+
+        private final Statement delegate;
+        private final String sql;
+
+        AccountedStatement(Statement delegate, String sql) {
+            this.delegate = delegate;
+            this.sql = sql;
+        }
+
+        @Override
+        public Publisher<? extends Result> execute() {
+            return Flux.deferContextual(context -> QueryStats.from(context)
+                    .map(stats -> execute(stats.statement(sql)))
+                    .orElseGet(() -> Flux.from(delegate.execute())));
+        }
+
+        /**
+         * The time runs until all the results of the statement are received
+         */
+        private Flux<Result> execute(StatementStats stats) {
+            long start = System.nanoTime();
+            return Flux.<Result>from(delegate.execute())
+                    .map(result -> (Result) new AccountedResult(result, stats))
+                    .doFinally(_ -> stats.executed(System.nanoTime() - start));
+        }
+
+        @Override
+        public Statement add() {
+            delegate.add();
+            return this;
+        }
+
+        @Override
+        public Statement bind(int index, Object value) {
+            delegate.bind(index, value);
+            return this;
+        }
+
+        @Override
+        public Statement bind(String name, Object value) {
+            delegate.bind(name, value);
+            return this;
+        }
+
+        @Override
+        public Statement bindNull(int index, Class<?> type) {
+            delegate.bindNull(index, type);
+            return this;
+        }
+
+        @Override
+        public Statement bindNull(String name, Class<?> type) {
+            delegate.bindNull(name, type);
+            return this;
+        }
+
+        @Override
+        public Statement returnGeneratedValues(String... columns) {
+            delegate.returnGeneratedValues(columns);
+            return this;
+        }
+
+        @Override
+        public Statement fetchSize(int rows) {
+            delegate.fetchSize(rows);
+            return this;
+        }
+    }
+
+    /**
+     * Counts the rows read, and the rows updated as reported by the database
+     */
+    private record AccountedResult(Result delegate, StatementStats stats) implements Result {
+
+        @Override
+        public Publisher<Long> getRowsUpdated() {
+            return Flux.from(delegate.getRowsUpdated()).doOnNext(stats::rows);
+        }
+
+        @Override
+        public <T> Publisher<T> map(BiFunction<Row, RowMetadata, ? extends T> mappingFunction) {
+            return delegate.map((row, metadata) -> {
+                stats.rows(1);
+                return mappingFunction.apply(row, metadata);
+            });
+        }
+
+        @Override
+        public <T> Publisher<T> map(Function<? super Readable, ? extends T> mappingFunction) {
+            return delegate.map(readable -> {
+                if (readable instanceof Row) {
+                    stats.rows(1);
+                }
+                return mappingFunction.apply(readable);
+            });
+        }
+
+        @Override
+        public Result filter(Predicate<Segment> filter) {
+            return new AccountedResult(delegate.filter(filter), stats);
+        }
+
+        @Override
+        public <T> Publisher<T> flatMap(Function<Segment, ? extends Publisher<? extends T>> mappingFunction) {
+            return delegate.flatMap(segment -> {
+                if (segment instanceof RowSegment) {
+                    stats.rows(1);
+                } else if (segment instanceof UpdateCount updateCount) {
+                    stats.rows(updateCount.value());
+                }
+                return mappingFunction.apply(segment);
+            });
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package org.openfilz.dms.config;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.openfilz.dms.utils.QueryStats;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.HandlerMapping;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import org.springframework.web.util.pattern.PathPattern;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Accounts the statements executed in the database by each REST or GraphQL request (see
+ * {@link QueryAccountingConnectionFactory}) : the number of statements, rows and the database time of the requests are
+ * recorded as metrics by route, and optionally sent back in response headers. The requests exceeding the thresholds are
+ * logged with the breakdown of their statements, to spot the N+1 queries.
+ * The audit logs written in background (group-commit and async durability) are not accounted to the requests.
+ */
+@Slf4j
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@ConditionalOnProperty(name = "query-accounting.enabled", havingValue = "true", matchIfMissing = true)
+public class QueryAccountingWebFilter implements WebFilter {
+
+    public static final String STATEMENTS_HEADER = "X-Db-Statements";
+    public static final String ROWS_HEADER = "X-Db-Rows";
+    public static final String TIME_HEADER = "X-Db-Time-Ms";
+    private static final String UNKNOWN_ROUTE = "UNKNOWN";
+    private static final int SLOW_REQUEST_LOGGED_STATEMENTS = 20;
+
+    private final MeterRegistry meterRegistry;
+    private final boolean responseHeaders;
+    private final long slowRequestStatements;
+    private final long slowRequestDbTimeNanos;
+    private final Map<String, RouteMeters> metersByRoute = new ConcurrentHashMap<>();
+
+    public QueryAccountingWebFilter(MeterRegistry meterRegistry,
+                                    @Value("${query-accounting.response-headers:false}") boolean responseHeaders,
+                                    @Value("${query-accounting.slow-request.statements:200}") long slowRequestStatements,
+                                    @Value("${query-accounting.slow-request.db-time-ms:1000}") long slowRequestDbTimeMs) {
+        this.meterRegistry = meterRegistry;
+        this.responseHeaders = responseHeaders;
+        this.slowRequestStatements = slowRequestStatements;
+        this.slowRequestDbTimeNanos = TimeUnit.MILLISECONDS.toNanos(slowRequestDbTimeMs);
+    }
+
+    private record RouteMeters(DistributionSummary statements, DistributionSummary rows, Timer time) {
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        QueryStats stats = new QueryStats();
+        if (responseHeaders) {
+            // the statements executed after the response is committed (streamed contents) are only in the metrics
+            exchange.getResponse().beforeCommit(() -> Mono.fromRunnable(() -> addHeaders(exchange.getResponse().getHeaders(), stats)));
+        }
+        return chain.filter(exchange)
+                .contextWrite(context -> QueryStats.putIn(context, stats))
+                .doFinally(_ -> record(exchange, stats));
+    }
+
+    private void addHeaders(HttpHeaders headers, QueryStats stats) {
+        headers.set(STATEMENTS_HEADER, String.valueOf(stats.getExecutions()));
+        headers.set(ROWS_HEADER, String.valueOf(stats.getRows()));
+        headers.set(TIME_HEADER, String.valueOf(TimeUnit.NANOSECONDS.toMillis(stats.getTimeNanos())));
+    }
+
+    private void record(ServerWebExchange exchange, QueryStats stats) {
+        long executions = stats.getExecutions();
+        if (executions == 0) {
+            return;
+        }
+        long timeNanos = stats.getTimeNanos();
+        RouteMeters meters = metersByRoute.computeIfAbsent(getRoute(exchange), this::createMeters);
+        meters.statements().record(executions);
+        meters.rows().record(stats.getRows());
+        meters.time().record(timeNanos, TimeUnit.NANOSECONDS);
+        if (executions >= slowRequestStatements || timeNanos >= slowRequestDbTimeNanos) {
+            log.warn("{} {} executed {} statements in the database ({} rows, {} ms) :\n{}",
+                    exchange.getRequest().getMethod(), exchange.getRequest().getPath(), executions, stats.getRows(),
+                    TimeUnit.NANOSECONDS.toMillis(timeNanos),
+                    stats.getStatements().stream()
+                            .limit(SLOW_REQUEST_LOGGED_STATEMENTS)
+                            .map(statement -> "  " + statement)
+                            .collect(Collectors.joining("\n")));
+        }
+    }
+
+    private static String getRoute(ServerWebExchange exchange) {
+        PathPattern pattern = exchange.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        return pattern != null ? pattern.getPatternString() : UNKNOWN_ROUTE;
+    }
+
+    private RouteMeters createMeters(String route) {
+        return new RouteMeters(
+                DistributionSummary.builder("dms.request.db.statements")
+                        .description("Statements executed in the database by a request")
+                        .tag("uri", route)
+                        .register(meterRegistry),
+                DistributionSummary.builder("dms.request.db.rows")
+                        .description("Rows read or updated in the database by a request")
+                        .tag("uri", route)
+                        .register(meterRegistry),
+                Timer.builder("dms.request.db.time")
+                        .description("Time spent in the database by a request")
+                        .tag("uri", route)
+                        .register(meterRegistry));
+    }
+}
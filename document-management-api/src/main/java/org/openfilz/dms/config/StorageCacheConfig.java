@@ -0,0 +1,39 @@
+package org.openfilz.dms.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.openfilz.dms.service.impl.CachingStorageService;
+import org.openfilz.dms.service.impl.MinioStorageService;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Paths;
+
+@Configuration
+@ConditionalOnProperty(name = "storage.cache.enabled", havingValue = "true")
+public class StorageCacheConfig {
+
+    /**
+     * Wraps the MinIO storage in a read-through cache on local disk : the services using the storage (including the
+     * deduplicating storage, when enabled) read the contents through the cache
+     */
+    @Bean
+    public static BeanPostProcessor cachingStorageServicePostProcessor(ObjectProvider<MeterRegistry> meterRegistry,
+                                                                       @Value("${storage.cache.directory:/tmp/dms-storage-cache}") String directory,
+                                                                       @Value("${storage.cache.max-size-bytes:10737418240}") long maxSizeBytes,
+                                                                       @Value("${storage.cache.max-file-size-bytes:104857600}") long maxFileSizeBytes) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof MinioStorageService minioStorageService) {
+                    return new CachingStorageService(minioStorageService, Paths.get(directory), maxSizeBytes,
+                            maxFileSizeBytes, meterRegistry.getObject());
+                }
+                return bean;
+            }
+        };
+    }
+}
@@ -0,0 +1,35 @@
+package org.openfilz.dms.config;
+
+import org.openfilz.dms.dto.response.StreamingContent;
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.http.MediaType;
+import org.springframework.http.ReactiveHttpOutputMessage;
+import org.springframework.http.codec.HttpMessageWriter;
+import org.springframework.lang.Nullable;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+
+public class StreamingContentHttpMessageWriter implements HttpMessageWriter<StreamingContent> {
+
+    @Override
+    public List<MediaType> getWritableMediaTypes() {
+        return List.of(MediaType.APPLICATION_OCTET_STREAM, MediaType.ALL);
+    }
+
+    @Override
+    public boolean canWrite(ResolvableType elementType, @Nullable MediaType mediaType) {
+        return StreamingContent.class.isAssignableFrom(elementType.toClass());
+    }
+
+    @Override
+    public Mono<Void> write(Publisher<? extends StreamingContent> inputStream, ResolvableType elementType,
+                            @Nullable MediaType mediaType, ReactiveHttpOutputMessage message, Map<String, Object> hints) {
+        if (message.getHeaders().getContentType() == null) {
+            message.getHeaders().setContentType(mediaType != null && mediaType.isConcrete() ? mediaType : MediaType.APPLICATION_OCTET_STREAM);
+        }
+        return message.writeWith(Mono.from(inputStream).flatMapMany(StreamingContent::content));
+    }
+}
@@ -0,0 +1,60 @@
+package org.openfilz.dms.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryMetadata;
+import io.r2dbc.spi.Wrapped;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connection pool wrapper recording the time to acquire a connection ({@code dms.r2dbc.acquire}) : the time spent
+ * waiting for a free connection when the pool is saturated, or to open a new one.
+ */
+public class TimedConnectionFactory implements ConnectionFactory, Wrapped<ConnectionFactory>, Disposable {
+
+    private final ConnectionFactory delegate;
+    private final Timer acquireTimer;
+
+    public TimedConnectionFactory(ConnectionFactory delegate, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.acquireTimer = Timer.builder("dms.r2dbc.acquire")
+                .description("Time to acquire a database connection from the pool")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Mono<Connection> create() {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return Mono.<Connection>from(delegate.create())
+                    .doOnNext(_ -> acquireTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        });
+    }
+
+    @Override
+    public ConnectionFactoryMetadata getMetadata() {
+        return delegate.getMetadata();
+    }
+
+    @Override
+    public ConnectionFactory unwrap() {
+        return delegate;
+    }
+
+    @Override
+    public void dispose() {
+        if (delegate instanceof Disposable disposable) {
+            disposable.dispose();
+        }
+    }
+
+    @Override
+    public boolean isDisposed() {
+        return delegate instanceof Disposable disposable && disposable.isDisposed();
+    }
+}
@@ -13,22 +13,34 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.openfilz.dms.config.RestApiVersion;
 import org.openfilz.dms.dto.request.*;
+import org.openfilz.dms.dto.response.BatchUploadResult;
+import org.openfilz.dms.dto.response.ContentSearchResult;
 import org.openfilz.dms.dto.response.DocumentInfo;
 import org.openfilz.dms.dto.response.ElementInfo;
+import org.openfilz.dms.dto.response.StreamingContent;
 import org.openfilz.dms.dto.response.UploadResponse;
 import org.openfilz.dms.entity.Document;
 import org.openfilz.dms.service.DocumentService;
+import org.openfilz.dms.service.StorageService;
 import org.springframework.core.io.Resource;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.codec.multipart.FilePart;
 import org.springframework.security.core.Authentication;
+import org.springframework.util.DigestUtils;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -47,6 +59,7 @@ public class DocumentController {
 
     public static final String ATTACHMENT_ZIP = "attachment; filename=\"documents.zip\"";
     public static final String ZIP = ".zip";
+    public static final String BYTES = "bytes";
 
     private final DocumentService documentService;
 
@@ -75,9 +88,7 @@ public class DocumentController {
             @RequestPart(value = "parametersByFilename", required = false) List<MultipleUploadFileParameter> multipleUploadFileParameters,
             @Parameter(description = ALLOW_DUPLICATE_FILE_NAME_PARAM_DESCRIPTION) @RequestParam(required = false, defaultValue = "false") Boolean allowDuplicateFileNames,
             Authentication authentication) {
-        final Map<String, MultipleUploadFileParameterAttributes> parametersByFilename = (multipleUploadFileParameters == null
-                || multipleUploadFileParameters.isEmpty() ? Collections.emptyMap()
-                : multipleUploadFileParameters.stream().collect(Collectors.toMap(MultipleUploadFileParameter::filename, MultipleUploadFileParameter::fileAttributes)));
+        final Map<String, MultipleUploadFileParameterAttributes> parametersByFilename = toParametersByFilename(multipleUploadFileParameters);
 
         return filePartFlux.flatMapSequential(filePart -> {
                     MultipleUploadFileParameterAttributes fileParameters = parametersByFilename.get(filePart.filename());
@@ -97,6 +108,24 @@ public class DocumentController {
                 .doOnError(error -> log.error("Error during /upload-multiple processing stream: {}", error.getMessage(), error));
     }
 
+    @PostMapping(value = "/upload-batch", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @Operation(summary = "Upload documents in batch",
+            description = "Uploads many files, optionally with metadata and a parent folder ID : the targets of the files are checked, " +
+                    "and their documents created, by batches of files. Each file is reported as uploaded or failed, " +
+                    "a failing file not preventing the upload of the other ones.")
+    public Flux<BatchUploadResult> uploadDocumentsInBatch(
+            @RequestPart("file") Flux<FilePart> filePartFlux,
+            @RequestPart(value = "parametersByFilename", required = false) List<MultipleUploadFileParameter> multipleUploadFileParameters,
+            @Parameter(description = ALLOW_DUPLICATE_FILE_NAME_PARAM_DESCRIPTION) @RequestParam(required = false, defaultValue = "false") Boolean allowDuplicateFileNames,
+            Authentication authentication) {
+        return documentService.uploadDocumentsInBatch(filePartFlux, toParametersByFilename(multipleUploadFileParameters), allowDuplicateFileNames, authentication);
+    }
+
+    private Map<String, MultipleUploadFileParameterAttributes> toParametersByFilename(List<MultipleUploadFileParameter> multipleUploadFileParameters) {
+        return multipleUploadFileParameters == null || multipleUploadFileParameters.isEmpty() ? Collections.emptyMap()
+                : multipleUploadFileParameters.stream().collect(Collectors.toMap(MultipleUploadFileParameter::filename, MultipleUploadFileParameter::fileAttributes));
+    }
+
     private Map<String, Object> parseMetadata(String metadataJson) {
         try {
             if (metadataJson == null || metadataJson.isBlank()) {
@@ -160,31 +189,130 @@ public class DocumentController {
     }
 
     @GetMapping("/{documentId}/download")
-    @Operation(summary = "Download a document", description = "Downloads a single file document.")
-    public Mono<ResponseEntity<Resource>> downloadDocument(@PathVariable UUID documentId, Authentication authentication) {
+    @Operation(summary = "Download a document",
+            description = "Downloads a single file document (or a folder as a ZIP file). Files support conditional requests (ETag / If-None-Match) " +
+                    "and single byte ranges (Range / If-Range) to resume interrupted downloads.")
+    public Mono<ResponseEntity<Object>> downloadDocument(@PathVariable UUID documentId, ServerWebExchange exchange, Authentication authentication) {
         return documentService.findDocumentById(documentId) // First get metadata like name
-                .flatMap(docInfo -> documentService.downloadDocument(documentId, authentication)
-                        .map(resource -> sendDownloadResponse(docInfo, resource))
-                );
+                .flatMap(docInfo -> {
+                    if (docInfo.getType() != FILE) {
+                        return Mono.just(sendDownloadResponse(docInfo, null,
+                                new StreamingContent(documentService.downloadFolderAsZip(documentId, authentication))));
+                    }
+                    String eTag = getETag(docInfo);
+                    if (eTag != null && exchange.checkNotModified(eTag)) {
+                        return Mono.just(ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build());
+                    }
+                    return documentService.downloadDocument(documentId, authentication)
+                            .map(resource -> sendDownloadResponse(docInfo, eTag, resource));
+                });
+    }
+
+    @GetMapping(value = "/{documentId}/download", headers = HttpHeaders.RANGE)
+    @Operation(hidden = true)
+    public Mono<ResponseEntity<Flux<DataBuffer>>> downloadDocumentRange(@PathVariable UUID documentId, ServerWebExchange exchange, Authentication authentication) {
+        return documentService.findDocumentById(documentId)
+                .flatMap(docInfo -> {
+                    String eTag = getETag(docInfo);
+                    if (eTag == null || docInfo.getSize() == null) { // folders are zipped on the fly : ranges are ignored
+                        return sendFullContent(docInfo, eTag, authentication);
+                    }
+                    if (exchange.checkNotModified(eTag)) {
+                        return Mono.just(ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).<Flux<DataBuffer>>build());
+                    }
+                    HttpHeaders requestHeaders = exchange.getRequest().getHeaders();
+                    List<HttpRange> ranges = getRanges(requestHeaders);
+                    // multiple ranges (multipart/byteranges) are not supported : the whole content is sent, as allowed by RFC 9110
+                    if (ranges.size() != 1 || !isIfRangeMatching(requestHeaders, eTag)) {
+                        return sendFullContent(docInfo, eTag, authentication);
+                    }
+                    return sendPartialContent(docInfo, eTag, ranges.getFirst(), authentication);
+                });
+    }
+
+    private Mono<ResponseEntity<Flux<DataBuffer>>> sendPartialContent(Document document, String eTag, HttpRange range, Authentication authentication) {
+        long size = document.getSize();
+        long start = range.getRangeStart(size);
+        long end = range.getRangeEnd(size);
+        if (start >= size || start > end) {
+            return Mono.just(ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .header(HttpHeaders.CONTENT_RANGE, "bytes */" + size)
+                    .<Flux<DataBuffer>>build());
+        }
+        long length = end - start + 1;
+        return Mono.just(ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+                .header(HttpHeaders.CONTENT_DISPOSITION, getContentDisposition(document))
+                .header(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + size)
+                .header(HttpHeaders.ACCEPT_RANGES, BYTES)
+                .eTag(eTag)
+                .contentType(getContentType(document))
+                .contentLength(length)
+                .body(documentService.downloadDocument(document.getId(), start, length, authentication)));
+    }
+
+    private Mono<ResponseEntity<Flux<DataBuffer>>> sendFullContent(Document document, String eTag, Authentication authentication) {
+        if (document.getType() != FILE) {
+            return Mono.just(sendDownloadResponse(document, null, documentService.downloadFolderAsZip(document.getId(), authentication)));
+        }
+        return documentService.downloadDocument(document.getId(), authentication)
+                .map(resource -> sendDownloadResponse(document, eTag,
+                        DataBufferUtils.read(resource, DefaultDataBufferFactory.sharedInstance, StorageService.READ_BUFFER_SIZE)
+                                .subscribeOn(Schedulers.boundedElastic())));
+    }
+
+    private <T> ResponseEntity<T> sendDownloadResponse(Document document, String eTag, T body) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, getContentDisposition(document))
+                .contentType(getContentType(document));
+        if (eTag != null) {
+            response.header(HttpHeaders.ACCEPT_RANGES, BYTES).eTag(eTag);
+        }
+        return response.body(body);
     }
 
-    private ResponseEntity<Resource> sendDownloadResponse(Document document, Resource resource) {
-        return ResponseEntity.ok()
-                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + document.getName() + (document.getType() == FILE ? "" : ZIP) + "\"")
-                .contentType(document.getType() == FILE && document.getContentType() != null ? MediaType.parseMediaType(document.getContentType()) : MediaType.APPLICATION_OCTET_STREAM)
-                .body(resource);
+    private String getContentDisposition(Document document) {
+        return "attachment; filename=\"" + document.getName() + (document.getType() == FILE ? "" : ZIP) + "\"";
+    }
+
+    private MediaType getContentType(Document document) {
+        return document.getType() == FILE && document.getContentType() != null ? MediaType.parseMediaType(document.getContentType()) : MediaType.APPLICATION_OCTET_STREAM;
+    }
+
+    /**
+     * Strong validator of a file content : the storage path changes each time the content of a document is replaced.
+     * Folders have no ETag, their ZIP is built on each download.
+     */
+    private String getETag(Document document) {
+        if (document.getType() != FILE || document.getStoragePath() == null) {
+            return null;
+        }
+        return "\"" + DigestUtils.md5DigestAsHex(document.getStoragePath().getBytes(StandardCharsets.UTF_8)) + "\"";
+    }
+
+    private List<HttpRange> getRanges(HttpHeaders requestHeaders) {
+        try {
+            return requestHeaders.getRange();
+        } catch (IllegalArgumentException e) {
+            log.debug("Invalid Range header ignored : {}", e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    private boolean isIfRangeMatching(HttpHeaders requestHeaders, String eTag) {
+        String ifRange = requestHeaders.getFirst(HttpHeaders.IF_RANGE);
+        // only entity tags are compared (strong comparison) : a date validator always leads to the whole content
+        return ifRange == null || ifRange.trim().equals(eTag);
     }
 
     @PostMapping("/download-multiple")
     @Operation(summary = "Download multiple documents as ZIP", description = "Downloads multiple documents as a single ZIP file.")
-    public Mono<ResponseEntity<Resource>> downloadMultipleDocumentsAsZip(
+    public Mono<ResponseEntity<Flux<DataBuffer>>> downloadMultipleDocumentsAsZip(
             @org.springframework.web.bind.annotation.RequestBody List<UUID> documentIds,
             Authentication authentication) {
-        return documentService.downloadMultipleDocumentsAsZip(documentIds, authentication)
-                .map(resource -> ResponseEntity.ok()
-                        .header(HttpHeaders.CONTENT_DISPOSITION, ATTACHMENT_ZIP)
-                        .contentType(MediaType.APPLICATION_OCTET_STREAM)
-                        .body(resource));
+        return Mono.just(ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, ATTACHMENT_ZIP)
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .body(documentService.downloadMultipleDocumentsAsZip(documentIds, authentication)));
     }
 
     @PostMapping("/search/ids-by-metadata")
@@ -195,6 +323,15 @@ public class DocumentController {
         return documentService.searchDocumentIdsByMetadata(request, authentication);
     }
 
+    @PostMapping("/search/content")
+    @Operation(summary = "Search files by content", description = "Full-text search in the content of the files, best matches first. " +
+            "The text of a file is extracted in background after its upload : a file is found once its text has been indexed.")
+    public Flux<ContentSearchResult> searchDocumentsByContent(
+            @Valid @org.springframework.web.bind.annotation.RequestBody SearchByContentRequest request,
+            Authentication authentication) {
+        return documentService.searchDocumentsByContent(request, authentication);
+    }
+
     @PostMapping("/{documentId}/search/metadata") // POST to allow body for keys
     @Operation(summary = "Search metadata of a document", description = "Retrieves metadata for a document. Can filter by keys.")
     public Mono<ResponseEntity<Map<String, Object>>> getDocumentMetadata(
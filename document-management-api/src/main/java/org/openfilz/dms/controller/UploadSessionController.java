@@ -0,0 +1,75 @@
+package org.openfilz.dms.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import org.openfilz.dms.config.RestApiVersion;
+import org.openfilz.dms.dto.request.CreateUploadSessionRequest;
+import org.openfilz.dms.dto.response.UploadResponse;
+import org.openfilz.dms.dto.response.UploadSessionResponse;
+import org.openfilz.dms.service.UploadSessionService;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.UUID;
+
+@RestController
+@RequestMapping(RestApiVersion.API_PREFIX + "/documents/upload-sessions")
+@RequiredArgsConstructor
+@SecurityRequirement(name = "keycloak_auth")
+public class UploadSessionController {
+
+    private final UploadSessionService uploadSessionService;
+
+    @PostMapping
+    @Operation(summary = "Create an upload session",
+            description = "Starts the chunked upload of a file : the response gives the size and the number of the chunks to send.")
+    public Mono<ResponseEntity<UploadSessionResponse>> createSession(@Valid @RequestBody CreateUploadSessionRequest request, Authentication authentication) {
+        return uploadSessionService.createSession(request, authentication)
+                .map(session -> ResponseEntity.status(HttpStatus.CREATED).body(session));
+    }
+
+    @GetMapping("/{sessionId}")
+    @Operation(summary = "Get an upload session",
+            description = "Returns the chunks already received, to resume an interrupted upload.")
+    public Mono<ResponseEntity<UploadSessionResponse>> getSession(@PathVariable UUID sessionId, Authentication authentication) {
+        return uploadSessionService.getSession(sessionId, authentication)
+                .map(ResponseEntity::ok);
+    }
+
+    @PutMapping(value = "/{sessionId}/chunks/{chunkNumber}", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    @Operation(summary = "Upload a chunk",
+            description = "Writes a chunk of the file (numbered from 1). Chunks may be sent in any order and in parallel; a chunk sent again replaces the previous one.")
+    public Mono<ResponseEntity<Void>> uploadChunk(@PathVariable UUID sessionId,
+                                                  @PathVariable int chunkNumber,
+                                                  @Parameter(hidden = true) @RequestHeader(name = "Content-Length", required = false) Long contentLength,
+                                                  @RequestBody Flux<DataBuffer> content,
+                                                  Authentication authentication) {
+        return uploadSessionService.uploadChunk(sessionId, chunkNumber, contentLength, content, authentication)
+                .thenReturn(ResponseEntity.noContent().build());
+    }
+
+    @PostMapping("/{sessionId}/complete")
+    @Operation(summary = "Complete an upload session",
+            description = "Creates the document once all the chunks have been received.")
+    public Mono<ResponseEntity<UploadResponse>> completeSession(@PathVariable UUID sessionId, Authentication authentication) {
+        return uploadSessionService.completeSession(sessionId, authentication)
+                .map(uploadResponse -> ResponseEntity.status(HttpStatus.CREATED).body(uploadResponse));
+    }
+
+    @DeleteMapping("/{sessionId}")
+    @Operation(summary = "Abort an upload session",
+            description = "Discards the session and the chunks already received.")
+    public Mono<ResponseEntity<Void>> abortSession(@PathVariable UUID sessionId, Authentication authentication) {
+        return uploadSessionService.abortSession(sessionId, authentication)
+                .thenReturn(ResponseEntity.noContent().build());
+    }
+}
@@ -0,0 +1,26 @@
+package org.openfilz.dms.dto.request;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+
+import java.util.Map;
+import java.util.UUID;
+
+public record CreateUploadSessionRequest(
+        @Schema(description = "Name of the file")
+        @NotBlank @Size(min = 1, max = 255) String name,
+        @Schema(description = "Optional : MIME type of the file - default application/octet-stream")
+        String contentType,
+        @Schema(description = "Size of the file, in bytes")
+        @NotNull @Min(1) Long size,
+        @Schema(description = "Optional : ID of the parent folder. If null, the file is stored at the root level")
+        UUID parentFolderId,
+        @Schema(description = "Optional : metadata of the file")
+        Map<String, Object> metadata,
+        @Schema(description = "Optional : if true, a file with the same name may already exist in the parent folder - default false")
+        Boolean allowDuplicateFileNames
+) {
+}
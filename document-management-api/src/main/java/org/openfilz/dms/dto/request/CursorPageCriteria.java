@@ -0,0 +1,11 @@
+package org.openfilz.dms.dto.request;
+
+import jakarta.validation.constraints.NotNull;
+import org.openfilz.dms.enums.SortOrder;
+
+public record CursorPageCriteria(@NotNull Integer pageSize,
+                                 String after,
+                                 String sortBy,
+                                 SortOrder sortOrder
+                                 ) {
+}
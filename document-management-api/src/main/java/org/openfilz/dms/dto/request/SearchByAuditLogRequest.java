@@ -5,6 +5,7 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import org.openfilz.dms.enums.AuditAction;
 import org.openfilz.dms.enums.DocumentType;
 
+import java.time.OffsetDateTime;
 import java.util.Map;
 import java.util.UUID;
 
@@ -20,6 +21,10 @@ public record SearchByAuditLogRequest(
         @Schema(description = "Action to search for - if not provided or null : search all actions")
         AuditAction action,
         @Schema(description = "Audit Metadata key-value pairs to search for")
-        Map<String, Object> details
+        Map<String, Object> details,
+        @Schema(description = "Only the actions made at or after this date-time - if not provided or null : no lower bound")
+        OffsetDateTime from,
+        @Schema(description = "Only the actions made before this date-time - if not provided or null : no upper bound")
+        OffsetDateTime to
 ) {
 }
\ No newline at end of file
@@ -0,0 +1,23 @@
+package org.openfilz.dms.dto.request;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+
+import java.util.UUID;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@Schema(description = "Files whose content matches the query are returned, best matches first")
+public record SearchByContentRequest(
+        @Schema(description = "Words to search for, in the web search syntax : quoted phrases, 'or' and '-' to exclude a word are supported")
+        @NotBlank String query,
+        @Schema(description = "Optional : UUID of a folder - if provided, only the files of this folder and of its sub-folders are searched")
+        UUID parentFolderId,
+        @Schema(description = "Optional : maximum number of results - default 20")
+        @Min(1) @Max(1000) Integer limit,
+        @Schema(description = "Optional : number of results to skip - default 0")
+        @Min(0) Integer offset
+) {
+}
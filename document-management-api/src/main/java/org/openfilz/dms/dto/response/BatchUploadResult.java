@@ -0,0 +1,21 @@
+package org.openfilz.dms.dto.response;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record BatchUploadResult(
+        @Schema(description = "Position of the file in the request, starting at 0") Integer index,
+        @Schema(description = "Name of the file") String filename,
+        @Schema(description = "Created document - null if the upload of this file failed") UploadResponse document,
+        @Schema(description = "HTTP status of the failure (404 : parent folder not found, 409 : duplicate name, 500 : storage or database error) - null if the file was uploaded") Integer errorStatus,
+        @Schema(description = "Reason of the failure - null if the file was uploaded") String errorMessage) {
+
+    public static BatchUploadResult uploaded(int index, String filename, UploadResponse document) {
+        return new BatchUploadResult(index, filename, document, null, null);
+    }
+
+    public static BatchUploadResult failed(int index, String filename, int errorStatus, String errorMessage) {
+        return new BatchUploadResult(index, filename, null, errorStatus, errorMessage);
+    }
+}
@@ -15,6 +15,7 @@ public class ChildElementInfo implements PhysicalDocument {
     private DocumentType type;
     private String name;
     private Long size;
+    private String contentType;
     private String storagePath;
     private String path;
 
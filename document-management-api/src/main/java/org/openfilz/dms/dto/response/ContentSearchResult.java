@@ -0,0 +1,14 @@
+package org.openfilz.dms.dto.response;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.UUID;
+
+public record ContentSearchResult(
+        @Schema(description = "ID of the file") UUID id,
+        @Schema(description = "Name of the file") String name,
+        @Schema(description = "ID of the parent folder. If null, located at root.") UUID parentId,
+        @Schema(description = "MIME type of the file") String contentType,
+        @Schema(description = "Size of the file - in bytes") Long size,
+        @Schema(description = "Relevance of the file for the query : the higher, the better") Float rank) {
+}
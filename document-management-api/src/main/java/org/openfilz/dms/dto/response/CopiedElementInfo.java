@@ -0,0 +1,23 @@
+package org.openfilz.dms.dto.response;
+
+import org.openfilz.dms.enums.DocumentType;
+
+import java.util.UUID;
+
+/**
+ * A document created by the copy of a folder tree
+ * @param sourceId id of the copied document
+ * @param sourceParentId parent of the copied document
+ * @param id id of the copy
+ * @param parentId parent of the copy
+ * @param storagePath storage path of the copied document, shared by the copy until its content is copied
+ */
+public record CopiedElementInfo(
+        UUID sourceId,
+        UUID sourceParentId,
+        UUID id,
+        UUID parentId,
+        String name,
+        DocumentType type,
+        String storagePath) {
+}
@@ -0,0 +1,4 @@
+package org.openfilz.dms.dto.response;
+
+public record CursorInfo(String endCursor, boolean hasNextPage) {
+}
@@ -0,0 +1,6 @@
+package org.openfilz.dms.dto.response;
+
+import java.util.List;
+
+public record FolderElementPage(List<FullDocumentInfo> items, CursorInfo pageInfo) {
+}
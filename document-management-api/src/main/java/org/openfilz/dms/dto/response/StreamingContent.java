@@ -0,0 +1,11 @@
+package org.openfilz.dms.dto.response;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import reactor.core.publisher.Flux;
+
+/**
+ * Response body streamed as it is produced (e.g. a zip archive), for the endpoints that may also answer with a
+ * {@link org.springframework.core.io.Resource} : written by {@link org.openfilz.dms.config.StreamingContentHttpMessageWriter}.
+ */
+public record StreamingContent(Flux<DataBuffer> content) {
+}
@@ -0,0 +1,17 @@
+package org.openfilz.dms.dto.response;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.UUID;
+
+public record UploadSessionResponse(
+        @Schema(description = "ID of the upload session") UUID id,
+        @Schema(description = "Name of the file") String name,
+        @Schema(description = "Size of the file, in bytes") Long size,
+        @Schema(description = "Size of the chunks, in bytes : the last chunk holds the rest of the file") Long chunkSize,
+        @Schema(description = "Number of chunks, numbered from 1") Integer chunkCount,
+        @Schema(description = "Numbers of the chunks already received : the other ones must be sent before the completion") List<Integer> receivedChunks,
+        @Schema(description = "The session is dropped if not completed by this date-time, postponed by each received chunk") OffsetDateTime expiresAt) {
+}
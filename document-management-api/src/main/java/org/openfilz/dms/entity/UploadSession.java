@@ -0,0 +1,55 @@
+package org.openfilz.dms.entity;
+
+import io.r2dbc.postgresql.codec.Json;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+/**
+ * Chunked upload of a file in progress (table <code>upload_sessions</code>)
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UploadSession {
+
+    private UUID id;
+
+    private String name;
+
+    private String contentType;
+
+    private Long size;
+
+    private Long chunkSize;
+
+    private Integer chunkCount;
+
+    private UUID parentId;
+
+    private Json metadata;
+
+    private Boolean allowDuplicateFileNames;
+
+    private String storagePath;
+
+    private String storageUploadId;
+
+    private String createdBy;
+
+    private OffsetDateTime createdAt;
+
+    private OffsetDateTime expiresAt;
+
+    /**
+     * @return the exact size of a chunk : all the chunks have the size of the session, except the last one
+     */
+    public long getChunkLength(int chunkNumber) {
+        return chunkNumber < chunkCount ? chunkSize : size - (chunkCount - 1) * chunkSize;
+    }
+}
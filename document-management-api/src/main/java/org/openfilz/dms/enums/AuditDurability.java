@@ -0,0 +1,17 @@
+package org.openfilz.dms.enums;
+
+/**
+ * How the audit logs are written (property <code>audit.durability</code>)
+ */
+public enum AuditDurability {
+    /** written by the audited operation itself, in its transaction */
+    SYNC,
+    /** queued and written with the other pending logs in one insert : the audited operation waits for this insert */
+    GROUP_COMMIT,
+    /** queued and written in background : the logs which cannot be written are spilled to a file and written later */
+    ASYNC;
+
+    public static AuditDurability fromProperty(String value) {
+        return valueOf(value.trim().toUpperCase().replace('-', '_'));
+    }
+}
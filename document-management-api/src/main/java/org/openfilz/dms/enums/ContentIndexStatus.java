@@ -0,0 +1,15 @@
+package org.openfilz.dms.enums;
+
+/**
+ * State of the full-text index of the content of a file (column <code>document_contents.status</code>)
+ */
+public enum ContentIndexStatus {
+    /** waiting for the extraction of its text, or for a new attempt after an error */
+    PENDING,
+    /** text extracted and indexed */
+    INDEXED,
+    /** no text can be extracted from this type of content, or the content is too large */
+    UNSUPPORTED,
+    /** the extraction failed after all the attempts */
+    FAILED
+}
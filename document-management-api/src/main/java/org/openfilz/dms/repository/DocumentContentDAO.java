@@ -0,0 +1,53 @@
+package org.openfilz.dms.repository;
+
+import org.openfilz.dms.dto.request.SearchByContentRequest;
+import org.openfilz.dms.dto.response.ContentSearchResult;
+import org.openfilz.dms.enums.ContentIndexStatus;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.UUID;
+
+/**
+ * Full-text index of the content of the files (table <code>document_contents</code>)
+ */
+public interface DocumentContentDAO {
+
+    /**
+     * A file whose text is to be extracted
+     * @param version version of the content, to give back when the result of the extraction is saved
+     * @param attempts attempts of extraction, including this one
+     */
+    record PendingContent(UUID documentId, int version, int attempts, String name, String contentType, Long size,
+                          String storagePath) {
+    }
+
+    /**
+     * Claims the next files waiting for the extraction of their text. The claimed files are not returned again by
+     * this method until the lease expires, so that a file claimed by an instance which stopped is claimed again later.
+     */
+    Flux<PendingContent> claimPending(int limit, Duration lease);
+
+    /**
+     * Indexes the text extracted from a file
+     * @return false if the content of the file has been replaced (or the file deleted) in the meantime
+     */
+    Mono<Boolean> saveText(UUID documentId, int version, String text);
+
+    /**
+     * Records that no text could be extracted from a file
+     * @param status {@link ContentIndexStatus#PENDING} to try again after the given delay, or the final status
+     */
+    Mono<Void> saveStatus(UUID documentId, int version, ContentIndexStatus status, String error, Duration retryDelay);
+
+    /**
+     * @return the number of files waiting for the extraction of their text
+     */
+    Mono<Long> countPending();
+
+    /**
+     * Ranked full-text search in the indexed contents
+     */
+    Flux<ContentSearchResult> search(SearchByContentRequest request);
+}
@@ -2,9 +2,15 @@ package org.openfilz.dms.repository;
 
 import org.openfilz.dms.dto.request.SearchByMetadataRequest;
 import org.openfilz.dms.dto.response.ChildElementInfo;
+import org.openfilz.dms.dto.response.CopiedElementInfo;
+import org.openfilz.dms.entity.Document;
+import org.openfilz.dms.enums.DocumentType;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 public interface DocumentDAO {
@@ -13,4 +19,88 @@ public interface DocumentDAO {
     Flux<ChildElementInfo> getChildren(UUID folderId);
 
     Flux<ChildElementInfo> getElementsAndChildren(List<UUID> documentIds);
+
+    /**
+     * A document to move, with its materialized ancestry
+     * @param treePath ids (without '-') of the ancestors of the document, ending with its own id, separated by '.'
+     */
+    record ElementToMove(UUID id, String name, DocumentType type, UUID parentId, String treePath) {
+    }
+
+    /**
+     * Checks in one lookup, using the materialized ancestry of the documents, whether a document is one of the given
+     * ancestors or one of their descendants.
+     */
+    Mono<Boolean> isDescendantOfAny(UUID documentId, List<UUID> ancestorIds);
+
+    /**
+     * Reads the documents to move in one query
+     */
+    Flux<ElementToMove> getElementsToMove(List<UUID> documentIds);
+
+    /**
+     * Re-parents several documents in one statement : the ancestry of their descendants is rewritten by the triggers
+     * of <code>documents</code>, so none of the given documents may be the descendant of another one
+     * @param targetFolderId new parent of the documents, null for the root level
+     * @param allowDuplicateNames false : the statement fails with a {@link org.springframework.dao.DuplicateKeyException}
+     *                            if a name is already held in the target folder ; true : the documents whose name is
+     *                            taken are moved without holding it
+     * @return the number of moved documents
+     */
+    Mono<Long> moveDocuments(List<UUID> documentIds, UUID targetFolderId, String username, boolean allowDuplicateNames);
+
+    /**
+     * Deletes the given folders and all their descendants in one statement, and queues the storage paths of the
+     * deleted files for the storage purge.
+     * @return the deleted documents (id, type and parent id only)
+     */
+    Flux<Document> deleteFoldersRecursive(List<UUID> folderIds);
+
+    /**
+     * Copies a folder and all its descendants into the target folder in one statement. The copied files keep the
+     * storage path of their source until {@link #updateStoragePaths(Map)} is called with the copies of their contents.
+     * @return the created documents, starting with the copy of the source folder
+     */
+    Flux<CopiedElementInfo> copyFolderRecursive(UUID sourceFolderId, UUID targetFolderId, String username, boolean allowDuplicateNames);
+
+    /**
+     * Renames a document, which then holds its new name in its folder
+     * @return the number of renamed documents - fails with a {@link org.springframework.dao.DuplicateKeyException} if
+     * the name is already held in the folder
+     */
+    Mono<Long> renameDocument(UUID documentId, String newName, String username);
+
+    /**
+     * Sets the storage path of several documents
+     * @param storagePaths storage paths by document id
+     */
+    Mono<Void> updateStoragePaths(Map<UUID, String> storagePaths);
+
+    /**
+     * @return among the given ids, the ids of the existing folders
+     */
+    Flux<UUID> getFolderIds(Collection<UUID> folderIds);
+
+    /**
+     * Looks in one query (by batch of 1000 names) for the documents holding the same name in the same parent folder
+     * as one of the given documents
+     * @param documents documents to check (name and parent id only)
+     * @return the conflicting documents (name and parent id only)
+     */
+    Flux<Document> findNameConflicts(List<Document> documents);
+
+    /**
+     * Inserts a document, whose id must be set, if its name is free in its parent folder : the check is done by the
+     * unique index of the names, so that concurrent inserts cannot both take the same name
+     * @param allowDuplicateName true : the document is inserted anyway, without holding its name if it is taken
+     * @return false if the document was not inserted because its name is taken
+     */
+    Mono<Boolean> insertDocument(Document document, boolean allowDuplicateName);
+
+    /**
+     * Inserts several documents with multi-row inserts (see {@link #insertDocument(Document, boolean)}) : their ids
+     * must be set
+     * @return the ids of the documents not inserted because their name is taken (always empty when allowDuplicateNames)
+     */
+    Flux<UUID> insertDocuments(List<Document> documents, boolean allowDuplicateNames);
 }
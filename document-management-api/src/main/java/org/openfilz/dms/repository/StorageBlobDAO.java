@@ -0,0 +1,31 @@
+package org.openfilz.dms.repository;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Content-addressed blobs and their reference counts (table <code>storage_blobs</code>)
+ */
+public interface StorageBlobDAO {
+
+    /**
+     * Registers a stored content : when a blob of the same hash exists, a reference to it is added instead
+     * @return the storage path of the blob holding the content : the given one if the content was not stored yet
+     */
+    Mono<String> register(String hash, String storagePath);
+
+    /**
+     * @return the storage path of the blob, or empty if it is not a registered blob
+     */
+    Mono<String> addReference(String storagePath);
+
+    /**
+     * @return the remaining references to the blob, or empty if it is not a registered blob
+     */
+    Mono<Integer> removeReference(String storagePath);
+
+    /**
+     * Unregisters a blob if it is still not referenced
+     * @return false if a concurrent upload of the same content has referenced it again in the meantime
+     */
+    Mono<Boolean> deleteUnreferenced(String storagePath);
+}
@@ -0,0 +1,40 @@
+package org.openfilz.dms.repository;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Storage paths of the deleted documents, waiting for their content to be removed from the storage (table
+ * <code>storage_purge_queue</code>)
+ */
+public interface StoragePurgeQueueDAO {
+
+    record QueuedPath(long id, String storagePath) {
+    }
+
+    /**
+     * Claims the next storage paths to purge. The claimed paths stay in the queue but are not returned again by this
+     * method until the lease expires, so that a path claimed by an instance which stopped, or which could not be
+     * deleted, is claimed again later.
+     */
+    Flux<QueuedPath> claim(int limit, Duration lease);
+
+    /**
+     * Removes from the queue the paths whose content has been deleted from the storage
+     */
+    Mono<Void> delete(List<Long> ids);
+
+    /**
+     * Removes a path from the queue
+     * @return false if it was already removed
+     */
+    Mono<Boolean> delete(long id);
+
+    /**
+     * Queues a storage path whose content is to be deleted from the storage
+     */
+    Mono<Void> enqueue(String storagePath);
+}
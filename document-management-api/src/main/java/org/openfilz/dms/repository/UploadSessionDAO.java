@@ -0,0 +1,48 @@
+package org.openfilz.dms.repository;
+
+import org.openfilz.dms.entity.UploadSession;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.UUID;
+
+/**
+ * Chunked uploads in progress (tables <code>upload_sessions</code> and <code>upload_session_chunks</code>)
+ */
+public interface UploadSessionDAO {
+
+    Mono<UploadSession> create(UploadSession session);
+
+    Mono<UploadSession> findById(UUID id);
+
+    /**
+     * Reads a session and locks it until the end of the current transaction : the chunks of a locked session cannot be
+     * saved, and it is not purged
+     */
+    Mono<UploadSession> findByIdForUpdate(UUID id);
+
+    /**
+     * @return the numbers of the received chunks, in ascending order
+     */
+    Flux<Integer> getChunkNumbers(UUID sessionId);
+
+    /**
+     * @return the tags of the received chunks, in the order of the chunks
+     */
+    Flux<String> getChunkTags(UUID sessionId);
+
+    /**
+     * Records a received chunk, and postpones the expiration of its session
+     * @return false if the session does not exist anymore
+     */
+    Mono<Boolean> saveChunk(UUID sessionId, int chunkNumber, String tag, Duration timeToLive);
+
+    Mono<Void> delete(UUID id);
+
+    /**
+     * Deletes expired sessions (not locked by a completion)
+     * @return the deleted sessions (storage path and upload id only)
+     */
+    Flux<UploadSession> deleteExpired(int limit);
+}
@@ -3,11 +3,9 @@ package org.openfilz.dms.repository.impl;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.r2dbc.postgresql.codec.Json;
-import jakarta.validation.constraints.NotNull;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.openfilz.dms.dto.audit.AuditLog;
-import org.openfilz.dms.dto.audit.AuditLogDetails;
 import org.openfilz.dms.dto.request.SearchByAuditLogRequest;
 import org.openfilz.dms.enums.AuditAction;
 import org.openfilz.dms.enums.DocumentType;
@@ -20,6 +18,7 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.time.OffsetDateTime;
+import java.util.List;
 import java.util.UUID;
 
 import static org.openfilz.dms.utils.SqlUtils.isFirst;
@@ -29,8 +28,10 @@ import static org.openfilz.dms.utils.SqlUtils.isFirst;
 @Slf4j
 public class AuditDAOImpl implements AuditDAO {
 
-    private static final String AUDIT_VALUES_SQL = ") VALUES (:ts, :up, :act, :rt, :rid";
-    private static final String AUDIT_INSERT_SQL = "INSERT INTO audit_logs (timestamp, user_principal, action, resource_type, resource_id";
+    private static final String AUDIT_INSERT_SQL = "INSERT INTO audit_logs (timestamp, user_principal, action, resource_type, resource_id, details) VALUES ";
+
+    // 6 parameters by row : stays far below the limit of 32767 parameters by statement
+    private static final int AUDIT_BATCH_SIZE = 1000;
 
     private final DatabaseClient databaseClient;
 
@@ -77,6 +78,16 @@ public class AuditDAOImpl implements AuditDAO {
             first = isFirst(first, sql);
             sql.append("user_principal = :username ");
         }
+        boolean fromCriteria = request.from() != null;
+        if(fromCriteria) {
+            first = isFirst(first, sql);
+            sql.append("timestamp >= :from ");
+        }
+        boolean toCriteria = request.to() != null;
+        if(toCriteria) {
+            first = isFirst(first, sql);
+            sql.append("timestamp < :to ");
+        }
         boolean detailsCriteria = request.details() != null && !request.details().isEmpty();
         if(detailsCriteria) {
             isFirst(first, sql);
@@ -95,6 +106,12 @@ public class AuditDAOImpl implements AuditDAO {
         if(usernameCriteria) {
             query = query.bind("username", request.username());
         }
+        if(fromCriteria) {
+            query = query.bind("from", request.from());
+        }
+        if(toCriteria) {
+            query = query.bind("to", request.to());
+        }
         if(detailsCriteria) {
             try {
                 String criteriaJson = objectMapper.writeValueAsString(request.details());
@@ -115,29 +132,34 @@ public class AuditDAOImpl implements AuditDAO {
     }
 
     @Override
-    public Mono<Void> logAction(String userPrincipal, AuditAction action, DocumentType resourceType, UUID resourceId, AuditLogDetails details) {
-        DatabaseClient.GenericExecuteSpec executeSpec;
-        StringBuilder sql = new StringBuilder(AUDIT_INSERT_SQL);
-        if (details != null) {
-            sql.append(", details ").append(AUDIT_VALUES_SQL).append(", :det)");
-            Json detailsJson = jsonUtils.toJson(details);
-            executeSpec = bindAuditValues(userPrincipal, action, resourceType, resourceId, sql).bind("det", detailsJson);
-        } else {
-            sql.append(AUDIT_VALUES_SQL).append(")");
-            executeSpec = bindAuditValues(userPrincipal, action, resourceType, resourceId, sql);
-        }
-        return executeSpec
-                .then()
-                .doOnError(e -> log.error("Failed to log audit action {}: {}", action, e.getMessage()))
-                .onErrorResume(e -> Mono.empty());
+    public Mono<Void> logActions(List<AuditLog> auditLogs) {
+        return Flux.fromIterable(auditLogs)
+                .buffer(AUDIT_BATCH_SIZE)
+                .concatMap(this::insertAuditLogs)
+                .then();
     }
 
-    private DatabaseClient.GenericExecuteSpec bindAuditValues(String userPrincipal, @NotNull AuditAction action, @NotNull DocumentType resourceType, UUID resourceId, StringBuilder sql) {
-        return databaseClient.sql(sql.toString())
-                .bind("ts", OffsetDateTime.now())
-                .bind("up", userPrincipal != null ? userPrincipal : "SYSTEM")
-                .bind("act", action.toString())
-                .bind("rt", resourceType.toString())
-                .bind("rid", resourceId);
+    private Mono<Long> insertAuditLogs(List<AuditLog> auditLogs) {
+        StringBuilder sql = new StringBuilder(AUDIT_INSERT_SQL);
+        for (int i = 0; i < auditLogs.size(); i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append("(:ts").append(i).append(", :up").append(i).append(", :act").append(i)
+                    .append(", :rt").append(i).append(", :rid").append(i).append(", :det").append(i).append(")");
+        }
+        DatabaseClient.GenericExecuteSpec executeSpec = databaseClient.sql(sql.toString());
+        OffsetDateTime now = OffsetDateTime.now();
+        for (int i = 0; i < auditLogs.size(); i++) {
+            AuditLog auditLog = auditLogs.get(i);
+            executeSpec = executeSpec
+                    .bind("ts" + i, auditLog.timestamp() != null ? auditLog.timestamp() : now)
+                    .bind("up" + i, auditLog.username() != null ? auditLog.username() : "SYSTEM")
+                    .bind("act" + i, auditLog.action().toString())
+                    .bind("rt" + i, auditLog.resourceType().toString());
+            executeSpec = auditLog.id() != null ? executeSpec.bind("rid" + i, auditLog.id()) : executeSpec.bindNull("rid" + i, UUID.class);
+            executeSpec = auditLog.details() != null ? executeSpec.bind("det" + i, jsonUtils.toJson(auditLog.details())) : executeSpec.bindNull("det" + i, Json.class);
+        }
+        return executeSpec.fetch().rowsUpdated();
     }
 }
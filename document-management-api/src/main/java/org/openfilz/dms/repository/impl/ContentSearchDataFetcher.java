@@ -0,0 +1,39 @@
+package org.openfilz.dms.repository.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import graphql.schema.DataFetcher;
+import graphql.schema.DataFetchingEnvironment;
+import lombok.RequiredArgsConstructor;
+import org.openfilz.dms.config.GraphQlQueryConfig;
+import org.openfilz.dms.dto.request.SearchByContentRequest;
+import org.openfilz.dms.dto.response.ContentSearchResult;
+import org.openfilz.dms.repository.DocumentContentDAO;
+import reactor.core.publisher.Flux;
+
+/**
+ * Full-text search in the content of the files : the results are ranked, so all their fields are read whatever the
+ * selection.
+ */
+@RequiredArgsConstructor
+public class ContentSearchDataFetcher implements DataFetcher<Flux<ContentSearchResult>> {
+
+    private static final int MAX_LIMIT = 1000;
+
+    private final DocumentContentDAO documentContentDAO;
+
+    private final ObjectMapper objectMapper;
+
+    @Override
+    public Flux<ContentSearchResult> get(DataFetchingEnvironment environment) {
+        SearchByContentRequest request = objectMapper.convertValue(environment.getArguments().get(GraphQlQueryConfig.GRAPHQL_REQUEST),
+                SearchByContentRequest.class);
+        if (request.query() == null || request.query().isBlank()) {
+            return Flux.error(new IllegalArgumentException("The query must not be empty"));
+        }
+        if ((request.limit() != null && (request.limit() < 1 || request.limit() > MAX_LIMIT))
+                || (request.offset() != null && request.offset() < 0)) {
+            return Flux.error(new IllegalArgumentException("The limit must be between 1 and " + MAX_LIMIT + " and the offset positive"));
+        }
+        return documentContentDAO.search(request);
+    }
+}
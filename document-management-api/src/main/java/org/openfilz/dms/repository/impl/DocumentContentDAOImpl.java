@@ -0,0 +1,148 @@
+package org.openfilz.dms.repository.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.openfilz.dms.dto.request.SearchByContentRequest;
+import org.openfilz.dms.dto.response.ContentSearchResult;
+import org.openfilz.dms.enums.ContentIndexStatus;
+import org.openfilz.dms.repository.DocumentContentDAO;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.UUID;
+
+@Slf4j
+@Service
+public class DocumentContentDAOImpl implements DocumentContentDAO {
+
+    private static final String ID = "id";
+    private static final String VERSION = "version";
+    private static final String LIMIT = "limit";
+    private static final String OFFSET = "offset";
+    private static final String CONFIG = "config";
+
+    private static final int DEFAULT_SEARCH_LIMIT = 20;
+
+    // the lease is set in next_attempt_at : a claimed file is claimed again when it expires
+    private static final String CLAIM_PENDING = """
+            UPDATE document_contents c
+            SET attempts = c.attempts + 1, next_attempt_at = CURRENT_TIMESTAMP + :lease_ms * INTERVAL '1 millisecond'
+            FROM documents d
+            WHERE d.id = c.document_id AND c.document_id IN (
+              SELECT document_id FROM document_contents
+              WHERE status = 'PENDING' AND next_attempt_at <= CURRENT_TIMESTAMP
+              ORDER BY next_attempt_at
+              LIMIT :limit
+              FOR UPDATE SKIP LOCKED
+            )
+            RETURNING c.document_id, c.version, c.attempts, d.name, d.content_type, d.size, d.storage_path""";
+
+    private static final String SAVE_TEXT = """
+            UPDATE document_contents
+            SET status = 'INDEXED', text_vector = to_tsvector(CAST(:config AS regconfig), :text), last_error = NULL,
+                indexed_at = CURRENT_TIMESTAMP
+            WHERE document_id = :id AND version = :version""";
+
+    private static final String SAVE_STATUS = """
+            UPDATE document_contents
+            SET status = :status, text_vector = NULL, last_error = :error,
+                next_attempt_at = CURRENT_TIMESTAMP + :retry_delay_ms * INTERVAL '1 millisecond'
+            WHERE document_id = :id AND version = :version""";
+
+    private static final String COUNT_PENDING = "SELECT count(*) FROM document_contents WHERE status = 'PENDING'";
+
+    private static final String SEARCH = """
+            SELECT d.id, d.name, d.parent_id, d.content_type, d.size, ts_rank_cd(c.text_vector, query) AS rank
+            FROM document_contents c
+            JOIN documents d ON d.id = c.document_id,
+                 websearch_to_tsquery(CAST(:config AS regconfig), :text_query) AS query
+            WHERE c.text_vector @@ query""";
+
+    private static final String IN_FOLDER = """
+             AND d.tree_path <@ (SELECT tree_path FROM documents WHERE id = :parent_folder_id)""";
+
+    private static final String ORDER_BY_RANK = " ORDER BY rank DESC, d.id LIMIT :limit OFFSET :offset";
+
+    private final DatabaseClient databaseClient;
+
+    private final String textSearchConfig;
+
+    public DocumentContentDAOImpl(DatabaseClient databaseClient,
+                                  @Value("${content-index.text-search-config:simple}") String textSearchConfig) {
+        this.databaseClient = databaseClient;
+        this.textSearchConfig = textSearchConfig;
+    }
+
+    @Override
+    public Flux<PendingContent> claimPending(int limit, Duration lease) {
+        return databaseClient.sql(CLAIM_PENDING)
+                .bind("lease_ms", lease.toMillis())
+                .bind(LIMIT, limit)
+                .map(row -> new PendingContent(
+                        row.get("document_id", UUID.class),
+                        row.get(VERSION, Integer.class),
+                        row.get("attempts", Integer.class),
+                        row.get("name", String.class),
+                        row.get("content_type", String.class),
+                        row.get("size", Long.class),
+                        row.get("storage_path", String.class)))
+                .all();
+    }
+
+    @Override
+    public Mono<Boolean> saveText(UUID documentId, int version, String text) {
+        return databaseClient.sql(SAVE_TEXT)
+                .bind(CONFIG, textSearchConfig)
+                .bind("text", text)
+                .bind(ID, documentId)
+                .bind(VERSION, version)
+                .fetch()
+                .rowsUpdated()
+                .map(updated -> updated > 0);
+    }
+
+    @Override
+    public Mono<Void> saveStatus(UUID documentId, int version, ContentIndexStatus status, String error, Duration retryDelay) {
+        DatabaseClient.GenericExecuteSpec query = databaseClient.sql(SAVE_STATUS).bind("status", status.name());
+        query = error == null ? query.bindNull("error", String.class) : query.bind("error", error);
+        return query.bind("retry_delay_ms", retryDelay.toMillis())
+                .bind(ID, documentId)
+                .bind(VERSION, version)
+                .then();
+    }
+
+    @Override
+    public Mono<Long> countPending() {
+        return databaseClient.sql(COUNT_PENDING)
+                .map(row -> row.get(0, Long.class))
+                .one();
+    }
+
+    @Override
+    public Flux<ContentSearchResult> search(SearchByContentRequest request) {
+        StringBuilder sql = new StringBuilder(SEARCH);
+        if (request.parentFolderId() != null) {
+            sql.append(IN_FOLDER);
+        }
+        sql.append(ORDER_BY_RANK);
+        DatabaseClient.GenericExecuteSpec query = databaseClient.sql(sql.toString())
+                .bind(CONFIG, textSearchConfig)
+                .bind("text_query", request.query())
+                .bind(LIMIT, request.limit() == null ? DEFAULT_SEARCH_LIMIT : request.limit())
+                .bind(OFFSET, request.offset() == null ? 0 : request.offset());
+        if (request.parentFolderId() != null) {
+            query = query.bind("parent_folder_id", request.parentFolderId());
+        }
+        return query.map(row -> new ContentSearchResult(
+                        row.get(ID, UUID.class),
+                        row.get("name", String.class),
+                        row.get("parent_id", UUID.class),
+                        row.get("content_type", String.class),
+                        row.get("size", Long.class),
+                        row.get("rank", Float.class)))
+                .all();
+    }
+}
@@ -1,10 +1,13 @@
 package org.openfilz.dms.repository.impl;
 
+import io.r2dbc.postgresql.codec.Json;
 import io.r2dbc.spi.Readable;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.openfilz.dms.dto.request.SearchByMetadataRequest;
 import org.openfilz.dms.dto.response.ChildElementInfo;
+import org.openfilz.dms.dto.response.CopiedElementInfo;
+import org.openfilz.dms.entity.Document;
 import org.openfilz.dms.entity.DocumentSqlMapping;
 import org.openfilz.dms.enums.DocumentType;
 import org.openfilz.dms.repository.DocumentDAO;
@@ -12,11 +15,17 @@ import org.openfilz.dms.utils.SqlUtils;
 import org.springframework.r2dbc.core.DatabaseClient;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 import reactor.util.function.Tuple2;
 import reactor.util.function.Tuples;
 
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 import static org.openfilz.dms.entity.DocumentSqlMapping.*;
 import static org.openfilz.dms.utils.FileConstants.SLASH;
@@ -29,62 +38,110 @@ public class DocumentDAOImpl implements DocumentDAO {
 
     public static final String SELECT_ID_FROM_DOCUMENTS = "SELECT id FROM documents";
 
-    public static final String SELECT_CHILDREN = """
-            WITH RECURSIVE folder_tree AS (
-              SELECT
-                 id,
-                 name,
-                 type,
-                 size,
-                 storage_path as storage,
-                 name::text as fullpath
-              FROM documents
-              WHERE parent_id = :parentId
-             UNION ALL
-              SELECT
-                 d.id,
-                 d.name,
-                 d.type,
-                 d.size,
-                 storage_path,
-                 tree.fullpath || '/' || d.name
+    // ordered by tree_path : a folder always comes before its content
+    public static final String SELECT_DESCENDANTS = """
+            SELECT
+               d.id,
+               d.parent_id,
+               d.name,
+               d.type,
+               d.size,
+               d.content_type,
+               d.storage_path
+            FROM documents d
+            JOIN documents root ON root.id = :parentId
+            WHERE d.tree_path <@ root.tree_path AND d.id <> root.id
+            ORDER BY d.tree_path""";
+
+    public static final String IS_DESCENDANT_OF_ANY = """
+            SELECT EXISTS (
+              SELECT 1
               FROM documents d
-              JOIN folder_tree tree ON d.parent_id = tree.id
-             )
-             SELECT * FROM folder_tree""";
+              JOIN documents ancestor ON ancestor.id = ANY(:ancestorIds)
+              WHERE d.id = :id AND d.tree_path <@ ancestor.tree_path
+            )""";
+
+    public static final String SELECT_ELEMENTS_TO_MOVE = """
+            SELECT id, name, type, parent_id, ltree2text(tree_path) AS tree_path
+            FROM documents
+            WHERE id = ANY(:ids)""";
 
+    public static final String MOVE_DOCUMENTS = """
+            UPDATE documents
+            SET parent_id = :targetId, updated_at = :now, updated_by = :username, unique_name = TRUE
+            WHERE id = ANY(:ids)""";
 
-    public static final String SELECT_CHILDREN_2 = """
-            WITH RECURSIVE folder_tree AS (
-              SELECT
-                 id,
-                 name,
-                 type,
-                 size,
-                 storage_path as storage,
-                 :rootFolder || name as fullpath
-              FROM documents
-              WHERE parent_id = :parentId
-             UNION ALL
+    // a moved document only holds its name when it is free in the target folder and not used by a moved document
+    // having a smaller id
+    public static final String MOVE_DOCUMENTS_ALLOWING_DUPLICATE_NAMES = """
+            UPDATE documents d
+            SET parent_id = :targetId, updated_at = :now, updated_by = :username,
+                unique_name = NOT EXISTS (SELECT 1 FROM documents o
+                                          WHERE o.parent_id IS NOT DISTINCT FROM :targetId AND o.name = d.name AND o.unique_name)
+                              AND NOT EXISTS (SELECT 1 FROM documents o WHERE o.id = ANY(:ids) AND o.name = d.name AND o.id < d.id)
+            WHERE d.id = ANY(:ids)""";
+
+    public static final String RENAME_DOCUMENT = """
+            UPDATE documents
+            SET name = :name, updated_at = :now, updated_by = :username, unique_name = TRUE
+            WHERE id = :id""";
+
+    public static final String DELETE_FOLDERS_RECURSIVE = """
+            WITH deleted AS (
+              DELETE FROM documents d
+              USING documents root
+              WHERE root.id in (:ids) AND d.tree_path <@ root.tree_path
+              RETURNING d.id, d.type, d.parent_id, d.storage_path
+             ),
+             purged AS (
+              INSERT INTO storage_purge_queue (storage_path)
+              SELECT storage_path FROM deleted WHERE storage_path IS NOT NULL
+             )
+             SELECT id, type, parent_id FROM deleted""";
+
+    // the ids of the copies are derived from the ids of their sources (uuid v5 in a namespace specific to this copy),
+    // so that the new parent ids and the new tree paths are computed without walking the tree
+    public static final String COPY_FOLDER_RECURSIVE = """
+            WITH source AS (
+              SELECT tree_path FROM documents WHERE id = :sourceId
+             ),
+             folder_tree AS (
               SELECT
                  d.id,
-                 d.name,
-                 d.type,
-                 d.size,
-                 storage_path,
-                 tree.fullpath || '/' || d.name
-              FROM documents d
-              JOIN folder_tree tree ON d.parent_id = tree.id
+                 d.parent_id,
+                 uuid_generate_v5(:namespace, d.id::text) as new_id,
+                 CASE WHEN d.id = :sourceId THEN CAST(:targetId AS uuid)
+                      ELSE uuid_generate_v5(:namespace, d.parent_id::text) END as new_parent_id,
+                 COALESCE((SELECT tree_path FROM documents WHERE id = :targetId), ''::ltree)
+                   || (SELECT text2ltree(string_agg(replace(uuid_generate_v5(:namespace, label::uuid::text)::text, '-', ''), '.' ORDER BY ord))
+                       FROM unnest(string_to_array(ltree2text(subpath(d.tree_path, nlevel(source.tree_path) - 1)), '.'))
+                            WITH ORDINALITY AS labels(label, ord)) as new_tree_path,
+                 nlevel(d.tree_path) as depth
+              FROM documents d, source
+              WHERE d.tree_path <@ source.tree_path
+             ),
+             copied AS (
+              INSERT INTO documents (id, name, type, content_type, size, parent_id, storage_path, metadata,
+                                     created_at, updated_at, created_by, updated_by, tree_path, unique_name)
+              SELECT tree.new_id, d.name, d.type, d.content_type, d.size, tree.new_parent_id, d.storage_path,
+                     COALESCE(d.metadata, '{}'::jsonb), :now, :now, :username, :username, tree.new_tree_path,
+                     CASE WHEN d.id = :sourceId
+                          THEN NOT :allowDuplicateNames OR NOT EXISTS (SELECT 1 FROM documents o
+                                                                       WHERE o.parent_id = :targetId AND o.name = d.name AND o.unique_name)
+                          ELSE d.unique_name END
+              FROM folder_tree tree
+              JOIN documents d ON d.id = tree.id
              )
-             SELECT * FROM folder_tree""";
-
+             SELECT tree.id, tree.parent_id, tree.new_id, tree.new_parent_id, d.name, d.type, d.storage_path
+             FROM folder_tree tree
+             JOIN documents d ON d.id = tree.id
+             ORDER BY tree.depth""";
 
-
-    public static final String FULLPATH = "fullpath";
-    public static final String STORAGE = "storage";
     public static final String PARENT_ID = "parentId";
     public static final String IDS = "ids";
 
+    private static final int UPDATE_BATCH_SIZE = 1000;
+
 
     private final DatabaseClient databaseClient;
 
@@ -144,16 +201,33 @@ public class DocumentDAOImpl implements DocumentDAO {
     }
 
     public Flux<ChildElementInfo> getChildren(Flux<Tuple2<UUID, String>> folderIds) {
-        return folderIds.flatMap(folders -> databaseClient.sql(SELECT_CHILDREN_2)
-                .bind("rootFolder", folders.getT2() + SLASH)
-                .bind(PARENT_ID, folders.getT1())
-                .map(this::toChild)
-                .all());
+        return folderIds.flatMap(folders -> getDescendants(folders.getT1(), folders.getT2() + SLASH));
     }
 
     @Override
     public Flux<ChildElementInfo> getChildren(UUID folderId) {
-        return databaseClient.sql(SELECT_CHILDREN).bind(PARENT_ID, folderId).map(this::toChild).all();
+        return getDescendants(folderId, "");
+    }
+
+    /**
+     * Lists all the descendants of a folder, with their path relative to the folder prefixed by rootPath : as the
+     * folders come before their content, the path of an element is the path of its parent (already read) + its name.
+     */
+    private Flux<ChildElementInfo> getDescendants(UUID folderId, String rootPath) {
+        return Flux.defer(() -> {
+            Map<UUID, String> folderPaths = new HashMap<>();
+            folderPaths.put(folderId, rootPath);
+            return databaseClient.sql(SELECT_DESCENDANTS)
+                    .bind(PARENT_ID, folderId)
+                    .map(row -> {
+                        ChildElementInfo child = getChildElementInfo(row, folderPaths.get(row.get(DocumentSqlMapping.PARENT_ID, UUID.class)) + row.get(NAME, String.class));
+                        if (child.getType() == DocumentType.FOLDER) {
+                            folderPaths.put(child.getId(), child.getPath() + SLASH);
+                        }
+                        return child;
+                    })
+                    .all();
+        });
     }
 
     @Override
@@ -164,6 +238,7 @@ public class DocumentDAOImpl implements DocumentDAO {
                 name,
                 type,
                 size,
+                content_type,
                 storage_path
             FROM documents
             where id in (:ids)""")
@@ -174,6 +249,201 @@ public class DocumentDAOImpl implements DocumentDAO {
 
     }
 
+    @Override
+    public Flux<Document> deleteFoldersRecursive(List<UUID> folderIds) {
+        return databaseClient.sql(DELETE_FOLDERS_RECURSIVE)
+                .bind(IDS, folderIds)
+                .map(row -> Document.builder()
+                        .id(row.get(ID, UUID.class))
+                        .type(DocumentType.valueOf(row.get(TYPE, String.class)))
+                        .parentId(row.get(DocumentSqlMapping.PARENT_ID, UUID.class))
+                        .build())
+                .all();
+    }
+
+    @Override
+    public Mono<Boolean> isDescendantOfAny(UUID documentId, List<UUID> ancestorIds) {
+        return databaseClient.sql(IS_DESCENDANT_OF_ANY)
+                .bind(ID, documentId)
+                .bind("ancestorIds", ancestorIds.toArray(UUID[]::new))
+                .map(row -> row.get(0, Boolean.class))
+                .one();
+    }
+
+    @Override
+    public Flux<ElementToMove> getElementsToMove(List<UUID> documentIds) {
+        return databaseClient.sql(SELECT_ELEMENTS_TO_MOVE)
+                .bind(IDS, documentIds.toArray(UUID[]::new))
+                .map(row -> new ElementToMove(
+                        row.get(ID, UUID.class),
+                        row.get(NAME, String.class),
+                        DocumentType.valueOf(row.get(TYPE, String.class)),
+                        row.get(DocumentSqlMapping.PARENT_ID, UUID.class),
+                        row.get("tree_path", String.class)))
+                .all();
+    }
+
+    @Override
+    public Mono<Long> moveDocuments(List<UUID> documentIds, UUID targetFolderId, String username, boolean allowDuplicateNames) {
+        String sql = allowDuplicateNames ? MOVE_DOCUMENTS_ALLOWING_DUPLICATE_NAMES : MOVE_DOCUMENTS;
+        return bindNullable(databaseClient.sql(sql), "targetId", targetFolderId, UUID.class)
+                .bind("now", OffsetDateTime.now())
+                .bind("username", username)
+                .bind(IDS, documentIds.toArray(UUID[]::new))
+                .fetch()
+                .rowsUpdated();
+    }
+
+    @Override
+    public Flux<CopiedElementInfo> copyFolderRecursive(UUID sourceFolderId, UUID targetFolderId, String username, boolean allowDuplicateNames) {
+        return databaseClient.sql(COPY_FOLDER_RECURSIVE)
+                .bind("namespace", UUID.randomUUID())
+                .bind("sourceId", sourceFolderId)
+                .bind("targetId", targetFolderId)
+                .bind("allowDuplicateNames", allowDuplicateNames)
+                .bind("now", OffsetDateTime.now())
+                .bind("username", username)
+                .map(row -> new CopiedElementInfo(
+                        row.get(ID, UUID.class),
+                        row.get(DocumentSqlMapping.PARENT_ID, UUID.class),
+                        row.get("new_id", UUID.class),
+                        row.get("new_parent_id", UUID.class),
+                        row.get(NAME, String.class),
+                        DocumentType.valueOf(row.get(TYPE, String.class)),
+                        row.get(STORAGE_PATH, String.class)))
+                .all();
+    }
+
+    @Override
+    public Mono<Long> renameDocument(UUID documentId, String newName, String username) {
+        return databaseClient.sql(RENAME_DOCUMENT)
+                .bind(NAME, newName)
+                .bind("now", OffsetDateTime.now())
+                .bind("username", username)
+                .bind(ID, documentId)
+                .fetch()
+                .rowsUpdated();
+    }
+
+    @Override
+    public Mono<Void> updateStoragePaths(Map<UUID, String> storagePaths) {
+        return Flux.fromIterable(storagePaths.entrySet())
+                .buffer(UPDATE_BATCH_SIZE)
+                .concatMap(batch -> {
+                    StringBuilder sql = new StringBuilder("UPDATE documents d SET storage_path = v.storage_path FROM (VALUES ");
+                    for (int i = 0; i < batch.size(); i++) {
+                        sql.append(i > 0 ? ", " : "").append("(CAST(:id").append(i).append(" AS uuid), :path").append(i).append(")");
+                    }
+                    sql.append(") AS v(id, storage_path) WHERE d.id = v.id");
+                    DatabaseClient.GenericExecuteSpec query = databaseClient.sql(sql.toString());
+                    for (int i = 0; i < batch.size(); i++) {
+                        query = query.bind("id" + i, batch.get(i).getKey()).bind("path" + i, batch.get(i).getValue());
+                    }
+                    return query.fetch().rowsUpdated();
+                })
+                .then();
+    }
+
+    @Override
+    public Flux<UUID> getFolderIds(Collection<UUID> folderIds) {
+        if (folderIds.isEmpty()) {
+            return Flux.empty();
+        }
+        return databaseClient.sql("select id from documents where type = :type and id in (:ids)")
+                .bind(TYPE, DocumentType.FOLDER.toString())
+                .bind(IDS, folderIds)
+                .map(row -> row.get(ID, UUID.class))
+                .all();
+    }
+
+    @Override
+    public Flux<Document> findNameConflicts(List<Document> documents) {
+        return Flux.fromIterable(documents)
+                .buffer(UPDATE_BATCH_SIZE)
+                .concatMap(batch -> {
+                    StringBuilder sql = new StringBuilder("SELECT DISTINCT d.parent_id, d.name FROM documents d JOIN (VALUES ");
+                    for (int i = 0; i < batch.size(); i++) {
+                        sql.append(i > 0 ? ", " : "").append("(CAST(:parent").append(i).append(" AS uuid), CAST(:name").append(i).append(" AS varchar))");
+                    }
+                    sql.append(") AS v(parent_id, name) ON d.unique_name AND d.name = v.name AND d.parent_id IS NOT DISTINCT FROM v.parent_id");
+                    DatabaseClient.GenericExecuteSpec query = databaseClient.sql(sql.toString());
+                    for (int i = 0; i < batch.size(); i++) {
+                        Document document = batch.get(i);
+                        query = bindNullable(query, "parent" + i, document.getParentId(), UUID.class)
+                                .bind("name" + i, document.getName());
+                    }
+                    return query.map(row -> Document.builder()
+                                    .parentId(row.get(DocumentSqlMapping.PARENT_ID, UUID.class))
+                                    .name(row.get(NAME, String.class))
+                                    .build())
+                            .all();
+                });
+    }
+
+    @Override
+    public Mono<Boolean> insertDocument(Document document, boolean allowDuplicateName) {
+        return insertDocuments(List.of(document), allowDuplicateName)
+                .hasElements()
+                .map(rejected -> !rejected);
+    }
+
+    @Override
+    public Flux<UUID> insertDocuments(List<Document> documents, boolean allowDuplicateNames) {
+        return Flux.fromIterable(documents)
+                .buffer(UPDATE_BATCH_SIZE)
+                .concatMap(batch -> insertBatch(batch, true)
+                        .collect(Collectors.toSet())
+                        .flatMapMany(inserted -> {
+                            List<Document> rejected = batch.stream().filter(document -> !inserted.contains(document.getId())).toList();
+                            if (rejected.isEmpty() || !allowDuplicateNames) {
+                                return Flux.fromIterable(rejected).map(Document::getId);
+                            }
+                            return insertBatch(rejected, false).thenMany(Flux.<UUID>empty());
+                        }));
+    }
+
+    /**
+     * Inserts a batch of documents with one statement
+     * @param uniqueName true : the documents claim their name, the ones whose name is already held in their folder
+     *                   (or by a previous document of the batch) are not inserted ; false : they are all inserted
+     *                   without holding their name
+     * @return the ids of the inserted documents
+     */
+    private Flux<UUID> insertBatch(List<Document> batch, boolean uniqueName) {
+        StringBuilder sql = new StringBuilder("INSERT INTO documents (id, name, type, content_type, size, parent_id, storage_path, metadata, created_at, updated_at, created_by, updated_by, unique_name) VALUES ");
+        for (int i = 0; i < batch.size(); i++) {
+            sql.append(i > 0 ? ", " : "")
+                    .append("(:id").append(i).append(", :name").append(i).append(", :type").append(i)
+                    .append(", :contentType").append(i).append(", :size").append(i).append(", :parent").append(i)
+                    .append(", :storagePath").append(i).append(", :metadata").append(i)
+                    .append(", :createdAt").append(i).append(", :updatedAt").append(i)
+                    .append(", :createdBy").append(i).append(", :updatedBy").append(i).append(", ").append(uniqueName).append(")");
+        }
+        // the ids are random : the only conflicts are on the unique index of the names (idx_documents_parent_name_unique)
+        sql.append(uniqueName ? " ON CONFLICT DO NOTHING" : "").append(" RETURNING id");
+        DatabaseClient.GenericExecuteSpec query = databaseClient.sql(sql.toString());
+        for (int i = 0; i < batch.size(); i++) {
+            Document document = batch.get(i);
+            query = query.bind("id" + i, document.getId())
+                    .bind("name" + i, document.getName())
+                    .bind("type" + i, document.getType().toString());
+            query = bindNullable(query, "contentType" + i, document.getContentType(), String.class);
+            query = bindNullable(query, "size" + i, document.getSize(), Long.class);
+            query = bindNullable(query, "parent" + i, document.getParentId(), UUID.class);
+            query = bindNullable(query, "storagePath" + i, document.getStoragePath(), String.class);
+            query = bindNullable(query, "metadata" + i, document.getMetadata(), Json.class)
+                    .bind("createdAt" + i, document.getCreatedAt())
+                    .bind("updatedAt" + i, document.getUpdatedAt());
+            query = bindNullable(query, "createdBy" + i, document.getCreatedBy(), String.class);
+            query = bindNullable(query, "updatedBy" + i, document.getUpdatedBy(), String.class);
+        }
+        return query.map(row -> row.get(ID, UUID.class)).all();
+    }
+
+    private static <T> DatabaseClient.GenericExecuteSpec bindNullable(DatabaseClient.GenericExecuteSpec query, String name, T value, Class<T> type) {
+        return value == null ? query.bindNull(name, type) : query.bind(name, value);
+    }
+
     private Flux<Tuple2<UUID, String>> getFolders(List<UUID> documentIds) {
         return databaseClient.sql("select id, name from documents where type = :type and id in (:ids)")
                 .bind(TYPE, DocumentType.FOLDER.toString())
@@ -183,22 +453,19 @@ public class DocumentDAOImpl implements DocumentDAO {
     }
 
     private ChildElementInfo toRootChild(io.r2dbc.spi.Readable row) {
-        return getChildElementInfo(row, NAME, STORAGE_PATH);
-
-    }
+        return getChildElementInfo(row, row.get(NAME, String.class));
 
-    private ChildElementInfo toChild(io.r2dbc.spi.Readable row) {
-        return getChildElementInfo(row, FULLPATH, STORAGE);
     }
 
-    private ChildElementInfo getChildElementInfo(Readable row, String fullpath, String storage) {
+    private ChildElementInfo getChildElementInfo(Readable row, String path) {
         return ChildElementInfo.builder()
                 .id(row.get(ID, UUID.class))
                 .name(row.get(NAME, String.class))
-                .path(row.get(fullpath, String.class))
-                .storagePath(row.get(storage, String.class))
+                .path(path)
+                .storagePath(row.get(STORAGE_PATH, String.class))
                 .type(DocumentType.valueOf(row.get(TYPE, String.class)))
                 .size(row.get(SIZE, Long.class))
+                .contentType(row.get(CONTENT_TYPE, String.class))
                 .build();
     }
 
@@ -2,35 +2,83 @@ package org.openfilz.dms.repository.impl;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import graphql.schema.DataFetchingEnvironment;
+import graphql.schema.SelectedField;
 import io.r2dbc.spi.Readable;
+import org.dataloader.DataLoader;
 import org.openfilz.dms.dto.response.FullDocumentInfo;
 import org.openfilz.dms.mapper.DocumentMapper;
 import org.openfilz.dms.utils.SqlUtils;
 import org.springframework.r2dbc.core.DatabaseClient;
 import reactor.core.publisher.Mono;
 
-import java.util.List;
-import java.util.UUID;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
+import static org.openfilz.dms.config.GraphQlQueryConfig.DOCUMENT_LOADER;
+import static org.openfilz.dms.config.GraphQlQueryConfig.PARENT;
 import static org.openfilz.dms.entity.DocumentSqlMapping.ID;
+import static org.openfilz.dms.entity.DocumentSqlMapping.PARENT_ID;
 import static org.openfilz.dms.utils.SqlUtils.FROM_DOCUMENTS;
 import static org.openfilz.dms.utils.SqlUtils.WHERE;
 
-public class DocumentDataFetcherImpl extends AbstractDataFetcher<Mono<FullDocumentInfo>, FullDocumentInfo> {
+/**
+ * Resolves documentById, and the parent of a document, through the request-scoped document DataLoader : all the
+ * documents requested at the same level of a query (aliases, parents of a list...) are loaded with one
+ * {@code WHERE id IN (...)} query by {@link #loadDocuments(Set)}.
+ */
+public class DocumentDataFetcherImpl extends AbstractDataFetcher<CompletableFuture<FullDocumentInfo>, FullDocumentInfo> {
+
+    public static final String IDS = "ids";
 
     public DocumentDataFetcherImpl(DatabaseClient databaseClient, DocumentMapper mapper, ObjectMapper objectMapper, SqlUtils sqlUtils) {
         super(databaseClient, mapper, objectMapper, sqlUtils);
     }
 
     @Override
-    public Mono<FullDocumentInfo> get(DataFetchingEnvironment environment) throws Exception {
-        List<String> sqlFields = getSqlFields(environment);
-        StringBuilder query = toSelect(sqlFields).append(FROM_DOCUMENTS).append(WHERE);
-        sqlUtils.appendEqualsCriteria(ID, query);
-        UUID uuid = (UUID) environment.getArguments().get(ID);
-        DatabaseClient.GenericExecuteSpec sqlQuery = sqlUtils.bindCriteria(ID, uuid, databaseClient.sql(query.toString()));
-        return sqlQuery.map(row -> mapResultRow(row, sqlFields))
-                .one();
+    public CompletableFuture<FullDocumentInfo> get(DataFetchingEnvironment environment) throws Exception {
+        UUID uuid = environment.getSource() instanceof FullDocumentInfo document
+                ? document.parentId()
+                : (UUID) environment.getArguments().get(ID);
+        if (uuid == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        DataLoader<DocumentKey, FullDocumentInfo> loader = environment.getDataLoader(DOCUMENT_LOADER);
+        return loader.load(new DocumentKey(uuid, Set.copyOf(getSqlFields(environment))));
+    }
+
+    /**
+     * Batch function of the document DataLoader : selects the union of the columns requested by the keys.
+     */
+    public Mono<Map<DocumentKey, FullDocumentInfo>> loadDocuments(Set<DocumentKey> keys) {
+        Set<String> fields = new LinkedHashSet<>();
+        fields.add(ID);
+        keys.forEach(key -> fields.addAll(key.sqlFields()));
+        List<String> sqlFields = List.copyOf(fields);
+        List<UUID> ids = keys.stream().map(DocumentKey::id).distinct().toList();
+        StringBuilder query = toSelect(sqlFields).append(FROM_DOCUMENTS).append(WHERE).append(ID).append(" in (:").append(IDS).append(")");
+        return databaseClient.sql(query.toString())
+                .bind(IDS, ids)
+                .map(row -> mapResultRow(row, sqlFields))
+                .all()
+                .collectMap(FullDocumentInfo::id)
+                .map(documents -> keys.stream()
+                        .filter(key -> documents.containsKey(key.id()))
+                        .collect(Collectors.toMap(Function.identity(), key -> documents.get(key.id()))));
+    }
+
+    /**
+     * Only the fields of this level : the parent is loaded by its own fetcher, which only needs the parent_id here.
+     */
+    @Override
+    protected List<String> getSqlFields(DataFetchingEnvironment environment) {
+        return environment.getSelectionSet().getImmediateFields().stream()
+                .map(SelectedField::getName)
+                .map(field -> PARENT.equals(field) ? PARENT_ID : DOCUMENT_FIELD_SQL_MAP.get(field))
+                .filter(Objects::nonNull)
+                .distinct()
+                .toList();
     }
 
     @Override
@@ -0,0 +1,11 @@
+package org.openfilz.dms.repository.impl;
+
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Key of the GraphQL document DataLoader : the id of the document and the columns selected for it, so that the same
+ * document requested with other fields (aliases, nested parent...) is not served from a partially loaded cache entry.
+ */
+public record DocumentKey(UUID id, Set<String> sqlFields) {
+}
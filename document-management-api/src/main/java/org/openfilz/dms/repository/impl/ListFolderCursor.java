@@ -0,0 +1,34 @@
+package org.openfilz.dms.repository.impl;
+
+import org.openfilz.dms.enums.SortOrder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Opaque cursor of the GraphQL listFolderPage query : position of the last element of a page, given by the value of
+ * its sort key and its id (to break the ties between elements having the same sort key value).
+ */
+public record ListFolderCursor(String sortBy, SortOrder sortOrder, UUID id, String value) {
+
+    private static final String SEPARATOR = ":";
+
+    public String encode() {
+        String cursor = String.join(SEPARATOR, sortBy, sortOrder.toString(), id.toString(), value);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static ListFolderCursor decode(String cursor) {
+        try {
+            // the value is last, as it may contain the separator
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(SEPARATOR, 4);
+            if (parts.length != 4) {
+                throw new IllegalArgumentException("Invalid cursor : " + cursor);
+            }
+            return new ListFolderCursor(parts[0], SortOrder.valueOf(parts[1]), UUID.fromString(parts[2]), parts[3]);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor : " + cursor, e);
+        }
+    }
+}
@@ -12,6 +12,7 @@ import reactor.core.publisher.Flux;
 
 import java.util.List;
 
+import static org.openfilz.dms.entity.DocumentSqlMapping.NAME;
 import static org.openfilz.dms.utils.SqlUtils.SPACE;
 
 //@Slf4j
@@ -45,6 +46,9 @@ public class ListFolderDataFetcherImpl extends AbstractDataFetcher<Flux<FullDocu
                 applySort(query, filter);
                 appendOffsetLimit(query, filter);
                 sqlQuery = criteria.bindCriteria(databaseClient.sql(query.toString()), filter);
+                if(isSortedBySimilarity(filter)) {
+                    sqlQuery = sqlUtils.bindCriteria(NAME + SqlUtils.SIMILARITY, filter.nameLike().toUpperCase(), sqlQuery);
+                }
             }
         }
         if(sqlQuery == null) {
@@ -58,9 +62,16 @@ public class ListFolderDataFetcherImpl extends AbstractDataFetcher<Flux<FullDocu
     private void applySort(StringBuilder query, ListFolderRequest request) {
         if(request.pageInfo().sortBy() != null) {
             appendSort(query, request);
+        } else if(isSortedBySimilarity(request)) {
+            sqlUtils.appendSimilarityOrder(NAME, query);
         }
     }
 
+    // without explicit sort, the best matches of a nameLike search come first
+    private boolean isSortedBySimilarity(ListFolderRequest request) {
+        return request.pageInfo().sortBy() == null && request.nameLike() != null;
+    }
+
     @Override
     protected FullDocumentInfo mapResultRow(io.r2dbc.spi.Readable row, List<String> sqlFields) {
         return mapper.toFullDocumentInfo(buildDocument(row, sqlFields));
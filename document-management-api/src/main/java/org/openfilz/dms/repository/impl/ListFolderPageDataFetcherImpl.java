@@ -0,0 +1,162 @@
+package org.openfilz.dms.repository.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import graphql.schema.DataFetchingEnvironment;
+import org.openfilz.dms.config.GraphQlQueryConfig;
+import org.openfilz.dms.dto.request.CursorPageCriteria;
+import org.openfilz.dms.dto.request.ListFolderRequest;
+import org.openfilz.dms.dto.response.CursorInfo;
+import org.openfilz.dms.dto.response.FolderElementPage;
+import org.openfilz.dms.dto.response.FullDocumentInfo;
+import org.openfilz.dms.enums.SortOrder;
+import org.openfilz.dms.mapper.DocumentMapper;
+import org.openfilz.dms.utils.SqlUtils;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Mono;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+import static org.openfilz.dms.entity.DocumentSqlMapping.*;
+import static org.openfilz.dms.utils.SqlUtils.*;
+
+/**
+ * Keyset pagination of the content of a folder : instead of skipping the elements of the previous pages (OFFSET),
+ * the next page starts right after the cursor of the last element returned, so that the cost of a page does not depend
+ * on its position and concurrent inserts do not shift the pages. Each sort key is backed by an index
+ * {@code (parent_id, <sort key>, id)}.
+ */
+public class ListFolderPageDataFetcherImpl extends AbstractDataFetcher<Mono<FolderElementPage>, FullDocumentInfo> {
+
+    private static final String ITEMS_FIELDS = "items/*";
+    private static final String DEFAULT_SORT_BY = "name";
+    private static final String CURSOR_VALUE = "cursor_value";
+    private static final String CURSOR_ID = "cursor_id";
+
+    private static final String NO_DATE = "-infinity";
+
+    /**
+     * @param expression sorted and compared to the cursor : the nullable dates are coalesced, so that the documents
+     *                   without date come first and are paged like the others
+     * @param cursorParameter the cursor value, bound as a string
+     */
+    private record SortKey(String column, String expression, String cursorParameter, Function<FullDocumentInfo, String> value,
+                           Function<String, String> parser) {
+
+        private static SortKey date(String column, Function<FullDocumentInfo, OffsetDateTime> date) {
+            return new SortKey(column, "COALESCE(" + column + ", '" + NO_DATE + "')",
+                    "CAST(:" + CURSOR_VALUE + " AS TIMESTAMP WITH TIME ZONE)",
+                    document -> Objects.toString(date.apply(document), NO_DATE),
+                    value -> NO_DATE.equals(value) ? value : OffsetDateTime.parse(value).toString());
+        }
+    }
+
+    private static final Map<String, SortKey> SORT_KEYS = Map.of(
+            "name", new SortKey(NAME, NAME, ":" + CURSOR_VALUE, FullDocumentInfo::name, value -> value),
+            "createdAt", SortKey.date(CREATED_AT, FullDocumentInfo::createdAt),
+            "updatedAt", SortKey.date(UPDATED_AT, FullDocumentInfo::updatedAt));
+
+    private final ListFolderCriteria criteria;
+
+    public ListFolderPageDataFetcherImpl(DatabaseClient databaseClient, DocumentMapper mapper, ObjectMapper objectMapper, SqlUtils sqlUtils, ListFolderCriteria listFolderCriteria) {
+        super(databaseClient, mapper, objectMapper, sqlUtils);
+        this.criteria = listFolderCriteria;
+    }
+
+    @Override
+    public Mono<FolderElementPage> get(DataFetchingEnvironment environment) throws Exception {
+        Object request = environment.getArguments().get(GraphQlQueryConfig.GRAPHQL_REQUEST);
+        Object pageArgument = environment.getArguments().get(GraphQlQueryConfig.GRAPHQL_PAGE);
+        if(request == null || pageArgument == null) {
+            throw new IllegalArgumentException("Paging information must be provided");
+        }
+        ListFolderRequest filter = objectMapper.convertValue(request, ListFolderRequest.class);
+        CursorPageCriteria page = objectMapper.convertValue(pageArgument, CursorPageCriteria.class);
+        if(filter.pageInfo() != null) {
+            throw new IllegalArgumentException("pageInfo must not be provided : use page instead");
+        }
+        checkPage(page);
+        criteria.checkFilter(filter);
+        String sortBy = page.sortBy() == null ? DEFAULT_SORT_BY : page.sortBy();
+        SortKey sortKey = SORT_KEYS.get(sortBy);
+        if(sortKey == null) {
+            throw new IllegalArgumentException("page.sortBy must be one of " + SORT_KEYS.keySet());
+        }
+        SortOrder sortOrder = page.sortOrder() == null ? SortOrder.ASC : page.sortOrder();
+        ListFolderCursor after = page.after() == null ? null : ListFolderCursor.decode(page.after());
+        if(after != null && (!after.sortBy().equals(sortBy) || after.sortOrder() != sortOrder)) {
+            throw new IllegalArgumentException("page.after cursor does not match page.sortBy and page.sortOrder");
+        }
+
+        List<String> sqlFields = getSqlFields(environment, sortKey.column());
+        StringBuilder query = toSelect(sqlFields).append(FROM_DOCUMENTS);
+        criteria.applyFilter(query, filter);
+        if(after != null) {
+            query.append(AND).append("(").append(sortKey.expression()).append(COMMA).append(ID).append(")")
+                    .append(sortOrder == SortOrder.ASC ? " > " : " < ")
+                    .append("(").append(sortKey.cursorParameter()).append(COMMA).append(":").append(CURSOR_ID).append(")");
+        }
+        query.append(ORDER_BY).append(sortKey.expression()).append(SPACE).append(sortOrder)
+                .append(COMMA).append(ID).append(SPACE).append(sortOrder)
+                // one more element tells whether there is a next page
+                .append(LIMIT).append(page.pageSize() + 1);
+
+        DatabaseClient.GenericExecuteSpec sqlQuery = criteria.bindCriteria(databaseClient.sql(query.toString()), filter);
+        if(after != null) {
+            try {
+                sqlQuery = sqlQuery.bind(CURSOR_VALUE, sortKey.parser().apply(after.value()))
+                        .bind(CURSOR_ID, after.id());
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid cursor : " + page.after(), e);
+            }
+        }
+        return sqlQuery.map(row -> mapResultRow(row, sqlFields))
+                .all()
+                .collectList()
+                .map(items -> toPage(items, page.pageSize(), sortBy, sortOrder, sortKey));
+    }
+
+    private FolderElementPage toPage(List<FullDocumentInfo> items, int pageSize, String sortBy, SortOrder sortOrder, SortKey sortKey) {
+        boolean hasNextPage = items.size() > pageSize;
+        List<FullDocumentInfo> pageItems = hasNextPage ? items.subList(0, pageSize) : items;
+        String endCursor = null;
+        if(!pageItems.isEmpty()) {
+            FullDocumentInfo last = pageItems.getLast();
+            endCursor = new ListFolderCursor(sortBy, sortOrder, last.id(), sortKey.value().apply(last)).encode();
+        }
+        return new FolderElementPage(pageItems, new CursorInfo(endCursor, hasNextPage));
+    }
+
+    /**
+     * The fields selected in the items, plus the id and the sort key needed to build the cursor.
+     */
+    private List<String> getSqlFields(DataFetchingEnvironment environment, String sortColumn) {
+        List<String> sqlFields = new ArrayList<>(environment.getSelectionSet().getFields(ITEMS_FIELDS).stream()
+                .map(field -> DOCUMENT_FIELD_SQL_MAP.get(field.getName()))
+                .filter(Objects::nonNull)
+                .toList());
+        if(!sqlFields.contains(ID)) {
+            sqlFields.add(ID);
+        }
+        if(!sqlFields.contains(sortColumn)) {
+            sqlFields.add(sortColumn);
+        }
+        return sqlFields;
+    }
+
+    private void checkPage(CursorPageCriteria page) {
+        if(page.pageSize() == null || page.pageSize() < 1 || page.pageSize() > SqlUtils.MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("page.pageSize must be between 1 and " + SqlUtils.MAX_PAGE_SIZE);
+        }
+    }
+
+    @Override
+    protected FullDocumentInfo mapResultRow(io.r2dbc.spi.Readable row, List<String> sqlFields) {
+        return mapper.toFullDocumentInfo(buildDocument(row, sqlFields));
+    }
+
+}
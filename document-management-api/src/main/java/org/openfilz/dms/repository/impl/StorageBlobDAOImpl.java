@@ -0,0 +1,64 @@
+package org.openfilz.dms.repository.impl;
+
+import lombok.RequiredArgsConstructor;
+import org.openfilz.dms.repository.StorageBlobDAO;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+@Service
+@RequiredArgsConstructor
+public class StorageBlobDAOImpl implements StorageBlobDAO {
+
+    private static final String HASH = "hash";
+    private static final String PATH = "path";
+    private static final String STORAGE_PATH = "storage_path";
+    private static final String REF_COUNT = "ref_count";
+
+    private static final String REGISTER_BLOB = """
+            INSERT INTO storage_blobs (hash, storage_path, ref_count) VALUES (:hash, :path, 1)
+            ON CONFLICT (hash) DO UPDATE SET ref_count = storage_blobs.ref_count + 1
+            RETURNING storage_path""";
+
+    private static final String ADD_REFERENCE = "UPDATE storage_blobs SET ref_count = ref_count + 1 WHERE storage_path = :path RETURNING storage_path";
+
+    private static final String REMOVE_REFERENCE = "UPDATE storage_blobs SET ref_count = ref_count - 1 WHERE storage_path = :path RETURNING ref_count";
+
+    private static final String DELETE_UNREFERENCED_BLOB = "DELETE FROM storage_blobs WHERE storage_path = :path AND ref_count <= 0";
+
+    private final DatabaseClient databaseClient;
+
+    @Override
+    public Mono<String> register(String hash, String storagePath) {
+        return databaseClient.sql(REGISTER_BLOB)
+                .bind(HASH, hash)
+                .bind(PATH, storagePath)
+                .map(row -> row.get(STORAGE_PATH, String.class))
+                .one();
+    }
+
+    @Override
+    public Mono<String> addReference(String storagePath) {
+        return databaseClient.sql(ADD_REFERENCE)
+                .bind(PATH, storagePath)
+                .map(row -> row.get(STORAGE_PATH, String.class))
+                .one();
+    }
+
+    @Override
+    public Mono<Integer> removeReference(String storagePath) {
+        return databaseClient.sql(REMOVE_REFERENCE)
+                .bind(PATH, storagePath)
+                .map(row -> row.get(REF_COUNT, Integer.class))
+                .one();
+    }
+
+    @Override
+    public Mono<Boolean> deleteUnreferenced(String storagePath) {
+        return databaseClient.sql(DELETE_UNREFERENCED_BLOB)
+                .bind(PATH, storagePath)
+                .fetch()
+                .rowsUpdated()
+                .map(deleted -> deleted > 0);
+    }
+}
@@ -0,0 +1,77 @@
+package org.openfilz.dms.repository.impl;
+
+import lombok.RequiredArgsConstructor;
+import org.openfilz.dms.repository.StoragePurgeQueueDAO;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+
+@Service
+@RequiredArgsConstructor
+public class StoragePurgeQueueDAOImpl implements StoragePurgeQueueDAO {
+
+    private static final String ID = "id";
+    private static final String PATH = "path";
+    private static final String IDS = "ids";
+    private static final String LIMIT = "limit";
+
+    // the lease is set in locked_until : a claimed path is claimed again when it expires
+    private static final String CLAIM = """
+            UPDATE storage_purge_queue
+            SET locked_until = CURRENT_TIMESTAMP + :lease_ms * INTERVAL '1 millisecond'
+            WHERE id IN (
+              SELECT id FROM storage_purge_queue
+              WHERE locked_until <= CURRENT_TIMESTAMP
+              ORDER BY id
+              LIMIT :limit
+              FOR UPDATE SKIP LOCKED
+            )
+            RETURNING id, storage_path""";
+
+    private static final String DELETE = "DELETE FROM storage_purge_queue WHERE id IN (:ids)";
+
+    private static final String DELETE_ONE = "DELETE FROM storage_purge_queue WHERE id = :id";
+
+    private static final String ENQUEUE = "INSERT INTO storage_purge_queue (storage_path) VALUES (:path)";
+
+    private final DatabaseClient databaseClient;
+
+    @Override
+    public Flux<QueuedPath> claim(int limit, Duration lease) {
+        return databaseClient.sql(CLAIM)
+                .bind("lease_ms", lease.toMillis())
+                .bind(LIMIT, limit)
+                .map(row -> new QueuedPath(row.get(ID, Long.class), row.get("storage_path", String.class)))
+                .all();
+    }
+
+    @Override
+    public Mono<Void> delete(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return Mono.empty();
+        }
+        return databaseClient.sql(DELETE)
+                .bind(IDS, ids)
+                .then();
+    }
+
+    @Override
+    public Mono<Boolean> delete(long id) {
+        return databaseClient.sql(DELETE_ONE)
+                .bind(ID, id)
+                .fetch()
+                .rowsUpdated()
+                .map(deleted -> deleted > 0);
+    }
+
+    @Override
+    public Mono<Void> enqueue(String storagePath) {
+        return databaseClient.sql(ENQUEUE)
+                .bind(PATH, storagePath)
+                .then();
+    }
+}
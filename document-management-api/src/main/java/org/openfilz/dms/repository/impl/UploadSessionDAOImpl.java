@@ -0,0 +1,150 @@
+package org.openfilz.dms.repository.impl;
+
+import io.r2dbc.postgresql.codec.Json;
+import io.r2dbc.spi.Readable;
+import lombok.RequiredArgsConstructor;
+import org.openfilz.dms.entity.UploadSession;
+import org.openfilz.dms.repository.UploadSessionDAO;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+@Service
+@RequiredArgsConstructor
+public class UploadSessionDAOImpl implements UploadSessionDAO {
+
+    private static final String ID = "id";
+    private static final String STORAGE_PATH = "storage_path";
+    private static final String STORAGE_UPLOAD_ID = "storage_upload_id";
+    private static final String PARENT_ID = "parent_id";
+    private static final String METADATA = "metadata";
+
+    private static final String INSERT = """
+            INSERT INTO upload_sessions (name, content_type, size, chunk_size, chunk_count, parent_id, metadata,
+                                         allow_duplicate_file_names, storage_path, storage_upload_id, created_by, expires_at)
+            VALUES (:name, :content_type, :size, :chunk_size, :chunk_count, :parent_id, :metadata,
+                    :allow_duplicate_file_names, :storage_path, :storage_upload_id, :created_by, :expires_at)
+            RETURNING *""";
+
+    private static final String SELECT_BY_ID = "SELECT * FROM upload_sessions WHERE id = :id";
+
+    private static final String SELECT_BY_ID_FOR_UPDATE = SELECT_BY_ID + " FOR UPDATE";
+
+    private static final String SELECT_CHUNK_NUMBERS = "SELECT chunk_number FROM upload_session_chunks WHERE session_id = :id ORDER BY chunk_number";
+
+    private static final String SELECT_CHUNK_TAGS = "SELECT tag FROM upload_session_chunks WHERE session_id = :id ORDER BY chunk_number";
+
+    // the update of the session waits for a completion in progress, and then finds no session anymore
+    private static final String SAVE_CHUNK = """
+            WITH session AS (
+              UPDATE upload_sessions SET expires_at = CURRENT_TIMESTAMP + :ttl_ms * INTERVAL '1 millisecond'
+              WHERE id = :id
+              RETURNING id
+            )
+            INSERT INTO upload_session_chunks (session_id, chunk_number, tag)
+            SELECT id, :chunk_number, :tag FROM session
+            ON CONFLICT (session_id, chunk_number) DO UPDATE SET tag = EXCLUDED.tag""";
+
+    private static final String DELETE = "DELETE FROM upload_sessions WHERE id = :id";
+
+    private static final String DELETE_EXPIRED = """
+            DELETE FROM upload_sessions
+            WHERE id IN (SELECT id FROM upload_sessions WHERE expires_at < CURRENT_TIMESTAMP
+                         ORDER BY expires_at LIMIT :limit FOR UPDATE SKIP LOCKED)
+            RETURNING id, storage_path, storage_upload_id""";
+
+    private final DatabaseClient databaseClient;
+
+    @Override
+    public Mono<UploadSession> create(UploadSession session) {
+        DatabaseClient.GenericExecuteSpec query = databaseClient.sql(INSERT)
+                .bind("name", session.getName())
+                .bind("content_type", session.getContentType())
+                .bind("size", session.getSize())
+                .bind("chunk_size", session.getChunkSize())
+                .bind("chunk_count", session.getChunkCount())
+                .bind("allow_duplicate_file_names", session.getAllowDuplicateFileNames())
+                .bind(STORAGE_PATH, session.getStoragePath())
+                .bind("created_by", session.getCreatedBy())
+                .bind("expires_at", session.getExpiresAt());
+        query = session.getParentId() == null ? query.bindNull(PARENT_ID, UUID.class) : query.bind(PARENT_ID, session.getParentId());
+        query = session.getMetadata() == null ? query.bindNull(METADATA, Json.class) : query.bind(METADATA, session.getMetadata());
+        query = session.getStorageUploadId() == null || session.getStorageUploadId().isEmpty()
+                ? query.bindNull(STORAGE_UPLOAD_ID, String.class) : query.bind(STORAGE_UPLOAD_ID, session.getStorageUploadId());
+        return query.map(this::toUploadSession).one();
+    }
+
+    @Override
+    public Mono<UploadSession> findById(UUID id) {
+        return databaseClient.sql(SELECT_BY_ID).bind(ID, id).map(this::toUploadSession).one();
+    }
+
+    @Override
+    public Mono<UploadSession> findByIdForUpdate(UUID id) {
+        return databaseClient.sql(SELECT_BY_ID_FOR_UPDATE).bind(ID, id).map(this::toUploadSession).one();
+    }
+
+    @Override
+    public Flux<Integer> getChunkNumbers(UUID sessionId) {
+        return databaseClient.sql(SELECT_CHUNK_NUMBERS).bind(ID, sessionId).map(row -> row.get(0, Integer.class)).all();
+    }
+
+    @Override
+    public Flux<String> getChunkTags(UUID sessionId) {
+        return databaseClient.sql(SELECT_CHUNK_TAGS).bind(ID, sessionId).map(row -> {
+            String tag = row.get(0, String.class);
+            return tag == null ? "" : tag;
+        }).all();
+    }
+
+    @Override
+    public Mono<Boolean> saveChunk(UUID sessionId, int chunkNumber, String tag, Duration timeToLive) {
+        DatabaseClient.GenericExecuteSpec query = databaseClient.sql(SAVE_CHUNK)
+                .bind("ttl_ms", timeToLive.toMillis())
+                .bind(ID, sessionId)
+                .bind("chunk_number", chunkNumber);
+        query = tag == null || tag.isEmpty() ? query.bindNull("tag", String.class) : query.bind("tag", tag);
+        return query.fetch().rowsUpdated().map(inserted -> inserted > 0);
+    }
+
+    @Override
+    public Mono<Void> delete(UUID id) {
+        return databaseClient.sql(DELETE).bind(ID, id).then();
+    }
+
+    @Override
+    public Flux<UploadSession> deleteExpired(int limit) {
+        return databaseClient.sql(DELETE_EXPIRED)
+                .bind("limit", limit)
+                .map(row -> UploadSession.builder()
+                        .id(row.get(ID, UUID.class))
+                        .storagePath(row.get(STORAGE_PATH, String.class))
+                        .storageUploadId(row.get(STORAGE_UPLOAD_ID, String.class))
+                        .build())
+                .all();
+    }
+
+    private UploadSession toUploadSession(Readable row) {
+        return UploadSession.builder()
+                .id(row.get(ID, UUID.class))
+                .name(row.get("name", String.class))
+                .contentType(row.get("content_type", String.class))
+                .size(row.get("size", Long.class))
+                .chunkSize(row.get("chunk_size", Long.class))
+                .chunkCount(row.get("chunk_count", Integer.class))
+                .parentId(row.get(PARENT_ID, UUID.class))
+                .metadata(row.get(METADATA, Json.class))
+                .allowDuplicateFileNames(row.get("allow_duplicate_file_names", Boolean.class))
+                .storagePath(row.get(STORAGE_PATH, String.class))
+                .storageUploadId(row.get(STORAGE_UPLOAD_ID, String.class))
+                .createdBy(row.get("created_by", String.class))
+                .createdAt(row.get("created_at", OffsetDateTime.class))
+                .expiresAt(row.get("expires_at", OffsetDateTime.class))
+                .build();
+    }
+}
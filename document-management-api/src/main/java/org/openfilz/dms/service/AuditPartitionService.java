@@ -0,0 +1,15 @@
+package org.openfilz.dms.service;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Maintains the monthly partitions of <code>audit_logs</code>
+ */
+public interface AuditPartitionService {
+
+    /**
+     * Creates the partitions of the current month, of the next months and of the months still in the default
+     * partition, then drops the partitions older than the retention period
+     */
+    Mono<Void> maintainPartitions();
+}
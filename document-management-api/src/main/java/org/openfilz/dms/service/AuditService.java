@@ -10,6 +10,7 @@ import org.openfilz.dms.enums.SortOrder;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
 import java.util.UUID;
 
 public interface AuditService {
@@ -17,6 +18,11 @@ public interface AuditService {
 
     Mono<Void> logAction(String userPrincipal, AuditAction action, DocumentType resourceType, UUID resourceId);
 
+    /**
+     * Logs several actions with multi-row inserts : the {@link AuditLog#id()} of each log is the id of the resource
+     */
+    Mono<Void> logActions(List<AuditLog> auditLogs);
+
     Flux<AuditLog> getAuditTrail(UUID resourceId, SortOrder sort);
 
     Flux<AuditLog> searchAuditTrail(SearchByAuditLogRequest request);
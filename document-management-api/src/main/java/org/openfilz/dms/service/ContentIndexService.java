@@ -0,0 +1,16 @@
+package org.openfilz.dms.service;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Extracts in background the text of the files queued in <code>document_contents</code> when they are created or their
+ * content replaced, and indexes it for the full-text search, so that the uploads do not wait for the extraction.
+ */
+public interface ContentIndexService {
+
+    /**
+     * Indexes the queued files until none is left to index now
+     * @return the number of processed files
+     */
+    Mono<Long> index();
+}
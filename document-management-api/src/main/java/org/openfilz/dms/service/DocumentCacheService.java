@@ -0,0 +1,30 @@
+package org.openfilz.dms.service;
+
+import org.openfilz.dms.entity.Document;
+import org.openfilz.dms.enums.DocumentType;
+import reactor.core.publisher.Mono;
+
+import java.util.UUID;
+
+/**
+ * Read-through cache of the documents, kept coherent between the instances of the application by the notifications
+ * sent by the database when documents are updated or deleted.
+ * It is meant for the reads which only check or return a document : an operation updating a document must read it
+ * from the database in its transaction.
+ */
+public interface DocumentCacheService {
+
+    Mono<Document> findById(UUID id);
+
+    Mono<Boolean> existsByIdAndType(UUID id, DocumentType type);
+
+    /**
+     * Removes a document from the cache
+     */
+    void evict(UUID id);
+
+    /**
+     * Removes all the documents from the cache
+     */
+    void clear();
+}
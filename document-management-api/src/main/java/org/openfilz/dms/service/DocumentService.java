@@ -5,6 +5,7 @@ import org.openfilz.dms.dto.request.*;
 import org.openfilz.dms.dto.response.*;
 import org.openfilz.dms.entity.Document;
 import org.springframework.core.io.Resource;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.http.codec.multipart.FilePart;
 import org.springframework.security.core.Authentication;
 import reactor.core.publisher.Flux;
@@ -38,6 +39,13 @@ public interface DocumentService {
     // Document (File/Folder) Operations
     Mono<UploadResponse> uploadDocument(FilePart filePart, Long contentLength, UUID parentFolderId, Map<String, Object> metadata, Boolean allowDuplicateFileNames, Authentication auth);
 
+    /**
+     * Uploads many files at once : the files are checked, stored and created by batches, and each file is reported as
+     * uploaded or failed, a failing file not preventing the upload of the other ones
+     * @param parametersByFilename parent folder and metadata of the files, by filename
+     */
+    Flux<BatchUploadResult> uploadDocumentsInBatch(Flux<FilePart> fileParts, Map<String, MultipleUploadFileParameterAttributes> parametersByFilename, Boolean allowDuplicateFileNames, Authentication auth);
+
     Mono<Document> replaceDocumentContent(UUID documentId, FilePart newFilePart, Long contentLength, Authentication auth);
 
     Mono<Document> replaceDocumentMetadata(UUID documentId, Map<String, Object> newMetadata, Authentication auth);
@@ -48,10 +56,16 @@ public interface DocumentService {
 
     Mono<Resource> downloadDocument(UUID documentId, Authentication auth);
 
-    Mono<Resource> downloadMultipleDocumentsAsZip(List<UUID> documentIds, Authentication auth); // Complex: zipping
+    Flux<DataBuffer> downloadDocument(UUID documentId, long offset, long length, Authentication auth); // Byte range of a file
+
+    Flux<DataBuffer> downloadFolderAsZip(UUID folderId, Authentication auth); // Streamed zip of the folder content
+
+    Flux<DataBuffer> downloadMultipleDocumentsAsZip(List<UUID> documentIds, Authentication auth); // Streamed zip
 
     Flux<UUID> searchDocumentIdsByMetadata(SearchByMetadataRequest request, Authentication auth);
 
+    Flux<ContentSearchResult> searchDocumentsByContent(SearchByContentRequest request, Authentication auth);
+
     Mono<Map<String, Object>> getDocumentMetadata(UUID documentId, SearchMetadataRequest request, Authentication auth);
 
     Mono<Document> findDocumentById(UUID documentId); // Utility
@@ -0,0 +1,16 @@
+package org.openfilz.dms.service;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Removes from the storage the contents of the deleted documents, queued in <code>storage_purge_queue</code> by the
+ * bulk deletes, so that the deletes do not wait for the storage.
+ */
+public interface StoragePurgeService {
+
+    /**
+     * Purges the queued storage paths until the queue is empty
+     * @return the number of purged storage paths
+     */
+    Mono<Long> purge();
+}
@@ -2,15 +2,19 @@
 package org.openfilz.dms.service;
 
 import org.springframework.core.io.Resource;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.http.codec.multipart.FilePart;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
 import java.util.UUID;
 
 public interface StorageService {
 
     String FOLDER_SEPARATOR = "/";
     String FILENAME_SEPARATOR = "#";
+    int READ_BUFFER_SIZE = 64 * 1024;
 
     default String getUniqueStorageFileName(String originalFilename) {
         int i = originalFilename.lastIndexOf(FILENAME_SEPARATOR);
@@ -28,9 +32,40 @@ public interface StorageService {
 
     Mono<? extends Resource> loadFile(String storagePath);
 
+    Flux<DataBuffer> loadFile(String storagePath, long offset, long length); // Reads only the given byte range
+
     Mono<Void> deleteFile(String storagePath);
 
     Mono<String> copyFile(String sourceStoragePath); // Returns new storage path/key
 
     Mono<Long> getFileLength(String storagePath);
+
+    /**
+     * Starts the upload of a file sent by chunks (upload sessions)
+     * @param size total size of the file, in bytes
+     * @return the id of the upload in the storage, to give back to the next calls (may be empty)
+     */
+    Mono<String> createChunkedUpload(String storagePath, String contentType, long size);
+
+    /**
+     * Writes a chunk of a chunked upload : the chunks may be written in any order and in parallel. Writing a chunk again
+     * replaces it.
+     * @param chunkNumber number of the chunk, starting at 1
+     * @param offset position of the chunk in the file
+     * @param length exact size of the chunk
+     * @return the tag identifying the written chunk in the storage (may be empty)
+     */
+    Mono<String> writeChunk(String storagePath, String uploadId, int chunkNumber, long offset, long length, Flux<DataBuffer> content);
+
+    /**
+     * Assembles the written chunks into the file. Completing an upload already completed succeeds, so that a completion
+     * can be retried when what follows it failed.
+     * @param chunkTags tags of all the chunks, in the order of the chunks
+     */
+    Mono<Void> completeChunkedUpload(String storagePath, String uploadId, List<String> chunkTags);
+
+    /**
+     * Drops a chunked upload and its written chunks
+     */
+    Mono<Void> abortChunkedUpload(String storagePath, String uploadId);
 }
\ No newline at end of file
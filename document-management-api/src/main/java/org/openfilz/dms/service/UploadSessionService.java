@@ -0,0 +1,45 @@
+package org.openfilz.dms.service;
+
+import org.openfilz.dms.dto.request.CreateUploadSessionRequest;
+import org.openfilz.dms.dto.response.UploadResponse;
+import org.openfilz.dms.dto.response.UploadSessionResponse;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.security.core.Authentication;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.UUID;
+
+/**
+ * Chunked and resumable uploads : a session is created for a file, its chunks are sent in any order (and in parallel)
+ * to any instance of the application, and sent again when they fail, then the session is completed into a document.
+ */
+public interface UploadSessionService {
+
+    Mono<UploadSessionResponse> createSession(CreateUploadSessionRequest request, Authentication auth);
+
+    /**
+     * @return the state of a session, telling which chunks are still to be sent to resume the upload
+     */
+    Mono<UploadSessionResponse> getSession(UUID sessionId, Authentication auth);
+
+    /**
+     * Writes a chunk of the file of a session
+     * @param chunkNumber number of the chunk, starting at 1
+     * @param contentLength length of the chunk, when known before its content is read
+     */
+    Mono<Void> uploadChunk(UUID sessionId, int chunkNumber, Long contentLength, Flux<DataBuffer> content, Authentication auth);
+
+    /**
+     * Assembles the received chunks and creates the document : all the chunks must have been received
+     */
+    Mono<UploadResponse> completeSession(UUID sessionId, Authentication auth);
+
+    Mono<Void> abortSession(UUID sessionId, Authentication auth);
+
+    /**
+     * Aborts the expired sessions
+     * @return the number of aborted sessions
+     */
+    Mono<Long> purgeExpiredSessions();
+}
@@ -0,0 +1,11 @@
+package org.openfilz.dms.service;
+
+import org.openfilz.dms.dto.response.ChildElementInfo;
+import org.springframework.core.io.buffer.DataBuffer;
+import reactor.core.publisher.Flux;
+
+public interface ZipService {
+
+    Flux<DataBuffer> zip(Flux<ChildElementInfo> elements); // Streams the ZIP archive of the elements, in their order
+
+}
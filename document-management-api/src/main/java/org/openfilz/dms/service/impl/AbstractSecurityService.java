@@ -12,7 +12,7 @@ public abstract class AbstractSecurityService implements SecurityService {
         return ((method.equals(HttpMethod.DELETE) || method.equals(HttpMethod.PATCH) || method.equals(HttpMethod.PUT))
                 && pathStartsWith(path, "/files", "/folders", "/documents")) ||
                 (method.equals(HttpMethod.POST) && (
-                        pathStartsWith(path, "/files", "/documents/upload", "/documents/upload-multiple") ||
+                        pathStartsWith(path, "/files", "/documents/upload", "/documents/upload-multiple", "/documents/upload-batch") ||
                                 path.equals("/folders") ||
                                 path.equals("/folders/move") ||
                                 path.equals("/folders/copy")));
@@ -30,7 +30,7 @@ public abstract class AbstractSecurityService implements SecurityService {
                 && pathStartsWith(path, "/files", "/folders", "/documents"))
                 ||
                 (method.equals(HttpMethod.POST) && (
-                        pathStartsWith(path, "/documents/download-multiple", "/documents/search/ids-by-metadata", "/folders/list")
+                        pathStartsWith(path, "/documents/download-multiple", "/documents/search/ids-by-metadata", "/documents/search/content", "/folders/list")
                                 || (path.startsWith("/documents/") && path.endsWith("/search/metadata")))
                 );
     }
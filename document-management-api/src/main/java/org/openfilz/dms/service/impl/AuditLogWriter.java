@@ -0,0 +1,266 @@
+package org.openfilz.dms.service.impl;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.openfilz.dms.dto.audit.AuditLog;
+import org.openfilz.dms.enums.AuditDurability;
+import org.openfilz.dms.repository.AuditDAO;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the audit logs according to <code>audit.durability</code> :
+ * <ul>
+ *     <li><b>sync</b> (default) : each call inserts its logs, in the transaction of the audited operation</li>
+ *     <li><b>group-commit</b> : the logs are queued in a bounded buffer, flushed with multi-row inserts when
+ *     <code>audit.flush.batch-size</code> logs are pending or every <code>audit.flush.interval-ms</code>. The audited
+ *     operation completes once its logs are written (or after <code>audit.group-commit.timeout-ms</code>, its logs
+ *     staying queued, so that operations holding all the database connections cannot block the flush)</li>
+ *     <li><b>async</b> : same buffer, but the audited operation does not wait. The logs which cannot be queued (buffer
+ *     full) or written (database unavailable) are appended to <code>audit.spill-file</code>, which is written to the
+ *     database as soon as a flush succeeds</li>
+ * </ul>
+ * In the queued modes the logs are not written in the transaction of the audited operation : they are kept even if
+ * this transaction is rolled back.
+ */
+@Slf4j
+@Service
+public class AuditLogWriter {
+
+    private static final String REPLAY_SUFFIX = ".replay";
+
+    private record PendingAuditLog(AuditLog auditLog, Sinks.Empty<Void> written) {
+    }
+
+    private final AuditDAO auditDAO;
+    private final ObjectMapper objectMapper;
+    private final AuditDurability durability;
+    private final int batchSize;
+    private final Duration flushInterval;
+    private final Duration groupCommitTimeout;
+    private final Path spillFile;
+    private final BlockingQueue<PendingAuditLog> queue;
+    private final Sinks.Many<Long> flushRequests = Sinks.many().multicast().directBestEffort();
+    private final Object spillLock = new Object();
+    private final Timer flushTimer;
+    private final Timer writeTimer;
+    private final Counter spilledCounter;
+
+    private Disposable flushLoop;
+
+    public AuditLogWriter(AuditDAO auditDAO,
+                          ObjectMapper objectMapper,
+                          MeterRegistry meterRegistry,
+                          @Value("${audit.durability:sync}") String durability,
+                          @Value("${audit.buffer.capacity:10000}") int bufferCapacity,
+                          @Value("${audit.flush.batch-size:500}") int batchSize,
+                          @Value("${audit.flush.interval-ms:10}") long flushIntervalMs,
+                          @Value("${audit.group-commit.timeout-ms:1000}") long groupCommitTimeoutMs,
+                          @Value("${audit.spill-file:/tmp/dms-audit-spill.jsonl}") String spillFile) {
+        this.auditDAO = auditDAO;
+        this.objectMapper = objectMapper;
+        this.durability = AuditDurability.fromProperty(durability);
+        this.batchSize = batchSize;
+        this.flushInterval = Duration.ofMillis(flushIntervalMs);
+        this.groupCommitTimeout = Duration.ofMillis(groupCommitTimeoutMs);
+        this.spillFile = Path.of(spillFile);
+        this.queue = new ArrayBlockingQueue<>(bufferCapacity);
+        Gauge.builder("dms.audit.queue.depth", queue, BlockingQueue::size)
+                .description("Audit logs waiting to be written")
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("dms.audit.flush")
+                .description("Time spent writing a batch of audit logs")
+                .register(meterRegistry);
+        this.writeTimer = Timer.builder("dms.audit.write")
+                .description("Time an audited operation waits for its audit logs to be written")
+                .tag("durability", durability)
+                .register(meterRegistry);
+        this.spilledCounter = Counter.builder("dms.audit.spilled")
+                .description("Audit logs spilled to the spill file")
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (durability == AuditDurability.SYNC) {
+            return;
+        }
+        flushLoop = Flux.merge(Flux.interval(flushInterval), flushRequests.asFlux())
+                .onBackpressureDrop()
+                .concatMap(_ -> flush().then(replaySpillFile()), 1)
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (flushLoop == null) {
+            return;
+        }
+        flushLoop.dispose();
+        // last flush, what cannot be written is spilled
+        flush().block(Duration.ofSeconds(10));
+        List<PendingAuditLog> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            spill(remaining.stream().map(PendingAuditLog::auditLog).toList());
+        }
+    }
+
+    public Mono<Void> write(List<AuditLog> auditLogs) {
+        if (auditLogs.isEmpty()) {
+            return Mono.empty();
+        }
+        Mono<Void> write = switch (durability) {
+            case SYNC -> auditDAO.logActions(auditLogs)
+                    .doOnError(e -> log.error("Failed to log {} audit actions: {}", auditLogs.size(), e.getMessage()))
+                    .onErrorResume(_ -> Mono.empty());
+            case GROUP_COMMIT -> {
+                Sinks.Empty<Void> written = Sinks.empty();
+                yield enqueue(auditLogs, written)
+                        ? written.asMono().timeout(groupCommitTimeout, Mono.empty())
+                        // buffer full : written without waiting for the flush
+                        : auditDAO.logActions(auditLogs).onErrorResume(e -> spillAsync(auditLogs, e));
+            }
+            case ASYNC -> enqueue(auditLogs, null) ? Mono.empty() : spillAsync(auditLogs, null);
+        };
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return write.doFinally(_ -> writeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        });
+    }
+
+    /**
+     * Queues all the logs, or none of them when the buffer is full
+     * @param written completed when the last of the logs is written
+     */
+    private boolean enqueue(List<AuditLog> auditLogs, Sinks.Empty<Void> written) {
+        synchronized (queue) {
+            if (queue.remainingCapacity() < auditLogs.size()) {
+                return false;
+            }
+            for (int i = 0; i < auditLogs.size(); i++) {
+                queue.add(new PendingAuditLog(auditLogs.get(i), i == auditLogs.size() - 1 ? written : null));
+            }
+        }
+        if (queue.size() >= batchSize) {
+            flushRequests.tryEmitNext(0L);
+        }
+        return true;
+    }
+
+    Mono<Void> flush() {
+        return Mono.defer(() -> {
+                    List<PendingAuditLog> batch = new ArrayList<>(batchSize);
+                    queue.drainTo(batch, batchSize);
+                    if (batch.isEmpty()) {
+                        return Mono.empty();
+                    }
+                    List<AuditLog> auditLogs = batch.stream().map(PendingAuditLog::auditLog).toList();
+                    Timer.Sample sample = Timer.start();
+                    return auditDAO.logActions(auditLogs)
+                            .doOnSuccess(_ -> sample.stop(flushTimer))
+                            .onErrorResume(e -> spillAsync(auditLogs, e))
+                            .doFinally(_ -> batch.stream()
+                                    .filter(pending -> pending.written() != null)
+                                    .forEach(pending -> pending.written().tryEmitEmpty()));
+                })
+                .repeat(() -> queue.size() >= batchSize)
+                .then();
+    }
+
+    private Mono<Void> spillAsync(List<AuditLog> auditLogs, Throwable cause) {
+        if (cause != null) {
+            log.error("Failed to log {} audit actions, spilled to {}: {}", auditLogs.size(), spillFile, cause.getMessage());
+        }
+        return Mono.fromRunnable(() -> spill(auditLogs)).subscribeOn(Schedulers.boundedElastic()).then();
+    }
+
+    private void spill(List<AuditLog> auditLogs) {
+        List<String> lines = new ArrayList<>(auditLogs.size());
+        for (AuditLog auditLog : auditLogs) {
+            try {
+                lines.add(objectMapper.writeValueAsString(auditLog));
+            } catch (JsonProcessingException e) {
+                log.error("Audit log {} lost: {}", auditLog, e.getMessage());
+            }
+        }
+        synchronized (spillLock) {
+            try {
+                Files.write(spillFile, lines, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                spilledCounter.increment(lines.size());
+            } catch (IOException e) {
+                log.error("Failed to spill {} audit logs to {}: {}", lines.size(), spillFile, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Writes the spilled logs to the database. The spill file is renamed before being read, so that the logs spilled
+     * in the meantime are kept for the next replay, and deleted only once its logs are written.
+     */
+    Mono<Void> replaySpillFile() {
+        Path replayFile = Path.of(spillFile + REPLAY_SUFFIX);
+        return Mono.fromCallable(() -> {
+                    synchronized (spillLock) {
+                        if (!Files.exists(replayFile)) {
+                            if (!Files.exists(spillFile)) {
+                                return List.<AuditLog>of();
+                            }
+                            Files.move(spillFile, replayFile, StandardCopyOption.ATOMIC_MOVE);
+                        }
+                    }
+                    List<AuditLog> auditLogs = new ArrayList<>();
+                    for (String line : Files.readAllLines(replayFile)) {
+                        if (!line.isBlank()) {
+                            auditLogs.add(objectMapper.readValue(line, AuditLog.class));
+                        }
+                    }
+                    if (auditLogs.isEmpty()) {
+                        Files.delete(replayFile);
+                    }
+                    return auditLogs;
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .filter(auditLogs -> !auditLogs.isEmpty())
+                .flatMap(auditLogs -> auditDAO.logActions(auditLogs)
+                        .then(Mono.fromRunnable(() -> {
+                            try {
+                                Files.delete(replayFile);
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                        }).subscribeOn(Schedulers.boundedElastic()))
+                        .doOnSuccess(_ -> log.info("{} spilled audit logs written", auditLogs.size())))
+                .onErrorResume(e -> {
+                    log.warn("Spilled audit logs not written yet: {}", e.getMessage());
+                    return Mono.empty();
+                })
+                .then();
+    }
+}
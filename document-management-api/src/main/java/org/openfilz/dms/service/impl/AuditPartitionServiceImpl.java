@@ -0,0 +1,160 @@
+package org.openfilz.dms.service.impl;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.openfilz.dms.service.AuditPartitionService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Creates the monthly partitions of <code>audit_logs</code> (in UTC) ahead of time, and drops the partitions older than
+ * <code>audit.retention.months</code> (0 : the audit logs are kept forever).
+ * A partition is created by moving the rows of its month out of the default partition before attaching it, so that the
+ * rows written before its creation (or migrated from a table created before the partitioning) end up in their monthly
+ * partition.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class AuditPartitionServiceImpl implements AuditPartitionService {
+
+    private static final DateTimeFormatter PARTITION_NAME = DateTimeFormatter.ofPattern("'audit_logs_y'yyyy'm'MM");
+    private static final Pattern PARTITION_NAME_PATTERN = Pattern.compile("audit_logs_y(\\d{4})m(\\d{2})");
+
+    private static final String IS_PARTITIONED = "SELECT relkind = 'p' AS partitioned FROM pg_class WHERE relname = 'audit_logs' AND pg_table_is_visible(oid)";
+
+    private static final String SELECT_DEFAULT_PARTITION_MONTHS = "SELECT DISTINCT to_char(timestamp AT TIME ZONE 'UTC', 'YYYY-MM') AS month FROM audit_logs_default";
+
+    private static final String SELECT_PARTITIONS = """
+            SELECT c.relname AS partition
+            FROM pg_inherits i
+            JOIN pg_class c ON c.oid = i.inhrelid
+            JOIN pg_class p ON p.oid = i.inhparent
+            WHERE p.relname = 'audit_logs'""";
+
+    // run as one statement : the rows of the month are moved and the partition attached atomically
+    private static final String CREATE_PARTITION = """
+            DO $$
+            BEGIN
+              IF to_regclass('%1$s') IS NULL THEN
+                CREATE TABLE %1$s (LIKE audit_logs INCLUDING DEFAULTS);
+                WITH moved AS (
+                  DELETE FROM audit_logs_default WHERE timestamp >= '%2$s' AND timestamp < '%3$s' RETURNING *
+                )
+                INSERT INTO %1$s SELECT * FROM moved;
+                ALTER TABLE audit_logs ATTACH PARTITION %1$s FOR VALUES FROM ('%2$s') TO ('%3$s');
+              END IF;
+            END $$""";
+
+    private static final String DROP_PARTITION = "DROP TABLE IF EXISTS %s";
+
+    private static final String DELETE_EXPIRED_DEFAULT_ROWS = "DELETE FROM audit_logs_default WHERE timestamp < :before";
+
+    private final DatabaseClient databaseClient;
+
+    @Value("${audit.partitions.months-ahead:2}")
+    private Integer monthsAhead;
+
+    @Value("${audit.partitions.check-interval-ms:3600000}")
+    private Long checkIntervalMs;
+
+    @Value("${audit.retention.months:0}")
+    private Integer retentionMonths;
+
+    private Disposable maintenanceLoop;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        maintenanceLoop = Flux.interval(Duration.ZERO, Duration.ofMillis(checkIntervalMs))
+                .onBackpressureDrop()
+                .concatMap(_ -> maintainPartitions()
+                        .doOnError(e -> log.error("Audit partitions maintenance failed: {}", e.getMessage()))
+                        .onErrorResume(_ -> Mono.empty()), 1)
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (maintenanceLoop != null) {
+            maintenanceLoop.dispose();
+        }
+    }
+
+    @Override
+    public Mono<Void> maintainPartitions() {
+        return databaseClient.sql(IS_PARTITIONED)
+                .map(row -> row.get("partitioned", Boolean.class))
+                .one()
+                .defaultIfEmpty(false)
+                .flatMap(partitioned -> {
+                    if (!partitioned) {
+                        log.warn("audit_logs is not partitioned : run migration.sql to partition it");
+                        return Mono.empty();
+                    }
+                    return createPartitions().then(dropExpiredPartitions());
+                });
+    }
+
+    private Mono<Void> createPartitions() {
+        YearMonth currentMonth = YearMonth.now(ZoneOffset.UTC);
+        return databaseClient.sql(SELECT_DEFAULT_PARTITION_MONTHS)
+                .map(row -> YearMonth.parse(row.get("month", String.class)))
+                .all()
+                .collect(TreeSet<YearMonth>::new, TreeSet::add)
+                .doOnNext(months -> {
+                    for (int i = 0; i <= monthsAhead; i++) {
+                        months.add(currentMonth.plusMonths(i));
+                    }
+                })
+                .flatMapMany(Flux::fromIterable)
+                .filter(month -> retentionMonths <= 0 || !month.isBefore(getOldestRetainedMonth()))
+                .concatMap(month -> databaseClient.sql(CREATE_PARTITION.formatted(month.format(PARTITION_NAME),
+                                getStart(month), getStart(month.plusMonths(1))))
+                        .then())
+                .then();
+    }
+
+    private Mono<Void> dropExpiredPartitions() {
+        if (retentionMonths <= 0) {
+            return Mono.empty();
+        }
+        YearMonth oldestRetainedMonth = getOldestRetainedMonth();
+        return databaseClient.sql(SELECT_PARTITIONS)
+                .map(row -> row.get("partition", String.class))
+                .all()
+                .filter(partition -> {
+                    Matcher matcher = PARTITION_NAME_PATTERN.matcher(partition);
+                    return matcher.matches()
+                            && YearMonth.of(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2))).isBefore(oldestRetainedMonth);
+                })
+                .concatMap(partition -> databaseClient.sql(DROP_PARTITION.formatted(partition)).then()
+                        .doOnSuccess(_ -> log.info("Audit partition {} dropped (retention of {} months)", partition, retentionMonths)))
+                .then(databaseClient.sql(DELETE_EXPIRED_DEFAULT_ROWS)
+                        .bind("before", getStart(oldestRetainedMonth))
+                        .then());
+    }
+
+    private YearMonth getOldestRetainedMonth() {
+        return YearMonth.now(ZoneOffset.UTC).minusMonths(retentionMonths);
+    }
+
+    private static OffsetDateTime getStart(YearMonth month) {
+        return month.atDay(1).atStartOfDay().atOffset(ZoneOffset.UTC);
+    }
+}
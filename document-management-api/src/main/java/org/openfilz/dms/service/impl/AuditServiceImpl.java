@@ -15,6 +15,8 @@ import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.OffsetDateTime;
+import java.util.List;
 import java.util.UUID;
 
 @Slf4j
@@ -24,14 +26,21 @@ public class AuditServiceImpl implements AuditService {
 
     private final AuditDAO auditDAO;
 
+    private final AuditLogWriter auditLogWriter;
+
     @Override
     public Mono<Void> logAction(String userPrincipal, AuditAction action, DocumentType resourceType, UUID resourceId, AuditLogDetails details) {
-        return auditDAO.logAction(userPrincipal, action, resourceType, resourceId, details);
+        return auditLogWriter.write(List.of(new AuditLog(resourceId, OffsetDateTime.now(), userPrincipal, action, resourceType, details)));
     }
 
     @Override
     public Mono<Void> logAction(String userPrincipal, AuditAction action, DocumentType resourceType, UUID resourceId) {
-        return auditDAO.logAction(userPrincipal, action, resourceType, resourceId, null);
+        return logAction(userPrincipal, action, resourceType, resourceId, null);
+    }
+
+    @Override
+    public Mono<Void> logActions(List<AuditLog> auditLogs) {
+        return auditLogWriter.write(auditLogs);
     }
 
     @Override
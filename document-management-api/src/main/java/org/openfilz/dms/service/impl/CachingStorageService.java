@@ -0,0 +1,411 @@
+package org.openfilz.dms.service.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.openfilz.dms.exception.StorageException;
+import org.openfilz.dms.service.StorageService;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.PathResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.codec.multipart.FilePart;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Read-through cache on local disk in front of a remote storage backend ({@link MinioStorageService}), set up by
+ * {@code StorageCacheConfig} when <code>storage.cache.enabled</code> is true.
+ * <ul>
+ *     <li>a content read entirely from the backend is written to the cache directory while it streams to the client,
+ *     and only registered once it has been read to the end (a cancelled download leaves nothing in the cache)</li>
+ *     <li>cached contents are served as file-based resources, written with zero-copy like the local storage, and
+ *     the byte ranges are read from the cached file</li>
+ *     <li>the cache is bounded by the size of the cached contents (<code>storage.cache.max-size-bytes</code>) : the
+ *     least recently read contents are evicted first. Contents larger than <code>storage.cache.max-file-size-bytes</code>
+ *     are not cached</li>
+ * </ul>
+ * The storage paths are never reused for another content, so a cached content never gets stale : it is only evicted
+ * when it is deleted. The cached files are named after the SHA-256 of their storage path, and are reloaded on startup
+ * (from the oldest to the most recently cached).
+ */
+@Slf4j
+public class CachingStorageService implements StorageService {
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    // the backend storage service
+    private final StorageService storageService;
+    private final Path directory;
+    private final long maxSizeBytes;
+    private final long maxFileSizeBytes;
+    // cached contents (by the name of their file) and their size, in access order : the eldest is evicted first
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter evictionCounter;
+    private final Counter bytesSavedCounter;
+
+    private long size;
+
+    public CachingStorageService(StorageService storageService, Path directory, long maxSizeBytes, long maxFileSizeBytes,
+                                 MeterRegistry meterRegistry) {
+        this.storageService = storageService;
+        this.directory = directory;
+        this.maxSizeBytes = maxSizeBytes;
+        this.maxFileSizeBytes = Math.min(maxFileSizeBytes, maxSizeBytes);
+        this.hitCounter = Counter.builder("dms.storage.cache.hits")
+                .description("Contents read from the storage cache")
+                .register(meterRegistry);
+        this.missCounter = Counter.builder("dms.storage.cache.misses")
+                .description("Contents read from the storage backend, not found in the storage cache")
+                .register(meterRegistry);
+        this.evictionCounter = Counter.builder("dms.storage.cache.evictions")
+                .description("Contents removed from the storage cache to stay within its maximum size")
+                .register(meterRegistry);
+        this.bytesSavedCounter = Counter.builder("dms.storage.cache.bytes.saved")
+                .description("Bytes read from the storage cache instead of the storage backend")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("dms.storage.cache.hit.ratio", this, CachingStorageService::hitRatio)
+                .description("Part of the contents read from the storage cache")
+                .register(meterRegistry);
+        Gauge.builder("dms.storage.cache.size", this, CachingStorageService::count)
+                .description("Contents in the storage cache")
+                .register(meterRegistry);
+        Gauge.builder("dms.storage.cache.bytes", this, CachingStorageService::size)
+                .description("Disk space used by the contents in the storage cache")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        load();
+    }
+
+    private void load() {
+        try {
+            Files.createDirectories(directory);
+            List<Path> files;
+            try (Stream<Path> stream = Files.list(directory)) {
+                files = stream.toList();
+            }
+            List<Path> cachedFiles = new ArrayList<>();
+            for (Path file : files) {
+                if (file.getFileName().toString().endsWith(TEMP_SUFFIX)) {
+                    // left by a read interrupted by a stop of the application
+                    Files.deleteIfExists(file);
+                } else {
+                    cachedFiles.add(file);
+                }
+            }
+            cachedFiles.sort(Comparator.comparing(CachingStorageService::lastModifiedTime));
+            cachedFiles.forEach(file -> register(file.getFileName().toString(), fileSize(file)));
+            log.info("Storage cache initialized at: {} ({} contents, {} bytes)", directory.toAbsolutePath(), count(), size());
+        } catch (IOException | UncheckedIOException e) {
+            throw new StorageException("Could not initialize the storage cache in " + directory, e);
+        }
+    }
+
+    @Override
+    public Mono<String> saveFile(FilePart filePart) {
+        return storageService.saveFile(filePart);
+    }
+
+    @Override
+    public Mono<? extends Resource> loadFile(String storagePath) {
+        return Mono.defer(() -> {
+            String key = key(storagePath);
+            Path cachedFile = getCachedFile(key);
+            if (cachedFile != null) {
+                hitCounter.increment();
+                bytesSavedCounter.increment(cachedFile.toFile().length());
+                // the content is the most recently read : it is not evicted before WebFlux opens the file
+                return Mono.just(new PathResource(cachedFile));
+            }
+            missCounter.increment();
+            return storageService.loadFile(storagePath)
+                    .map(resource -> cachingResource(key, resource));
+        });
+    }
+
+    @Override
+    public Flux<DataBuffer> loadFile(String storagePath, long offset, long length) {
+        return Flux.defer(() -> {
+            Path cachedFile = getCachedFile(key(storagePath));
+            if (cachedFile == null) {
+                // a range does not fill the cache, only the reads of whole contents do
+                missCounter.increment();
+                return storageService.loadFile(storagePath, offset, length);
+            }
+            hitCounter.increment();
+            return DataBufferUtils.takeUntilByteCount(
+                            DataBufferUtils.readAsynchronousFileChannel(() -> AsynchronousFileChannel.open(cachedFile, StandardOpenOption.READ),
+                                    offset, DefaultDataBufferFactory.sharedInstance, READ_BUFFER_SIZE),
+                            length)
+                    .doOnNext(buffer -> bytesSavedCounter.increment(buffer.readableByteCount()))
+                    .onErrorMap(IOException.class, e -> new StorageException("Error loading file " + storagePath + " from the storage cache", e));
+        });
+    }
+
+    @Override
+    public Mono<Void> deleteFile(String storagePath) {
+        return storageService.deleteFile(storagePath)
+                .then(Mono.fromRunnable(() -> evict(key(storagePath))));
+    }
+
+    @Override
+    public Mono<String> copyFile(String sourceStoragePath) {
+        return storageService.copyFile(sourceStoragePath);
+    }
+
+    @Override
+    public Mono<Long> getFileLength(String storagePath) {
+        return storageService.getFileLength(storagePath);
+    }
+
+    @Override
+    public Mono<String> createChunkedUpload(String storagePath, String contentType, long size) {
+        return storageService.createChunkedUpload(storagePath, contentType, size);
+    }
+
+    @Override
+    public Mono<String> writeChunk(String storagePath, String uploadId, int chunkNumber, long offset, long length, Flux<DataBuffer> content) {
+        return storageService.writeChunk(storagePath, uploadId, chunkNumber, offset, length, content);
+    }
+
+    @Override
+    public Mono<Void> completeChunkedUpload(String storagePath, String uploadId, List<String> chunkTags) {
+        return storageService.completeChunkedUpload(storagePath, uploadId, chunkTags);
+    }
+
+    @Override
+    public Mono<Void> abortChunkedUpload(String storagePath, String uploadId) {
+        return storageService.abortChunkedUpload(storagePath, uploadId);
+    }
+
+    /**
+     * @return the file of the cached content, or null when it is not cached
+     */
+    private Path getCachedFile(String key) {
+        synchronized (this) {
+            if (entries.get(key) == null) {
+                return null;
+            }
+        }
+        Path cachedFile = directory.resolve(key);
+        if (Files.exists(cachedFile)) {
+            return cachedFile;
+        }
+        log.warn("Cached content {} removed from the storage cache directory", key);
+        evict(key);
+        return null;
+    }
+
+    private Resource cachingResource(String key, Resource resource) {
+        try {
+            Path tempFile = Files.createTempFile(directory, key + ".", TEMP_SUFFIX);
+            return new InputStreamResource(new CachingInputStream(resource.getInputStream(), key, tempFile));
+        } catch (IOException e) {
+            log.warn("Could not cache content {}: {}", key, e.getMessage());
+            return resource;
+        }
+    }
+
+    private void register(String key, long fileSize) {
+        List<String> evicted = new ArrayList<>();
+        synchronized (this) {
+            Long previousSize = entries.put(key, fileSize);
+            size += fileSize - (previousSize != null ? previousSize : 0);
+            Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+            while (size > maxSizeBytes && iterator.hasNext()) {
+                Map.Entry<String, Long> eldest = iterator.next();
+                iterator.remove();
+                size -= eldest.getValue();
+                evicted.add(eldest.getKey());
+            }
+        }
+        evictionCounter.increment(evicted.size());
+        evicted.forEach(this::deleteCachedFile);
+    }
+
+    private void evict(String key) {
+        boolean removed;
+        synchronized (this) {
+            Long removedSize = entries.remove(key);
+            removed = removedSize != null;
+            if (removed) {
+                size -= removedSize;
+            }
+        }
+        if (removed) {
+            deleteCachedFile(key);
+        }
+    }
+
+    private void deleteCachedFile(String key) {
+        try {
+            Files.deleteIfExists(directory.resolve(key));
+        } catch (IOException e) {
+            log.warn("Could not delete cached content {}: {}", key, e.getMessage());
+        }
+    }
+
+    private synchronized int count() {
+        return entries.size();
+    }
+
+    private synchronized long size() {
+        return size;
+    }
+
+    private double hitRatio() {
+        double hits = hitCounter.count();
+        double reads = hits + missCounter.count();
+        return reads > 0 ? hits / reads : Double.NaN;
+    }
+
+    private static String key(String storagePath) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(storagePath.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static long fileSize(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static FileTime lastModifiedTime(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Copies the content read from the backend to a temporary file, moved into the cache once the content has been
+     * read to the end. The copy is dropped when the stream is closed before, or when the content is too large.
+     */
+    private class CachingInputStream extends FilterInputStream {
+
+        private final String key;
+        private final Path tempFile;
+        private OutputStream out;
+        private long written;
+
+        CachingInputStream(InputStream in, String key, Path tempFile) throws IOException {
+            super(in);
+            this.key = key;
+            this.tempFile = tempFile;
+            this.out = Files.newOutputStream(tempFile);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b < 0) {
+                complete();
+            } else {
+                copy(new byte[]{(byte) b}, 0, 1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read < 0) {
+                complete();
+            } else {
+                copy(b, off, read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // the skipped bytes would be missing from the copy
+            drop();
+            return super.skip(n);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                drop();
+            }
+        }
+
+        private void copy(byte[] b, int off, int len) {
+            if (out == null) {
+                return;
+            }
+            if (written + len > maxFileSizeBytes) {
+                drop();
+                return;
+            }
+            try {
+                out.write(b, off, len);
+                written += len;
+            } catch (IOException e) {
+                log.warn("Could not cache content {}: {}", key, e.getMessage());
+                drop();
+            }
+        }
+
+        private void complete() {
+            if (out == null) {
+                return;
+            }
+            try {
+                out.close();
+                out = null;
+                Files.move(tempFile, directory.resolve(key), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                register(key, written);
+            } catch (IOException e) {
+                log.warn("Could not cache content {}: {}", key, e.getMessage());
+                drop();
+            }
+        }
+
+        private void drop() {
+            try {
+                if (out != null) {
+                    out.close();
+                    out = null;
+                }
+                Files.deleteIfExists(tempFile);
+            } catch (IOException e) {
+                log.warn("Could not delete temporary file {}: {}", tempFile, e.getMessage());
+            }
+        }
+    }
+}
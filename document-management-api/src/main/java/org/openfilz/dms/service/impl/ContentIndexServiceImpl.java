@@ -0,0 +1,210 @@
+package org.openfilz.dms.service.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.openfilz.dms.enums.ContentIndexStatus;
+import org.openfilz.dms.repository.DocumentContentDAO;
+import org.openfilz.dms.repository.DocumentContentDAO.PendingContent;
+import org.openfilz.dms.service.ContentIndexService;
+import org.openfilz.dms.service.StorageService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drains the files waiting in <code>document_contents</code> : batches are claimed with <code>FOR UPDATE SKIP
+ * LOCKED</code> and a lease, so that several instances of the application can index in parallel, then at most
+ * {@code content-index.parallelism} files are read from the storage and have their text extracted at the same time, on
+ * a dedicated scheduler. A failed extraction is tried again later, with a delay doubled at each attempt, until
+ * {@code content-index.max-attempts} is reached.
+ */
+@Slf4j
+@Service
+public class ContentIndexServiceImpl implements ContentIndexService {
+
+    private static final String RESULT = "result";
+
+    private final DocumentContentDAO documentContentDAO;
+    private final StorageService storageService;
+    private final ContentTextExtractor textExtractor;
+    private final boolean enabled;
+    private final Duration interval;
+    private final int batchSize;
+    private final int parallelism;
+    private final int maxAttempts;
+    private final Duration retryDelay;
+    private final Duration lease;
+    private final long maxContentSize;
+    private final Duration extractionTimeout;
+    private final AtomicLong backlog = new AtomicLong();
+    private final Timer extractionTimer;
+    private final Counter indexedCounter;
+    private final Counter unsupportedCounter;
+    private final Counter retriedCounter;
+    private final Counter failedCounter;
+
+    private final Scheduler extractionScheduler;
+
+    private Disposable indexLoop;
+
+    public ContentIndexServiceImpl(DocumentContentDAO documentContentDAO,
+                                   StorageService storageService,
+                                   ContentTextExtractor textExtractor,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${content-index.enabled:true}") boolean enabled,
+                                   @Value("${content-index.interval-ms:2000}") long intervalMs,
+                                   @Value("${content-index.batch-size:50}") int batchSize,
+                                   @Value("${content-index.parallelism:4}") int parallelism,
+                                   @Value("${content-index.max-attempts:5}") int maxAttempts,
+                                   @Value("${content-index.retry-delay-ms:30000}") long retryDelayMs,
+                                   @Value("${content-index.lease-ms:600000}") long leaseMs,
+                                   @Value("${content-index.max-content-size:52428800}") long maxContentSize,
+                                   @Value("${content-index.extraction-timeout-ms:120000}") long extractionTimeoutMs) {
+        this.documentContentDAO = documentContentDAO;
+        this.storageService = storageService;
+        this.textExtractor = textExtractor;
+        this.enabled = enabled;
+        this.interval = Duration.ofMillis(intervalMs);
+        this.batchSize = batchSize;
+        this.parallelism = parallelism;
+        this.maxAttempts = maxAttempts;
+        this.retryDelay = Duration.ofMillis(retryDelayMs);
+        this.lease = Duration.ofMillis(leaseMs);
+        this.maxContentSize = maxContentSize;
+        this.extractionTimeout = Duration.ofMillis(extractionTimeoutMs);
+        this.extractionScheduler = Schedulers.newBoundedElastic(parallelism, Integer.MAX_VALUE, "content-index");
+        Gauge.builder("dms.content.index.backlog", backlog, AtomicLong::get)
+                .description("Files waiting for the extraction of their text")
+                .register(meterRegistry);
+        this.extractionTimer = Timer.builder("dms.content.index.extraction")
+                .description("Time spent reading a file and extracting its text")
+                .register(meterRegistry);
+        this.indexedCounter = extractionCounter(meterRegistry, "indexed");
+        this.unsupportedCounter = extractionCounter(meterRegistry, "unsupported");
+        this.retriedCounter = extractionCounter(meterRegistry, "retried");
+        this.failedCounter = extractionCounter(meterRegistry, "failed");
+    }
+
+    private static Counter extractionCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("dms.content.index.files")
+                .description("Files processed by the content indexing")
+                .tag(RESULT, result)
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        indexLoop = Flux.interval(interval)
+                .onBackpressureDrop()
+                .concatMap(_ -> index()
+                        .then(documentContentDAO.countPending())
+                        .doOnNext(backlog::set)
+                        .doOnError(e -> log.error("Content indexing failed: {}", e.getMessage()))
+                        .onErrorResume(_ -> Mono.empty()), 1)
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (indexLoop != null) {
+            indexLoop.dispose();
+        }
+        extractionScheduler.dispose();
+    }
+
+    @Override
+    public Mono<Long> index() {
+        return indexBatch()
+                .expand(indexed -> indexed < batchSize ? Mono.empty() : indexBatch())
+                .reduce(0L, Long::sum)
+                .doOnNext(indexed -> {
+                    if (indexed > 0) {
+                        log.debug("{} files indexed", indexed);
+                    }
+                });
+    }
+
+    private Mono<Long> indexBatch() {
+        return documentContentDAO.claimPending(batchSize, lease)
+                .flatMap(this::index, parallelism)
+                .count();
+    }
+
+    private Mono<Void> index(PendingContent content) {
+        ContentTextExtractor.Format format = textExtractor.getFormat(content.contentType(), content.name());
+        if (format == null) {
+            return saveUnsupported(content, "No text can be extracted from " + content.contentType());
+        }
+        return Mono.justOrEmpty(content.size())
+                .switchIfEmpty(Mono.defer(() -> storageService.getFileLength(content.storagePath())))
+                .flatMap(size -> {
+                    if (size > maxContentSize && !format.isReadablePartially()) {
+                        return saveUnsupported(content, "Content larger than " + maxContentSize + " bytes");
+                    }
+                    // only the beginning of the large texts is indexed
+                    return extractText(content, format, Math.min(size, maxContentSize))
+                            .flatMap(text -> documentContentDAO.saveText(content.documentId(), content.version(), text))
+                            .doOnNext(_ -> indexedCounter.increment())
+                            .then();
+                })
+                .onErrorResume(e -> saveError(content, e));
+    }
+
+    private Mono<String> extractText(PendingContent content, ContentTextExtractor.Format format, long length) {
+        return Mono.defer(() -> {
+            Timer.Sample sample = Timer.start();
+            return readContent(content.storagePath(), length)
+                    .flatMap(bytes -> Mono.fromCallable(() -> textExtractor.extract(format, content.contentType(), bytes))
+                            .subscribeOn(extractionScheduler))
+                    .timeout(extractionTimeout)
+                    .doFinally(_ -> sample.stop(extractionTimer));
+        });
+    }
+
+    private Mono<byte[]> readContent(String storagePath, long length) {
+        if (length == 0) {
+            return Mono.just(new byte[0]);
+        }
+        return DataBufferUtils.join(storageService.loadFile(storagePath, 0, length))
+                .map(buffer -> {
+                    byte[] bytes = new byte[buffer.readableByteCount()];
+                    buffer.read(bytes);
+                    DataBufferUtils.release(buffer);
+                    return bytes;
+                });
+    }
+
+    private Mono<Void> saveUnsupported(PendingContent content, String reason) {
+        unsupportedCounter.increment();
+        return documentContentDAO.saveStatus(content.documentId(), content.version(), ContentIndexStatus.UNSUPPORTED, reason, Duration.ZERO);
+    }
+
+    private Mono<Void> saveError(PendingContent content, Throwable error) {
+        if (content.attempts() >= maxAttempts) {
+            log.warn("Text of {} not indexed after {} attempts: {}", content.documentId(), content.attempts(), error.getMessage());
+            failedCounter.increment();
+            return documentContentDAO.saveStatus(content.documentId(), content.version(), ContentIndexStatus.FAILED, error.getMessage(), Duration.ZERO);
+        }
+        log.debug("Text of {} not indexed, tried again later: {}", content.documentId(), error.getMessage());
+        retriedCounter.increment();
+        return documentContentDAO.saveStatus(content.documentId(), content.version(), ContentIndexStatus.PENDING, error.getMessage(),
+                retryDelay.multipliedBy(1L << Math.min(content.attempts() - 1, 16)));
+    }
+}
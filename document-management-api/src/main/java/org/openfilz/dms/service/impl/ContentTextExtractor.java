@@ -0,0 +1,277 @@
+package org.openfilz.dms.service.impl;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Extracts the text of the contents indexed by {@link ContentIndexServiceImpl}, with the JDK only : plain texts,
+ * HTML / XML, Office Open XML (docx, xlsx, pptx) and OpenDocument (odt, ods, odp) files.
+ * The extracted text is limited to {@code content-index.max-text-length} characters, and the decompressed size of the
+ * parts read in an office document to {@code content-index.max-uncompressed-size} bytes.
+ */
+@Component
+public class ContentTextExtractor {
+
+    public enum Format {
+        TEXT(true), MARKUP(true), OFFICE_OPEN_XML(false), OPEN_DOCUMENT(false);
+
+        /** when true, the text of the beginning of a content can be extracted from this beginning only */
+        private final boolean readablePartially;
+
+        Format(boolean readablePartially) {
+            this.readablePartially = readablePartially;
+        }
+
+        public boolean isReadablePartially() {
+            return readablePartially;
+        }
+    }
+
+    private static final Map<String, Format> FORMATS_BY_CONTENT_TYPE = Map.ofEntries(
+            Map.entry("application/json", Format.TEXT),
+            Map.entry("application/x-yaml", Format.TEXT),
+            Map.entry("application/yaml", Format.TEXT),
+            Map.entry("application/sql", Format.TEXT),
+            Map.entry("application/javascript", Format.TEXT),
+            Map.entry("application/xml", Format.MARKUP),
+            Map.entry("application/xhtml+xml", Format.MARKUP),
+            Map.entry("text/html", Format.MARKUP),
+            Map.entry("text/xml", Format.MARKUP),
+            Map.entry("application/vnd.openxmlformats-officedocument.wordprocessingml.document", Format.OFFICE_OPEN_XML),
+            Map.entry("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet", Format.OFFICE_OPEN_XML),
+            Map.entry("application/vnd.openxmlformats-officedocument.presentationml.presentation", Format.OFFICE_OPEN_XML),
+            Map.entry("application/vnd.oasis.opendocument.text", Format.OPEN_DOCUMENT),
+            Map.entry("application/vnd.oasis.opendocument.spreadsheet", Format.OPEN_DOCUMENT),
+            Map.entry("application/vnd.oasis.opendocument.presentation", Format.OPEN_DOCUMENT));
+
+    // used when the content type is missing or too generic (application/octet-stream...)
+    private static final Map<String, Format> FORMATS_BY_EXTENSION = Map.ofEntries(
+            Map.entry("txt", Format.TEXT), Map.entry("md", Format.TEXT), Map.entry("csv", Format.TEXT),
+            Map.entry("tsv", Format.TEXT), Map.entry("log", Format.TEXT), Map.entry("json", Format.TEXT),
+            Map.entry("yaml", Format.TEXT), Map.entry("yml", Format.TEXT), Map.entry("sql", Format.TEXT),
+            Map.entry("properties", Format.TEXT), Map.entry("ini", Format.TEXT),
+            Map.entry("html", Format.MARKUP), Map.entry("htm", Format.MARKUP), Map.entry("xhtml", Format.MARKUP),
+            Map.entry("xml", Format.MARKUP), Map.entry("svg", Format.MARKUP),
+            Map.entry("docx", Format.OFFICE_OPEN_XML), Map.entry("xlsx", Format.OFFICE_OPEN_XML),
+            Map.entry("pptx", Format.OFFICE_OPEN_XML),
+            Map.entry("odt", Format.OPEN_DOCUMENT), Map.entry("ods", Format.OPEN_DOCUMENT),
+            Map.entry("odp", Format.OPEN_DOCUMENT));
+
+    // parts holding the text of the office documents : body, headers, footers and notes, shared strings of the
+    // spreadsheets, slides
+    private static final Pattern OFFICE_OPEN_XML_TEXT_PARTS = Pattern.compile(
+            "word/(document|header\\d*|footer\\d*|footnotes|endnotes)\\.xml|xl/sharedStrings\\.xml|ppt/(slides|notesSlides)/[^/]+\\.xml");
+    private static final String OPEN_DOCUMENT_TEXT_PART = "content.xml";
+
+    // elements after which a space separates the texts (paragraphs, cells, line breaks...) : the other elements, like
+    // the runs of a paragraph, may split a word
+    private static final Set<String> SEPARATING_ELEMENTS = Set.of("p", "h", "br", "tab", "si", "tc", "table-cell",
+            "line-break", "s");
+
+    private static final Pattern HTML_IGNORED_BLOCKS = Pattern.compile("(?is)<script\\b.*?</script>|<style\\b.*?</style>|<!--.*?-->");
+    private static final Pattern HTML_TAGS = Pattern.compile("<[^>]*>");
+    private static final Pattern HTML_ENTITIES = Pattern.compile("&(#\\d+|#x[0-9a-fA-F]+|amp|lt|gt|quot|apos|nbsp);");
+
+    private final int maxTextLength;
+
+    private final long maxUncompressedSize;
+
+    private final XMLInputFactory xmlInputFactory;
+
+    public ContentTextExtractor(@Value("${content-index.max-text-length:500000}") int maxTextLength,
+                                @Value("${content-index.max-uncompressed-size:104857600}") long maxUncompressedSize) {
+        this.maxTextLength = maxTextLength;
+        this.maxUncompressedSize = maxUncompressedSize;
+        this.xmlInputFactory = XMLInputFactory.newFactory();
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    /**
+     * @return the format of a content, or null if no text can be extracted from it
+     */
+    public Format getFormat(String contentType, String name) {
+        MimeType mimeType = parseContentType(contentType);
+        if (mimeType != null) {
+            String type = mimeType.getType() + "/" + mimeType.getSubtype();
+            Format format = FORMATS_BY_CONTENT_TYPE.get(type);
+            if (format != null) {
+                return format;
+            }
+            if (mimeType.getSubtype().endsWith("+xml")) {
+                return Format.MARKUP;
+            }
+            if (mimeType.getType().equals("text")) {
+                return Format.TEXT;
+            }
+        }
+        int dot = name == null ? -1 : name.lastIndexOf('.');
+        return dot < 0 ? null : FORMATS_BY_EXTENSION.get(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Extracts the text of a content (or of its beginning, for a format readable partially)
+     */
+    public String extract(Format format, String contentType, byte[] content) throws IOException, XMLStreamException {
+        String text = switch (format) {
+            case TEXT -> new String(content, getCharset(contentType));
+            case MARKUP -> extractMarkup(new String(content, getCharset(contentType)));
+            case OFFICE_OPEN_XML -> extractZippedXml(content, OFFICE_OPEN_XML_TEXT_PARTS.asMatchPredicate());
+            case OPEN_DOCUMENT -> extractZippedXml(content, OPEN_DOCUMENT_TEXT_PART::equals);
+        };
+        // NUL characters cannot be stored in a PostgreSQL text
+        text = text.replace('\u0000', ' ');
+        return text.length() > maxTextLength ? text.substring(0, maxTextLength) : text;
+    }
+
+    private String extractMarkup(String markup) {
+        String text = HTML_TAGS.matcher(HTML_IGNORED_BLOCKS.matcher(markup).replaceAll(" ")).replaceAll(" ");
+        Matcher matcher = HTML_ENTITIES.matcher(text);
+        StringBuilder result = new StringBuilder(text.length());
+        while (matcher.find()) {
+            matcher.appendReplacement(result, Matcher.quoteReplacement(decodeEntity(matcher.group(1))));
+        }
+        matcher.appendTail(result);
+        return result.toString();
+    }
+
+    private String decodeEntity(String entity) {
+        return switch (entity) {
+            case "amp" -> "&";
+            case "lt" -> "<";
+            case "gt" -> ">";
+            case "quot" -> "\"";
+            case "apos" -> "'";
+            case "nbsp" -> " ";
+            default -> {
+                try {
+                    int codePoint = entity.startsWith("#x") ? Integer.parseInt(entity.substring(2), 16) : Integer.parseInt(entity.substring(1));
+                    yield Character.isValidCodePoint(codePoint) ? Character.toString(codePoint) : " ";
+                } catch (NumberFormatException e) {
+                    // beyond the int range : not a code point either
+                    yield " ";
+                }
+            }
+        };
+    }
+
+    private String extractZippedXml(byte[] content, Predicate<String> textParts) throws IOException, XMLStreamException {
+        StringBuilder text = new StringBuilder();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(content))) {
+            InputStream decompressed = new DecompressedInputStream(zip, maxUncompressedSize);
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null && text.length() < maxTextLength) {
+                if (!entry.isDirectory() && textParts.test(entry.getName())) {
+                    appendXmlText(decompressed, text);
+                }
+            }
+        }
+        return text.toString();
+    }
+
+    private void appendXmlText(InputStream xml, StringBuilder text) throws XMLStreamException {
+        XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(xml);
+        try {
+            while (reader.hasNext() && text.length() < maxTextLength) {
+                switch (reader.next()) {
+                    case XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA -> text.append(reader.getText());
+                    case XMLStreamConstants.END_ELEMENT -> {
+                        if (SEPARATING_ELEMENTS.contains(reader.getLocalName())) {
+                            text.append(' ');
+                        }
+                    }
+                    default -> {
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static MimeType parseContentType(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        try {
+            return MimeTypeUtils.parseMimeType(contentType);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static Charset getCharset(String contentType) {
+        MimeType mimeType = parseContentType(contentType);
+        try {
+            return mimeType == null || mimeType.getCharset() == null ? StandardCharsets.UTF_8 : mimeType.getCharset();
+        } catch (IllegalArgumentException e) {
+            return StandardCharsets.UTF_8;
+        }
+    }
+
+    /**
+     * Content of the entries of a zip : fails when more than the given number of bytes are read in total, to protect
+     * against the archives whose content decompresses into a huge size, and keeps the zip open when the XML parser of
+     * an entry is closed.
+     */
+    private static class DecompressedInputStream extends FilterInputStream {
+
+        private final long maxSize;
+        private long size;
+
+        DecompressedInputStream(ZipInputStream zip, long maxSize) {
+            super(zip);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                count(read);
+            }
+            return read;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        private void count(int read) throws IOException {
+            size += read;
+            if (size > maxSize) {
+                throw new IOException("Content larger than " + maxSize + " bytes once decompressed");
+            }
+        }
+    }
+}
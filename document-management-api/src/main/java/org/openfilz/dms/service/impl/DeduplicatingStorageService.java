@@ -0,0 +1,113 @@
+package org.openfilz.dms.service.impl;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.openfilz.dms.repository.StorageBlobDAO;
+import org.openfilz.dms.service.StorageService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.codec.multipart.FilePart;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Content-addressed storage mode : wraps the configured storage backend ({@link LocalStorageService} or
+ * {@link MinioStorageService}) so that each distinct content is stored only once.
+ * <ul>
+ *     <li>uploads are hashed (SHA-256) while they stream to the backend : when the same content is already stored,
+ *     the new object is dropped and the existing blob is referenced instead</li>
+ *     <li>copies only increment the reference count of the blob, no bytes are duplicated</li>
+ *     <li>deletes decrement the reference count : the blob is removed from the backend with its last reference</li>
+ * </ul>
+ * Objects stored before the activation of this mode are not registered in <code>storage_blobs</code> and keep being
+ * copied and deleted physically.
+ */
+@Slf4j
+@Service
+@Primary
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "storage.deduplication.enabled", havingValue = "true")
+public class DeduplicatingStorageService implements StorageService {
+
+    // the backend storage service (self reference is excluded by Spring when resolving the candidates)
+    private final StorageService storageService;
+
+    private final StorageBlobDAO storageBlobDAO;
+
+    @Override
+    public Mono<String> saveFile(FilePart filePart) {
+        DigestingFilePart digestingFilePart = new DigestingFilePart(filePart);
+        return storageService.saveFile(digestingFilePart)
+                .flatMap(newStoragePath -> storageBlobDAO.register(digestingFilePart.getHexDigest(), newStoragePath)
+                        .flatMap(blobStoragePath -> {
+                            if (blobStoragePath.equals(newStoragePath)) {
+                                return Mono.just(newStoragePath);
+                            }
+                            log.debug("Content of {} already stored in {} : dropping the new object", newStoragePath, blobStoragePath);
+                            return storageService.deleteFile(newStoragePath).thenReturn(blobStoragePath);
+                        }));
+    }
+
+    @Override
+    public Mono<? extends Resource> loadFile(String storagePath) {
+        return storageService.loadFile(storagePath);
+    }
+
+    @Override
+    public Flux<DataBuffer> loadFile(String storagePath, long offset, long length) {
+        return storageService.loadFile(storagePath, offset, length);
+    }
+
+    @Override
+    public Mono<Void> deleteFile(String storagePath) {
+        return storageBlobDAO.removeReference(storagePath)
+                .flatMap(refCount -> refCount > 0 ? Mono.just(false) : deleteUnreferencedBlob(storagePath))
+                // not registered as a blob : object stored before the activation of the deduplication
+                .switchIfEmpty(Mono.defer(() -> storageService.deleteFile(storagePath)).thenReturn(true))
+                .then();
+    }
+
+    private Mono<Boolean> deleteUnreferencedBlob(String storagePath) {
+        // a concurrent upload of the same content may have taken a new reference in the meantime
+        return storageBlobDAO.deleteUnreferenced(storagePath)
+                .flatMap(deleted -> deleted ? storageService.deleteFile(storagePath).thenReturn(true) : Mono.just(false));
+    }
+
+    @Override
+    public Mono<String> copyFile(String sourceStoragePath) {
+        return storageBlobDAO.addReference(sourceStoragePath)
+                .switchIfEmpty(Mono.defer(() -> storageService.copyFile(sourceStoragePath)));
+    }
+
+    @Override
+    public Mono<Long> getFileLength(String storagePath) {
+        return storageService.getFileLength(storagePath);
+    }
+
+    // the chunks are not hashed : the files uploaded by chunks are stored as distinct objects, not registered as blobs
+
+    @Override
+    public Mono<String> createChunkedUpload(String storagePath, String contentType, long size) {
+        return storageService.createChunkedUpload(storagePath, contentType, size);
+    }
+
+    @Override
+    public Mono<String> writeChunk(String storagePath, String uploadId, int chunkNumber, long offset, long length, Flux<DataBuffer> content) {
+        return storageService.writeChunk(storagePath, uploadId, chunkNumber, offset, length, content);
+    }
+
+    @Override
+    public Mono<Void> completeChunkedUpload(String storagePath, String uploadId, List<String> chunkTags) {
+        return storageService.completeChunkedUpload(storagePath, uploadId, chunkTags);
+    }
+
+    @Override
+    public Mono<Void> abortChunkedUpload(String storagePath, String uploadId) {
+        return storageService.abortChunkedUpload(storagePath, uploadId);
+    }
+}
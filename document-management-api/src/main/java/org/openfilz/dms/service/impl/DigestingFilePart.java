@@ -0,0 +1,75 @@
+package org.openfilz.dms.service.impl;
+
+import org.openfilz.dms.exception.StorageException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.codec.multipart.FilePart;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * {@link FilePart} wrapper computing a SHA-256 digest of the content while it is streamed to the storage backend.
+ * The digest is only available once the content has been fully consumed.
+ */
+public class DigestingFilePart implements FilePart {
+
+    private static final String SHA_256 = "SHA-256";
+
+    private final FilePart filePart;
+    private final MessageDigest digest;
+
+    public DigestingFilePart(FilePart filePart) {
+        this.filePart = filePart;
+        try {
+            this.digest = MessageDigest.getInstance(SHA_256);
+        } catch (NoSuchAlgorithmException e) {
+            throw new StorageException(e);
+        }
+    }
+
+    @Override
+    public String filename() {
+        return filePart.filename();
+    }
+
+    @Override
+    public Mono<Void> transferTo(Path dest) {
+        return DataBufferUtils.write(content(), dest);
+    }
+
+    @Override
+    public String name() {
+        return filePart.name();
+    }
+
+    @Override
+    public HttpHeaders headers() {
+        return filePart.headers();
+    }
+
+    @Override
+    public Flux<DataBuffer> content() {
+        return filePart.content().doOnNext(this::update);
+    }
+
+    @Override
+    public Mono<Void> delete() {
+        return filePart.delete();
+    }
+
+    public String getHexDigest() {
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private void update(DataBuffer buffer) {
+        try (DataBuffer.ByteBufferIterator iterator = buffer.readableByteBuffers()) {
+            iterator.forEachRemaining(digest::update);
+        }
+    }
+}
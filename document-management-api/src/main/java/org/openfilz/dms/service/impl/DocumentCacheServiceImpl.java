@@ -0,0 +1,281 @@
+package org.openfilz.dms.service.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.r2dbc.postgresql.api.Notification;
+import io.r2dbc.postgresql.api.PostgresqlConnection;
+import io.r2dbc.postgresql.api.PostgresqlResult;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Wrapped;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.openfilz.dms.entity.Document;
+import org.openfilz.dms.enums.DocumentType;
+import org.openfilz.dms.repository.DocumentRepository;
+import org.openfilz.dms.service.DocumentCacheService;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.r2dbc.mapping.OutboundRow;
+import org.springframework.data.r2dbc.mapping.event.AfterSaveCallback;
+import org.springframework.data.relational.core.sql.SqlIdentifier;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LRU cache of the documents, bounded by the estimated memory used by the cached documents
+ * (<code>cache.documents.max-size-bytes</code>).
+ * The <code>documents</code> triggers notify the id of each updated or deleted document on the
+ * <code>documents_changed</code> channel (or <code>*</code> for large statements), which is listened to on a dedicated
+ * connection. The cache is only used while this connection is listening, and emptied each time it (re)connects, so
+ * that no notification can be missed. A document read from the database is not cached if a notification was received
+ * during the read, as it may be older than the notified change.
+ * The documents saved or deleted by this instance are also evicted right away, without waiting for the notification
+ * (sent when the transaction commits).
+ */
+@Slf4j
+@Service
+public class DocumentCacheServiceImpl implements DocumentCacheService, AfterSaveCallback<Document> {
+
+    public static final String CHANNEL = "documents_changed";
+    public static final String ALL_DOCUMENTS = "*";
+
+    private static final long DOCUMENT_BASE_WEIGHT = 256;
+
+    private record CachedDocument(Document document, long weight) {
+    }
+
+    private final DocumentRepository documentRepository;
+    private final ConnectionFactory connectionFactory;
+    private final boolean enabled;
+    private final long maxWeight;
+    private final LinkedHashMap<UUID, CachedDocument> documents = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong invalidations = new AtomicLong();
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter evictionCounter;
+    private final Counter invalidationCounter;
+
+    private long weight;
+    private volatile boolean listening;
+    private Disposable listener;
+
+    public DocumentCacheServiceImpl(DocumentRepository documentRepository,
+                                    ConnectionFactory connectionFactory,
+                                    MeterRegistry meterRegistry,
+                                    @Value("${cache.documents.enabled:true}") boolean enabled,
+                                    @Value("${cache.documents.max-size-bytes:67108864}") long maxWeight) {
+        this.documentRepository = documentRepository;
+        this.connectionFactory = connectionFactory;
+        this.enabled = enabled;
+        this.maxWeight = maxWeight;
+        this.hitCounter = Counter.builder("dms.document.cache.hits")
+                .description("Documents found in the cache")
+                .register(meterRegistry);
+        this.missCounter = Counter.builder("dms.document.cache.misses")
+                .description("Documents read from the database")
+                .register(meterRegistry);
+        this.evictionCounter = Counter.builder("dms.document.cache.evictions")
+                .description("Documents removed from the cache to stay within its maximum size")
+                .register(meterRegistry);
+        this.invalidationCounter = Counter.builder("dms.document.cache.invalidations")
+                .description("Change notifications received from the database")
+                .register(meterRegistry);
+        Gauge.builder("dms.document.cache.size", this, DocumentCacheServiceImpl::size)
+                .description("Documents in the cache")
+                .register(meterRegistry);
+        Gauge.builder("dms.document.cache.weight", this, DocumentCacheServiceImpl::weight)
+                .description("Estimated memory used by the documents in the cache, in bytes")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        listener = listen()
+                .doOnNext(notification -> onNotification(notification.getParameter()))
+                .doOnError(e -> {
+                    listening = false;
+                    log.warn("Documents cache disabled until the notifications connection is restored: {}", e.getMessage());
+                })
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1)).maxBackoff(Duration.ofMinutes(1)))
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        listening = false;
+        if (listener != null) {
+            listener.dispose();
+        }
+    }
+
+    private Flux<Notification> listen() {
+        return Flux.usingWhen(getListenerConnectionFactory().create(),
+                connection -> {
+                    if (!(connection instanceof PostgresqlConnection postgresqlConnection)) {
+                        return Flux.error(new IllegalStateException("The documents cache requires PostgreSQL notifications"));
+                    }
+                    return postgresqlConnection.createStatement("LISTEN " + CHANNEL).execute()
+                            .flatMap(PostgresqlResult::getRowsUpdated)
+                            .thenMany(Flux.defer(() -> {
+                                // the changes made while not listening are unknown
+                                clear();
+                                listening = true;
+                                log.info("Documents cache listening to {}", CHANNEL);
+                                return postgresqlConnection.getNotifications();
+                            }))
+                            .concatWith(Flux.error(new IllegalStateException("Notifications connection closed")));
+                },
+                Connection::close);
+    }
+
+    /**
+     * The listening connection is kept open : it is not taken from the connection pool, nor from its metered wrapper.
+     */
+    private ConnectionFactory getListenerConnectionFactory() {
+        ConnectionFactory factory = connectionFactory;
+        while (factory instanceof Wrapped<?> wrapped && wrapped.unwrap() instanceof ConnectionFactory unwrapped) {
+            factory = unwrapped;
+        }
+        return factory;
+    }
+
+    public void onNotification(String payload) {
+        invalidationCounter.increment();
+        if (ALL_DOCUMENTS.equals(payload)) {
+            clear();
+            return;
+        }
+        try {
+            evict(UUID.fromString(payload));
+        } catch (IllegalArgumentException e) {
+            log.warn("Unexpected {} notification : {}", CHANNEL, payload);
+            clear();
+        }
+    }
+
+    @Override
+    public Publisher<Document> onAfterSave(Document document, OutboundRow outboundRow, SqlIdentifier table) {
+        evict(document.getId());
+        return Mono.just(document);
+    }
+
+    @Override
+    public Mono<Document> findById(UUID id) {
+        if (!isActive()) {
+            return documentRepository.findById(id);
+        }
+        return Mono.defer(() -> {
+            Document cached = get(id);
+            if (cached != null) {
+                hitCounter.increment();
+                return Mono.just(cached);
+            }
+            missCounter.increment();
+            long invalidationsBeforeRead = invalidations.get();
+            return documentRepository.findById(id)
+                    .doOnNext(document -> put(document, invalidationsBeforeRead));
+        });
+    }
+
+    @Override
+    public Mono<Boolean> existsByIdAndType(UUID id, DocumentType type) {
+        if (!isActive()) {
+            return documentRepository.existsByIdAndType(id, type);
+        }
+        return findById(id)
+                .map(document -> document.getType() == type)
+                .defaultIfEmpty(false);
+    }
+
+    @Override
+    public synchronized void evict(UUID id) {
+        invalidations.incrementAndGet();
+        CachedDocument removed = documents.remove(id);
+        if (removed != null) {
+            weight -= removed.weight();
+        }
+    }
+
+    @Override
+    public synchronized void clear() {
+        invalidations.incrementAndGet();
+        documents.clear();
+        weight = 0;
+    }
+
+    private boolean isActive() {
+        return enabled && listening;
+    }
+
+    private synchronized Document get(UUID id) {
+        CachedDocument cached = documents.get(id);
+        return cached == null ? null : copy(cached.document());
+    }
+
+    private synchronized void put(Document document, long invalidationsBeforeRead) {
+        if (invalidations.get() != invalidationsBeforeRead) {
+            return;
+        }
+        long documentWeight = weigh(document);
+        if (documentWeight > maxWeight) {
+            return;
+        }
+        CachedDocument previous = documents.put(document.getId(), new CachedDocument(copy(document), documentWeight));
+        weight += documentWeight - (previous == null ? 0 : previous.weight());
+        Iterator<Map.Entry<UUID, CachedDocument>> leastRecentlyUsed = documents.entrySet().iterator();
+        while (weight > maxWeight && leastRecentlyUsed.hasNext()) {
+            weight -= leastRecentlyUsed.next().getValue().weight();
+            leastRecentlyUsed.remove();
+            evictionCounter.increment();
+        }
+    }
+
+    private synchronized int size() {
+        return documents.size();
+    }
+
+    private synchronized long weight() {
+        return weight;
+    }
+
+    /**
+     * Rough estimate of the memory used by a document : its strings (2 bytes per char) + the fixed size fields.
+     */
+    private static long weigh(Document document) {
+        return DOCUMENT_BASE_WEIGHT + 2L * (length(document.getName())
+                + length(document.getContentType())
+                + length(document.getStoragePath())
+                + length(document.getCreatedBy())
+                + length(document.getUpdatedBy())
+                + (document.getMetadata() == null ? 0 : document.getMetadata().asString().length()));
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+
+    // the cached documents are shared : callers get their own copy
+    private static Document copy(Document document) {
+        return new Document(document.getId(), document.getName(), document.getType(), document.getContentType(),
+                document.getSize(), document.getParentId(), document.getStoragePath(), document.getMetadata(),
+                document.getCreatedAt(), document.getUpdatedAt(), document.getCreatedBy(), document.getUpdatedBy());
+    }
+}
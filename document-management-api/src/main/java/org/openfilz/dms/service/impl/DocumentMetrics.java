@@ -0,0 +1,36 @@
+package org.openfilz.dms.service.impl;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.openfilz.dms.utils.OperationTimers;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Latency of the document operations ({@code dms.document.operation}), tagged by operation and outcome. The range and
+ * zip downloads are timed until their whole content is sent, the download of a whole file until its content is opened.
+ */
+@Component
+public class DocumentMetrics {
+
+    public enum Operation {
+        CREATE_FOLDER, UPLOAD, UPLOAD_BATCH, DOWNLOAD, DOWNLOAD_RANGE, DOWNLOAD_ZIP, DELETE_FILES, DELETE_FOLDERS,
+        MOVE_FILES, MOVE_FOLDERS, COPY_FILES, COPY_FOLDERS, RENAME_FILE, RENAME_FOLDER, REPLACE_CONTENT
+    }
+
+    private final OperationTimers<Operation> timers;
+
+    public DocumentMetrics(MeterRegistry meterRegistry) {
+        this.timers = new OperationTimers<>(meterRegistry, "dms.document.operation", "Time of the document operations",
+                Operation.class, Tags.empty());
+    }
+
+    public <T> Mono<T> time(Operation operation, Mono<T> mono) {
+        return timers.time(operation, mono);
+    }
+
+    public <T> Flux<T> time(Operation operation, Flux<T> flux) {
+        return timers.time(operation, flux);
+    }
+}
@@ -6,51 +6,48 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import io.r2dbc.postgresql.codec.Json;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
-import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
 import org.openfilz.dms.dto.audit.*;
 import org.openfilz.dms.dto.request.*;
 import org.openfilz.dms.dto.response.*;
 import org.openfilz.dms.entity.Document;
-import org.openfilz.dms.entity.PhysicalDocument;
 import org.openfilz.dms.enums.AuditAction;
 import org.openfilz.dms.enums.DocumentType;
 import org.openfilz.dms.exception.DocumentNotFoundException;
 import org.openfilz.dms.exception.DuplicateNameException;
 import org.openfilz.dms.exception.OperationForbiddenException;
-import org.openfilz.dms.exception.StorageException;
+import org.openfilz.dms.repository.DocumentContentDAO;
 import org.openfilz.dms.repository.DocumentDAO;
 import org.openfilz.dms.repository.DocumentRepository;
 import org.openfilz.dms.service.AuditService;
+import org.openfilz.dms.service.DocumentCacheService;
 import org.openfilz.dms.service.DocumentService;
 import org.openfilz.dms.service.StorageService;
+import org.openfilz.dms.service.ZipService;
+import org.openfilz.dms.service.impl.DocumentMetrics.Operation;
 import org.openfilz.dms.utils.JsonUtils;
+import org.openfilz.dms.utils.SqlUtils;
 import org.openfilz.dms.utils.UserPrincipalExtractor;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.InputStreamResource;
 import org.springframework.core.io.Resource;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.codec.multipart.FilePart;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
+import java.time.Duration;
 import java.time.OffsetDateTime;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.UUID;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
 
 import static org.openfilz.dms.enums.AuditAction.*;
 import static org.openfilz.dms.enums.DocumentType.FILE;
 import static org.openfilz.dms.enums.DocumentType.FOLDER;
-import static org.openfilz.dms.utils.FileConstants.SLASH;
 
 @Slf4j
 @Service
@@ -64,9 +61,22 @@ public class DocumentServiceImpl implements DocumentService {
     private final AuditService auditService; // For auditing
     private final JsonUtils jsonUtils;
     private final DocumentDAO documentDAO;
+    private final ZipService zipService;
+    private final DocumentCacheService documentCacheService;
+    private final DocumentContentDAO documentContentDAO;
+    private final DocumentMetrics documentMetrics;
 
-    @Value("${piped.buffer.size:1024}")
-    private Integer pipedBufferSize;
+    @Value("${copy.storage.parallelism:8}")
+    private Integer copyStorageParallelism;
+
+    @Value("${copy.storage.max-retries:3}")
+    private Integer copyStorageMaxRetries;
+
+    @Value("${upload.batch.size:500}")
+    private Integer uploadBatchSize;
+
+    @Value("${upload.batch.parallelism:8}")
+    private Integer uploadBatchParallelism;
 
 
     @Override
@@ -75,71 +85,61 @@ public class DocumentServiceImpl implements DocumentService {
         if (request.name().contains(StorageService.FOLDER_SEPARATOR)) {
             return Mono.error(new OperationForbiddenException("Folder name should not contains any '/'"));
         }
-        return UserPrincipalExtractor.getConnectedUser(auth)
-                .flatMap(username -> doCreateFolder(request, username, null, false, null))
-                .flatMap(savedFolder -> Mono.just(new FolderResponse(savedFolder.getId(), savedFolder.getName(), savedFolder.getParentId())));
+        return documentMetrics.time(Operation.CREATE_FOLDER, UserPrincipalExtractor.getConnectedUser(auth)
+                .flatMap(username -> doCreateFolder(request, username))
+                .flatMap(savedFolder -> Mono.just(new FolderResponse(savedFolder.getId(), savedFolder.getName(), savedFolder.getParentId()))));
     }
 
-    private Mono<Document> doCreateFolder(CreateFolderRequest request, String username, Json folderMetadata,
-                                          boolean copy, UUID sourceFolderId) {
+    private Mono<Document> doCreateFolder(CreateFolderRequest request, String username) {
         log.debug("doCreateFolder folder {}", request);
-        return Mono.just(username).flatMap(_ -> documentExists(request.name(), request.parentId()))
-                .flatMap(exists -> {
-                    if (exists) {
-                        return Mono.error(new DuplicateNameException(FOLDER, request.name()));
-                    }
-                    if(request.parentId() != null) {
-                        return documentRepository.existsByIdAndType(request.parentId(), FOLDER).flatMap(folderExists->{
-                           if(!folderExists) {
-                               return Mono.error(new DocumentNotFoundException(FOLDER, request.parentId()));
-                           }
-                           return saveFolderInRepository(request, username, folderMetadata);
-                        });
-                    }
-                    return saveFolderInRepository(request, username, folderMetadata);
-                }).flatMap(savedFolder -> {
-                    if (sourceFolderId == null) {
-                        return auditService.logAction(username, copy ? AuditAction.COPY_FOLDER : AuditAction.CREATE_FOLDER, FOLDER, savedFolder.getId(), new CreateFolderAudit(request))
-                                .thenReturn(savedFolder);
+        Mono<Document> savedFolderMono = request.parentId() == null ? saveFolderInRepository(request, username)
+                : documentCacheService.existsByIdAndType(request.parentId(), FOLDER).flatMap(folderExists -> {
+                    if (!folderExists) {
+                        return Mono.error(new DocumentNotFoundException(FOLDER, request.parentId()));
                     }
-                    return auditService.logAction(username, copy ? AuditAction.COPY_FOLDER : AuditAction.CREATE_FOLDER, FOLDER, savedFolder.getId(), new CreateFolderAudit(request, sourceFolderId))
-                            .thenReturn(savedFolder);
+                    return saveFolderInRepository(request, username);
                 });
+        return savedFolderMono.flatMap(savedFolder -> auditService.logAction(username, AuditAction.CREATE_FOLDER, FOLDER, savedFolder.getId(), new CreateFolderAudit(request))
+                .thenReturn(savedFolder));
 
     }
 
-    private Mono<Document> saveFolderInRepository(CreateFolderRequest request, String username, Json folderMetadata) {
+    private Mono<Document> saveFolderInRepository(CreateFolderRequest request, String username) {
         Document folder = Document.builder()
+                .id(UUID.randomUUID())
                 .name(request.name())
                 .type(DocumentType.FOLDER)
                 .parentId(request.parentId())
-                .metadata(folderMetadata == null ? jsonUtils.emptyJson() : folderMetadata) // Empty JSON object
+                .metadata(jsonUtils.emptyJson()) // Empty JSON object
                 .createdAt(OffsetDateTime.now())
                 .updatedAt(OffsetDateTime.now())
                 .createdBy(username)
                 .updatedBy(username)
                 .build();
-        return documentRepository.save(folder);
+        return insertDocument(folder, false);
     }
 
-    private Mono<Boolean> documentExists(String documentName, UUID parentFolderId) {
-        return parentFolderId == null ?
-                documentExistsAtRootLevel(documentName) :
-                documentRepository.existsByNameAndParentId(documentName, parentFolderId);
-    }
-
-    private Mono<Boolean> documentExistsAtRootLevel(String documentName) {
-        return documentRepository.existsByNameAndParentIdIsNull(documentName);
+    /**
+     * Inserts a new document : unless duplicates are allowed, it fails with a {@link DuplicateNameException} when the
+     * name is already held in the parent folder (the unique index of the names is checked by the insert itself).
+     * The documents written by {@link DocumentDAO} are not seen by the save callback of the cache : they are evicted
+     * here, as the deleted ones are.
+     */
+    private Mono<Document> insertDocument(Document document, boolean allowDuplicateName) {
+        return documentDAO.insertDocument(document, allowDuplicateName)
+                .flatMap(inserted -> inserted ? Mono.just(document)
+                        : Mono.error(new DuplicateNameException(document.getType(), document.getName())))
+                .doOnNext(inserted -> documentCacheService.evict(inserted.getId()));
     }
 
     @Override
     @Transactional
     public Mono<UploadResponse> uploadDocument(FilePart filePart, Long contentLength, UUID parentFolderId, Map<String, Object> metadata, Boolean allowDuplicateFileNames, Authentication auth) {
         String originalFilename = filePart.filename().replace(StorageService.FILENAME_SEPARATOR, "");
-        return UserPrincipalExtractor.getConnectedUser(auth)
+        return documentMetrics.time(Operation.UPLOAD, UserPrincipalExtractor.getConnectedUser(auth)
                 .flatMap(username -> {
                     if (parentFolderId != null) {
-                        return documentRepository.existsByIdAndType(parentFolderId, FOLDER)
+                        return documentCacheService.existsByIdAndType(parentFolderId, FOLDER)
                                 .flatMap(exists -> {
                                     if (!exists) {
                                         return Mono.error(new DocumentNotFoundException(FOLDER, parentFolderId));
@@ -148,23 +148,14 @@ public class DocumentServiceImpl implements DocumentService {
                                 });
                     }
                     return doUploadDocument(filePart, contentLength, null, metadata, originalFilename, allowDuplicateFileNames, username);
-                });
+                }));
     }
 
     private Mono<UploadResponse> doUploadDocument(FilePart filePart, Long contentLength, UUID parentFolderId, Map<String, Object> metadata, String originalFilename, Boolean allowDuplicateFileNames, String username) {
-        if(allowDuplicateFileNames) {
-            return storageService.saveFile(filePart)
-                    .flatMap(storagePath -> saveDocumentInDatabase(filePart, contentLength, parentFolderId, metadata, originalFilename, username, storagePath))
-                    .flatMap(savedDoc -> auditUploadActionAndReturnResponse(parentFolderId, metadata, username, savedDoc));
-        }
-        Mono<Boolean> duplicateCheck = documentExists(originalFilename, parentFolderId);
-        return duplicateCheck.flatMap(exists -> {
-                    if (exists) {
-                        return Mono.error(new DuplicateNameException(FILE, originalFilename));
-                    }
-                    return storageService.saveFile(filePart);
-                })
-                .flatMap(storagePath -> saveDocumentInDatabase(filePart, contentLength, parentFolderId, metadata, originalFilename, username, storagePath))
+        // the name is checked by the insert of the document : the stored file is deleted if the name is already taken
+        return storageService.saveFile(filePart)
+                .flatMap(storagePath -> saveDocumentInDatabase(filePart, contentLength, parentFolderId, metadata, originalFilename, Boolean.TRUE.equals(allowDuplicateFileNames), username, storagePath)
+                        .onErrorResume(e -> deleteStoredFile(storagePath).then(Mono.error(e))))
                 .flatMap(savedDoc -> auditUploadActionAndReturnResponse(parentFolderId, metadata, username, savedDoc));
     }
 
@@ -174,16 +165,17 @@ public class DocumentServiceImpl implements DocumentService {
     }
 
 
-    private Mono<Document> saveDocumentInDatabase(FilePart filePart, Long contentLength, UUID parentFolderId, Map<String, Object> metadata, String originalFilename, String username, String storagePath) {
+    private Mono<Document> saveDocumentInDatabase(FilePart filePart, Long contentLength, UUID parentFolderId, Map<String, Object> metadata, String originalFilename, boolean allowDuplicateFileNames, String username, String storagePath) {
         if(contentLength == null) {
             return storageService.getFileLength(storagePath)
-                    .flatMap(fileLength -> saveDocumentInDB(filePart, storagePath, fileLength, parentFolderId, metadata, originalFilename, username));
+                    .flatMap(fileLength -> saveDocumentInDB(filePart, storagePath, fileLength, parentFolderId, metadata, originalFilename, allowDuplicateFileNames, username));
         }
-        return saveDocumentInDB(filePart, storagePath, contentLength, parentFolderId, metadata, originalFilename, username);
+        return saveDocumentInDB(filePart, storagePath, contentLength, parentFolderId, metadata, originalFilename, allowDuplicateFileNames, username);
     }
 
-    private Mono<Document> saveDocumentInDB(FilePart filePart, String storagePath, Long contentLength, UUID parentFolderId, Map<String, Object> metadata, String originalFilename, String username) {
+    private Mono<Document> saveDocumentInDB(FilePart filePart, String storagePath, Long contentLength, UUID parentFolderId, Map<String, Object> metadata, String originalFilename, boolean allowDuplicateFileNames, String username) {
         Document document = Document.builder()
+                .id(UUID.randomUUID())
                 .name(originalFilename)
                 .type(FILE)
                 .contentType(filePart.headers().getContentType() != null ? filePart.headers().getContentType().toString() : APPLICATION_OCTET_STREAM)
@@ -196,233 +188,407 @@ public class DocumentServiceImpl implements DocumentService {
                 .createdBy(username)
                 .updatedBy(username)
                 .build();
-        return documentRepository.save(document);
+        return insertDocument(document, allowDuplicateFileNames);
+    }
+
+    /**
+     * A file of a batch upload, with its target
+     */
+    private record BatchUpload(int index, FilePart filePart, String name, UUID parentId, Map<String, Object> metadata) {
+        TargetName target() {
+            return new TargetName(parentId, name);
+        }
+    }
+
+    private record TargetName(UUID parentId, String name) {
+    }
+
+    private record StoredUpload(BatchUpload upload, Document document) {
+    }
+
+    @Override
+    public Flux<BatchUploadResult> uploadDocumentsInBatch(Flux<FilePart> fileParts, Map<String, MultipleUploadFileParameterAttributes> parametersByFilename, Boolean allowDuplicateFileNames, Authentication auth) {
+        boolean allowDuplicates = Boolean.TRUE.equals(allowDuplicateFileNames);
+        return documentMetrics.time(Operation.UPLOAD_BATCH, UserPrincipalExtractor.getConnectedUser(auth)
+                .flatMapMany(username -> fileParts.index()
+                        .map(indexedPart -> toBatchUpload(indexedPart.getT1().intValue(), indexedPart.getT2(),
+                                parametersByFilename.get(indexedPart.getT2().filename())))
+                        .buffer(uploadBatchSize)
+                        // one batch at a time : the names created by a batch are seen by the checks of the next ones
+                        .concatMap(batch -> uploadBatch(batch, allowDuplicates, username))));
+    }
+
+    private BatchUpload toBatchUpload(int index, FilePart filePart, MultipleUploadFileParameterAttributes parameters) {
+        return new BatchUpload(index, filePart, filePart.filename().replace(StorageService.FILENAME_SEPARATOR, ""),
+                parameters != null ? parameters.parentFolderId() : null,
+                parameters != null ? parameters.metadata() : null);
+    }
+
+    /**
+     * Checks the targets of the files of a batch in 2 queries, stores the accepted files concurrently, then creates
+     * their documents and their audit logs with multi-row inserts
+     * @return the result of each file of the batch, in the order of the request
+     */
+    private Flux<BatchUploadResult> uploadBatch(List<BatchUpload> batch, boolean allowDuplicates, String username) {
+        List<BatchUploadResult> results = Collections.synchronizedList(new ArrayList<>(batch.size()));
+        return checkBatchTargets(batch, allowDuplicates, results)
+                .flatMapMany(accepted -> storeBatch(accepted, username, results))
+                .collectList()
+                .flatMap(stored -> createBatchDocuments(stored, allowDuplicates, username, results))
+                .thenMany(Flux.defer(() -> Flux.fromStream(results.stream().sorted(Comparator.comparing(BatchUploadResult::index)))));
+    }
+
+    /**
+     * Rejects the files whose parent folder does not exist, and (unless allowed) the files whose name is already used
+     * in their parent folder, or by a previous file of the batch : the names are checked again by the insert of the
+     * documents, this check only avoids storing the files which would be rejected
+     * @return the accepted files
+     */
+    private Mono<List<BatchUpload>> checkBatchTargets(List<BatchUpload> batch, boolean allowDuplicates, List<BatchUploadResult> results) {
+        Set<UUID> parentIds = batch.stream().map(BatchUpload::parentId).filter(Objects::nonNull).collect(Collectors.toSet());
+        return documentDAO.getFolderIds(parentIds).collect(Collectors.toSet())
+                .flatMap(folderIds -> {
+                    List<BatchUpload> inExistingFolder = new ArrayList<>(batch.size());
+                    for (BatchUpload upload : batch) {
+                        if (upload.parentId() == null || folderIds.contains(upload.parentId())) {
+                            inExistingFolder.add(upload);
+                        } else {
+                            results.add(toFailedUpload(upload, new DocumentNotFoundException(FOLDER, upload.parentId())));
+                        }
+                    }
+                    if (allowDuplicates || inExistingFolder.isEmpty()) {
+                        return Mono.just(inExistingFolder);
+                    }
+                    return documentDAO.findNameConflicts(inExistingFolder.stream()
+                                    .map(upload -> Document.builder().name(upload.name()).parentId(upload.parentId()).build())
+                                    .toList())
+                            .map(conflict -> new TargetName(conflict.getParentId(), conflict.getName()))
+                            .collect(Collectors.toCollection(HashSet::new))
+                            .map(usedNames -> {
+                                List<BatchUpload> accepted = new ArrayList<>(inExistingFolder.size());
+                                for (BatchUpload upload : inExistingFolder) {
+                                    if (usedNames.add(upload.target())) {
+                                        accepted.add(upload);
+                                    } else {
+                                        results.add(toFailedUpload(upload, new DuplicateNameException(FILE, upload.name())));
+                                    }
+                                }
+                                return accepted;
+                            });
+                });
+    }
+
+    /**
+     * Stores the files, {@code upload.batch.parallelism} at a time : a file which cannot be stored is reported as failed
+     */
+    private Flux<StoredUpload> storeBatch(List<BatchUpload> accepted, String username, List<BatchUploadResult> results) {
+        return Flux.fromIterable(accepted)
+                .flatMap(upload -> storageService.saveFile(upload.filePart())
+                        .flatMap(storagePath -> storageService.getFileLength(storagePath)
+                                .map(size -> new StoredUpload(upload, toBatchDocument(upload, storagePath, size, username)))
+                                .onErrorResume(e -> deleteStoredFile(storagePath).then(Mono.error(e))))
+                        .onErrorResume(e -> {
+                            log.warn("Batch upload of {} failed: {}", upload.name(), e.getMessage());
+                            results.add(toFailedUpload(upload, e));
+                            return Mono.empty();
+                        }), uploadBatchParallelism);
+    }
+
+    private Document toBatchDocument(BatchUpload upload, String storagePath, Long size, String username) {
+        OffsetDateTime now = OffsetDateTime.now();
+        return Document.builder()
+                .id(UUID.randomUUID())
+                .name(upload.name())
+                .type(FILE)
+                .contentType(upload.filePart().headers().getContentType() != null ? upload.filePart().headers().getContentType().toString() : APPLICATION_OCTET_STREAM)
+                .size(size)
+                .parentId(upload.parentId())
+                .storagePath(storagePath)
+                .metadata(upload.metadata() == null ? jsonUtils.emptyJson() : jsonUtils.toJson(upload.metadata()))
+                .createdAt(now)
+                .updatedAt(now)
+                .createdBy(username)
+                .updatedBy(username)
+                .build();
+    }
+
+    /**
+     * Inserts the documents of the stored files, then their audit logs. The files whose name has been taken since the
+     * check of the batch are rejected by the insert. If the documents cannot be inserted, the stored files are deleted
+     * and reported as failed.
+     */
+    private Mono<Void> createBatchDocuments(List<StoredUpload> stored, boolean allowDuplicates, String username, List<BatchUploadResult> results) {
+        if (stored.isEmpty()) {
+            return Mono.empty();
+        }
+        return documentDAO.insertDocuments(stored.stream().map(StoredUpload::document).toList(), allowDuplicates)
+                .collect(Collectors.toSet())
+                .onErrorResume(e -> {
+                    log.error("Creation of {} uploaded documents failed: {}", stored.size(), e.getMessage());
+                    stored.forEach(s -> results.add(toFailedUpload(s.upload(), e)));
+                    return Flux.fromIterable(stored)
+                            .flatMap(s -> deleteStoredFile(s.document().getStoragePath()), uploadBatchParallelism)
+                            .then(Mono.empty());
+                })
+                .flatMap(rejectedIds -> {
+                    List<StoredUpload> created = new ArrayList<>(stored.size());
+                    List<StoredUpload> rejected = new ArrayList<>();
+                    for (StoredUpload s : stored) {
+                        if (rejectedIds.contains(s.document().getId())) {
+                            rejected.add(s);
+                            results.add(toFailedUpload(s.upload(), new DuplicateNameException(FILE, s.document().getName())));
+                        } else {
+                            created.add(s);
+                            documentCacheService.evict(s.document().getId());
+                            results.add(BatchUploadResult.uploaded(s.upload().index(), s.upload().filePart().filename(),
+                                    new UploadResponse(s.document().getId(), s.document().getName(), s.document().getContentType(), s.document().getSize())));
+                        }
+                    }
+                    return Flux.fromIterable(rejected)
+                            .flatMap(s -> deleteStoredFile(s.document().getStoragePath()), uploadBatchParallelism)
+                            .then(created.isEmpty() ? Mono.empty() : auditService.logActions(created.stream()
+                                    .map(s -> new AuditLog(s.document().getId(), null, username, UPLOAD_DOCUMENT, FILE,
+                                            new UploadAudit(s.document().getName(), s.document().getParentId(), s.upload().metadata())))
+                                    .toList()));
+                });
+    }
+
+    private Mono<Void> deleteStoredFile(String storagePath) {
+        return storageService.deleteFile(storagePath)
+                .onErrorResume(e -> {
+                    log.warn("Could not delete stored file {}: {}", storagePath, e.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    private static BatchUploadResult toFailedUpload(BatchUpload upload, Throwable e) {
+        HttpStatus status = switch (e) {
+            case DocumentNotFoundException _ -> HttpStatus.NOT_FOUND;
+            case DuplicateNameException _ -> HttpStatus.CONFLICT;
+            default -> HttpStatus.INTERNAL_SERVER_ERROR;
+        };
+        return BatchUploadResult.failed(upload.index(), upload.filePart().filename(), status.value(), e.getMessage());
     }
 
     @Override
     @Transactional
     public Mono<Resource> downloadDocument(UUID documentId, Authentication auth) {
-        return documentRepository.findById(documentId)
+        return documentMetrics.time(Operation.DOWNLOAD, documentCacheService.findById(documentId)
                 .switchIfEmpty(Mono.error(new DocumentNotFoundException(documentId)))
                 .flatMap(doc -> doc.getType() == FILE ?
                         storageService.loadFile(doc.getStoragePath())
-                        : zipFolder(documentDAO.getChildren(documentId)))
+                        : Mono.error(new OperationForbiddenException("ID " + documentId + " is a folder. Download it as a zip.")))
                 .flatMap(r ->
                         UserPrincipalExtractor.getConnectedUser(auth)
                                 .flatMap(username ->
                                         auditService.logAction(username, AuditAction.DOWNLOAD_DOCUMENT, FILE, documentId))
-                                .thenReturn(r));
-    }
-
-    private Mono<? extends Resource> zipFolder(Flux<ChildElementInfo> children) {
-        try {
-            PipedInputStream pipedInputStream = new PipedInputStream(pipedBufferSize);
-            PipedOutputStream pipedOutputStream = new PipedOutputStream(pipedInputStream);
-            ZipArchiveOutputStream zos = new ZipArchiveOutputStream(pipedOutputStream);
-            children.concatMap(element -> addDocumentToZip(element, zos))
-                    .then(Mono.just(true))
-                    .doOnTerminate(() -> closeOutputStream(zos))
-                    .subscribeOn(Schedulers.boundedElastic())
-                    .subscribe(
-                            null,
-                            error -> log.error("Error during zip creation", error)
-                    );
-
-            return Mono.just(new InputStreamResource(pipedInputStream));
-        } catch (IOException e) {
-            return Mono.error(new StorageException("Failed to create piped stream", e));
-        }
+                                .thenReturn(r)));
     }
 
-    private Mono<Boolean> addDocumentToZip(ChildElementInfo element, ZipArchiveOutputStream zos) {
-        if(element.getType().equals(FILE)) {
-            return addFileToZip(element, element.getPath(), zos);
-        }
-        return addFolderToZip(element, zos);
+    @Override
+    public Flux<DataBuffer> downloadFolderAsZip(UUID folderId, Authentication auth) {
+        return documentMetrics.time(Operation.DOWNLOAD_ZIP, documentCacheService.findById(folderId)
+                .switchIfEmpty(Mono.error(new DocumentNotFoundException(folderId)))
+                .filter(doc -> doc.getType() == FOLDER)
+                .switchIfEmpty(Mono.error(new OperationForbiddenException("ID " + folderId + " is a file. Use the download API.")))
+                .flatMap(_ -> UserPrincipalExtractor.getConnectedUser(auth)
+                        .flatMap(username -> auditService.logAction(username, AuditAction.DOWNLOAD_DOCUMENT, FOLDER, folderId)))
+                .thenMany(Flux.defer(() -> zipService.zip(documentDAO.getChildren(folderId)))));
+    }
+
+    @Override
+    public Flux<DataBuffer> downloadDocument(UUID documentId, long offset, long length, Authentication auth) {
+        return documentMetrics.time(Operation.DOWNLOAD_RANGE, documentCacheService.findById(documentId)
+                .switchIfEmpty(Mono.error(new DocumentNotFoundException(documentId)))
+                .flatMap(doc -> doc.getType() == FILE ? Mono.just(doc)
+                        : Mono.error(new OperationForbiddenException("Byte ranges can only be downloaded from a file")))
+                // a download resumed or streamed by ranges is audited only once, on its first range
+                .flatMap(doc -> offset > 0 ? Mono.just(doc)
+                        : UserPrincipalExtractor.getConnectedUser(auth)
+                                .flatMap(username ->
+                                        auditService.logAction(username, AuditAction.DOWNLOAD_DOCUMENT, FILE, documentId))
+                                .thenReturn(doc))
+                .flatMapMany(doc -> storageService.loadFile(doc.getStoragePath(), offset, length)));
     }
 
     @Override
     @Transactional
     public Mono<Void> deleteFiles(DeleteRequest request, Authentication auth) {
-        return UserPrincipalExtractor.getConnectedUser(auth).flatMap(username -> Flux.fromIterable(request.documentIds())
+        return documentMetrics.time(Operation.DELETE_FILES, UserPrincipalExtractor.getConnectedUser(auth).flatMap(username -> Flux.fromIterable(request.documentIds())
                 .flatMap(docId -> documentRepository.findById(docId)
                         .switchIfEmpty(Mono.error(new DocumentNotFoundException(docId)))
                         .filter(doc -> doc.getType() == FILE) // Ensure it's a file
                         .switchIfEmpty(Mono.error(new OperationForbiddenException("ID " + docId + " is a folder. Use delete folders API.")))
                         .flatMap(document -> storageService.deleteFile(document.getStoragePath())
-                                .then(documentRepository.delete(document)))
+                                .then(documentRepository.delete(document))
+                                .doOnSuccess(_ -> documentCacheService.evict(docId)))
                         .then(auditService.logAction(username, AuditAction.DELETE_FILE, FILE, docId))
                 )
-                .then());
+                .then()));
     }
 
 
     @Override
     @Transactional
     public Mono<Void> deleteFolders(DeleteRequest request, Authentication auth) {
-        return UserPrincipalExtractor.getConnectedUser(auth).flatMap(username -> Flux.fromIterable(request.documentIds())
-                .flatMap(folderId -> deleteFolderRecursive(folderId, username))
-                .then()
-        );
-    }
-
-    private Mono<Void> deleteFolderRecursive(UUID folderId, String username) {
-        return documentRepository.findById(folderId)
-                .switchIfEmpty(Mono.error(new DocumentNotFoundException(FOLDER, folderId)))
-                .filter(doc -> doc.getType() == DocumentType.FOLDER)
-                .switchIfEmpty(Mono.error(new OperationForbiddenException("Not a folder: " + folderId)))
-                .flatMap(folder -> {
-                    // 1. Delete child files
-                    Mono<Void> deleteChildFiles = documentRepository.findByParentIdAndType(folderId, FILE)
-                            .flatMap(file -> storageService.deleteFile(file.getStoragePath())
-                                    .then(documentRepository.delete(file))
-                                    .then(auditService.logAction(username, DELETE_FILE_CHILD, FILE, file.getId(), new DeleteAudit(folderId)))
-                            ).then();
-
-                    // 2. Recursively delete child folders
-                    Mono<Void> deleteChildFolders = documentRepository.findByParentIdAndType(folderId, DocumentType.FOLDER)
-                            .flatMap(childFolder -> deleteFolderRecursive(childFolder.getId(), username))
-                            .then();
-
-                    // 3. Delete the folder itself from DB (and storage if it had a physical representation)
-                    return Mono.when(deleteChildFiles, deleteChildFolders)
-                            .then(documentRepository.delete(folder))
-                            .then(auditService.logAction(username, AuditAction.DELETE_FOLDER, FOLDER, folderId));
-                });
+        List<UUID> folderIds = request.documentIds().stream().distinct().toList();
+        return documentMetrics.time(Operation.DELETE_FOLDERS, UserPrincipalExtractor.getConnectedUser(auth).flatMap(username -> documentRepository.findAllById(folderIds)
+                .collectMap(Document::getId, Document::getType)
+                .flatMap(types -> {
+                    for (UUID folderId : folderIds) {
+                        if (!types.containsKey(folderId)) {
+                            return Mono.error(new DocumentNotFoundException(FOLDER, folderId));
+                        }
+                        if (types.get(folderId) != FOLDER) {
+                            return Mono.error(new OperationForbiddenException("Not a folder: " + folderId));
+                        }
+                    }
+                    // the whole subtrees are deleted in one statement, the contents of their files are purged in background
+                    return documentDAO.deleteFoldersRecursive(folderIds)
+                            .doOnNext(deleted -> documentCacheService.evict(deleted.getId()))
+                            .map(deleted -> deleted.getType() == FILE
+                                    ? new AuditLog(deleted.getId(), null, username, DELETE_FILE_CHILD, FILE, new DeleteAudit(deleted.getParentId()))
+                                    : new AuditLog(deleted.getId(), null, username, DELETE_FOLDER, FOLDER, null))
+                            .collectList()
+                            .flatMap(auditService::logActions);
+                })));
     }
 
 
     @Override
     @Transactional
     public Mono<Void> moveFiles(MoveRequest request, Authentication auth) {
-        if(request.targetFolderId() == null) {
-            return UserPrincipalExtractor.getConnectedUser(auth).flatMap(username ->moveFiles(request, username));
-        }
-
-        return UserPrincipalExtractor.getConnectedUser(auth).flatMap(username -> {
-            // 1. Validate target folder exists and is a folder
-            Mono<Document> targetFolderMono = documentRepository.findById(request.targetFolderId())
-                    .switchIfEmpty(Mono.error(new DocumentNotFoundException(FOLDER, request.targetFolderId())))
-                    .filter(doc -> doc.getType() == DocumentType.FOLDER)
-                    .switchIfEmpty(Mono.error(new OperationForbiddenException("Target is not a folder: " + request.targetFolderId())));
-
-            return targetFolderMono.flatMap(_ ->
-                    moveFiles(request, username)
-            );
-        });
-    }
-
-    private Mono<Void> moveFiles(MoveRequest request, String username) {
-        return Flux.fromIterable(request.documentIds())
-                .flatMap(fileId -> documentRepository.findById(fileId)
-                        .switchIfEmpty(Mono.error(new DocumentNotFoundException(FILE, fileId)))
-                        .filter(doc -> doc.getType() == FILE) // Ensure it's a file being moved
-                        .switchIfEmpty(Mono.error(new OperationForbiddenException("Cannot move folder using file move API: " + fileId)))
-                        .flatMap(fileToMove -> {
-                            // Check for name collision in target folder
-                            return moveDocument(request, username, fileToMove)
-                                    .flatMap(movedFile -> auditService.logAction(username, MOVE_FILE, FILE, movedFile.getId(),
-                                            new MoveAudit(request.targetFolderId())));
-                        })
-                )
-                .then();
+        return documentMetrics.time(Operation.MOVE_FILES, UserPrincipalExtractor.getConnectedUser(auth)
+                .flatMap(username -> checkMoveTarget(request.targetFolderId())
+                        .then(moveDocuments(request, FILE, username))));
     }
 
     @Override
     @Transactional
     public Mono<Void> moveFolders(MoveRequest request, Authentication auth) {
-        return UserPrincipalExtractor.getConnectedUser(auth).flatMap(username -> {
-            Mono<Document> targetFolderMono = documentRepository.findById(request.targetFolderId())
-                    .switchIfEmpty(Mono.error(new DocumentNotFoundException(FOLDER, request.targetFolderId())))
-                    .filter(doc -> doc.getType() == DocumentType.FOLDER)
-                    .switchIfEmpty(Mono.error(new OperationForbiddenException("Target is not a folder: " + request.targetFolderId())));
-
-            return targetFolderMono.flatMap(targetFolder ->
-                    Flux.fromIterable(request.documentIds())
-                            .flatMap(folderIdToMove -> {
-                                if (folderIdToMove.equals(request.targetFolderId())) {
-                                    return Mono.error(new OperationForbiddenException("Cannot move a folder into itself."));
-                                }
-                                // Check for moving a parent into its child (cycle) - more complex check needed for full hierarchy
-                                Mono<Boolean> isMovingToDescendant = isDescendant(request.targetFolderId(), folderIdToMove);
-
-                                return isMovingToDescendant.flatMap(isDescendant -> {
-                                    if (isDescendant) {
-                                        return Mono.error(new OperationForbiddenException("Cannot move a folder into one of its descendants."));
-                                    }
-
-                                    return documentRepository.findById(folderIdToMove)
-                                            .switchIfEmpty(Mono.error(new DocumentNotFoundException(FOLDER, folderIdToMove)))
-                                            .filter(doc -> doc.getType() == DocumentType.FOLDER)
-                                            .switchIfEmpty(Mono.error(new OperationForbiddenException("Cannot move file using folder move API: " + folderIdToMove)))
-                                            .flatMap(folderToMove -> {
-                                                // Check for name collision in target folder
-                                                return moveDocument(request, username, folderToMove)
-                                                        .flatMap(movedFolder -> auditService.logAction(username, MOVE_FOLDER, FOLDER, movedFolder.getId(),
-                                                                new MoveAudit(request.targetFolderId())));
-                                            });
-                                });
-                            })
-                            .then()
-            );
-        });
+        if (request.targetFolderId() == null) {
+            return Mono.error(new IllegalArgumentException("The target folder of the folders to move is required"));
+        }
+        return documentMetrics.time(Operation.MOVE_FOLDERS, UserPrincipalExtractor.getConnectedUser(auth)
+                .flatMap(username -> checkMoveTarget(request.targetFolderId())
+                        .then(moveDocuments(request, FOLDER, username))));
     }
 
-    private Mono<Document> moveDocument(MoveRequest request, String username, Document documentToMove) {
-        if(documentToMove.getParentId() == request.targetFolderId()) {
-            return Mono.error(new DuplicateNameException("Impossible to move a document in the same folder : you may want to use /copy instead"));
-        }
-        if(request.allowDuplicateFileNames() != null && request.allowDuplicateFileNames()) {
-            return doMoveDocuments(request, username, documentToMove);
+    private Mono<Void> checkMoveTarget(UUID targetFolderId) {
+        if (targetFolderId == null) {
+            return Mono.empty();
         }
-        return documentRepository.existsByNameAndParentId(documentToMove.getName(), request.targetFolderId())
-                .flatMap(exists -> {
-                    if (exists) {
-                        return Mono.error(new DuplicateNameException(
-                                "A file/folder with name '" + documentToMove.getName() + "' already exists in the target folder."));
-                    }
-                    return doMoveDocuments(request, username, documentToMove);
-                });
+        return documentCacheService.findById(targetFolderId)
+                .switchIfEmpty(Mono.error(new DocumentNotFoundException(FOLDER, targetFolderId)))
+                .filter(doc -> doc.getType() == DocumentType.FOLDER)
+                .switchIfEmpty(Mono.error(new OperationForbiddenException("Target is not a folder: " + targetFolderId)))
+                .then();
     }
 
-    private Mono<Document> doMoveDocuments(MoveRequest request, String username, Document documentToMove) {
-        documentToMove.setParentId(request.targetFolderId());
-        documentToMove.setUpdatedAt(OffsetDateTime.now());
-        documentToMove.setUpdatedBy(username);
-        return documentRepository.save(documentToMove);
+    /**
+     * Moves a set of files or folders with a few set-based statements, whatever their number : the documents are read
+     * in one query, the cycles are checked with one query, then the documents are re-parented with one update (see
+     * {@link #groupByNesting(Collection)}), which fails on the unique index of the names if a name is already held in
+     * the target folder, and audited in one batch.
+     */
+    private Mono<Void> moveDocuments(MoveRequest request, DocumentType type, String username) {
+        List<UUID> ids = request.documentIds() == null ? List.of() : request.documentIds().stream().distinct().toList();
+        if (ids.isEmpty()) {
+            return Mono.empty();
+        }
+        UUID targetFolderId = request.targetFolderId();
+        if (type == FOLDER && ids.contains(targetFolderId)) {
+            return Mono.error(new OperationForbiddenException("Cannot move a folder into itself."));
+        }
+        boolean allowDuplicates = Boolean.TRUE.equals(request.allowDuplicateFileNames());
+        return documentDAO.getElementsToMove(ids)
+                .collectMap(DocumentDAO.ElementToMove::id)
+                .flatMap(elements -> checkElementsToMove(ids, elements, type, targetFolderId)
+                        .then(Mono.defer(() -> checkMoveCycle(ids, type, targetFolderId)))
+                        .then(Mono.defer(() -> allowDuplicates ? Mono.empty() : checkMovedNamesDistinct(elements.values())))
+                        .then(Mono.defer(() -> Flux.fromIterable(groupByNesting(elements.values()))
+                                .concatMap(levelIds -> documentDAO.moveDocuments(levelIds, targetFolderId, username, allowDuplicates)
+                                        .doOnSuccess(_ -> levelIds.forEach(documentCacheService::evict)))
+                                .onErrorMap(SqlUtils::isDuplicateName, _ -> new DuplicateNameException(
+                                        "A file/folder with the same name already exists in the target folder."))
+                                .then()))
+                        .then(Mono.defer(() -> auditService.logActions(ids.stream()
+                                .map(id -> new AuditLog(id, null, username, type == FILE ? MOVE_FILE : MOVE_FOLDER, type,
+                                        new MoveAudit(targetFolderId)))
+                                .toList()))));
+    }
+
+    private Mono<Void> checkElementsToMove(List<UUID> ids, Map<UUID, DocumentDAO.ElementToMove> elements, DocumentType type, UUID targetFolderId) {
+        for (UUID id : ids) {
+            DocumentDAO.ElementToMove element = elements.get(id);
+            if (element == null) {
+                return Mono.error(new DocumentNotFoundException(type, id));
+            }
+            if (element.type() != type) {
+                return Mono.error(new OperationForbiddenException(type == FILE
+                        ? "Cannot move folder using file move API: " + id
+                        : "Cannot move file using folder move API: " + id));
+            }
+            if (Objects.equals(element.parentId(), targetFolderId)) {
+                return Mono.error(new DuplicateNameException("Impossible to move a document in the same folder : you may want to use /copy instead"));
+            }
+        }
+        return Mono.empty();
     }
 
-    // Helper to check if 'potentialChildId' is a descendant of 'potentialParentId'
-    private Mono<Boolean> isDescendant(UUID potentialChildId, UUID potentialParentId) {
-        if (potentialChildId == null || potentialParentId == null) {
-            return Mono.just(false);
+    private Mono<Void> checkMoveCycle(List<UUID> ids, DocumentType type, UUID targetFolderId) {
+        if (type != FOLDER || targetFolderId == null) {
+            return Mono.empty();
         }
-        if (potentialChildId.equals(potentialParentId)) { // A folder cannot be its own descendant in this context.
-            return Mono.just(true); // Or false depending on definition, for move, this is an invalid state
+        return documentDAO.isDescendantOfAny(targetFolderId, ids)
+                .flatMap(isDescendant -> isDescendant
+                        ? Mono.error(new OperationForbiddenException("Cannot move a folder into one of its descendants."))
+                        : Mono.empty());
+    }
+
+    /**
+     * Checks that the moved documents have distinct names
+     */
+    private Mono<Void> checkMovedNamesDistinct(Collection<DocumentDAO.ElementToMove> elements) {
+        Set<String> names = new HashSet<>();
+        for (DocumentDAO.ElementToMove element : elements) {
+            if (!names.add(element.name())) {
+                return Mono.error(new DuplicateNameException(
+                        "Several documents named '" + element.name() + "' cannot be moved into the same folder."));
+            }
         }
-
-        return documentRepository.findById(potentialChildId)
-                .flatMap(childDoc -> {
-                    if (childDoc.getParentId() == null) {
-                        return Mono.just(false); // Reached root without finding potentialParentId
-                    }
-                    if (childDoc.getParentId().equals(potentialParentId)) {
-                        return Mono.just(true); // Found potentialParentId as direct parent
-                    }
-                    return isDescendant(childDoc.getParentId(), potentialParentId); // Recurse up
-                })
-                .defaultIfEmpty(false); // Child not found, so not a descendant
+        return Mono.empty();
+    }
+
+    /**
+     * Groups the moved documents by their number of moved ancestors : the ancestry of the descendants of a moved folder
+     * is rewritten by a trigger for each moved row, so a folder and its descendants cannot be moved by the same
+     * statement. Most often, no moved document is inside another one and there is a single group.
+     * @return the ids of the documents of each group, the outermost documents first
+     */
+    private static Collection<List<UUID>> groupByNesting(Collection<DocumentDAO.ElementToMove> elements) {
+        Set<String> movedLabels = elements.stream()
+                .map(element -> element.id().toString().replace("-", ""))
+                .collect(Collectors.toSet());
+        Map<Long, List<UUID>> idsByNesting = new TreeMap<>();
+        for (DocumentDAO.ElementToMove element : elements) {
+            String[] labels = element.treePath() == null ? new String[0] : element.treePath().split("\\.");
+            // the last label is the document itself
+            long nesting = Arrays.stream(labels, 0, Math.max(labels.length - 1, 0)).filter(movedLabels::contains).count();
+            idsByNesting.computeIfAbsent(nesting, _ -> new ArrayList<>()).add(element.id());
+        }
+        return idsByNesting.values();
     }
 
 
     @Override
     @Transactional
     public Flux<CopyResponse> copyFiles(CopyRequest request, Authentication auth) {
-        return UserPrincipalExtractor.getConnectedUser(auth).flatMapMany(username -> {
+        return documentMetrics.time(Operation.COPY_FILES, UserPrincipalExtractor.getConnectedUser(auth).flatMapMany(username -> {
             if (request.targetFolderId() == null) {
                 return doCopyFiles(request, username);
             }
-            Mono<Document> targetFolderMono = documentRepository.findById(request.targetFolderId())
+            Mono<Document> targetFolderMono = documentCacheService.findById(request.targetFolderId())
                     .switchIfEmpty(Mono.error(new DocumentNotFoundException(FOLDER, request.targetFolderId())))
                     .filter(doc -> doc.getType() == DocumentType.FOLDER)
                     .switchIfEmpty(Mono.error(new OperationForbiddenException("Target is not a folder: " + request.targetFolderId())));
@@ -430,7 +596,7 @@ public class DocumentServiceImpl implements DocumentService {
             return targetFolderMono.flatMapMany(_ ->
                     doCopyFiles(request, username)
             );
-        });
+        }));
     }
 
     private Flux<CopyResponse> doCopyFiles(CopyRequest request, String username) {
@@ -439,11 +605,11 @@ public class DocumentServiceImpl implements DocumentService {
                         .switchIfEmpty(Mono.error(new DocumentNotFoundException(FILE, fileIdToCopy)))
                         .filter(doc -> doc.getType() == FILE)
                         .switchIfEmpty(Mono.error(new OperationForbiddenException("Cannot copy folder using file copy API: " + fileIdToCopy)))
-                        .flatMap(originalFile -> raiseErrorIfExists(originalFile.getName(), request.targetFolderId(), request.allowDuplicateFileNames())
-                                .flatMap(filename -> storageService.copyFile(originalFile.getStoragePath())
+                        .flatMap(originalFile -> storageService.copyFile(originalFile.getStoragePath())
                                         .flatMap(newStoragePath -> {
                                             // 2. Create new DB entry for the copied file
                                             Document copiedFile = Document.builder()
+                                                    .id(UUID.randomUUID())
                                                     .name(originalFile.getName()) // Handle potential name collision, e.g., "file (copy).txt"
                                                     .type(FILE)
                                                     .contentType(originalFile.getContentType())
@@ -456,37 +622,22 @@ public class DocumentServiceImpl implements DocumentService {
                                                     .createdBy(username)
                                                     .updatedBy(username)
                                                     .build();
-                                            return documentRepository.save(copiedFile);
+                                            return insertDocument(copiedFile, Boolean.TRUE.equals(request.allowDuplicateFileNames()))
+                                                    .onErrorResume(e -> deleteStoredFile(newStoragePath).then(Mono.error(e)));
                                         })
                                         .flatMap(cf -> auditService.logAction(username, COPY_FILE, FILE, cf.getId(),
                                                         new CopyAudit(fileIdToCopy, request.targetFolderId()))
-                                                .thenReturn(new CopyResponse(fileIdToCopy, cf.getId()))))
+                                                .thenReturn(new CopyResponse(fileIdToCopy, cf.getId())))
                         )
                 );
     }
 
 
-    // check if alrerady exists in DB
-    private Mono<String> raiseErrorIfExists(String originalName, UUID parentId, Boolean allowDuplicateFileNames) {
-        if(allowDuplicateFileNames != null && allowDuplicateFileNames) {
-            return Mono.just(originalName);
-        }
-        Mono<Boolean> existsCheck = documentExists(originalName, parentId);
-
-        return existsCheck.flatMap(exists -> {
-            if (exists) {
-                return Mono.error(new DuplicateNameException(FOLDER, originalName));
-            }
-            return Mono.just(originalName);
-        });
-    }
-
-
     @Override
     @Transactional
     public Flux<UUID> copyFolders(CopyRequest request, Authentication auth) {
-        return UserPrincipalExtractor.getConnectedUser(auth).flatMapMany(username -> {
-            Mono<Document> targetFolderMono = documentRepository.findById(request.targetFolderId())
+        return documentMetrics.time(Operation.COPY_FOLDERS, UserPrincipalExtractor.getConnectedUser(auth).flatMapMany(username -> {
+            Mono<Document> targetFolderMono = documentCacheService.findById(request.targetFolderId())
                     .switchIfEmpty(Mono.error(new DocumentNotFoundException(FOLDER, request.targetFolderId())))
                     .filter(doc -> doc.getType() == DocumentType.FOLDER)
                     .switchIfEmpty(Mono.error(new OperationForbiddenException("Target is not a folder: " + request.targetFolderId())));
@@ -501,89 +652,91 @@ public class DocumentServiceImpl implements DocumentService {
                                 return copyFolderRecursive(folderIdToCopy, request.targetFolderId(), request.allowDuplicateFileNames(), username);
                             })
             );
-        });
+        }));
     }
 
     private Flux<UUID> copyFolderRecursive(UUID sourceFolderId, UUID targetParentFolderId, Boolean allowDuplicateFileNames, String username) {
         return documentRepository.findById(sourceFolderId)
                 .switchIfEmpty(Mono.error(new DocumentNotFoundException(FOLDER, sourceFolderId)))
-                .flatMapMany(sourceFolder -> {
-                    // Generate unique name for the new folder in the target location
-                    return raiseErrorIfExists(sourceFolder.getName(), targetParentFolderId, allowDuplicateFileNames)
-                            .flatMap(__ -> doCreateFolder(new CreateFolderRequest(sourceFolder.getName(), targetParentFolderId), username,
-                                    jsonUtils.cloneOrNewEmptyJson(sourceFolder.getMetadata()), true, sourceFolderId))
-                            .flatMap(savedNewFolder -> {
-                                UUID newFolderId = savedNewFolder.getId();
-
-                                // 2. Copy child files
-                                Flux<Document> copyChildFiles = documentRepository.findByParentIdAndType(sourceFolderId, FILE)
-                                        .flatMap(childFile -> {
-                                            // For each child file, copy physical file and create DB entry under newFolderId
-                                            return raiseErrorIfExists(childFile.getName(), newFolderId, allowDuplicateFileNames)
-                                                    .flatMap(__ -> storageService.copyFile(childFile.getStoragePath())
-                                                            .flatMap(newChildFileName -> {
-                                                                Document copiedChildFile = Document.builder()
-                                                                        .name(childFile.getName())
-                                                                        .type(FILE)
-                                                                        .contentType(childFile.getContentType())
-                                                                        .size(childFile.getSize())
-                                                                        .parentId(newFolderId)
-                                                                        .storagePath(newChildFileName)
-                                                                        .metadata(jsonUtils.cloneOrNewEmptyJson(childFile.getMetadata()))
-                                                                        .createdAt(OffsetDateTime.now())
-                                                                        .updatedAt(OffsetDateTime.now())
-                                                                        .createdBy(username)
-                                                                        .updatedBy(username)
-                                                                        .build();
-                                                                return documentRepository.save(copiedChildFile);
-                                                            })
-                                                            .flatMap(ccf -> auditService.logAction(username, COPY_FILE_CHILD, FILE, ccf.getId(),
-                                                                     new CopyAudit(childFile.getId(), newFolderId, sourceFolderId)).thenReturn(ccf)));
-                                        });
-
-                                // 3. Recursively copy child folders
-                                Flux<UUID> copyChildSubFolders = documentRepository.findByParentIdAndType(sourceFolderId, FOLDER)
-                                        .flatMap(childSubFolder -> copyFolderRecursive(childSubFolder.getId(), newFolderId, allowDuplicateFileNames, username));
-
-                                return Mono.when(copyChildFiles, copyChildSubFolders).thenReturn(newFolderId);
-                            });
-                });
+                .filter(doc -> doc.getType() == FOLDER)
+                .switchIfEmpty(Mono.error(new OperationForbiddenException("Cannot copy file using folder copy API: " + sourceFolderId)))
+                // the whole tree is copied in one statement, then the contents of its files
+                .flatMapMany(sourceFolder -> documentDAO.copyFolderRecursive(sourceFolderId, targetParentFolderId, username, Boolean.TRUE.equals(allowDuplicateFileNames))
+                        .onErrorMap(SqlUtils::isDuplicateName, _ -> new DuplicateNameException(FOLDER, sourceFolder.getName())))
+                .collectList()
+                .flatMapMany(copies -> copyContents(copies)
+                        .flatMap(documentDAO::updateStoragePaths)
+                        .then(Mono.defer(() -> auditService.logActions(copies.stream().map(copy -> toCopyAuditLog(copy, username)).toList())))
+                        .thenReturn(copies.getFirst().id()));
+    }
+
+    /**
+     * Copies the contents of the copied files, {@code copy.storage.parallelism} at a time. Each copy is retried on
+     * failure : when a content still cannot be copied, the contents already copied are deleted.
+     * @return the storage paths of the copies by document id
+     */
+    private Mono<Map<UUID, String>> copyContents(List<CopiedElementInfo> copies) {
+        Map<UUID, String> storagePaths = new ConcurrentHashMap<>();
+        return Flux.fromIterable(copies)
+                .filter(copy -> copy.type() == FILE && copy.storagePath() != null)
+                .flatMap(copy -> storageService.copyFile(copy.storagePath())
+                        .retryWhen(Retry.backoff(copyStorageMaxRetries, Duration.ofMillis(100))
+                                .onRetryExhaustedThrow((_, signal) -> signal.failure()))
+                        .doOnNext(storagePath -> storagePaths.put(copy.id(), storagePath)), copyStorageParallelism)
+                .then(Mono.fromSupplier(() -> (Map<UUID, String>) storagePaths))
+                .onErrorResume(e -> Flux.fromIterable(storagePaths.values())
+                        .flatMap(storagePath -> storageService.deleteFile(storagePath).onErrorResume(_ -> Mono.empty()), copyStorageParallelism)
+                        .then(Mono.error(e)));
+    }
+
+    private AuditLog toCopyAuditLog(CopiedElementInfo copy, String username) {
+        if (copy.type() == FILE) {
+            return new AuditLog(copy.id(), null, username, COPY_FILE_CHILD, FILE,
+                    new CopyAudit(copy.sourceId(), copy.parentId(), copy.sourceParentId()));
+        }
+        return new AuditLog(copy.id(), null, username, COPY_FOLDER, FOLDER,
+                new CreateFolderAudit(new CreateFolderRequest(copy.name(), copy.parentId()), copy.sourceId()));
     }
 
 
     @Override
     @Transactional
     public Mono<Document> renameFile(UUID fileId, RenameRequest request, Authentication auth) {
-        return UserPrincipalExtractor.getConnectedUser(auth).flatMap(username -> documentRepository.findById(fileId)
+        return documentMetrics.time(Operation.RENAME_FILE, UserPrincipalExtractor.getConnectedUser(auth).flatMap(username -> documentRepository.findById(fileId)
                 .switchIfEmpty(Mono.error(new DocumentNotFoundException(FILE, fileId)))
                 .filter(doc -> doc.getType() == FILE)
                 .switchIfEmpty(Mono.error(new OperationForbiddenException("Cannot rename folder using file rename API: " + fileId)))
                 .flatMap(fileToRename -> {
-                    // Check for name collision in its current parent folder
-                    Mono<Boolean> duplicateCheck = documentExists(request.newName(), fileToRename.getParentId());
-                    return saveFileToRename(request, username, fileToRename, duplicateCheck);
+                    if (fileToRename.getName().equals(request.newName())) {
+                        return Mono.error(new DuplicateNameException("The file has already the name provided"));
+                    }
+                    return saveFileToRename(request, username, fileToRename);
                 })
                 .flatMap(renamedFile -> auditService.logAction(username, RENAME_FILE, FILE, renamedFile.getId(),
-                        new RenameAudit(request.newName())).thenReturn(renamedFile)));
-    }
-
-    private Mono<Document> saveFileToRename(RenameRequest request, String username, Document fileToRename, Mono<Boolean> duplicateCheck) {
-        return duplicateCheck.flatMap(exists -> {
-            if (exists) {
-                return Mono.error(new DuplicateNameException(
-                        "A file/folder with name '" + request.newName() + "' already exists in the current location."));
-            }
-            fileToRename.setName(request.newName());
-            fileToRename.setUpdatedAt(OffsetDateTime.now());
-            fileToRename.setUpdatedBy(username);
-            return documentRepository.save(fileToRename);
-        });
+                        new RenameAudit(request.newName())).thenReturn(renamedFile))));
+    }
+
+    /**
+     * Renames a document : the update fails on the unique index of the names if the new name is already held in the
+     * current location
+     */
+    private Mono<Document> saveFileToRename(RenameRequest request, String username, Document fileToRename) {
+        return documentDAO.renameDocument(fileToRename.getId(), request.newName(), username)
+                .onErrorMap(SqlUtils::isDuplicateName, _ -> new DuplicateNameException(
+                        "A file/folder with name '" + request.newName() + "' already exists in the current location."))
+                .doOnSuccess(_ -> documentCacheService.evict(fileToRename.getId()))
+                .map(_ -> {
+                    fileToRename.setName(request.newName());
+                    fileToRename.setUpdatedAt(OffsetDateTime.now());
+                    fileToRename.setUpdatedBy(username);
+                    return fileToRename;
+                });
     }
 
     @Override
     @Transactional
     public Mono<Document> renameFolder(UUID folderId, RenameRequest request, Authentication auth) {
-        return UserPrincipalExtractor.getConnectedUser(auth).flatMap(username -> documentRepository.findById(folderId)
+        return documentMetrics.time(Operation.RENAME_FOLDER, UserPrincipalExtractor.getConnectedUser(auth).flatMap(username -> documentRepository.findById(folderId)
                 .switchIfEmpty(Mono.error(new DocumentNotFoundException(FOLDER, folderId)))
                 .filter(doc -> doc.getType() == DocumentType.FOLDER)
                 .switchIfEmpty(Mono.error(new OperationForbiddenException("Cannot rename file using folder rename API: " + folderId)))
@@ -591,19 +744,17 @@ public class DocumentServiceImpl implements DocumentService {
                     if (folderToRename.getName().equals(request.newName())) {
                         return Mono.error(new DuplicateNameException("The folder has already the name provided"));
                     }
-                    Mono<Boolean> duplicateCheck = documentExists(request.newName(), folderToRename.getParentId());
-
-                    return saveFileToRename(request, username, folderToRename, duplicateCheck);
+                    return saveFileToRename(request, username, folderToRename);
                 })
                 .flatMap(renamedFolder -> auditService.logAction(username, RENAME_FOLDER, FOLDER, renamedFolder.getId(),
-                        new RenameAudit(request.newName())).thenReturn(renamedFolder)));
+                        new RenameAudit(request.newName())).thenReturn(renamedFolder))));
     }
 
 
     @Override
     @Transactional
     public Mono<Document> replaceDocumentContent(UUID documentId, FilePart newFilePart, Long contentLength, Authentication auth) {
-        return UserPrincipalExtractor.getConnectedUser(auth).flatMap(username -> documentRepository.findById(documentId)
+        return documentMetrics.time(Operation.REPLACE_CONTENT, UserPrincipalExtractor.getConnectedUser(auth).flatMap(username -> documentRepository.findById(documentId)
                 .switchIfEmpty(Mono.error(new DocumentNotFoundException(documentId)))
                 .filter(doc -> doc.getType() == FILE) // Only files have content to replace
                 .switchIfEmpty(Mono.error(new OperationForbiddenException("Cannot replace content of a folder: " + documentId)))
@@ -614,7 +765,7 @@ public class DocumentServiceImpl implements DocumentService {
                     return storageService.saveFile(newFilePart)
                             .flatMap(newStoragePath ->
                                     replaceDocumentContentAndSave(newFilePart, contentLength, username, document, newStoragePath, oldStoragePath));
-                }));
+                })));
     }
 
     private Mono<Document> replaceDocumentContentAndSave(FilePart newFilePart, Long contentLength, String username, Document document, String newStoragePath, String oldStoragePath) {
@@ -634,7 +785,8 @@ public class DocumentServiceImpl implements DocumentService {
         return documentRepository.save(document)
                 .flatMap(savedDoc -> {
                     // 3. Delete old file content from storage
-                    if (oldStoragePath != null && !oldStoragePath.equals(newStoragePath)) {
+                    // (with deduplicated storage, both paths may be the same blob : the delete releases the reference taken by the new upload)
+                    if (oldStoragePath != null) {
                         return storageService.deleteFile(oldStoragePath).thenReturn(savedDoc);
                     }
                     return Mono.just(savedDoc);
@@ -720,97 +872,40 @@ public class DocumentServiceImpl implements DocumentService {
 
 
     @Override
-    public Mono<Resource> downloadMultipleDocumentsAsZip(List<UUID> documentIds, Authentication auth) {
-        return UserPrincipalExtractor.getConnectedUser(auth).flatMap(username -> {
-            if (documentIds == null || documentIds.isEmpty()) {
-                return Mono.error(new IllegalArgumentException("Document IDs list cannot be empty."));
-            }
-
-            try {
-                PipedInputStream pipedInputStream = new PipedInputStream(pipedBufferSize);
-                PipedOutputStream pipedOutputStream = new PipedOutputStream(pipedInputStream);
-                ZipArchiveOutputStream zos = new ZipArchiveOutputStream(pipedOutputStream);
-
-                documentDAO.getElementsAndChildren(documentIds)
-                    .collectList()
-                    .flatMap(docs -> {
-                        if (docs.isEmpty()) {
-                            return Mono.error(new DocumentNotFoundException("No valid files found for the provided IDs to zip."));
-                        }
-                        if (docs.size() != documentIds.size()) {
-                            log.warn("Some requested documents were not files or not found. Zipping available files.");
-                        }
-                        return Flux.fromIterable(docs)
-                            .concatMap(doc ->  addDocumentToZip(doc, zos))
-                            .then(Mono.just(true));
-                    })
-                    .doOnTerminate(() -> closeOutputStream(zos))
-                    .subscribeOn(Schedulers.boundedElastic())
-                    .subscribe(
-                        null,
-                        error -> log.error("Error during zip creation", error)
-                    );
-
-                return Mono.just(new InputStreamResource(pipedInputStream));
-            } catch (IOException e) {
-                return Mono.error(new StorageException("Failed to create piped stream", e));
-            }
-        });
-    }
-
-    private static void closeOutputStream(ZipArchiveOutputStream zos) {
-        try {
-            zos.close();
-        } catch (IOException e) {
-            log.error("Failed to close zip stream", e);
-        }
-    }
-
-    private Mono<Boolean> addFolderToZip(ChildElementInfo folderElement, ZipArchiveOutputStream zos) {
-        try {
-            ZipArchiveEntry zipEntry = new ZipArchiveEntry(folderElement.getPath() + SLASH);
-            zos.putArchiveEntry(zipEntry);
-            zos.closeArchiveEntry();
-            return Mono.just(true);
-        } catch (IOException ioe) {
-            return Mono.error(new StorageException(ioe.getMessage()));
+    public Flux<DataBuffer> downloadMultipleDocumentsAsZip(List<UUID> documentIds, Authentication auth) {
+        if (documentIds == null || documentIds.isEmpty()) {
+            return Flux.error(new IllegalArgumentException("Document IDs list cannot be empty."));
         }
+        return documentMetrics.time(Operation.DOWNLOAD_ZIP, UserPrincipalExtractor.getConnectedUser(auth)
+                .flatMapMany(_ -> zipService.zip(documentDAO.getElementsAndChildren(documentIds)
+                        .switchIfEmpty(Mono.error(new DocumentNotFoundException("No valid files found for the provided IDs to zip."))))));
     }
 
-    private Mono<Boolean> addFileToZip(PhysicalDocument doc, String path, ZipArchiveOutputStream zos) {
-        return storageService.loadFile(doc.getStoragePath())
-                .flatMap(resource -> {
-                    if (resource == null || !resource.exists()) {
-                        log.warn("Skipping missing file in zip: {}", doc.getName());
-                        return Mono.just(false);
-                    }
-                    return Mono.fromRunnable(() -> {
-                        try {
-                            ZipArchiveEntry zipEntry = new ZipArchiveEntry(path == null ? doc.getName() : path);
-                            zipEntry.setSize(doc.getSize() != null ? doc.getSize() : resource.contentLength());
-                            zos.putArchiveEntry(zipEntry);
-                            try (InputStream is = resource.getInputStream()) {
-                                is.transferTo(zos);
-                                zos.closeArchiveEntry();
-                            }
-                        } catch (IOException ioe) {
-                            log.error("Exception in addFileToZip", ioe);
-                            throw new StorageException(ioe.getMessage());
-                        }
-                    }).subscribeOn(Schedulers.boundedElastic()).thenReturn(true);
-                });
-    }
-
-
     @Override
     public Flux<UUID> searchDocumentIdsByMetadata(SearchByMetadataRequest request, Authentication auth) {
         return UserPrincipalExtractor.getConnectedUser(auth).flatMapMany(_ -> documentDAO.listDocumentIds(request));
     }
 
+    @Override
+    public Flux<ContentSearchResult> searchDocumentsByContent(SearchByContentRequest request, Authentication auth) {
+        return UserPrincipalExtractor.getConnectedUser(auth).flatMapMany(_ -> {
+            if (request.parentFolderId() == null) {
+                return documentContentDAO.search(request);
+            }
+            return documentCacheService.existsByIdAndType(request.parentFolderId(), FOLDER)
+                    .flatMapMany(exists -> {
+                        if (!exists) {
+                            return Flux.error(new DocumentNotFoundException(FOLDER, request.parentFolderId()));
+                        }
+                        return documentContentDAO.search(request);
+                    });
+        });
+    }
+
     @Override
     public Mono<Map<String, Object>> getDocumentMetadata(UUID documentId, SearchMetadataRequest request, Authentication auth) {
         return UserPrincipalExtractor.getConnectedUser(auth).flatMap(username ->
-                documentRepository.findById(documentId)
+                documentCacheService.findById(documentId)
                         .switchIfEmpty(Mono.error(new DocumentNotFoundException(documentId)))
                         .map(document -> {
                             JsonNode metadataNode = jsonUtils.toJsonNode(document.getMetadata());
@@ -836,13 +931,13 @@ public class DocumentServiceImpl implements DocumentService {
     // Utility method to find a document
     @Override
     public Mono<Document> findDocumentById(UUID documentId) {
-        return documentRepository.findById(documentId)
+        return documentCacheService.findById(documentId)
                 .switchIfEmpty(Mono.error(new DocumentNotFoundException(documentId)));
     }
 
     @Override
     public Mono<DocumentInfo> getDocumentInfo(UUID documentId, Boolean withMetadata, Authentication authentication) {
-        return documentRepository.findById(documentId)
+        return documentCacheService.findById(documentId)
                 .switchIfEmpty(Mono.error(new DocumentNotFoundException(documentId)))
                 .flatMap(doc -> {
             DocumentInfo info = withMetadata != null && withMetadata.booleanValue() ?
@@ -865,7 +960,7 @@ public class DocumentServiceImpl implements DocumentService {
             }
             return documentRepository.listDocumentInfoAtRootLevel();
         }
-        return documentRepository.existsByIdAndType(folderId, DocumentType.FOLDER)
+        return documentCacheService.existsByIdAndType(folderId, DocumentType.FOLDER)
                 .flatMapMany(exists -> {
                    if(!exists) {
                        return Flux.error(new DocumentNotFoundException(FOLDER, folderId));
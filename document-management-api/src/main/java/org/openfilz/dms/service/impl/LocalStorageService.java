@@ -1,6 +1,7 @@
 // com/example/dms/service/impl/LocalStorageService.java
 package org.openfilz.dms.service.impl;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.openfilz.dms.exception.StorageException;
 import org.openfilz.dms.service.StorageService;
@@ -8,12 +9,22 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.core.io.PathResource;
 import org.springframework.core.io.Resource;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
 import org.springframework.http.codec.multipart.FilePart;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.AsynchronousFileChannel;
 import java.nio.file.*;
+import java.util.List;
+
+import static org.openfilz.dms.service.impl.StorageMetrics.Operation.*;
 
 @Slf4j
 @Service
@@ -21,9 +32,12 @@ import java.nio.file.*;
 public class LocalStorageService implements StorageService {
 
     private final Path rootLocation;
+    private final StorageMetrics metrics;
 
-    public LocalStorageService(@Value("${storage.local.base-path:/tmp/dms-storage}") String basePath) {
-        this.rootLocation = Paths.get(basePath);
+    public LocalStorageService(@Value("${storage.local.base-path:/tmp/dms-storage}") String basePath,
+                               MeterRegistry meterRegistry) {
+        this.rootLocation = Paths.get(basePath).toAbsolutePath().normalize();
+        this.metrics = new StorageMetrics(meterRegistry, "local");
         try {
             Files.createDirectories(rootLocation);
             log.info("Local storage initialized at: {}", rootLocation.toAbsolutePath());
@@ -37,18 +51,23 @@ public class LocalStorageService implements StorageService {
     public Mono<String> saveFile(FilePart filePart) {
         String originalFilename = filePart.filename();
         String storageFileName = getUniqueStorageFileName(originalFilename);
-        Path destinationFile = this.rootLocation.resolve(storageFileName).normalize();
-        return filePart.transferTo(destinationFile)
-                .thenReturn(storageFileName) // Return relative path to be stored
-                .doOnSuccess(path -> log.info("File saved to: {}", destinationFile));
+        Path destinationFile = resolve(storageFileName);
+        return metrics.time(SAVE, filePart.transferTo(destinationFile)
+                .then(Mono.fromCallable(() -> {
+                    metrics.written(Files.size(destinationFile));
+                    return storageFileName; // Return relative path to be stored
+                }))
+                .doOnSuccess(path -> log.info("File saved to: {}", destinationFile)));
     }
 
     @Override
     public Mono<Resource> loadFile(String storagePath) {
-        return Mono.fromCallable(() -> {
-            Path file = rootLocation.resolve(storagePath).normalize();
+        return metrics.time(LOAD, Mono.fromCallable(() -> {
+            Path file = resolve(storagePath);
+            // keep a file-based resource : WebFlux writes it with zero-copy (sendfile) and serves Range requests as file regions
             Resource resource = new PathResource(file);
             if (resource.exists() || resource.isReadable()) {
+                metrics.read(resource.contentLength());
                 return resource;
             } else {
                 log.warn("Could not read file: {} or file does not exist", storagePath);
@@ -57,14 +76,29 @@ public class LocalStorageService implements StorageService {
         }).onErrorMap(e -> {
             log.error("Error loading file {}: {}", storagePath, e.getMessage());
             return new RuntimeException("Error loading file " + storagePath, e);
-        });
+        }));
+    }
+
+    @Override
+    public Flux<DataBuffer> loadFile(String storagePath, long offset, long length) {
+        Path file = resolve(storagePath);
+        // positional reads : only the requested range is read from the disk
+        return metrics.time(LOAD_RANGE, DataBufferUtils.takeUntilByteCount(
+                        DataBufferUtils.readAsynchronousFileChannel(() -> AsynchronousFileChannel.open(file, StandardOpenOption.READ),
+                                offset, DefaultDataBufferFactory.sharedInstance, READ_BUFFER_SIZE),
+                        length)
+                .doOnNext(buffer -> metrics.read(buffer.readableByteCount()))
+                .onErrorMap(IOException.class, e -> {
+                    log.error("Error loading range [{}, {}] of file {}: {}", offset, offset + length - 1, storagePath, e.getMessage());
+                    return new StorageException("Error loading file " + storagePath, e);
+                }));
     }
 
     @Override
     public Mono<Void> deleteFile(String storagePath) {
-        return Mono.fromRunnable(() -> {
+        return metrics.time(DELETE, Mono.fromRunnable(() -> {
             try {
-                Path filePath = rootLocation.resolve(storagePath).normalize();
+                Path filePath = resolve(storagePath);
                 Files.delete(filePath);
                 log.info("File deleted: {}", storagePath);
             } catch (NoSuchFileException e) {
@@ -73,17 +107,17 @@ public class LocalStorageService implements StorageService {
                 log.error("Could not delete file: {}", storagePath, e);
                 throw new RuntimeException("Could not delete file: " + storagePath, e);
             }
-        });
+        }));
     }
 
     @Override
     public Mono<String> copyFile(String sourceStoragePath) {
-        Path sourceFile = rootLocation.resolve(sourceStoragePath);
+        Path sourceFile = resolve(sourceStoragePath);
         // Potentially make the copied file name unique or retain original based on destination prefix logic
         String uniqueFilename = getUniqueStorageFileName(sourceFile.getFileName().toString());// Or derive from destinationStoragePathPrefix
-        Path destinationFile = this.rootLocation.resolve(uniqueFilename).normalize();
+        Path destinationFile = resolve(uniqueFilename);
 
-        return Mono.fromRunnable(() -> {
+        return metrics.time(COPY, Mono.fromRunnable(() -> {
             try {
                 //Files.createDirectories(destinationFolder);
                 Files.copy(sourceFile, destinationFile, StandardCopyOption.REPLACE_EXISTING);
@@ -92,17 +126,76 @@ public class LocalStorageService implements StorageService {
                 log.error("Could not copy file from {} to {}", sourceStoragePath, destinationFile, e);
                 throw new RuntimeException("Could not copy file", e);
             }
-        }).thenReturn(uniqueFilename);
+        }).thenReturn(uniqueFilename));
     }
 
     @Override
     public Mono<Long> getFileLength(String storagePath) {
-        Path sourceFile = rootLocation.resolve(storagePath);
+        Path sourceFile = resolve(storagePath);
+        return metrics.time(LENGTH, Mono.fromCallable(() -> Files.size(sourceFile))
+                .onErrorMap(IOException.class, StorageException::new));
+    }
+
+    @Override
+    public Mono<String> createChunkedUpload(String storagePath, String contentType, long size) {
+        Path file = resolve(storagePath);
+        // the file is preallocated : each chunk is then written at its own position, in any order
+        return metrics.time(CREATE_CHUNKED_UPLOAD, Mono.fromCallable(() -> {
+                    try (RandomAccessFile randomAccessFile = new RandomAccessFile(file.toFile(), "rw")) {
+                        randomAccessFile.setLength(size);
+                    }
+                    return "";
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .onErrorMap(IOException.class, e -> {
+                    log.error("Could not create file {} for a chunked upload: {}", storagePath, e.getMessage());
+                    return new StorageException("Could not create file " + storagePath, e);
+                }));
+    }
+
+    @Override
+    public Mono<String> writeChunk(String storagePath, String uploadId, int chunkNumber, long offset, long length, Flux<DataBuffer> content) {
+        Path file = resolve(storagePath);
+        return metrics.time(WRITE_CHUNK, Flux.using(() -> AsynchronousFileChannel.open(file, StandardOpenOption.WRITE),
+                        channel -> DataBufferUtils.write(content, channel, offset).map(DataBufferUtils::release),
+                        this::closeQuietly)
+                .then(Mono.fromCallable(() -> {
+                    metrics.written(length);
+                    return "";
+                }))
+                .onErrorMap(IOException.class, e -> {
+                    log.error("Could not write chunk {} of file {}: {}", chunkNumber, storagePath, e.getMessage());
+                    return new StorageException("Could not write chunk " + chunkNumber + " of file " + storagePath, e);
+                }));
+    }
+
+    /**
+     * Resolves a storage path under the root location : a path escaping the root (e.g. containing "..") is refused
+     */
+    private Path resolve(String storagePath) {
+        Path file = rootLocation.resolve(storagePath).normalize();
+        if (!file.startsWith(rootLocation) || file.equals(rootLocation)) {
+            throw new StorageException("Invalid storage path : " + storagePath);
+        }
+        return file;
+    }
+
+    private void closeQuietly(AsynchronousFileChannel channel) {
         try {
-            return Mono.just(Files.size(sourceFile));
+            channel.close();
         } catch (IOException e) {
-            throw new StorageException(e);
+            log.warn("Could not close file channel: {}", e.getMessage());
         }
     }
 
-}
\ No newline at end of file
+    @Override
+    public Mono<Void> completeChunkedUpload(String storagePath, String uploadId, List<String> chunkTags) {
+        // the chunks have been written in place
+        return Mono.empty();
+    }
+
+    @Override
+    public Mono<Void> abortChunkedUpload(String storagePath, String uploadId) {
+        return metrics.time(ABORT_CHUNKED_UPLOAD, deleteFile(storagePath));
+    }
+}
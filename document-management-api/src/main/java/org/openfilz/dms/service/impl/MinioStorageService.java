@@ -1,25 +1,41 @@
 // com/example/dms/service/impl/MinioStorageService.java
 package org.openfilz.dms.service.impl;
 
+import com.google.common.collect.ImmutableMultimap;
+import io.micrometer.core.instrument.MeterRegistry;
 import io.minio.*;
 import io.minio.errors.ErrorResponseException;
+import io.minio.http.HttpUtils;
+import io.minio.messages.Part;
 import lombok.extern.slf4j.Slf4j;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
 import org.openfilz.dms.exception.StorageException;
 import org.openfilz.dms.service.StorageService;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.core.io.InputStreamResource;
 import org.springframework.core.io.Resource;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.codec.multipart.FilePart;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.openfilz.dms.service.impl.StorageMetrics.Operation.*;
 
 @Slf4j
 @Service
@@ -29,20 +45,46 @@ public class MinioStorageService implements StorageService {
     private final MinioClient minioClient;
     private final String bucketName;
 
-    @Value("${piped.buffer.size:1024}")
-    private Integer pipedBufferSize;
+    private final MinioAsyncClient minioAsyncClient;
+    private final int uploadPartSize;
+    private final int uploadMaxConcurrentParts;
+    private final StorageMetrics metrics;
 
     public MinioStorageService(
             @Value("${storage.minio.endpoint}") String endpoint,
             @Value("${storage.minio.access-key}") String accessKey,
             @Value("${storage.minio.secret-key}") String secretKey,
-            @Value("${storage.minio.bucket-name}") String bucketName
+            @Value("${storage.minio.bucket-name}") String bucketName,
+            @Value("${storage.minio.upload.part-size:5242880}") int uploadPartSize,
+            @Value("${storage.minio.upload.max-concurrent-parts:4}") int uploadMaxConcurrentParts,
+            @Value("${storage.minio.upload.max-concurrent-requests:64}") int uploadMaxConcurrentRequests,
+            MeterRegistry meterRegistry
     ) {
+        if (uploadPartSize < PutObjectArgs.MIN_MULTIPART_SIZE) {
+            throw new IllegalArgumentException("storage.minio.upload.part-size must be at least " + PutObjectArgs.MIN_MULTIPART_SIZE + " bytes");
+        }
+        // asynchronous calls are queued by the OkHttp dispatcher : it bounds the number of requests in flight to MinIO
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(uploadMaxConcurrentRequests);
+        dispatcher.setMaxRequestsPerHost(uploadMaxConcurrentRequests);
+        long timeout = TimeUnit.MINUTES.toMillis(5);
+        OkHttpClient httpClient = HttpUtils.newDefaultHttpClient(timeout, timeout, timeout).newBuilder()
+                .dispatcher(dispatcher)
+                .build();
         this.minioClient = MinioClient.builder()
                 .endpoint(endpoint)
                 .credentials(accessKey, secretKey)
+                .httpClient(httpClient)
+                .build();
+        this.minioAsyncClient = MinioAsyncClient.builder()
+                .endpoint(endpoint)
+                .credentials(accessKey, secretKey)
+                .httpClient(httpClient)
                 .build();
         this.bucketName = bucketName;
+        this.uploadPartSize = uploadPartSize;
+        this.uploadMaxConcurrentParts = uploadMaxConcurrentParts;
+        this.metrics = new StorageMetrics(meterRegistry, "minio");
         ensureBucketExists();
     }
 
@@ -63,99 +105,159 @@ public class MinioStorageService implements StorageService {
 
     @Override
     public Mono<String> saveFile(FilePart filePart) {
-        String originalFilename = filePart.filename();
-        String objectName = getUniqueStorageFileName(originalFilename); // Ensure unique name
-
-        // PipedInputStream will be read by MinIO client
-        PipedInputStream pipedInputStream = new PipedInputStream(pipedBufferSize);
-        // PipedOutputStream will be written to by our reactive stream
-        // It's important to create PipedOutputStream with the PipedInputStream instance
-        PipedOutputStream pipedOutputStream;
-        try {
-            pipedOutputStream = new PipedOutputStream(pipedInputStream);
-        } catch (IOException e) {
-            log.error("Failed to create PipedOutputStream", e);
-            return Mono.error(e);
-        }
-
-        // This subscription writes data from FilePart to PipedOutputStream
-        // DataBufferUtils.write consumes the Flux<DataBuffer> and writes to the OutputStream.
-        // It releases DataBuffers. It completes when the flux is done.
-        // We run this in a separate thread so it doesn't block the main reactive flow
-        // waiting for PipedInputStream to be read.
-        DataBufferUtils.write(filePart.content(), pipedOutputStream)
-                .subscribeOn(Schedulers.boundedElastic()) // Use boundedElastic for I/O blocking work
-                .doOnError(e -> {
-                    log.error("Error writing file content to PipedOutputStream for {}", objectName, e);
-                    try {
-                        pipedOutputStream.close(); // Close stream on error
-                    } catch (IOException ignored) {
+        String objectName = getUniqueStorageFileName(filePart.filename()); // Ensure unique name
+        String contentType = filePart.headers().getContentType() != null ?
+                filePart.headers().getContentType().toString() : "application/octet-stream";
+        // the lookahead of one part tells whether the content fits in a single part : it is then sent with a plain PUT
+        return metrics.time(SAVE, slice(filePart.content())
+                .buffer(2, 1)
+                .switchOnFirst((first, windows) -> {
+                    if (first.isOnError()) {
+                        return Mono.error(first.getThrowable());
                     }
-                })
-                .doOnComplete(() -> {
-                    log.debug("Finished writing file content to PipedOutputStream for {}", objectName);
-                    try {
-                        pipedOutputStream.close(); // Essential to signal end of stream to PipedInputStream
-                    } catch (IOException e) {
-                        log.warn("Error closing PipedOutputStream for {}: {}", objectName, e.getMessage());
+                    if (first.hasValue() && first.get().size() > 1) {
+                        return multipartUpload(objectName, contentType, windows.map(List::getFirst));
                     }
+                    return putObject(objectName, contentType, first.hasValue() ? first.get().getFirst() : new byte[0]);
                 })
-                .subscribe(); // Fire and forget, error handling is above.
-
-        // The MinIO upload part. This will block the thread it runs on until upload is complete.
-        // So, we run it on a different scheduler.
-        return Mono.fromCallable(() -> {
-                    log.info("Starting MinIO putObject for {}", objectName);
-                    // Use -1 for object size and part_size for MinIO to handle stream size automatically.
-                    // MinIO SDK will read from pipedInputStream until it's closed.
-                    // The SDK will buffer parts internally (default 5MiB to 5GiB depending on total size).
-                    // This internal buffering by SDK is fine and won't exhaust 256MB for a single part.
-                    PutObjectArgs args = PutObjectArgs.builder()
-                            .bucket(bucketName)
-                            .object(objectName)
-                            .stream(pipedInputStream, -1, PutObjectArgs.MIN_MULTIPART_SIZE) // Min part size is 5MiB
-                            .contentType(filePart.headers().getContentType() != null ?
-                                    filePart.headers().getContentType().toString() : "application/octet-stream")
-                            .build();
-                    minioClient.putObject(args);
-                    log.info("Successfully uploaded {} to MinIO bucket {}", objectName, bucketName);
-                    return objectName;
-                })
-                .subscribeOn(Schedulers.boundedElastic()) // Crucial: MinIO SDK's putObject is blocking
-                .doOnTerminate(() -> { // Ensure PipedInputStream is closed regardless of outcome
-                    try {
-                        pipedInputStream.close();
-                    } catch (IOException e) {
-                        log.warn("Error closing PipedInputStream for {}: {}", objectName, e.getMessage());
-                    }
+                .then(Mono.just(objectName))
+                .doOnSuccess(_ -> log.info("Successfully uploaded {} to MinIO bucket {}", objectName, bucketName))
+                .doOnError(e -> log.error("Failed to upload {} to MinIO", objectName, e)));
+    }
+
+    /**
+     * Slices the content in parts of at least <code>uploadPartSize</code> bytes. Nothing is read from the client
+     * until a part is requested : the upload of the parts drives the backpressure.
+     */
+    private Flux<byte[]> slice(Flux<DataBuffer> content) {
+        return Flux.defer(() -> {
+                    long[] partSize = {0};
+                    return content.bufferUntil(buffer -> {
+                        partSize[0] += buffer.readableByteCount();
+                        if (partSize[0] < uploadPartSize) {
+                            return false;
+                        }
+                        partSize[0] = 0;
+                        return true;
+                    });
                 })
-                .doOnError(e -> log.error("Failed to upload {} to MinIO", objectName, e));
+                .map(MinioStorageService::toByteArray)
+                .doOnDiscard(DataBuffer.class, DataBufferUtils::release);
+    }
 
+    private static byte[] toByteArray(List<DataBuffer> buffers) {
+        byte[] bytes = new byte[buffers.stream().mapToInt(DataBuffer::readableByteCount).sum()];
+        int position = 0;
+        for (DataBuffer buffer : buffers) {
+            int count = buffer.readableByteCount();
+            buffer.read(bytes, position, count);
+            position += count;
+            DataBufferUtils.release(buffer);
+        }
+        return bytes;
+    }
+
+    private Mono<Void> putObject(String objectName, String contentType, byte[] data) {
+        return fromFuture(() -> minioAsyncClient.putObject(PutObjectArgs.builder()
+                        .bucket(bucketName)
+                        .object(objectName)
+                        .stream(new ByteArrayInputStream(data), data.length, -1)
+                        .contentType(contentType)
+                        .build()))
+                .doOnNext(_ -> metrics.written(data.length))
+                .then();
+    }
+
+    private Mono<Void> multipartUpload(String objectName, String contentType, Flux<byte[]> parts) {
+        return fromFuture(() -> minioAsyncClient.createMultipartUploadAsync(bucketName, null, objectName,
+                        ImmutableMultimap.of(HttpHeaders.CONTENT_TYPE, contentType), null))
+                .map(response -> response.result().uploadId())
+                .flatMap(uploadId -> parts.index()
+                        // at most uploadMaxConcurrentParts parts are uploaded (and held in memory) at the same time
+                        .flatMapSequential(part -> uploadPart(objectName, uploadId, part.getT1().intValue() + 1, part.getT2()),
+                                uploadMaxConcurrentParts, 1)
+                        .collectList()
+                        .flatMap(uploadedParts -> fromFuture(() -> minioAsyncClient.completeMultipartUploadAsync(bucketName, null,
+                                objectName, uploadId, uploadedParts.toArray(Part[]::new), null, null)))
+                        .onErrorResume(e -> abortMultipartUpload(objectName, uploadId).then(Mono.error(e)))
+                        .doOnCancel(() -> abortMultipartUpload(objectName, uploadId).subscribe()))
+                .then();
+    }
+
+    private Mono<Part> uploadPart(String objectName, String uploadId, int partNumber, byte[] data) {
+        return fromFuture(() -> minioAsyncClient.uploadPartAsync(bucketName, null, objectName, data, data.length,
+                        uploadId, partNumber, null, null))
+                .doOnNext(_ -> metrics.written(data.length))
+                .map(response -> new Part(partNumber, response.etag()));
+    }
+
+    private Mono<Void> abortMultipartUpload(String objectName, String uploadId) {
+        return fromFuture(() -> minioAsyncClient.abortMultipartUploadAsync(bucketName, null, objectName, uploadId, null, null))
+                .doOnError(e -> log.warn("Failed to abort the multipart upload {} of {}: {}", uploadId, objectName, e.getMessage()))
+                .onErrorResume(_ -> Mono.empty())
+                .then();
+    }
+
+    private static <T> Mono<T> fromFuture(AsyncCall<T> call) {
+        return Mono.fromFuture(() -> {
+            try {
+                return call.execute();
+            } catch (Exception e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        });
+    }
 
+    @FunctionalInterface
+    private interface AsyncCall<T> {
+        CompletableFuture<T> execute() throws Exception;
     }
 
     @Override
     public Mono<? extends Resource> loadFile(String storagePath) { // storagePath is objectName
-        return Mono.fromCallable(() -> {
+        return metrics.time(LOAD, Mono.fromCallable(() -> {
             try {
-                InputStream stream = minioClient.getObject(
+                GetObjectResponse stream = minioClient.getObject(
                         GetObjectArgs.builder()
                                 .bucket(bucketName)
                                 .object(storagePath)
                                 .build()
                 );
+                String contentLength = stream.headers().get(HttpHeaders.CONTENT_LENGTH);
+                if (contentLength != null) {
+                    metrics.read(Long.parseLong(contentLength));
+                }
                 // InputStreamResource will close the stream when the resource is consumed
                 return new InputStreamResource(stream);
             } catch (Exception e) {
                 log.error("Error loading file {} from MinIO", storagePath, e);
                 throw new RuntimeException("MinIO load file failed for " + storagePath, e);
             }
-        }).subscribeOn(Schedulers.boundedElastic());
+        }).subscribeOn(Schedulers.boundedElastic()));
+    }
+
+    @Override
+    public Flux<DataBuffer> loadFile(String storagePath, long offset, long length) {
+        // ranged GET : MinIO only sends the requested bytes, the stream is closed once fully read or cancelled
+        return metrics.time(LOAD_RANGE, DataBufferUtils.readInputStream(() -> minioClient.getObject(
+                                GetObjectArgs.builder()
+                                        .bucket(bucketName)
+                                        .object(storagePath)
+                                        .offset(offset)
+                                        .length(length)
+                                        .build()),
+                        DefaultDataBufferFactory.sharedInstance, READ_BUFFER_SIZE)
+                .subscribeOn(Schedulers.boundedElastic())
+                .doOnNext(buffer -> metrics.read(buffer.readableByteCount()))
+                .onErrorMap(e -> {
+                    log.error("Error loading range [{}, {}] of file {} from MinIO", offset, offset + length - 1, storagePath, e);
+                    return new StorageException("MinIO load file failed for " + storagePath, e);
+                }));
     }
 
     @Override
     public Mono<Void> deleteFile(String storagePath) { // storagePath is objectName
-        return Mono.fromRunnable(() -> {
+        return metrics.time(DELETE, Mono.fromRunnable(() -> {
             try {
                 minioClient.removeObject(
                         RemoveObjectArgs.builder()
@@ -172,13 +274,13 @@ public class MinioStorageService implements StorageService {
                 }
                 log.warn("File {} not found in MinIO for deletion, presumed already deleted.", storagePath);
             }
-        }).subscribeOn(Schedulers.boundedElastic()).then();
+        }).subscribeOn(Schedulers.boundedElastic()).then());
     }
 
     @Override
     public Mono<String> copyFile(String sourceStoragePath) {
         String destinationObjectName = getUniqueStorageFileName(getOriginalFileName(sourceStoragePath));
-        return Mono.fromCallable(() -> {
+        return metrics.time(COPY, Mono.fromCallable(() -> {
             try {
                 minioClient.copyObject(
                         CopyObjectArgs.builder()
@@ -192,12 +294,12 @@ public class MinioStorageService implements StorageService {
                 log.error("Error copying file {} to {} in MinIO", sourceStoragePath, destinationObjectName, e);
                 throw new RuntimeException("MinIO copy file failed", e);
             }
-        }).subscribeOn(Schedulers.boundedElastic());
+        }).subscribeOn(Schedulers.boundedElastic()));
     }
 
     @Override
     public Mono<Long> getFileLength(String storagePath) {
-        return Mono.fromCallable(() -> {
+        return metrics.time(LENGTH, Mono.fromCallable(() -> {
             try {
                 StatObjectArgs statObjectArgs = StatObjectArgs.builder()
                         .bucket(bucketName)
@@ -210,7 +312,83 @@ public class MinioStorageService implements StorageService {
                 log.error("Error to get File Length {} in MinIO", storagePath, e);
                 throw new StorageException("MinIO getFileLength failed", e);
             }
-        }).subscribeOn(Schedulers.boundedElastic());
+        }).subscribeOn(Schedulers.boundedElastic()));
+    }
+
+    @Override
+    public Mono<String> createChunkedUpload(String storagePath, String contentType, long size) {
+        return metrics.time(CREATE_CHUNKED_UPLOAD, fromFuture(() -> minioAsyncClient.createMultipartUploadAsync(bucketName, null, storagePath,
+                        ImmutableMultimap.of(HttpHeaders.CONTENT_TYPE, contentType != null ? contentType : "application/octet-stream"), null))
+                .map(response -> response.result().uploadId())
+                .onErrorMap(e -> new StorageException("MinIO create multipart upload failed for " + storagePath, e)));
     }
 
-}
\ No newline at end of file
+    @Override
+    public Mono<String> writeChunk(String storagePath, String uploadId, int chunkNumber, long offset, long length, Flux<DataBuffer> content) {
+        // each chunk is a part of the multipart upload : the parts are assembled by MinIO in the order of their numbers.
+        // The chunk is spooled to a temporary file and the part is sent from it, so that it is never held in memory
+        return metrics.time(WRITE_CHUNK, Mono.usingWhen(
+                        Mono.fromCallable(() -> Files.createTempFile("dms-chunk-", ".part")).subscribeOn(Schedulers.boundedElastic()),
+                        file -> DataBufferUtils.write(content, file)
+                                .then(Mono.defer(() -> uploadPart(storagePath, uploadId, chunkNumber, file, length))),
+                        file -> Mono.fromCallable(() -> Files.deleteIfExists(file)).subscribeOn(Schedulers.boundedElastic()))
+                .map(Part::etag)
+                .onErrorMap(e -> !(e instanceof StorageException), e -> new StorageException("MinIO upload of chunk " + chunkNumber + " failed for " + storagePath, e)));
+    }
+
+    private Mono<Part> uploadPart(String objectName, String uploadId, int partNumber, Path file, long length) {
+        // the file is read (to sign the request, then to send it) until the upload completes
+        return Mono.using(() -> new RandomAccessFile(file.toFile(), "r"),
+                        data -> fromFuture(() -> minioAsyncClient.uploadPartAsync(bucketName, null, objectName, data, length,
+                                uploadId, partNumber, null, null)),
+                        MinioStorageService::closeQuietly)
+                .subscribeOn(Schedulers.boundedElastic())
+                .doOnNext(_ -> metrics.written(length))
+                .map(response -> new Part(partNumber, response.etag()));
+    }
+
+    private static void closeQuietly(RandomAccessFile file) {
+        try {
+            file.close();
+        } catch (IOException e) {
+            log.warn("Could not close file: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public Mono<Void> completeChunkedUpload(String storagePath, String uploadId, List<String> chunkTags) {
+        Part[] parts = new Part[chunkTags.size()];
+        for (int i = 0; i < parts.length; i++) {
+            parts[i] = new Part(i + 1, chunkTags.get(i));
+        }
+        return metrics.time(COMPLETE_CHUNKED_UPLOAD, fromFuture(() -> minioAsyncClient.completeMultipartUploadAsync(bucketName, null, storagePath, uploadId, parts, null, null))
+                .then()
+                // an upload already completed is not known anymore : the object has then been created (storage paths are unique)
+                .onErrorResume(e -> hasErrorCode(e, "NoSuchUpload"), e -> objectExists(storagePath)
+                        .flatMap(exists -> exists ? Mono.<Void>empty() : Mono.error(e)))
+                .onErrorMap(e -> new StorageException("MinIO complete multipart upload failed for " + storagePath, e)));
+    }
+
+    private Mono<Boolean> objectExists(String objectName) {
+        return fromFuture(() -> minioAsyncClient.statObject(StatObjectArgs.builder()
+                        .bucket(bucketName)
+                        .object(objectName)
+                        .build()))
+                .map(_ -> true)
+                .onErrorResume(e -> hasErrorCode(e, "NoSuchKey"), _ -> Mono.just(false));
+    }
+
+    private static boolean hasErrorCode(Throwable e, String code) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ErrorResponseException error && code.equals(error.errorResponse().code())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Mono<Void> abortChunkedUpload(String storagePath, String uploadId) {
+        return metrics.time(ABORT_CHUNKED_UPLOAD, abortMultipartUpload(storagePath, uploadId));
+    }
+}
@@ -0,0 +1,60 @@
+package org.openfilz.dms.service.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.openfilz.dms.utils.OperationTimers;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Metrics of a storage backend, tagged by the {@code storage} type : latency of each operation ({@code dms.storage.operation})
+ * and bytes written to and read from the storage ({@code dms.storage.bytes}, tagged by {@code direction}).
+ */
+class StorageMetrics {
+
+    enum Operation {
+        SAVE, LOAD, LOAD_RANGE, DELETE, COPY, LENGTH, CREATE_CHUNKED_UPLOAD, WRITE_CHUNK, COMPLETE_CHUNKED_UPLOAD, ABORT_CHUNKED_UPLOAD
+    }
+
+    private static final String STORAGE = "storage";
+    private static final String DIRECTION = "direction";
+
+    private final OperationTimers<Operation> timers;
+    private final Counter bytesWritten;
+    private final Counter bytesRead;
+
+    StorageMetrics(MeterRegistry meterRegistry, String storageType) {
+        Tags tags = Tags.of(STORAGE, storageType);
+        this.timers = new OperationTimers<>(meterRegistry, "dms.storage.operation",
+                "Time of the storage operations (for the loads of whole files : until the content is opened)", Operation.class, tags);
+        this.bytesWritten = Counter.builder("dms.storage.bytes")
+                .description("Bytes written to and read from the storage")
+                .baseUnit("bytes")
+                .tags(tags)
+                .tag(DIRECTION, "in")
+                .register(meterRegistry);
+        this.bytesRead = Counter.builder("dms.storage.bytes")
+                .description("Bytes written to and read from the storage")
+                .baseUnit("bytes")
+                .tags(tags)
+                .tag(DIRECTION, "out")
+                .register(meterRegistry);
+    }
+
+    <T> Mono<T> time(Operation operation, Mono<T> mono) {
+        return timers.time(operation, mono);
+    }
+
+    <T> Flux<T> time(Operation operation, Flux<T> flux) {
+        return timers.time(operation, flux);
+    }
+
+    void written(long bytes) {
+        bytesWritten.increment(bytes);
+    }
+
+    void read(long bytes) {
+        bytesRead.increment(bytes);
+    }
+}
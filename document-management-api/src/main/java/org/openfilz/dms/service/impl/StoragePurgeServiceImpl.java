@@ -0,0 +1,137 @@
+package org.openfilz.dms.service.impl;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.openfilz.dms.repository.StorageBlobDAO;
+import org.openfilz.dms.repository.StoragePurgeQueueDAO;
+import org.openfilz.dms.repository.StoragePurgeQueueDAO.QueuedPath;
+import org.openfilz.dms.service.StoragePurgeService;
+import org.openfilz.dms.service.StorageService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Drains <code>storage_purge_queue</code> in background : batches of storage paths are leased with
+ * <code>FOR UPDATE SKIP LOCKED</code>, so that several instances of the application can purge in parallel, then
+ * deleted from the storage concurrently. A path leaves the queue only once its content is deleted : a path which
+ * cannot be deleted, or claimed by an instance which stopped, is claimed again when its lease expires.
+ * <p>
+ * A path of a deduplicated blob (<code>storage_blobs</code>) releases its reference in the transaction which removes
+ * it from the queue, so that a path claimed again never releases it twice. The blob released with its last reference
+ * is queued again as a plain path, its content being deleted from the storage when it is claimed.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class StoragePurgeServiceImpl implements StoragePurgeService {
+
+    private final StorageService storageService;
+
+    private final StoragePurgeQueueDAO storagePurgeQueueDAO;
+
+    private final StorageBlobDAO storageBlobDAO;
+
+    private final TransactionalOperator transactionalOperator;
+
+    @Value("${storage.purge.enabled:true}")
+    private Boolean enabled;
+
+    @Value("${storage.purge.interval-ms:2000}")
+    private Long intervalMs;
+
+    @Value("${storage.purge.batch-size:500}")
+    private Integer batchSize;
+
+    @Value("${storage.purge.parallelism:8}")
+    private Integer parallelism;
+
+    @Value("${storage.purge.lease-ms:60000}")
+    private Long leaseMs;
+
+    private Disposable purgeLoop;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        purgeLoop = Flux.interval(Duration.ofMillis(intervalMs))
+                .onBackpressureDrop()
+                .concatMap(_ -> purge()
+                        .doOnError(e -> log.error("Storage purge failed: {}", e.getMessage()))
+                        .onErrorResume(_ -> Mono.empty()), 1)
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (purgeLoop != null) {
+            purgeLoop.dispose();
+        }
+    }
+
+    @Override
+    public Mono<Long> purge() {
+        return purgeBatch()
+                .expand(purged -> purged < batchSize ? Mono.empty() : purgeBatch())
+                .reduce(0L, Long::sum)
+                .doOnNext(purged -> {
+                    if (purged > 0) {
+                        log.debug("{} storage paths purged", purged);
+                    }
+                });
+    }
+
+    private Mono<Long> purgeBatch() {
+        return storagePurgeQueueDAO.claim(batchSize, Duration.ofMillis(leaseMs))
+                .collectList()
+                .flatMap(this::deleteFiles);
+    }
+
+    /**
+     * @return the number of claimed paths
+     */
+    private Mono<Long> deleteFiles(List<QueuedPath> claimed) {
+        return Flux.fromIterable(claimed)
+                .flatMap(path -> releaseBlob(path)
+                        .flatMap(blob -> blob ? Mono.<Long>empty() : storageService.deleteFile(path.storagePath()).thenReturn(path.id()))
+                        .onErrorResume(e -> {
+                            log.warn("Could not purge {}, retried when its lease expires: {}", path.storagePath(), e.getMessage());
+                            return Mono.empty();
+                        }), parallelism)
+                .collectList()
+                .flatMap(storagePurgeQueueDAO::delete)
+                .thenReturn((long) claimed.size());
+    }
+
+    /**
+     * Releases the reference to the blob held by the path, and removes the path from the queue, in one transaction
+     * @return false if the path is not a blob : its content is to be deleted from the storage
+     */
+    private Mono<Boolean> releaseBlob(QueuedPath path) {
+        return transactionalOperator.execute(status -> storageBlobDAO.removeReference(path.storagePath())
+                        .flatMap(refCount -> storagePurgeQueueDAO.delete(path.id())
+                                .flatMap(dequeued -> {
+                                    if (!dequeued) {
+                                        // already released by another instance, whose lease had expired
+                                        status.setRollbackOnly();
+                                        return Mono.just(true);
+                                    }
+                                    return refCount > 0 ? Mono.just(true) : storageBlobDAO.deleteUnreferenced(path.storagePath())
+                                            .flatMap(deleted -> deleted ? storagePurgeQueueDAO.enqueue(path.storagePath()) : Mono.empty())
+                                            .thenReturn(true);
+                                }))
+                        .defaultIfEmpty(false))
+                .single();
+    }
+}
@@ -0,0 +1,308 @@
+package org.openfilz.dms.service.impl;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.openfilz.dms.dto.audit.UploadAudit;
+import org.openfilz.dms.dto.request.CreateUploadSessionRequest;
+import org.openfilz.dms.dto.response.UploadResponse;
+import org.openfilz.dms.dto.response.UploadSessionResponse;
+import org.openfilz.dms.entity.Document;
+import org.openfilz.dms.entity.UploadSession;
+import org.openfilz.dms.enums.AuditAction;
+import org.openfilz.dms.exception.DocumentNotFoundException;
+import org.openfilz.dms.exception.DuplicateNameException;
+import org.openfilz.dms.exception.OperationForbiddenException;
+import org.openfilz.dms.repository.DocumentDAO;
+import org.openfilz.dms.repository.UploadSessionDAO;
+import org.openfilz.dms.service.AuditService;
+import org.openfilz.dms.service.DocumentCacheService;
+import org.openfilz.dms.service.StorageService;
+import org.openfilz.dms.service.UploadSessionService;
+import org.openfilz.dms.utils.JsonUtils;
+import org.openfilz.dms.utils.SqlUtils;
+import org.openfilz.dms.utils.UserPrincipalExtractor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static org.openfilz.dms.enums.DocumentType.FILE;
+import static org.openfilz.dms.enums.DocumentType.FOLDER;
+import static org.openfilz.dms.service.impl.DocumentServiceImpl.APPLICATION_OCTET_STREAM;
+
+/**
+ * Upload sessions persisted in <code>upload_sessions</code>, so that the chunks of a file can be received by any
+ * instance of the application. The chunks are written directly at their place in the storage : parts of a multipart
+ * upload in MinIO, positional writes in a preallocated file in the local storage. A session is only visible to the
+ * user who created it, and is aborted in background when it has not received any chunk for
+ * {@code upload.session.time-to-live-ms}.
+ */
+@Slf4j
+@Service
+public class UploadSessionServiceImpl implements UploadSessionService {
+
+    // MinIO constraints on the parts of a multipart upload
+    private static final long MIN_CHUNK_SIZE = 5L * 1024 * 1024;
+    private static final int MAX_CHUNK_COUNT = 10_000;
+
+    private final UploadSessionDAO uploadSessionDAO;
+    private final StorageService storageService;
+    private final DocumentDAO documentDAO;
+    private final DocumentCacheService documentCacheService;
+    private final AuditService auditService;
+    private final JsonUtils jsonUtils;
+    private final long chunkSize;
+    private final Duration timeToLive;
+    private final Duration purgeInterval;
+    private final int purgeBatchSize;
+
+    private Disposable purgeLoop;
+
+    public UploadSessionServiceImpl(UploadSessionDAO uploadSessionDAO,
+                                    StorageService storageService,
+                                    DocumentDAO documentDAO,
+                                    DocumentCacheService documentCacheService,
+                                    AuditService auditService,
+                                    JsonUtils jsonUtils,
+                                    @Value("${upload.session.chunk-size:8388608}") long chunkSize,
+                                    @Value("${upload.session.time-to-live-ms:86400000}") long timeToLiveMs,
+                                    @Value("${upload.session.purge.interval-ms:60000}") long purgeIntervalMs,
+                                    @Value("${upload.session.purge.batch-size:100}") int purgeBatchSize) {
+        if (chunkSize < MIN_CHUNK_SIZE) {
+            throw new IllegalArgumentException("upload.session.chunk-size must be at least " + MIN_CHUNK_SIZE + " bytes");
+        }
+        this.uploadSessionDAO = uploadSessionDAO;
+        this.storageService = storageService;
+        this.documentDAO = documentDAO;
+        this.documentCacheService = documentCacheService;
+        this.auditService = auditService;
+        this.jsonUtils = jsonUtils;
+        this.chunkSize = chunkSize;
+        this.timeToLive = Duration.ofMillis(timeToLiveMs);
+        this.purgeInterval = Duration.ofMillis(purgeIntervalMs);
+        this.purgeBatchSize = purgeBatchSize;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        purgeLoop = Flux.interval(purgeInterval)
+                .onBackpressureDrop()
+                .concatMap(_ -> purgeExpiredSessions()
+                        .doOnError(e -> log.error("Upload sessions purge failed: {}", e.getMessage()))
+                        .onErrorResume(_ -> Mono.empty()), 1)
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (purgeLoop != null) {
+            purgeLoop.dispose();
+        }
+    }
+
+    @Override
+    public Mono<UploadSessionResponse> createSession(CreateUploadSessionRequest request, Authentication auth) {
+        String name = request.name().replace(StorageService.FILENAME_SEPARATOR, "");
+        if (name.isBlank() || name.contains(StorageService.FOLDER_SEPARATOR) || name.contains("\\") || name.contains("..")) {
+            return Mono.error(new IllegalArgumentException("Invalid file name : " + request.name()));
+        }
+        boolean allowDuplicateFileNames = Boolean.TRUE.equals(request.allowDuplicateFileNames());
+        return UserPrincipalExtractor.getConnectedUser(auth)
+                .flatMap(username -> checkTarget(name, request.parentFolderId(), allowDuplicateFileNames)
+                        .then(Mono.defer(() -> {
+                            // the chunks are made larger for the huge files, to stay within the max number of chunks
+                            long sessionChunkSize = Math.max(chunkSize, ceilDiv(request.size(), MAX_CHUNK_COUNT));
+                            String contentType = request.contentType() != null ? request.contentType() : APPLICATION_OCTET_STREAM;
+                            String storagePath = storageService.getUniqueStorageFileName(name);
+                            return storageService.createChunkedUpload(storagePath, contentType, request.size())
+                                    .flatMap(storageUploadId -> uploadSessionDAO.create(UploadSession.builder()
+                                                    .name(name)
+                                                    .contentType(contentType)
+                                                    .size(request.size())
+                                                    .chunkSize(sessionChunkSize)
+                                                    .chunkCount((int) ceilDiv(request.size(), sessionChunkSize))
+                                                    .parentId(request.parentFolderId())
+                                                    .metadata(request.metadata() == null ? null : jsonUtils.toJson(request.metadata()))
+                                                    .allowDuplicateFileNames(allowDuplicateFileNames)
+                                                    .storagePath(storagePath)
+                                                    .storageUploadId(storageUploadId)
+                                                    .createdBy(username)
+                                                    .expiresAt(OffsetDateTime.now().plus(timeToLive))
+                                                    .build())
+                                            .onErrorResume(e -> storageService.abortChunkedUpload(storagePath, storageUploadId).then(Mono.error(e))));
+                        })))
+                .map(session -> toResponse(session, List.of()));
+    }
+
+    private static long ceilDiv(long dividend, long divisor) {
+        return (dividend + divisor - 1) / divisor;
+    }
+
+    @Override
+    public Mono<UploadSessionResponse> getSession(UUID sessionId, Authentication auth) {
+        return findSession(sessionId, auth)
+                .flatMap(session -> uploadSessionDAO.getChunkNumbers(sessionId).collectList()
+                        .map(chunkNumbers -> toResponse(session, chunkNumbers)));
+    }
+
+    @Override
+    public Mono<Void> uploadChunk(UUID sessionId, int chunkNumber, Long contentLength, Flux<DataBuffer> content, Authentication auth) {
+        return findSession(sessionId, auth)
+                .flatMap(session -> {
+                    if (chunkNumber < 1 || chunkNumber > session.getChunkCount()) {
+                        return Mono.error(new IllegalArgumentException("Chunk number must be between 1 and " + session.getChunkCount()));
+                    }
+                    long length = session.getChunkLength(chunkNumber);
+                    if (contentLength != null && contentLength != length) {
+                        return Mono.error(new IllegalArgumentException("Chunk " + chunkNumber + " must be " + length + " bytes long"));
+                    }
+                    return storageService.writeChunk(session.getStoragePath(), session.getStorageUploadId(), chunkNumber,
+                                    (chunkNumber - 1) * session.getChunkSize(), length, checkLength(content, chunkNumber, length))
+                            .flatMap(tag -> uploadSessionDAO.saveChunk(sessionId, chunkNumber, tag, timeToLive))
+                            .flatMap(saved -> saved ? Mono.<Void>empty() : Mono.error(new DocumentNotFoundException(sessionId)));
+                });
+    }
+
+    /**
+     * Fails as soon as the content is longer than the chunk (nothing beyond the chunk is written), or at its end when
+     * it is shorter (the chunk is then not recorded, and must be sent again)
+     */
+    private Flux<DataBuffer> checkLength(Flux<DataBuffer> content, int chunkNumber, long length) {
+        return Flux.defer(() -> {
+            long[] received = {0};
+            return content
+                    .doOnNext(buffer -> {
+                        received[0] += buffer.readableByteCount();
+                        if (received[0] > length) {
+                            DataBufferUtils.release(buffer);
+                            throw new IllegalArgumentException("Chunk " + chunkNumber + " is longer than " + length + " bytes");
+                        }
+                    })
+                    .concatWith(Mono.defer(() -> received[0] < length
+                            ? Mono.error(new IllegalArgumentException("Chunk " + chunkNumber + " is shorter than " + length + " bytes"))
+                            : Mono.empty()));
+        });
+    }
+
+    @Override
+    @Transactional
+    public Mono<UploadResponse> completeSession(UUID sessionId, Authentication auth) {
+        // the session stays locked until the end of the transaction : its chunks cannot change meanwhile, and a concurrent
+        // completion waits and then finds no session anymore. The file is assembled last : when that fails, the document
+        // and the deletion of the session are rolled back, and the completion can be retried (assembling again a file
+        // already assembled succeeds, for a transaction which failed to commit after it)
+        return UserPrincipalExtractor.getConnectedUser(auth)
+                .flatMap(username -> uploadSessionDAO.findByIdForUpdate(sessionId)
+                        .filter(session -> username.equals(session.getCreatedBy()))
+                        .switchIfEmpty(Mono.error(new DocumentNotFoundException(sessionId)))
+                        .flatMap(session -> uploadSessionDAO.getChunkTags(sessionId).collectList()
+                                .flatMap(chunkTags -> checkAllChunksReceived(session, chunkTags))
+                                .flatMap(chunkTags -> checkTarget(session.getName(), session.getParentId(), session.getAllowDuplicateFileNames())
+                                        .then(Mono.defer(() -> saveDocument(session, username)))
+                                        .flatMap(document -> uploadSessionDAO.delete(sessionId)
+                                                .then(storageService.completeChunkedUpload(session.getStoragePath(), session.getStorageUploadId(), chunkTags))
+                                                .then(Mono.defer(() -> auditService.logAction(username, AuditAction.UPLOAD_DOCUMENT, FILE, document.getId(),
+                                                        new UploadAudit(document.getName(), document.getParentId(),
+                                                                session.getMetadata() == null ? null : jsonUtils.toMap(session.getMetadata())))))
+                                                .thenReturn(new UploadResponse(document.getId(), document.getName(), document.getContentType(), document.getSize()))))));
+    }
+
+    private Mono<List<String>> checkAllChunksReceived(UploadSession session, List<String> chunkTags) {
+        if (chunkTags.size() == session.getChunkCount()) {
+            return Mono.just(chunkTags);
+        }
+        return uploadSessionDAO.getChunkNumbers(session.getId()).collectList()
+                .flatMap(received -> Mono.error(new OperationForbiddenException("Chunks not received yet : "
+                        + IntStream.rangeClosed(1, session.getChunkCount()).filter(i -> !received.contains(i)).boxed().toList())));
+    }
+
+    /**
+     * Creates the document of the completed upload : its name is checked again by the insert, for the files created
+     * meanwhile with the same name. The session is kept when the name is taken : it can still be aborted
+     */
+    private Mono<Document> saveDocument(UploadSession session, String username) {
+        OffsetDateTime now = OffsetDateTime.now();
+        Document document = Document.builder()
+                .id(UUID.randomUUID())
+                .name(session.getName())
+                .type(FILE)
+                .contentType(session.getContentType())
+                .size(session.getSize())
+                .parentId(session.getParentId())
+                .storagePath(session.getStoragePath())
+                .metadata(session.getMetadata() == null ? jsonUtils.emptyJson() : session.getMetadata())
+                .createdAt(now)
+                .updatedAt(now)
+                .createdBy(username)
+                .updatedBy(username)
+                .build();
+        return documentDAO.insertDocument(document, session.getAllowDuplicateFileNames())
+                .onErrorMap(SqlUtils::isDuplicateName, _ -> new DuplicateNameException(FILE, document.getName()))
+                .flatMap(inserted -> inserted ? Mono.just(document) : Mono.error(new DuplicateNameException(FILE, document.getName())))
+                .doOnNext(inserted -> documentCacheService.evict(inserted.getId()));
+    }
+
+    @Override
+    public Mono<Void> abortSession(UUID sessionId, Authentication auth) {
+        return findSession(sessionId, auth)
+                .flatMap(session -> uploadSessionDAO.delete(sessionId)
+                        .then(storageService.abortChunkedUpload(session.getStoragePath(), session.getStorageUploadId())));
+    }
+
+    @Override
+    public Mono<Long> purgeExpiredSessions() {
+        return uploadSessionDAO.deleteExpired(purgeBatchSize)
+                .flatMap(session -> storageService.abortChunkedUpload(session.getStoragePath(), session.getStorageUploadId())
+                        .doOnError(e -> log.warn("Could not abort the upload of expired session {}: {}", session.getId(), e.getMessage()))
+                        .onErrorResume(_ -> Mono.empty())
+                        .thenReturn(session))
+                .count()
+                .doOnNext(purged -> {
+                    if (purged > 0) {
+                        log.info("{} expired upload sessions aborted", purged);
+                    }
+                });
+    }
+
+    /**
+     * Checks that the parent folder exists, and that no file of the same name is already in it (unless allowed), so
+     * that the client does not send the chunks of a file which would be rejected when the session is completed
+     */
+    private Mono<Void> checkTarget(String name, UUID parentFolderId, boolean allowDuplicateFileNames) {
+        Mono<Void> folderCheck = parentFolderId == null ? Mono.empty()
+                : documentCacheService.existsByIdAndType(parentFolderId, FOLDER)
+                        .flatMap(exists -> exists ? Mono.<Void>empty() : Mono.error(new DocumentNotFoundException(FOLDER, parentFolderId)));
+        if (allowDuplicateFileNames) {
+            return folderCheck;
+        }
+        // only the documents holding their name count : not the duplicates created with allowDuplicateFileNames
+        return folderCheck.then(Mono.defer(() -> documentDAO.findNameConflicts(List.of(Document.builder().name(name).parentId(parentFolderId).build()))
+                        .hasElements()))
+                .flatMap(exists -> exists ? Mono.error(new DuplicateNameException(FILE, name)) : Mono.empty());
+    }
+
+    private Mono<UploadSession> findSession(UUID sessionId, Authentication auth) {
+        return UserPrincipalExtractor.getConnectedUser(auth)
+                .flatMap(username -> uploadSessionDAO.findById(sessionId)
+                        .filter(session -> username.equals(session.getCreatedBy())))
+                .switchIfEmpty(Mono.error(new DocumentNotFoundException(sessionId)));
+    }
+
+    private UploadSessionResponse toResponse(UploadSession session, List<Integer> receivedChunks) {
+        return new UploadSessionResponse(session.getId(), session.getName(), session.getSize(), session.getChunkSize(),
+                session.getChunkCount(), receivedChunks, session.getExpiresAt());
+    }
+}
@@ -0,0 +1,26 @@
+package org.openfilz.dms.service.impl;
+
+import org.springframework.core.io.buffer.DataBuffer;
+
+/**
+ * Item of the stream consumed by {@link ZipStreamWriter} : an archive is described as a sequence of folder entries,
+ * stored files, and deflated files delimited by {@link FileStart} and {@link FileEnd}.
+ */
+sealed interface ZipSegment {
+
+    record Folder(String path) implements ZipSegment {
+    }
+
+    record FileStart(String path, long size) implements ZipSegment {
+    }
+
+    record Content(DataBuffer buffer) implements ZipSegment {
+    }
+
+    record FileEnd() implements ZipSegment {
+    }
+
+    // the whole content is needed upfront : the CRC of a stored entry is written before its data
+    record StoredFile(String path, DataBuffer content) implements ZipSegment {
+    }
+}
@@ -0,0 +1,152 @@
+package org.openfilz.dms.service.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.openfilz.dms.dto.response.ChildElementInfo;
+import org.openfilz.dms.service.StorageService;
+import org.openfilz.dms.service.ZipService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+import static org.openfilz.dms.enums.DocumentType.FILE;
+import static org.openfilz.dms.service.StorageService.READ_BUFFER_SIZE;
+import static org.openfilz.dms.utils.FileConstants.SLASH;
+
+/**
+ * Builds ZIP archives as a stream of {@link DataBuffer} : the content of each file is read from the storage and
+ * compressed chunk by chunk, so the memory used does not depend on the number nor on the size of the files.
+ * The contents of the next {@code zip.prefetch.depth} files are opened and buffered in parallel while the current entry
+ * is written, so that archives of many small files are not bound by the latency of each storage read. Entries are
+ * still written in order, and the bytes buffered ahead are bounded by {@code zip.prefetch.max-buffered-bytes}.
+ */
+@Slf4j
+@Service
+public class ZipServiceImpl implements ZipService {
+
+    private static final String ZIP_ENTRIES = "dms.zip.entries";
+    private static final String MODE = "mode";
+
+    private final StorageService storageService;
+    private final Counter folderEntries;
+    private final Counter deflatedEntries;
+    private final Counter storedEntries;
+
+    @Value("${zip.store-compressed-content:false}")
+    private Boolean storeCompressedContent;
+
+    @Value("${zip.compressed-content-types:image/jpeg,image/png,image/gif,image/webp,video/*,audio/*,application/zip,application/gzip}")
+    private List<String> compressedContentTypes;
+
+    @Value("${zip.stored-entry-max-size:16777216}")
+    private Long storedEntryMaxSize;
+
+    @Value("${zip.prefetch.depth:8}")
+    private Integer prefetchDepth;
+
+    @Value("${zip.prefetch.max-buffered-bytes:33554432}")
+    private Long prefetchMaxBufferedBytes;
+
+    public ZipServiceImpl(StorageService storageService, MeterRegistry meterRegistry) {
+        this.storageService = storageService;
+        this.folderEntries = entriesCounter(meterRegistry, "folder");
+        this.deflatedEntries = entriesCounter(meterRegistry, "deflated");
+        this.storedEntries = entriesCounter(meterRegistry, "stored");
+    }
+
+    private static Counter entriesCounter(MeterRegistry meterRegistry, String mode) {
+        return Counter.builder(ZIP_ENTRIES)
+                .description("Entries written to the zip downloads")
+                .tag(MODE, mode)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Flux<DataBuffer> zip(Flux<ChildElementInfo> elements) {
+        return Flux.using(ZipStreamWriter::new,
+                        writer -> elements
+                                .flatMapSequential(this::toSegments, prefetchDepth, getPrefetchedChunksPerEntry())
+                                .doOnNext(this::countEntry)
+                                .map(writer::write)
+                                .concatWith(Mono.fromCallable(writer::finish))
+                                .filter(buffer -> buffer.readableByteCount() > 0),
+                        ZipStreamWriter::close)
+                .doOnError(e -> log.error("Error during zip creation", e))
+                .doOnDiscard(ZipSegment.Content.class, content -> DataBufferUtils.release(content.buffer()))
+                .doOnDiscard(ZipSegment.StoredFile.class, stored -> DataBufferUtils.release(stored.content()))
+                .doOnDiscard(DataBuffer.class, DataBufferUtils::release);
+    }
+
+    private void countEntry(ZipSegment segment) {
+        switch (segment) {
+            case ZipSegment.Folder _ -> folderEntries.increment();
+            case ZipSegment.FileStart _ -> deflatedEntries.increment();
+            case ZipSegment.StoredFile _ -> storedEntries.increment();
+            default -> {
+            }
+        }
+    }
+
+    private Flux<ZipSegment> toSegments(ChildElementInfo element) {
+        if (element.getType() != FILE) {
+            return Flux.just(new ZipSegment.Folder(element.getPath() + SLASH));
+        }
+        String path = element.getPath() == null ? element.getName() : element.getPath();
+        return Mono.justOrEmpty(element.getSize())
+                .switchIfEmpty(Mono.defer(() -> storageService.getFileLength(element.getStoragePath())))
+                .flatMapMany(size -> isStored(element, size) ? storedFile(path, element, size) : deflatedFile(path, element, size));
+    }
+
+    private Flux<ZipSegment> deflatedFile(String path, ChildElementInfo element, long size) {
+        return Flux.concat(
+                Mono.just(new ZipSegment.FileStart(path, size)),
+                storageService.loadFile(element.getStoragePath(), 0, size).map(ZipSegment.Content::new),
+                Mono.just(new ZipSegment.FileEnd()));
+    }
+
+    private Flux<ZipSegment> storedFile(String path, ChildElementInfo element, long size) {
+        return DataBufferUtils.join(storageService.loadFile(element.getStoragePath(), 0, size))
+                .defaultIfEmpty(DefaultDataBufferFactory.sharedInstance.allocateBuffer(0))
+                .map(content -> (ZipSegment) new ZipSegment.StoredFile(path, content))
+                .flux();
+    }
+
+    /**
+     * Number of content chunks buffered ahead for each prefetched entry, so that all the prefetched entries together
+     * stay within the memory cap.
+     */
+    private int getPrefetchedChunksPerEntry() {
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, getPrefetchedBytesPerEntry() / READ_BUFFER_SIZE));
+    }
+
+    private long getPrefetchedBytesPerEntry() {
+        return prefetchMaxBufferedBytes / prefetchDepth;
+    }
+
+    /**
+     * Already compressed contents (images, videos, archives...) are stored as is instead of being deflated again,
+     * when they are small enough to be held in memory (their CRC must be known before they are written) : a stored
+     * entry is prefetched as a whole, so it must also fit in its share of the prefetch memory cap.
+     */
+    private boolean isStored(ChildElementInfo element, long size) {
+        if (!storeCompressedContent || size > Math.min(storedEntryMaxSize, getPrefetchedBytesPerEntry())
+                || element.getContentType() == null) {
+            return false;
+        }
+        try {
+            MediaType contentType = MediaType.parseMediaType(element.getContentType());
+            return compressedContentTypes.stream().anyMatch(type -> MediaType.parseMediaType(type.trim()).includes(contentType));
+        } catch (InvalidMediaTypeException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package org.openfilz.dms.service.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.compress.archivers.zip.Zip64Mode;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.openfilz.dms.exception.StorageException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+/**
+ * Writes a ZIP archive segment by segment : each call returns the bytes of the archive produced so far, so the
+ * archive is streamed as it is built, without intermediate stream nor blocked thread.
+ * Not thread-safe : segments must be written one after the other.
+ */
+@Slf4j
+class ZipStreamWriter implements Closeable {
+
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+    private static final int CHUNK_SIZE = 8 * 1024;
+
+    private final DrainableOutputStream output = new DrainableOutputStream();
+    private final ZipArchiveOutputStream zip = new ZipArchiveOutputStream(output);
+    private final byte[] chunk = new byte[CHUNK_SIZE];
+
+    ZipStreamWriter() {
+        zip.setUseZip64(Zip64Mode.AsNeeded);
+    }
+
+    DataBuffer write(ZipSegment segment) {
+        try {
+            switch (segment) {
+                case ZipSegment.Folder folder -> {
+                    zip.putArchiveEntry(new ZipArchiveEntry(folder.path()));
+                    zip.closeArchiveEntry();
+                }
+                case ZipSegment.FileStart start -> {
+                    ZipArchiveEntry entry = new ZipArchiveEntry(start.path());
+                    entry.setMethod(ZipEntry.DEFLATED);
+                    entry.setSize(start.size());
+                    zip.putArchiveEntry(entry);
+                }
+                case ZipSegment.Content content -> writeContent(content.buffer());
+                case ZipSegment.FileEnd _ -> zip.closeArchiveEntry();
+                case ZipSegment.StoredFile stored -> {
+                    ZipArchiveEntry entry = new ZipArchiveEntry(stored.path());
+                    entry.setMethod(ZipEntry.STORED);
+                    entry.setSize(stored.content().readableByteCount());
+                    entry.setCrc(crc(stored.content()));
+                    zip.putArchiveEntry(entry);
+                    writeContent(stored.content());
+                    zip.closeArchiveEntry();
+                }
+            }
+        } catch (IOException e) {
+            throw new StorageException("Failed to write zip entry", e);
+        }
+        return output.drain();
+    }
+
+    DataBuffer finish() {
+        try {
+            zip.finish();
+        } catch (IOException e) {
+            throw new StorageException("Failed to write zip central directory", e);
+        }
+        return output.drain();
+    }
+
+    @Override
+    public void close() {
+        try {
+            zip.close();
+        } catch (IOException e) {
+            log.error("Failed to close zip stream", e);
+        }
+    }
+
+    private void writeContent(DataBuffer buffer) throws IOException {
+        try {
+            while (buffer.readableByteCount() > 0) {
+                int count = Math.min(chunk.length, buffer.readableByteCount());
+                buffer.read(chunk, 0, count);
+                zip.write(chunk, 0, count);
+            }
+        } finally {
+            DataBufferUtils.release(buffer);
+        }
+    }
+
+    private static long crc(DataBuffer buffer) {
+        CRC32 crc = new CRC32();
+        try (DataBuffer.ByteBufferIterator iterator = buffer.readableByteBuffers()) {
+            iterator.forEachRemaining(crc::update);
+        }
+        return crc.getValue();
+    }
+
+    private static class DrainableOutputStream extends ByteArrayOutputStream {
+
+        DrainableOutputStream() {
+            super(OUTPUT_BUFFER_SIZE);
+        }
+
+        DataBuffer drain() {
+            DataBuffer buffer = DefaultDataBufferFactory.sharedInstance.wrap(toByteArray());
+            reset();
+            return buffer;
+        }
+    }
+}
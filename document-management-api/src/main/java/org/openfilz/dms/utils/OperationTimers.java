@@ -0,0 +1,76 @@
+package org.openfilz.dms.utils;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency timers of a set of operations, tagged by {@code operation} and {@code outcome} (success, error or cancelled).
+ * All the timers are registered up front : timing a call only reads the clock twice and records in a precomputed timer.
+ * @param <E> the enum of the timed operations
+ */
+public class OperationTimers<E extends Enum<E>> {
+
+    public static final String OPERATION = "operation";
+    public static final String OUTCOME = "outcome";
+
+    private enum Outcome {
+        SUCCESS, ERROR, CANCELLED
+    }
+
+    private final Timer[][] timers;
+
+    public OperationTimers(MeterRegistry meterRegistry, String name, String description, Class<E> operations, Tags tags) {
+        E[] values = operations.getEnumConstants();
+        this.timers = new Timer[values.length][Outcome.values().length];
+        for (E operation : values) {
+            for (Outcome outcome : Outcome.values()) {
+                timers[operation.ordinal()][outcome.ordinal()] = Timer.builder(name)
+                        .description(description)
+                        .tags(tags)
+                        .tag(OPERATION, toTagValue(operation))
+                        .tag(OUTCOME, toTagValue(outcome))
+                        .register(meterRegistry);
+            }
+        }
+    }
+
+    /**
+     * Times the given operation, from its subscription to its completion, error or cancellation
+     */
+    public <T> Mono<T> time(E operation, Mono<T> mono) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return mono.doFinally(signal -> record(operation, signal, start));
+        });
+    }
+
+    /**
+     * Times the given operation, from its subscription to its completion, error or cancellation
+     */
+    public <T> Flux<T> time(E operation, Flux<T> flux) {
+        return Flux.defer(() -> {
+            long start = System.nanoTime();
+            return flux.doFinally(signal -> record(operation, signal, start));
+        });
+    }
+
+    private void record(E operation, SignalType signal, long start) {
+        Outcome outcome = switch (signal) {
+            case ON_ERROR -> Outcome.ERROR;
+            case CANCEL -> Outcome.CANCELLED;
+            default -> Outcome.SUCCESS;
+        };
+        timers[operation.ordinal()][outcome.ordinal()].record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private static String toTagValue(Enum<?> value) {
+        return value.name().toLowerCase(Locale.ROOT).replace('_', '-');
+    }
+}
@@ -0,0 +1,103 @@
+package org.openfilz.dms.utils;
+
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Statements executed in the database on behalf of a request, carried in the Reactor context of the request : number of
+ * executions, rows read or updated and time spent in the database, by SQL statement. The statements of a request may be
+ * executed concurrently.
+ */
+public class QueryStats {
+
+    private static final Class<QueryStats> CONTEXT_KEY = QueryStats.class;
+
+    private final Map<String, StatementStats> statements = new ConcurrentHashMap<>();
+
+    public static Context putIn(Context context, QueryStats stats) {
+        return context.put(CONTEXT_KEY, stats);
+    }
+
+    public static Optional<QueryStats> from(ContextView context) {
+        return context.getOrEmpty(CONTEXT_KEY);
+    }
+
+    /**
+     * @return the stats of the given SQL statement, to which its executions are added
+     */
+    public StatementStats statement(String sql) {
+        return statements.computeIfAbsent(sql, StatementStats::new);
+    }
+
+    public long getExecutions() {
+        return statements.values().stream().mapToLong(StatementStats::getExecutions).sum();
+    }
+
+    public long getRows() {
+        return statements.values().stream().mapToLong(StatementStats::getRows).sum();
+    }
+
+    public long getTimeNanos() {
+        return statements.values().stream().mapToLong(StatementStats::getTimeNanos).sum();
+    }
+
+    /**
+     * @return the stats of the statements, the longest first
+     */
+    public List<StatementStats> getStatements() {
+        return statements.values().stream()
+                .sorted(Comparator.comparingLong(StatementStats::getTimeNanos).reversed())
+                .toList();
+    }
+
+    public static class StatementStats {
+
+        private final String sql;
+        private final LongAdder executions = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder timeNanos = new LongAdder();
+
+        StatementStats(String sql) {
+            this.sql = sql;
+        }
+
+        public void executed(long nanos) {
+            executions.increment();
+            timeNanos.add(nanos);
+        }
+
+        public void rows(long count) {
+            rows.add(count);
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        public long getExecutions() {
+            return executions.sum();
+        }
+
+        public long getRows() {
+            return rows.sum();
+        }
+
+        public long getTimeNanos() {
+            return timeNanos.sum();
+        }
+
+        @Override
+        public String toString() {
+            return getExecutions() + " x, " + getRows() + " rows, " + TimeUnit.NANOSECONDS.toMillis(getTimeNanos()) + " ms : "
+                    + sql.replaceAll("\\s+", " ").trim();
+        }
+    }
+}
@@ -3,6 +3,7 @@ package org.openfilz.dms.utils;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.r2dbc.core.DatabaseClient;
 import org.springframework.stereotype.Component;
 
@@ -26,6 +27,8 @@ public class SqlUtils {
     public static final String SPACE = " ";
     public static final int MAX_PAGE_SIZE = 100;
     public static final String UNDERSCORE = "_";
+    public static final String SIMILARITY = "_similarity";
+    public static final String UNIQUE_NAME_INDEX = "idx_documents_parent_name_unique";
 
     private final ObjectMapper objectMapper;
 
@@ -47,13 +50,27 @@ public class SqlUtils {
         return first;
     }
 
+    /**
+     * @return true if the error is raised by a statement giving to a document a name already held in its folder
+     */
+    public static boolean isDuplicateName(Throwable e) {
+        return e instanceof DuplicateKeyException && e.getMessage() != null && e.getMessage().contains(UNIQUE_NAME_INDEX);
+    }
+
     public DatabaseClient.GenericExecuteSpec bindCriteria(String criteria, Object value, DatabaseClient.GenericExecuteSpec query) {
         //log.debug("bindCriteria {} with value {}", criteria, value );
         return query.bind(criteria, value);
     }
     public DatabaseClient.GenericExecuteSpec bindLikeCriteria(String criteria, String value, DatabaseClient.GenericExecuteSpec query) {
         //log.debug("bindLikeCriteria {} with value {}", criteria, value );
-        return query.bind(criteria, "%" + value.toUpperCase() + "%");
+        return query.bind(criteria, "%" + escapeLike(value.toUpperCase()) + "%");
+    }
+
+    /**
+     * The LIKE wildcards of a searched value are matched literally
+     */
+    public static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
     }
 
     public DatabaseClient.GenericExecuteSpec bindMetadata(Map<String, Object> metadata, DatabaseClient.GenericExecuteSpec query) {
@@ -70,10 +87,17 @@ public class SqlUtils {
         sql.append(criteria).append(" = :").append(criteria).append(SPACE);
     }
 
+    // UPPER(name) is indexed with gin_trgm_ops : substring searches use the index
     public void appendLikeCriteria(String criteria, StringBuilder sql) {
         sql.append("UPPER(").append(criteria).append(") LIKE :").append(criteria).append(SPACE);
     }
 
+    // completed by the id, so that the pages of equally similar names are stable
+    public void appendSimilarityOrder(String criteria, StringBuilder sql) {
+        sql.append(ORDER_BY).append("similarity(UPPER(").append(criteria).append("), :").append(criteria).append(SIMILARITY)
+                .append(") DESC, id");
+    }
+
     public void appendLessThanCriteria(String criteria, StringBuilder sql) {
         sql.append(criteria).append(" <= :").append(criteria).append(SPACE);
     }
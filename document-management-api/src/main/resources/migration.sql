@@ -10,4 +10,55 @@ begin
     alter table audit_logs alter column resource_id TYPE UUID;
     END IF;
 end;
-$$
\ No newline at end of file
+$$;
+
+-- audit_logs partitioned by month : the rows are moved to the default partition, and then to their monthly partition
+-- when the application starts (AuditPartitionService). To run with the application stopped, see BUILD_AND_TEST.md
+do
+$$
+begin
+    IF EXISTS (select 1 from pg_class where relname='audit_logs' and relkind='r')
+        THEN
+    alter table audit_logs rename to audit_logs_legacy;
+    alter sequence audit_logs_id_seq rename to audit_logs_legacy_id_seq;
+    create table audit_logs (
+          id BIGSERIAL,
+          timestamp TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP,
+          user_principal VARCHAR(255),
+          action VARCHAR(255) NOT NULL,
+          resource_type VARCHAR(100),
+          resource_id UUID,
+          details JSONB,
+          PRIMARY KEY (id, timestamp)
+    ) PARTITION BY RANGE (timestamp);
+    create table audit_logs_default partition of audit_logs default;
+    -- the ids are kept, and the new sequence continues after them
+    insert into audit_logs (id, timestamp, user_principal, action, resource_type, resource_id, details)
+        select id, coalesce(timestamp, CURRENT_TIMESTAMP), user_principal, action, resource_type, resource_id, details
+        from audit_logs_legacy;
+    perform setval('audit_logs_id_seq', coalesce(max(id), 1), max(id) is not null) from audit_logs;
+    drop table audit_logs_legacy;
+    END IF;
+end;
+$$;
+
+-- documents.tree_path of the documents created before the materialized ancestry (also done by schema.sql at startup)
+WITH RECURSIVE tree AS (
+    select id, document_tree_label(id) as tree_path from documents where parent_id is null
+  UNION ALL
+    select d.id, tree.tree_path || document_tree_label(d.id) from documents d join tree on d.parent_id = tree.id
+)
+update documents d set tree_path = tree.tree_path from tree where d.id = tree.id and d.tree_path is null;
+
+-- files created before the full-text index of the contents : queued for the extraction of their text
+insert into document_contents (document_id)
+select id from documents where type = 'FILE' and storage_path is not null
+on conflict (document_id) do nothing;
+
+-- documents.unique_name of the documents created before the unique index of the names : the oldest document of each
+-- name holds it in its folder, the later duplicates keep FALSE (done by schema.sql at startup when the column is added,
+-- to run only for a database where the column was added without it)
+update documents d set unique_name = true
+from (select distinct on (parent_id, name) id from documents order by parent_id, name, created_at, id) oldest
+where d.id = oldest.id
+  and not exists (select 1 from documents o where o.unique_name and o.parent_id is not distinct from d.parent_id and o.name = d.name);
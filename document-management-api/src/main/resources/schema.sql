@@ -1,4 +1,6 @@
 CREATE EXTENSION IF NOT EXISTS "uuid-ossp"; -- For UUID generation
+CREATE EXTENSION IF NOT EXISTS ltree; -- For the materialized ancestry of the documents
+CREATE EXTENSION IF NOT EXISTS pg_trgm; -- For the substring searches on the names
 
 CREATE TABLE IF NOT EXISTS documents (
          id UUID PRIMARY KEY DEFAULT uuid_generate_v4(),
@@ -13,21 +15,221 @@ CREATE TABLE IF NOT EXISTS documents (
          updated_at TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP,
          created_by VARCHAR(255),
          updated_by VARCHAR(255),
+         tree_path LTREE, -- ids (without '-') of the ancestors of the document, ending with its own id
+         unique_name BOOLEAN NOT NULL DEFAULT TRUE, -- FALSE when the name was already held in the folder and allowDuplicateFileNames was requested
          CONSTRAINT fk_parent FOREIGN KEY (parent_id) REFERENCES documents (id) ON DELETE CASCADE
 );
 
+ALTER TABLE documents ADD COLUMN IF NOT EXISTS tree_path LTREE; -- tree_path of existing documents is set below, once the triggers are created
+-- unique_name of the documents created before the unique index of the names, set when the column is added : the oldest
+-- document of each name holds it in its folder, the later duplicates keep FALSE
+DO '
+BEGIN
+    IF NOT EXISTS (SELECT 1 FROM information_schema.columns WHERE table_name = ''documents'' AND column_name = ''unique_name'') THEN
+        ALTER TABLE documents ADD COLUMN unique_name BOOLEAN NOT NULL DEFAULT FALSE;
+        UPDATE documents d SET unique_name = TRUE
+        FROM (SELECT DISTINCT ON (parent_id, name) id FROM documents ORDER BY parent_id, name, created_at, id) oldest
+        WHERE d.id = oldest.id;
+    END IF;
+END;
+';
+ALTER TABLE documents ALTER COLUMN unique_name SET DEFAULT TRUE;
+
 CREATE INDEX IF NOT EXISTS idx_documents_parent_id ON documents (parent_id);
+CREATE INDEX IF NOT EXISTS idx_documents_tree_path ON documents USING GIST (tree_path); -- For descendant / ancestor checks
 CREATE INDEX IF NOT EXISTS idx_documents_name ON documents (name);
+CREATE INDEX IF NOT EXISTS idx_documents_name_trgm ON documents USING GIN (UPPER(name) gin_trgm_ops); -- For the nameLike substring searches
 CREATE INDEX IF NOT EXISTS idx_documents_type ON documents (type);
+-- Keyset pagination of the folders content (GraphQL listFolderPage) : one index per sort key, completed by the id
+CREATE INDEX IF NOT EXISTS idx_documents_parent_name_id ON documents (parent_id, name, id);
+-- (the dates are nullable : they are sorted as COALESCE(date, -infinity), the documents without date coming first)
+DROP INDEX IF EXISTS idx_documents_parent_created_at_id;
+DROP INDEX IF EXISTS idx_documents_parent_updated_at_id;
+CREATE INDEX IF NOT EXISTS idx_documents_parent_coalesce_created_at_id ON documents (parent_id, COALESCE(created_at, '-infinity'), id);
+CREATE INDEX IF NOT EXISTS idx_documents_parent_coalesce_updated_at_id ON documents (parent_id, COALESCE(updated_at, '-infinity'), id);
 CREATE INDEX IF NOT EXISTS idx_documents_metadata ON documents USING GIN (metadata); -- For JSONB searching
+-- A name is held by one document per folder (root included) : the inserts claim it with ON CONFLICT DO NOTHING, the
+-- renames and moves fail on this index. The documents written with allowDuplicateFileNames only claim a free name.
+CREATE UNIQUE INDEX IF NOT EXISTS idx_documents_parent_name_unique ON documents (parent_id, name) NULLS NOT DISTINCT WHERE unique_name;
+
+-- tree_path is maintained by triggers : set from the parent on insert (unless already given), and rewritten for the
+-- whole subtree when parent_id changes. Deleting a folder cascades to its subtree through fk_parent.
+-- (the function bodies are string literals rather than dollar-quoted, so that the script can be split on ;)
+CREATE OR REPLACE FUNCTION document_tree_label(id UUID) RETURNS LTREE AS
+    'SELECT text2ltree(replace(id::text, ''-'', ''''))'
+    LANGUAGE sql IMMUTABLE;
+
+CREATE OR REPLACE FUNCTION documents_set_tree_path() RETURNS TRIGGER AS '
+BEGIN
+    IF TG_OP = ''UPDATE'' OR NEW.tree_path IS NULL THEN
+        NEW.tree_path := COALESCE((SELECT tree_path FROM documents WHERE id = NEW.parent_id), ''''::ltree)
+                         || document_tree_label(NEW.id);
+    END IF;
+    RETURN NEW;
+END;
+' LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION documents_move_tree_path() RETURNS TRIGGER AS '
+BEGIN
+    UPDATE documents SET tree_path = NEW.tree_path || subpath(tree_path, nlevel(OLD.tree_path))
+    WHERE tree_path <@ OLD.tree_path AND id <> NEW.id;
+    RETURN NULL;
+END;
+' LANGUAGE plpgsql;
+
+CREATE OR REPLACE TRIGGER documents_tree_path_insert BEFORE INSERT ON documents
+    FOR EACH ROW EXECUTE FUNCTION documents_set_tree_path();
+
+CREATE OR REPLACE TRIGGER documents_tree_path_update BEFORE UPDATE OF parent_id ON documents
+    FOR EACH ROW WHEN (OLD.parent_id IS DISTINCT FROM NEW.parent_id) EXECUTE FUNCTION documents_set_tree_path();
+
+CREATE OR REPLACE TRIGGER documents_tree_path_move AFTER UPDATE OF parent_id ON documents
+    FOR EACH ROW WHEN (OLD.parent_id IS DISTINCT FROM NEW.parent_id) EXECUTE FUNCTION documents_move_tree_path();
+
+-- tree_path of the documents created before the materialized ancestry : the triggers always set it, so only documents
+-- of a database upgraded from a previous version are still NULL (found through the partial index, nothing is walked once done)
+CREATE INDEX IF NOT EXISTS idx_documents_tree_path_null ON documents (id) WHERE tree_path IS NULL;
+WITH RECURSIVE tree AS (
+    SELECT id, document_tree_label(id) AS tree_path FROM documents
+    WHERE parent_id IS NULL AND EXISTS (SELECT 1 FROM documents WHERE tree_path IS NULL)
+  UNION ALL
+    SELECT d.id, tree.tree_path || document_tree_label(d.id) FROM documents d JOIN tree ON d.parent_id = tree.id
+)
+UPDATE documents d SET tree_path = tree.tree_path FROM tree WHERE d.id = tree.id AND d.tree_path IS NULL;
 
--- Audit Log Table
+-- Notifies the ids of the updated or deleted documents to the documents cache of each instance of the application
+-- (DocumentCacheService) : a statement changing many documents notifies * instead.
+CREATE OR REPLACE FUNCTION documents_notify_changes() RETURNS TRIGGER AS '
+BEGIN
+    IF (SELECT count(*) FROM changed_documents) > 1000 THEN
+        PERFORM pg_notify(''documents_changed'', ''*'');
+    ELSE
+        PERFORM pg_notify(''documents_changed'', id::text) FROM changed_documents;
+    END IF;
+    RETURN NULL;
+END;
+' LANGUAGE plpgsql;
+
+CREATE OR REPLACE TRIGGER documents_notify_update AFTER UPDATE ON documents
+    REFERENCING OLD TABLE AS changed_documents FOR EACH STATEMENT EXECUTE FUNCTION documents_notify_changes();
+
+CREATE OR REPLACE TRIGGER documents_notify_delete AFTER DELETE ON documents
+    REFERENCING OLD TABLE AS changed_documents FOR EACH STATEMENT EXECUTE FUNCTION documents_notify_changes();
+
+-- Audit Log Table, partitioned by month : the monthly partitions are created (and dropped after the retention period)
+-- by AuditPartitionService, the rows outside of these partitions go to audit_logs_default.
+-- An audit_logs table created before the partitioning must be converted with migration.sql
 CREATE TABLE IF NOT EXISTS audit_logs (
-          id SERIAL PRIMARY KEY,
-          timestamp TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP,
+          id BIGSERIAL,
+          timestamp TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP,
           user_principal VARCHAR(255),
           action VARCHAR(255) NOT NULL,
           resource_type VARCHAR(100),
           resource_id UUID,
-          details JSONB
-);
\ No newline at end of file
+          details JSONB,
+          PRIMARY KEY (id, timestamp)
+) PARTITION BY RANGE (timestamp);
+
+-- only once partitioned : an audit_logs table created before the partitioning is kept as is until migrated
+DO '
+BEGIN
+    IF EXISTS (SELECT 1 FROM pg_partitioned_table WHERE partrelid = ''audit_logs''::regclass) THEN
+        CREATE TABLE IF NOT EXISTS audit_logs_default PARTITION OF audit_logs DEFAULT;
+    END IF;
+END;
+';
+
+CREATE INDEX IF NOT EXISTS idx_audit_logs_resource_id ON audit_logs (resource_id, timestamp);
+CREATE INDEX IF NOT EXISTS idx_audit_logs_timestamp ON audit_logs (timestamp);
+CREATE INDEX IF NOT EXISTS idx_audit_logs_action ON audit_logs (action, timestamp);
+CREATE INDEX IF NOT EXISTS idx_audit_logs_user_principal ON audit_logs (user_principal, timestamp);
+CREATE INDEX IF NOT EXISTS idx_audit_logs_details ON audit_logs USING GIN (details jsonb_path_ops); -- For details @> criteria
+
+-- Content-addressed blobs (used when storage.deduplication.enabled is true)
+CREATE TABLE IF NOT EXISTS storage_blobs (
+          hash VARCHAR(64) PRIMARY KEY, -- SHA-256 of the content
+          storage_path VARCHAR(255) NOT NULL UNIQUE,
+          ref_count INTEGER NOT NULL DEFAULT 1,
+          created_at TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP
+);
+
+-- Storage paths of deleted documents, whose content is removed from the storage in background
+CREATE TABLE IF NOT EXISTS storage_purge_queue (
+          id BIGSERIAL PRIMARY KEY,
+          storage_path VARCHAR(255) NOT NULL,
+          created_at TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP,
+          locked_until TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP -- lease of a claimed path
+);
+ALTER TABLE storage_purge_queue ADD COLUMN IF NOT EXISTS locked_until TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP;
+
+-- Full-text index of the content of the files : a row is queued (status PENDING) by the triggers below when a file is
+-- created or its content replaced, and the text is extracted in background by ContentIndexService, so that the uploads
+-- do not wait for the extraction. version is increased at each change of the content, so that an extraction of the
+-- previous content cannot overwrite the new one.
+CREATE TABLE IF NOT EXISTS document_contents (
+          document_id UUID PRIMARY KEY REFERENCES documents (id) ON DELETE CASCADE,
+          status VARCHAR(20) NOT NULL DEFAULT 'PENDING', -- PENDING, INDEXED, UNSUPPORTED or FAILED
+          version INTEGER NOT NULL DEFAULT 1,
+          attempts INTEGER NOT NULL DEFAULT 0,
+          next_attempt_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP, -- also the lease of a claimed row
+          last_error TEXT,
+          text_vector TSVECTOR,
+          indexed_at TIMESTAMP WITH TIME ZONE
+);
+
+CREATE INDEX IF NOT EXISTS idx_document_contents_text_vector ON document_contents USING GIN (text_vector);
+CREATE INDEX IF NOT EXISTS idx_document_contents_pending ON document_contents (next_attempt_at) WHERE status = 'PENDING';
+
+CREATE OR REPLACE FUNCTION document_contents_queue_inserted() RETURNS TRIGGER AS '
+BEGIN
+    INSERT INTO document_contents (document_id)
+    SELECT id FROM inserted_documents WHERE type = ''FILE'' AND storage_path IS NOT NULL
+    ON CONFLICT (document_id) DO NOTHING;
+    RETURN NULL;
+END;
+' LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION document_contents_queue_updated() RETURNS TRIGGER AS '
+BEGIN
+    INSERT INTO document_contents (document_id) VALUES (NEW.id)
+    ON CONFLICT (document_id) DO UPDATE SET status = ''PENDING'', version = document_contents.version + 1, attempts = 0,
+        next_attempt_at = CURRENT_TIMESTAMP, last_error = NULL;
+    RETURN NULL;
+END;
+' LANGUAGE plpgsql;
+
+CREATE OR REPLACE TRIGGER document_contents_insert AFTER INSERT ON documents
+    REFERENCING NEW TABLE AS inserted_documents FOR EACH STATEMENT EXECUTE FUNCTION document_contents_queue_inserted();
+
+CREATE OR REPLACE TRIGGER document_contents_update AFTER UPDATE OF storage_path ON documents
+    FOR EACH ROW WHEN (NEW.type = 'FILE' AND NEW.storage_path IS NOT NULL AND OLD.storage_path IS DISTINCT FROM NEW.storage_path)
+    EXECUTE FUNCTION document_contents_queue_updated();
+
+-- Chunked uploads : a session is created for a file, its chunks are written to the storage in any order and by any
+-- instance of the application, then the session is completed into a document. The sessions which are not completed
+-- before expires_at (pushed back by each chunk) are aborted by UploadSessionService.
+CREATE TABLE IF NOT EXISTS upload_sessions (
+          id UUID PRIMARY KEY DEFAULT uuid_generate_v4(),
+          name VARCHAR(255) NOT NULL,
+          content_type VARCHAR(100),
+          size BIGINT NOT NULL,
+          chunk_size BIGINT NOT NULL,
+          chunk_count INTEGER NOT NULL,
+          parent_id UUID, -- checked again on completion : the folder may have been deleted in the meantime
+          metadata JSONB,
+          allow_duplicate_file_names BOOLEAN NOT NULL DEFAULT FALSE,
+          storage_path VARCHAR(255) NOT NULL,
+          storage_upload_id VARCHAR(1024), -- id of the multipart upload in the storage, if any
+          created_by VARCHAR(255),
+          created_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP,
+          expires_at TIMESTAMP WITH TIME ZONE NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_upload_sessions_expires_at ON upload_sessions (expires_at);
+
+CREATE TABLE IF NOT EXISTS upload_session_chunks (
+          session_id UUID NOT NULL REFERENCES upload_sessions (id) ON DELETE CASCADE,
+          chunk_number INTEGER NOT NULL,
+          tag VARCHAR(255), -- returned by the storage for the chunk (ETag of a MinIO part)
+          PRIMARY KEY (session_id, chunk_number)
+);
@@ -0,0 +1,298 @@
+package org.openfilz.dms.benchmark;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.openfilz.dms.benchmark.SyntheticTreeGenerator.Shape;
+import org.openfilz.dms.benchmark.SyntheticTreeGenerator.SyntheticTree;
+import org.openfilz.dms.config.RestApiVersion;
+import org.openfilz.dms.controller.TestContainersBaseConfig;
+import org.openfilz.dms.dto.request.CopyRequest;
+import org.openfilz.dms.dto.request.CreateFolderRequest;
+import org.openfilz.dms.dto.response.FolderResponse;
+import org.openfilz.dms.service.StorageService;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.MultipartBodyBuilder;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.TestConstructor;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.context.TestConstructor.AutowireMode.ALL;
+
+/**
+ * End-to-end load test : seeds Postgres (Testcontainers) and the local storage with a synthetic tree (see
+ * {@link SyntheticTreeGenerator} for its shape), then replays a weighted mix of uploads, folder listings (REST and
+ * GraphQL), downloads, deep folder copies and zip downloads with a fixed number of concurrent clients, and reports the
+ * ops/sec and the p50 / p99 latencies per endpoint.
+ * Runs offline once the postgres image has been pulled. Not part of the regular test suite - run it with :
+ * <pre>mvn test -Dtest=DocumentManagementLoadBenchmark -Dbenchmark.concurrency=32 -Dbenchmark.duration.s=60
+ *     -Dbenchmark.tree.depth=4 -Dbenchmark.tree.folders=5 -Dbenchmark.tree.files=20
+ *     -Dbenchmark.mix=upload=10,list=30,graphql=30,download=20,copy=5,zip=5</pre>
+ */
+@Testcontainers
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = "logging.level.org.openfilz=WARN")
+@TestConstructor(autowireMode = ALL)
+class DocumentManagementLoadBenchmark extends TestContainersBaseConfig {
+
+    private static final String DEFAULT_MIX = "upload=15,list=25,graphql=25,download=20,copy=5,zip=10";
+    private static final String LIST_FOLDER_QUERY = """
+            query listFolder($request:ListFolderRequest!) {
+                listFolder(request:$request) {
+                  id
+                  type
+                  name
+                  size
+                  metadata
+                }
+            }
+            """;
+
+    private static final int CONCURRENCY = Integer.getInteger("benchmark.concurrency", 16);
+    private static final long WARMUP_SECONDS = Long.getLong("benchmark.warmup.s", 5);
+    private static final long DURATION_SECONDS = Long.getLong("benchmark.duration.s", 30);
+
+    private static final Path STORAGE_ROOT;
+
+    static {
+        try {
+            STORAGE_ROOT = Files.createTempDirectory("dms-load-benchmark");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private enum Endpoint {
+        UPLOAD("upload"),
+        LIST_FOLDER("list"),
+        GRAPHQL_LIST_FOLDER("graphql"),
+        DOWNLOAD("download"),
+        COPY_FOLDER("copy"),
+        DOWNLOAD_ZIP("zip");
+
+        private final String key;
+
+        Endpoint(String key) {
+            this.key = key;
+        }
+    }
+
+    private final DatabaseClient databaseClient;
+    private final StorageService storageService;
+
+    @LocalServerPort
+    private int port;
+
+    private WebClient webClient;
+    private SyntheticTreeGenerator generator;
+    private SyntheticTree tree;
+    private UUID copiesFolderId;
+    private final AtomicLong uploadCounter = new AtomicLong();
+
+    DocumentManagementLoadBenchmark(WebTestClient webTestClient, DatabaseClient databaseClient, StorageService storageService) {
+        super(webTestClient);
+        this.databaseClient = databaseClient;
+        this.storageService = storageService;
+    }
+
+    @DynamicPropertySource
+    static void configureStorage(DynamicPropertyRegistry registry) {
+        registry.add("storage.type", () -> "local");
+        registry.add("storage.local.base-path", STORAGE_ROOT::toString);
+    }
+
+    @AfterAll
+    static void tearDown() throws IOException {
+        FileSystemUtils.deleteRecursively(STORAGE_ROOT);
+    }
+
+    @Test
+    void mixedWorkload() {
+        Shape shape = Shape.fromSystemProperties();
+        generator = new SyntheticTreeGenerator(databaseClient, storageService, STORAGE_ROOT, shape);
+        long start = System.nanoTime();
+        tree = generator.generate("load-test-" + UUID.randomUUID());
+        System.out.printf("Seeded %d folders and %d files (%d MB) in %d ms : %s%n", tree.folderCount(), tree.files().size(),
+                tree.totalSize() / (1024 * 1024), (System.nanoTime() - start) / 1_000_000, shape);
+        copiesFolderId = webClient().post().uri(RestApiVersion.API_PREFIX + "/folders")
+                .bodyValue(new CreateFolderRequest("load-test-copies-" + UUID.randomUUID(), null))
+                .retrieve()
+                .bodyToMono(FolderResponse.class)
+                .block()
+                .id();
+
+        Map<Endpoint, Integer> mix = parseMix(System.getProperty("benchmark.mix", DEFAULT_MIX));
+        run(mix, WARMUP_SECONDS);
+        Map<Endpoint, Latencies> latencies = run(mix, DURATION_SECONDS);
+
+        System.out.printf("%d concurrent clients during %d s, mix %s%n", CONCURRENCY, DURATION_SECONDS, mix);
+        System.out.printf("%-20s %8s %7s %10s %10s %10s %10s%n", "endpoint", "ops", "errors", "ops/s", "p50 ms", "p99 ms", "max ms");
+        latencies.forEach((endpoint, endpointLatencies) -> endpointLatencies.print(endpoint.name(), DURATION_SECONDS));
+        latencies.forEach((endpoint, endpointLatencies) -> assertEquals(0, endpointLatencies.errors.get(), endpoint + " errors"));
+    }
+
+    /**
+     * Runs the workload during the given time : each client sends its next operation, drawn according to the mix, as
+     * soon as the previous one has completed
+     */
+    private Map<Endpoint, Latencies> run(Map<Endpoint, Integer> mix, long seconds) {
+        Map<Endpoint, Latencies> latencies = new EnumMap<>(Endpoint.class);
+        mix.keySet().forEach(endpoint -> latencies.put(endpoint, new Latencies()));
+        List<Endpoint> draws = new ArrayList<>();
+        mix.forEach((endpoint, weight) -> draws.addAll(Collections.nCopies(weight, endpoint)));
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        Flux.range(0, CONCURRENCY)
+                .flatMap(_ -> Mono.defer(() -> {
+                            Endpoint endpoint = draws.get(ThreadLocalRandom.current().nextInt(draws.size()));
+                            return timed(latencies.get(endpoint), send(endpoint));
+                        })
+                        .repeat(() -> System.nanoTime() < deadline), CONCURRENCY)
+                .blockLast();
+        return latencies;
+    }
+
+    private Mono<Void> timed(Latencies latencies, Mono<?> operation) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return operation
+                    .doOnSuccess(_ -> latencies.record(System.nanoTime() - start))
+                    .doOnError(_ -> latencies.errors.incrementAndGet())
+                    .onErrorComplete()
+                    .then();
+        });
+    }
+
+    private Mono<?> send(Endpoint endpoint) {
+        return switch (endpoint) {
+            case UPLOAD -> upload();
+            case LIST_FOLDER -> webClient().get()
+                    .uri(uri -> uri.path(RestApiVersion.API_PREFIX + "/folders/list").queryParam("folderId", randomFolder(0)).build())
+                    .retrieve()
+                    .toBodilessEntity();
+            case GRAPHQL_LIST_FOLDER -> webClient().post().uri(baseGraphQlHttpPath)
+                    .bodyValue(Map.of("query", LIST_FOLDER_QUERY, "variables", Map.of("request", Map.of(
+                            "id", randomFolder(0),
+                            "pageInfo", Map.of("sortBy", "name", "sortOrder", "ASC", "pageNumber", 1, "pageSize", 50)))))
+                    .retrieve()
+                    .bodyToMono(new ParameterizedTypeReference<Map<String, Object>>() {})
+                    .filter(response -> !response.containsKey("errors"))
+                    .switchIfEmpty(Mono.error(() -> new IllegalStateException("GraphQL errors")));
+            case DOWNLOAD -> webClient().get()
+                    .uri(RestApiVersion.API_PREFIX + "/documents/{id}/download", randomItem(tree.files()))
+                    .retrieve()
+                    .toBodilessEntity();
+            // a folder two levels below the root (or the deepest level of a shallower tree) : a deep copy of a
+            // subtree, not of the whole tree
+            case COPY_FOLDER -> webClient().post().uri(RestApiVersion.API_PREFIX + "/folders/copy")
+                    .bodyValue(new CopyRequest(List.of(randomFolderOfLevel(Math.min(2, tree.foldersByLevel().size() - 1))), copiesFolderId, true))
+                    .retrieve()
+                    .toBodilessEntity();
+            // a folder of the last level : its files only
+            case DOWNLOAD_ZIP -> webClient().post().uri(RestApiVersion.API_PREFIX + "/documents/download-multiple")
+                    .bodyValue(List.of(randomFolderOfLevel(tree.foldersByLevel().size() - 1)))
+                    .retrieve()
+                    .toBodilessEntity();
+        };
+    }
+
+    private Mono<?> upload() {
+        MultipartBodyBuilder builder = new MultipartBodyBuilder();
+        builder.part("file", new ByteArrayResource(generator.content(generator.nextFileSize())))
+                .filename("upload-" + uploadCounter.incrementAndGet() + ".bin")
+                .contentType(MediaType.APPLICATION_OCTET_STREAM);
+        builder.part("parentFolderId", randomFolder(0).toString());
+        return webClient().post()
+                .uri(uri -> uri.path(RestApiVersion.API_PREFIX + "/documents/upload").queryParam("allowDuplicateFileNames", true).build())
+                .contentType(MediaType.MULTIPART_FORM_DATA)
+                .body(BodyInserters.fromMultipartData(builder.build()))
+                .retrieve()
+                .toBodilessEntity();
+    }
+
+    /**
+     * A random folder of the tree, from the given level down
+     */
+    private UUID randomFolder(int minLevel) {
+        List<List<UUID>> levels = tree.foldersByLevel();
+        List<UUID> level = levels.get(ThreadLocalRandom.current().nextInt(minLevel, levels.size()));
+        return randomItem(level);
+    }
+
+    /**
+     * A random folder of the given level of the tree (0 : the root folder of the tree)
+     */
+    private UUID randomFolderOfLevel(int level) {
+        return randomItem(tree.foldersByLevel().get(level));
+    }
+
+    private static UUID randomItem(List<UUID> items) {
+        return items.get(ThreadLocalRandom.current().nextInt(items.size()));
+    }
+
+    private WebClient webClient() {
+        if (webClient == null) {
+            webClient = WebClient.create("http://localhost:" + port);
+        }
+        return webClient;
+    }
+
+    private static Map<Endpoint, Integer> parseMix(String mix) {
+        Map<Endpoint, Integer> weights = new EnumMap<>(Endpoint.class);
+        for (String entry : mix.split(",")) {
+            String[] keyAndWeight = entry.trim().split("=");
+            Endpoint endpoint = Arrays.stream(Endpoint.values())
+                    .filter(value -> value.key.equals(keyAndWeight[0]))
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalArgumentException("Unknown endpoint in benchmark.mix : " + keyAndWeight[0]));
+            int weight = Integer.parseInt(keyAndWeight[1]);
+            if (weight > 0) {
+                weights.put(endpoint, weight);
+            }
+        }
+        return weights;
+    }
+
+    private static class Latencies {
+
+        private final AtomicLong errors = new AtomicLong();
+        private long[] nanos = new long[1024];
+        private int count;
+
+        synchronized void record(long elapsedNanos) {
+            if (count == nanos.length) {
+                nanos = Arrays.copyOf(nanos, count * 2);
+            }
+            nanos[count++] = elapsedNanos;
+        }
+
+        synchronized void print(String name, long seconds) {
+            long[] sorted = Arrays.copyOf(nanos, count);
+            Arrays.sort(sorted);
+            System.out.printf("%-20s %8d %7d %10.1f %10.2f %10.2f %10.2f%n", name, count, errors.get(), (double) count / seconds,
+                    percentile(sorted, 0.50), percentile(sorted, 0.99), count == 0 ? 0 : sorted[count - 1] / 1e6);
+        }
+
+        private static double percentile(long[] sorted, double percentile) {
+            return sorted.length == 0 ? 0 : sorted[(int) Math.ceil(percentile * sorted.length) - 1] / 1e6;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package org.openfilz.dms.benchmark;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.PathResource;
+import org.springframework.http.server.reactive.ReactorHttpHandlerAdapter;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.server.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares the download throughput of a local file served :
+ * <ul>
+ *     <li>as a file-based {@link PathResource} (what {@code LocalStorageService.loadFile} returns) : written with
+ *     zero-copy ({@code ZeroCopyHttpOutputMessage} / Netty {@code FileRegion})</li>
+ *     <li>as an {@link InputStreamResource} : read into heap buffers by the generic resource encoder</li>
+ * </ul>
+ * Not part of the regular test suite - run it with :
+ * <pre>mvn test -Dtest=LocalDownloadThroughputBenchmark -Dbenchmark.file.size.mb=1024</pre>
+ */
+class LocalDownloadThroughputBenchmark {
+
+    private static final String ZERO_COPY = "/zero-copy";
+    private static final String BUFFERED = "/buffered";
+    private static final int WARMUP_ITERATIONS = 2;
+    private static final int ITERATIONS = 5;
+    private static final int CHUNK_SIZE = 1024 * 1024;
+
+    private static final long FILE_SIZE = Long.getLong("benchmark.file.size.mb", 256) * CHUNK_SIZE;
+
+    private static Path file;
+    private static DisposableServer server;
+    private static HttpClient client;
+
+    @BeforeAll
+    static void setUp() throws IOException {
+        file = Files.createTempFile("dms-download-benchmark", ".bin");
+        byte[] chunk = new byte[CHUNK_SIZE];
+        try (OutputStream os = Files.newOutputStream(file)) {
+            for (long written = 0; written < FILE_SIZE; written += CHUNK_SIZE) {
+                ThreadLocalRandom.current().nextBytes(chunk);
+                os.write(chunk);
+            }
+        }
+        RouterFunction<ServerResponse> routes = RouterFunctions.route()
+                .GET(ZERO_COPY, _ -> ServerResponse.ok().body(BodyInserters.fromResource(new PathResource(file))))
+                .GET(BUFFERED, _ -> ServerResponse.ok().body(BodyInserters.fromResource(new InputStreamResource(newInputStream()))))
+                .build();
+        server = HttpServer.create()
+                .port(0)
+                .handle(new ReactorHttpHandlerAdapter(RouterFunctions.toHttpHandler(routes)))
+                .bindNow();
+        client = HttpClient.create().baseUrl("http://localhost:" + server.port());
+    }
+
+    @AfterAll
+    static void tearDown() throws IOException {
+        server.disposeNow();
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    void compareDownloadThroughput() {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            download(ZERO_COPY);
+            download(BUFFERED);
+        }
+        report(ZERO_COPY, measure(ZERO_COPY));
+        report(BUFFERED, measure(BUFFERED));
+    }
+
+    private static Measure measure(String path) {
+        com.sun.management.OperatingSystemMXBean os = (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        long cpuStart = os.getProcessCpuTime();
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            assertEquals(FILE_SIZE, download(path));
+        }
+        return new Measure(System.nanoTime() - start, os.getProcessCpuTime() - cpuStart);
+    }
+
+    private static long download(String path) {
+        return client.get()
+                .uri(path)
+                .responseContent()
+                .reduce(0L, (total, buffer) -> total + buffer.readableBytes())
+                .defaultIfEmpty(0L)
+                .block();
+    }
+
+    private static void report(String path, Measure measure) {
+        double megabytes = (double) FILE_SIZE * ITERATIONS / CHUNK_SIZE;
+        System.out.printf("%-12s %10.1f MB/s  cpu %8.1f ms/GB%n",
+                path,
+                megabytes / (measure.elapsedNanos() / 1e9),
+                (measure.cpuNanos() / 1e6) / (megabytes / 1024));
+    }
+
+    private static InputStream newInputStream() {
+        try {
+            return Files.newInputStream(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private record Measure(long elapsedNanos, long cpuNanos) {
+    }
+}
@@ -0,0 +1,191 @@
+package org.openfilz.dms.benchmark;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.openfilz.dms.service.impl.MinioStorageService;
+import org.reactivestreams.Publisher;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.multipart.FilePart;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Uploads files concurrently through {@link MinioStorageService#saveFile(FilePart)} against an in-process
+ * S3-compatible stand-in (bucket lookup, PUT object and multipart upload), and reports the throughput and the peak
+ * number of live threads.
+ * Not part of the regular test suite - run it with :
+ * <pre>mvn test -Dtest=MinioUploadLoadBenchmark -Dbenchmark.uploads=64 -Dbenchmark.file.size.mb=12</pre>
+ */
+class MinioUploadLoadBenchmark {
+
+    private static final String BUCKET = "dms-benchmark";
+    private static final String S3_NAMESPACE = "http://s3.amazonaws.com/doc/2006-03-01/";
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int PART_SIZE = 5 * 1024 * 1024;
+
+    private static final int UPLOADS = Integer.getInteger("benchmark.uploads", 32);
+    private static final long FILE_SIZE = Long.getLong("benchmark.file.size.mb", 12) * 1024 * 1024;
+
+    private static final byte[] CHUNK = new byte[CHUNK_SIZE];
+
+    // bytes received by the stand-in, by object name
+    private static final Map<String, Long> receivedBytes = new ConcurrentHashMap<>();
+    private static final Map<String, Long> pendingUploads = new ConcurrentHashMap<>();
+
+    private static DisposableServer server;
+    private static MinioStorageService storageService;
+
+    @BeforeAll
+    static void setUp() {
+        ThreadLocalRandom.current().nextBytes(CHUNK);
+        server = HttpServer.create()
+                .port(0)
+                .handle(MinioUploadLoadBenchmark::handle)
+                .bindNow();
+        storageService = new MinioStorageService("http://localhost:" + server.port(), "access-key", "secret-key",
+                BUCKET, PART_SIZE, 4, 64, new SimpleMeterRegistry());
+    }
+
+    @AfterAll
+    static void tearDown() {
+        server.disposeNow();
+    }
+
+    @Test
+    void concurrentUploads() {
+        ThreadSampler sampler = new ThreadSampler();
+        long start = System.nanoTime();
+        List<String> objectNames = Flux.range(0, UPLOADS)
+                .flatMap(i -> storageService.saveFile(new GeneratedFilePart("file-" + i + ".bin")), UPLOADS)
+                .collectList()
+                .block();
+        long elapsedNanos = System.nanoTime() - start;
+        sampler.stop();
+
+        assertEquals(UPLOADS, objectNames.size());
+        objectNames.forEach(objectName -> assertEquals(FILE_SIZE, receivedBytes.get(objectName)));
+
+        double megabytes = (double) FILE_SIZE * UPLOADS / (1024 * 1024);
+        System.out.printf("%d concurrent uploads of %d MB : %10.1f MB/s  peak threads %d (boundedElastic %d)%n",
+                UPLOADS, FILE_SIZE / (1024 * 1024), megabytes / (elapsedNanos / 1e9),
+                sampler.peakThreads.get(), sampler.peakBoundedElasticThreads.get());
+    }
+
+    // ---- S3-compatible stand-in ----
+
+    private static Publisher<Void> handle(HttpServerRequest request, HttpServerResponse response) {
+        QueryStringDecoder uri = new QueryStringDecoder(request.uri());
+        Map<String, List<String>> parameters = uri.parameters();
+        String objectName = uri.path().length() > BUCKET.length() + 2 ? uri.path().substring(BUCKET.length() + 2) : null;
+        return switch (request.method().name()) {
+            case "HEAD", "DELETE" -> response.status(HttpResponseStatus.OK).header(HttpHeaderNames.CONTENT_LENGTH, "0").send();
+            case "GET" -> xml(response, "<LocationConstraint xmlns=\"" + S3_NAMESPACE + "\">us-east-1</LocationConstraint>");
+            case "POST" -> parameters.containsKey("uploads")
+                    ? xml(response, "<InitiateMultipartUploadResult xmlns=\"" + S3_NAMESPACE + "\"><Bucket>" + BUCKET
+                    + "</Bucket><Key>" + objectName + "</Key><UploadId>" + UUID.randomUUID() + "</UploadId></InitiateMultipartUploadResult>")
+                    : request.receive().then(Mono.defer(() -> {
+                receivedBytes.put(objectName, pendingUploads.remove(parameters.get("uploadId").getFirst()));
+                return xml(response, "<CompleteMultipartUploadResult xmlns=\"" + S3_NAMESPACE + "\"><Location>/" + BUCKET + "/" + objectName
+                        + "</Location><Bucket>" + BUCKET + "</Bucket><Key>" + objectName + "</Key><ETag>\"" + UUID.randomUUID()
+                        + "\"</ETag></CompleteMultipartUploadResult>");
+            }));
+            case "PUT" -> request.receive()
+                    .reduce(0L, (total, buffer) -> total + buffer.readableBytes())
+                    .flatMap(size -> {
+                        List<String> uploadId = parameters.get("uploadId");
+                        if (uploadId == null) {
+                            receivedBytes.put(objectName, size);
+                        } else {
+                            pendingUploads.merge(uploadId.getFirst(), size, Long::sum);
+                        }
+                        return response.header(HttpHeaderNames.ETAG, "\"" + UUID.randomUUID() + "\"")
+                                .header(HttpHeaderNames.CONTENT_LENGTH, "0")
+                                .send()
+                                .then();
+                    });
+            default -> response.status(HttpResponseStatus.METHOD_NOT_ALLOWED).send();
+        };
+    }
+
+    private static Mono<Void> xml(HttpServerResponse response, String body) {
+        return response.header(HttpHeaderNames.CONTENT_TYPE, MediaType.APPLICATION_XML_VALUE)
+                .sendString(Mono.just("<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + body))
+                .then();
+    }
+
+    // ---- client side ----
+
+    private record GeneratedFilePart(String filename) implements FilePart {
+
+        @Override
+        public String name() {
+            return "file";
+        }
+
+        @Override
+        public HttpHeaders headers() {
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
+            return headers;
+        }
+
+        @Override
+        public Flux<DataBuffer> content() {
+            return Flux.range(0, (int) (FILE_SIZE / CHUNK_SIZE))
+                    .map(_ -> DefaultDataBufferFactory.sharedInstance.wrap(CHUNK));
+        }
+
+        @Override
+        public Mono<Void> transferTo(Path dest) {
+            return Mono.error(new UnsupportedOperationException());
+        }
+    }
+
+    private static class ThreadSampler {
+
+        private final AtomicInteger peakThreads = new AtomicInteger();
+        private final AtomicInteger peakBoundedElasticThreads = new AtomicInteger();
+        private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+        ThreadSampler() {
+            executor.scheduleAtFixedRate(this::sample, 0, 10, TimeUnit.MILLISECONDS);
+        }
+
+        private void sample() {
+            var threads = Thread.getAllStackTraces().keySet();
+            peakThreads.accumulateAndGet(threads.size(), Math::max);
+            peakBoundedElasticThreads.accumulateAndGet((int) threads.stream()
+                    .filter(thread -> thread.getName().startsWith("boundedElastic"))
+                    .count(), Math::max);
+        }
+
+        void stop() {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package org.openfilz.dms.benchmark;
+
+import io.r2dbc.postgresql.codec.Json;
+import io.r2dbc.spi.Result;
+import io.r2dbc.spi.Statement;
+import org.openfilz.dms.enums.DocumentType;
+import org.openfilz.dms.service.StorageService;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Seeds the database and the local storage with a synthetic document tree : {@code foldersPerFolder} sub-folders per
+ * folder down to {@code depth} levels, {@code filesPerFolder} files in each folder, of log-normally distributed sizes,
+ * each with {@code metadataKeys} metadata taking {@code metadataValues} distinct values.
+ * The rows are inserted directly (by batches, level by level so that the tree_path of the parents is set) and the
+ * contents are written in the storage directory, which is much faster than going through the API.
+ */
+class SyntheticTreeGenerator {
+
+    private static final String INSERT_DOCUMENT = "INSERT INTO documents (id, name, type, content_type, size, parent_id, storage_path, metadata, created_by, updated_by) "
+            + "VALUES ($1, $2, $3, $4, $5, $6, $7, $8, $9, $9)";
+    private static final String CREATED_BY = "load-test";
+    private static final String CONTENT_TYPE = "application/octet-stream";
+    private static final int BATCH_SIZE = 500;
+
+    record Shape(int depth, int foldersPerFolder, int filesPerFolder, long medianFileSize, long maxFileSize,
+                 int metadataKeys, int metadataValues, long seed) {
+
+        static Shape fromSystemProperties() {
+            return new Shape(Integer.getInteger("benchmark.tree.depth", 3),
+                    Integer.getInteger("benchmark.tree.folders", 5),
+                    Integer.getInteger("benchmark.tree.files", 10),
+                    Long.getLong("benchmark.file.size.median.kb", 64) * 1024,
+                    Long.getLong("benchmark.file.size.max.kb", 4096) * 1024,
+                    Integer.getInteger("benchmark.metadata.keys", 4),
+                    Integer.getInteger("benchmark.metadata.values", 20),
+                    Long.getLong("benchmark.seed", 42));
+        }
+    }
+
+    /**
+     * Seeded tree : the folders by level (level 0 holds the root folder of the tree) and the files
+     */
+    record SyntheticTree(List<List<UUID>> foldersByLevel, List<UUID> files, long totalSize) {
+
+        UUID root() {
+            return foldersByLevel.getFirst().getFirst();
+        }
+
+        int folderCount() {
+            return foldersByLevel.stream().mapToInt(List::size).sum();
+        }
+    }
+
+    private record Row(UUID id, String name, DocumentType type, Long size, UUID parentId, String storagePath, Json metadata) {
+    }
+
+    private final DatabaseClient databaseClient;
+    private final StorageService storageService;
+    private final Path storageRoot;
+    private final Shape shape;
+    private final Random random;
+    private final byte[] content;
+
+    SyntheticTreeGenerator(DatabaseClient databaseClient, StorageService storageService, Path storageRoot, Shape shape) {
+        this.databaseClient = databaseClient;
+        this.storageService = storageService;
+        this.storageRoot = storageRoot;
+        this.shape = shape;
+        this.random = new Random(shape.seed());
+        // the contents are prefixes of this random buffer
+        this.content = new byte[(int) shape.maxFileSize()];
+        random.nextBytes(content);
+    }
+
+    /**
+     * Generates a tree under a new root-level folder
+     */
+    SyntheticTree generate(String rootName) {
+        List<List<UUID>> foldersByLevel = new ArrayList<>();
+        List<UUID> files = new ArrayList<>();
+        long totalSize = 0;
+        Row root = folder(rootName, null);
+        insert(List.of(root));
+        foldersByLevel.add(List.of(root.id()));
+        for (int level = 0; level < foldersByLevel.size(); level++) {
+            List<UUID> parents = foldersByLevel.get(level);
+            List<Row> rows = new ArrayList<>();
+            List<UUID> subFolders = new ArrayList<>();
+            for (UUID parentId : parents) {
+                if (level < shape.depth()) {
+                    for (int i = 0; i < shape.foldersPerFolder(); i++) {
+                        Row folder = folder("folder-" + i, parentId);
+                        rows.add(folder);
+                        subFolders.add(folder.id());
+                    }
+                }
+                for (int i = 0; i < shape.filesPerFolder(); i++) {
+                    Row file = file("file-" + i + ".bin", parentId);
+                    rows.add(file);
+                    files.add(file.id());
+                    totalSize += file.size();
+                }
+            }
+            insert(rows);
+            if (!subFolders.isEmpty()) {
+                foldersByLevel.add(subFolders);
+            }
+        }
+        return new SyntheticTree(foldersByLevel, files, totalSize);
+    }
+
+    /**
+     * Size of a file : log-normal around the median (most files are small, a few are large), within [1, max]
+     */
+    long nextFileSize() {
+        long size = Math.round(shape.medianFileSize() * Math.exp(random.nextGaussian()));
+        return Math.clamp(size, 1, shape.maxFileSize());
+    }
+
+    byte[] content(long size) {
+        byte[] bytes = new byte[(int) size];
+        System.arraycopy(content, 0, bytes, 0, bytes.length);
+        return bytes;
+    }
+
+    private Row folder(String name, UUID parentId) {
+        return new Row(UUID.randomUUID(), name, DocumentType.FOLDER, null, parentId, null, null);
+    }
+
+    private Row file(String name, UUID parentId) {
+        long size = nextFileSize();
+        String storagePath = storageService.getUniqueStorageFileName(name);
+        try {
+            Files.write(storageRoot.resolve(storagePath), content(size));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new Row(UUID.randomUUID(), name, DocumentType.FILE, size, parentId, storagePath, metadata());
+    }
+
+    private Json metadata() {
+        StringBuilder json = new StringBuilder("{");
+        for (int i = 0; i < shape.metadataKeys(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("\"key").append(i).append("\":\"value").append(random.nextInt(shape.metadataValues())).append('"');
+        }
+        return Json.of(json.append('}').toString());
+    }
+
+    private void insert(List<Row> rows) {
+        Flux.fromIterable(rows)
+                .buffer(BATCH_SIZE)
+                .concatMap(batch -> databaseClient.inConnectionMany(connection -> {
+                    Statement statement = connection.createStatement(INSERT_DOCUMENT);
+                    for (int i = 0; i < batch.size(); i++) {
+                        if (i > 0) {
+                            statement.add();
+                        }
+                        bind(statement, batch.get(i));
+                    }
+                    return Flux.from(statement.execute()).flatMap(Result::getRowsUpdated);
+                }))
+                .then()
+                .block();
+    }
+
+    private void bind(Statement statement, Row row) {
+        statement.bind(0, row.id())
+                .bind(1, row.name())
+                .bind(2, row.type().name())
+                .bind(8, CREATED_BY);
+        bindNullable(statement, 3, row.type() == DocumentType.FILE ? CONTENT_TYPE : null, String.class);
+        bindNullable(statement, 4, row.size(), Long.class);
+        bindNullable(statement, 5, row.parentId(), UUID.class);
+        bindNullable(statement, 6, row.storagePath(), String.class);
+        bindNullable(statement, 7, row.metadata(), Json.class);
+    }
+
+    private static <T> void bindNullable(Statement statement, int index, T value, Class<T> type) {
+        if (value == null) {
+            statement.bindNull(index, type);
+        } else {
+            statement.bind(index, value);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package org.openfilz.dms.config;
+
+import io.r2dbc.spi.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.openfilz.dms.utils.QueryStats;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.function.BiFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class QueryAccountingConnectionFactoryTest {
+
+    private static final String SELECT = "SELECT id FROM documents WHERE parent_id = $1";
+    private static final String UPDATE = "UPDATE documents SET name = $1 WHERE id = $2";
+
+    @Mock
+    private ConnectionFactory connectionFactory;
+
+    @Mock
+    private Connection connection;
+
+    private QueryAccountingConnectionFactory accountingConnectionFactory;
+
+    @BeforeEach
+    void setUp() {
+        accountingConnectionFactory = new QueryAccountingConnectionFactory(connectionFactory);
+        doReturn(Mono.just(connection)).when(connectionFactory).create();
+    }
+
+    @Test
+    void statements_shouldBeAccountedToTheStatsOfTheContext() {
+        mockStatement(SELECT, rowsResult(3));
+        mockStatement(UPDATE, updateResult(1));
+        QueryStats stats = new QueryStats();
+
+        Flux<Object> statements = Mono.from(accountingConnectionFactory.create())
+                .flatMapMany(accounted -> Flux.concat(
+                        Flux.from(accounted.createStatement(SELECT).bind(0, "parent").execute())
+                                .flatMap(result -> result.map((row, _) -> row)),
+                        Flux.from(accounted.createStatement(SELECT).bind(0, "other").execute())
+                                .flatMap(result -> result.map((row, _) -> row)),
+                        Flux.from(accounted.createStatement(UPDATE).execute())
+                                .flatMap(Result::getRowsUpdated)))
+                .contextWrite(context -> QueryStats.putIn(context, stats));
+
+        StepVerifier.create(statements).expectNextCount(7).verifyComplete();
+
+        assertEquals(3, stats.getExecutions());
+        assertEquals(7, stats.getRows());
+        assertTrue(stats.getTimeNanos() > 0);
+        QueryStats.StatementStats select = stats.statement(SELECT);
+        assertEquals(2, select.getExecutions());
+        assertEquals(6, select.getRows());
+        assertEquals(1, stats.statement(UPDATE).getRows());
+    }
+
+    @Test
+    void statements_withoutStatsInContext_shouldBeExecutedAsIs() {
+        mockStatement(SELECT, rowsResult(2));
+
+        StepVerifier.create(Mono.from(accountingConnectionFactory.create())
+                        .flatMapMany(accounted -> accounted.createStatement(SELECT).execute())
+                        .flatMap(result -> result.map((row, _) -> row)))
+                .expectNextCount(2)
+                .verifyComplete();
+    }
+
+    @Test
+    void connection_shouldUnwrapToTheActualConnection() {
+        StepVerifier.create(Mono.from(accountingConnectionFactory.create()))
+                .assertNext(accounted -> assertEquals(connection, ((Wrapped<?>) accounted).unwrap()))
+                .verifyComplete();
+    }
+
+    private void mockStatement(String sql, Result result) {
+        Statement statement = mock(Statement.class);
+        doReturn(statement).when(connection).createStatement(sql);
+        lenient().when(statement.bind(anyInt(), any())).thenReturn(statement);
+        doReturn(Flux.just(result)).when(statement).execute();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Result rowsResult(int rowCount) {
+        Result result = mock(Result.class);
+        when(result.map(any(BiFunction.class))).thenAnswer(invocation -> {
+            BiFunction<Row, RowMetadata, ?> mapping = invocation.getArgument(0);
+            return Flux.range(0, rowCount).map(_ -> mapping.apply(mock(Row.class), mock(RowMetadata.class)));
+        });
+        return result;
+    }
+
+    private static Result updateResult(long rowsUpdated) {
+        Result result = mock(Result.class);
+        when(result.getRowsUpdated()).thenReturn(Mono.just(rowsUpdated));
+        return result;
+    }
+}
@@ -15,12 +15,17 @@ import org.openfilz.dms.enums.DocumentType;
 import org.openfilz.dms.exception.DocumentNotFoundException;
 import org.openfilz.dms.service.DocumentService;
 import org.springframework.core.io.Resource;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.codec.multipart.FilePart;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
 import org.springframework.security.authentication.TestingAuthenticationToken;
 import org.springframework.security.core.Authentication;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
@@ -85,7 +90,7 @@ class DocumentControllerTest {
         when(documentService.findDocumentById(documentId)).thenReturn(Mono.just(doc));
         when(documentService.downloadDocument(documentId, authentication)).thenReturn(Mono.just(resource));
 
-        StepVerifier.create(documentController.downloadDocument(documentId, authentication))
+        StepVerifier.create(documentController.downloadDocument(documentId, MockServerWebExchange.from(MockServerHttpRequest.get("/")), authentication))
                 .expectNextMatches(response ->
                     response.getStatusCode().is2xxSuccessful() &&
                     response.getHeaders().getFirst(HttpHeaders.CONTENT_DISPOSITION).contains(doc.getName()) &&
@@ -94,6 +99,56 @@ class DocumentControllerTest {
                 .verifyComplete();
     }
 
+    @Test
+    void downloadDocumentRange_ShouldReturnPartialContent() {
+        UUID documentId = UUID.randomUUID();
+        Document doc = Document.builder()
+                .id(documentId)
+                .name("test.txt")
+                .contentType("text/plain")
+                .type(DocumentType.FILE)
+                .storagePath("storage-path#test.txt")
+                .size(100L)
+                .build();
+        Flux<DataBuffer> content = Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(new byte[10]));
+
+        when(documentService.findDocumentById(documentId)).thenReturn(Mono.just(doc));
+        when(documentService.downloadDocument(documentId, 90L, 10L, authentication)).thenReturn(content);
+
+        StepVerifier.create(documentController.downloadDocumentRange(documentId,
+                        MockServerWebExchange.from(MockServerHttpRequest.get("/").header(HttpHeaders.RANGE, "bytes=-10")), authentication))
+                .expectNextMatches(response ->
+                        response.getStatusCode() == HttpStatus.PARTIAL_CONTENT &&
+                        "bytes 90-99/100".equals(response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE)) &&
+                        response.getHeaders().getContentLength() == 10 &&
+                        response.getHeaders().getETag() != null &&
+                        response.getBody() == content
+                )
+                .verifyComplete();
+    }
+
+    @Test
+    void downloadDocumentRange_NotSatisfiable() {
+        UUID documentId = UUID.randomUUID();
+        Document doc = Document.builder()
+                .id(documentId)
+                .name("test.txt")
+                .type(DocumentType.FILE)
+                .storagePath("storage-path#test.txt")
+                .size(100L)
+                .build();
+
+        when(documentService.findDocumentById(documentId)).thenReturn(Mono.just(doc));
+
+        StepVerifier.create(documentController.downloadDocumentRange(documentId,
+                        MockServerWebExchange.from(MockServerHttpRequest.get("/").header(HttpHeaders.RANGE, "bytes=100-")), authentication))
+                .expectNextMatches(response ->
+                        response.getStatusCode() == HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE &&
+                        "bytes */100".equals(response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE))
+                )
+                .verifyComplete();
+    }
+
     @Test
     void getDocumentMetadata_Success() {
         UUID documentId = UUID.randomUUID();
@@ -147,7 +202,7 @@ class DocumentControllerTest {
 
         when(documentService.findDocumentById(documentId)).thenReturn(Mono.error(new DocumentNotFoundException(documentId)));
 
-        StepVerifier.create(documentController.downloadDocument(documentId, authentication))
+        StepVerifier.create(documentController.downloadDocument(documentId, MockServerWebExchange.from(MockServerHttpRequest.get("/")), authentication))
                 .expectError(DocumentNotFoundException.class)
                 .verify();
     }
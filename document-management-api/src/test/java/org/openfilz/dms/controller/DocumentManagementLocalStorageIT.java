@@ -7,12 +7,16 @@ import org.openfilz.dms.config.GraphQlQueryConfig;
 import org.openfilz.dms.config.RestApiVersion;
 import org.openfilz.dms.dto.audit.AuditLog;
 import org.openfilz.dms.dto.request.*;
+import org.openfilz.dms.dto.response.BatchUploadResult;
+import org.openfilz.dms.dto.response.ContentSearchResult;
 import org.openfilz.dms.dto.response.DocumentInfo;
 import org.openfilz.dms.dto.response.FolderElementInfo;
 import org.openfilz.dms.dto.response.FolderResponse;
 import org.openfilz.dms.dto.response.UploadResponse;
+import org.openfilz.dms.dto.response.UploadSessionResponse;
 import org.openfilz.dms.enums.DocumentType;
 import org.openfilz.dms.enums.SortOrder;
+import org.openfilz.dms.service.ContentIndexService;
 import org.openfilz.dms.utils.SqlUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
@@ -22,6 +26,7 @@ import org.springframework.core.io.Resource;
 import org.springframework.graphql.client.ClientGraphQlResponse;
 import org.springframework.graphql.client.HttpGraphQlClient;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.client.MultipartBodyBuilder;
@@ -30,7 +35,9 @@ import org.springframework.test.context.TestConstructor;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import org.springframework.web.reactive.function.BodyInserters;
 import org.testcontainers.junit.jupiter.Testcontainers;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 import reactor.test.StepVerifier;
 
 import java.io.IOException;
@@ -40,6 +47,7 @@ import java.nio.channels.FileChannel;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.time.OffsetDateTime;
 import java.util.*;
 import java.util.zip.ZipEntry;
@@ -59,6 +67,9 @@ public class DocumentManagementLocalStorageIT extends TestContainersBaseConfig {
     @Autowired
     private DatabaseClient databaseClient;
 
+    @Autowired
+    private ContentIndexService contentIndexService;
+
     private HttpGraphQlClient graphQlHttpClient;
 
     private static Long testTxtSize;
@@ -303,6 +314,46 @@ public class DocumentManagementLocalStorageIT extends TestContainersBaseConfig {
                 .verify();
     }
 
+    @Test
+    void whenGetSeveralDocsByIdWithParentGraphQl_thenOK() {
+        FolderResponse folder = createFolder("test-docsById" + UUID.randomUUID(), null);
+        MultipartBodyBuilder builder = newFileBuilder();
+        builder.part("parentFolderId", folder.id().toString());
+        UploadResponse uploadedFile = getUploadResponse(builder);
+
+        // resolved through the document DataLoader : the aliases, then the parents, are loaded in one query each
+        String graphQlRequest = """
+                query documentsById($fileId:UUID!, $folderId:UUID!) {
+                    file: documentById(id:$fileId) {
+                      name
+                      parent {
+                        id
+                        name
+                      }
+                    }
+                    folder: documentById(id:$folderId) {
+                      id
+                      type
+                    }
+                }
+                """.trim();
+        ClientGraphQlResponse response = getGraphQlHttpClient()
+                .document(graphQlRequest)
+                .variable("fileId", uploadedFile.id())
+                .variable("folderId", folder.id())
+                .execute()
+                .block();
+
+        Assertions.assertNotNull(response);
+        Map<String, Map<String, Object>> data = response.getData();
+        Assertions.assertEquals(uploadedFile.name(), data.get("file").get("name"));
+        Map<String, Object> parent = (Map<String, Object>) data.get("file").get("parent");
+        Assertions.assertEquals(folder.id().toString(), parent.get("id"));
+        Assertions.assertEquals(folder.name(), parent.get("name"));
+        Assertions.assertEquals(folder.id().toString(), data.get("folder").get("id"));
+        Assertions.assertEquals(DocumentType.FOLDER.toString(), data.get("folder").get("type"));
+    }
+
     private boolean checkDocById(ClientGraphQlResponse doc, UploadResponse uploadedFile) {
         Map<String, Object> items = ((Map<String, Map<String, Object>>) doc.getData()).get(GraphQlQueryConfig.DOCUMENT_BY_ID);
         return items.get("id").equals(uploadedFile.id().toString()) && items.get("name").equals(uploadedFile.name()) && items.get("contentType").equals(uploadedFile.contentType()) && Long.valueOf(items.get("size").toString()).equals(uploadedFile.size());
@@ -521,6 +572,191 @@ public class DocumentManagementLocalStorageIT extends TestContainersBaseConfig {
 
     }
 
+    @Test
+    void whenListFolderPageGraphQl_thenOK() {
+        FolderResponse parent = createFolder("test-folder-page" + UUID.randomUUID(), null);
+        List<String> names = List.of("a", "b", "c", "d", "e");
+        names.forEach(name -> createFolder(name, parent.id()));
+
+        ListFolderRequest request = new ListFolderRequest(parent.id(), null, null, null, null, null, null, null, null, null, null, null
+                , null, null);
+        var graphQlRequest = """
+                query listFolderPage($request:ListFolderRequest!, $page:CursorPageInfo!) {
+                    listFolderPage(request:$request, page:$page) {
+                      items {
+                        name
+                      }
+                      pageInfo {
+                        endCursor
+                        hasNextPage
+                      }
+                    }
+                }
+                """.trim();
+
+        List<String> listedNames = new ArrayList<>();
+        String after = null;
+        boolean hasNextPage = true;
+        while (hasNextPage) {
+            ClientGraphQlResponse response = getGraphQlHttpClient()
+                    .document(graphQlRequest)
+                    .variable("request", request)
+                    .variable("page", new CursorPageCriteria(2, after, "name", SortOrder.DESC))
+                    .execute()
+                    .block();
+            Assertions.assertNotNull(response);
+            Map<String, Object> page = (Map<String, Object>) ((Map<String, Object>) response.getData()).get(GraphQlQueryConfig.LIST_FOLDER_PAGE);
+            ((List<Map<String, Object>>) page.get("items")).forEach(item -> listedNames.add((String) item.get("name")));
+            Map<String, Object> pageInfo = (Map<String, Object>) page.get("pageInfo");
+            after = (String) pageInfo.get("endCursor");
+            hasNextPage = (Boolean) pageInfo.get("hasNextPage");
+            Assertions.assertTrue(listedNames.size() <= names.size());
+        }
+
+        Assertions.assertEquals(names.reversed(), listedNames);
+    }
+
+    @Test
+    void whenListFolderNameLikeGraphQl_thenOK() {
+        FolderResponse parent = createFolder("test-folder-name-like" + UUID.randomUUID(), null);
+        List.of("report", "annual_report_2024", "annual-report-2024", "other").forEach(name -> createFolder(name, parent.id()));
+
+        var graphQlRequest = """
+                query listFolder($request:ListFolderRequest!) {
+                    listFolder(request:$request) {
+                      name
+                    }
+                }
+                """.trim();
+
+        ListFolderRequest request = new ListFolderRequest(parent.id(), null, null, null, "REPORT", null, null, null, null, null, null, null
+                , null, new PageCriteria(null, null, 1, 100));
+        ClientGraphQlResponse response = getGraphQlHttpClient().document(graphQlRequest).variable("request", request).execute().block();
+        Assertions.assertNotNull(response);
+        List<Map<String, Object>> items = (List<Map<String, Object>>) ((Map<String, Object>) response.getData()).get("listFolder");
+        Assertions.assertEquals(3, items.size());
+        // the closest match comes first
+        Assertions.assertEquals("report", items.getFirst().get("name"));
+
+        // "_" is matched as is, not as a wildcard
+        request = new ListFolderRequest(parent.id(), null, null, null, "l_r", null, null, null, null, null, null, null
+                , null, new PageCriteria(null, null, 1, 100));
+        response = getGraphQlHttpClient().document(graphQlRequest).variable("request", request).execute().block();
+        Assertions.assertNotNull(response);
+        items = (List<Map<String, Object>>) ((Map<String, Object>) response.getData()).get("listFolder");
+        Assertions.assertEquals(List.of("annual_report_2024"), items.stream().map(item -> item.get("name")).toList());
+    }
+
+    @Test
+    void whenSearchByContent_thenFoundOnceIndexed() {
+        FolderResponse folder = createFolder("test-folder-content" + UUID.randomUUID(), null);
+        MultipartBodyBuilder builder = newFileBuilder();
+        builder.part("parentFolderId", folder.id().toString());
+        UploadResponse uploadedFile = getUploadResponse(builder);
+
+        SearchByContentRequest request = new SearchByContentRequest("sample text", folder.id(), null, null);
+        // the text is extracted in background : the file may also be indexed by the indexing loop
+        List<ContentSearchResult> results = List.of();
+        for (int i = 0; i < 20 && results.isEmpty(); i++) {
+            contentIndexService.index().block();
+            results = webTestClient.post().uri(RestApiVersion.API_PREFIX + "/documents/search/content")
+                    .body(BodyInserters.fromValue(request))
+                    .exchange()
+                    .expectStatus().isOk()
+                    .expectBodyList(ContentSearchResult.class)
+                    .returnResult().getResponseBody();
+            Assertions.assertNotNull(results);
+            if (results.isEmpty()) {
+                Mono.delay(Duration.ofMillis(200)).block();
+            }
+        }
+        Assertions.assertEquals(List.of(uploadedFile.id()), results.stream().map(ContentSearchResult::id).toList());
+        Assertions.assertTrue(results.getFirst().rank() > 0);
+
+        webTestClient.post().uri(RestApiVersion.API_PREFIX + "/documents/search/content")
+                .body(BodyInserters.fromValue(new SearchByContentRequest("absent", folder.id(), null, null)))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(ContentSearchResult.class).hasSize(0);
+    }
+
+    @Test
+    void whenUploadByChunks_thenCreated() {
+        FolderResponse folder = createFolder("test-folder-chunks" + UUID.randomUUID(), null);
+        byte[] content = new byte[12 * 1024 * 1024];
+        new Random(42).nextBytes(content);
+        String sessionsUri = RestApiVersion.API_PREFIX + "/documents/upload-sessions";
+
+        UploadSessionResponse session = webTestClient.post().uri(sessionsUri)
+                .body(BodyInserters.fromValue(new CreateUploadSessionRequest("chunked.bin", "application/octet-stream",
+                        (long) content.length, folder.id(), Map.of("chunked", true), null)))
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody(UploadSessionResponse.class)
+                .returnResult().getResponseBody();
+        Assertions.assertNotNull(session);
+        Assertions.assertEquals(2, session.chunkCount());
+        Assertions.assertEquals(List.of(), session.receivedChunks());
+
+        // last chunk first : the chunks may be sent in any order
+        int chunkSize = session.chunkSize().intValue();
+        webTestClient.put().uri(sessionsUri + "/{id}/chunks/{number}", session.id(), 2)
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .bodyValue(Arrays.copyOfRange(content, chunkSize, content.length))
+                .exchange()
+                .expectStatus().isNoContent();
+
+        webTestClient.post().uri(sessionsUri + "/{id}/complete", session.id())
+                .exchange()
+                .expectStatus().isForbidden();
+
+        // a chunk of a wrong length is rejected
+        webTestClient.put().uri(sessionsUri + "/{id}/chunks/{number}", session.id(), 1)
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .bodyValue(Arrays.copyOfRange(content, 0, 10))
+                .exchange()
+                .expectStatus().isBadRequest();
+
+        webTestClient.get().uri(sessionsUri + "/{id}", session.id())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(UploadSessionResponse.class)
+                .value(s -> Assertions.assertEquals(List.of(2), s.receivedChunks()));
+
+        webTestClient.put().uri(sessionsUri + "/{id}/chunks/{number}", session.id(), 1)
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .bodyValue(Arrays.copyOfRange(content, 0, chunkSize))
+                .exchange()
+                .expectStatus().isNoContent();
+
+        UploadResponse uploadResponse = webTestClient.post().uri(sessionsUri + "/{id}/complete", session.id())
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody(UploadResponse.class)
+                .returnResult().getResponseBody();
+        Assertions.assertNotNull(uploadResponse);
+        Assertions.assertEquals("chunked.bin", uploadResponse.name());
+        Assertions.assertEquals(Long.valueOf(content.length), uploadResponse.size());
+
+        webTestClient.get().uri(RestApiVersion.API_PREFIX + "/documents/{id}/download", uploadResponse.id())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(byte[].class).isEqualTo(content);
+
+        webTestClient.get().uri(sessionsUri + "/{id}", session.id())
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    private FolderResponse createFolder(String name, UUID parentId) {
+        return webTestClient.post().uri(RestApiVersion.API_PREFIX + "/folders")
+                .body(BodyInserters.fromValue(new CreateFolderRequest(name, parentId)))
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody(FolderResponse.class)
+                .returnResult().getResponseBody();
+    }
+
     private boolean checkListFoldersReturnedItem(ClientGraphQlResponse doc, int itemIndex, String metadataKey, String metadataValue) {
         List<Map<String, Object>> items = (List<Map<String, Object>>) ((Map<String, Map<String, Object>>) doc.getData()).get("listFolder");
         return ((Map<String, Object>) items.get(itemIndex).get("metadata")).get(metadataKey).equals(metadataValue);
@@ -579,6 +815,35 @@ public class DocumentManagementLocalStorageIT extends TestContainersBaseConfig {
 
     }
 
+    @Test
+    void whenUploadDocumentsInBatch_thenFailuresReportedPerFile() {
+        FolderResponse folder = createFolder("test-folder-batch" + UUID.randomUUID(), null);
+        MultipartBodyBuilder builder = newFileBuilder("schema.sql", "test.txt", "test.txt");
+        Map<String, Object> metadata = Map.of("owner", "OpenFilz");
+        builder.part("parametersByFilename", List.of(
+                new MultipleUploadFileParameter("schema.sql", new MultipleUploadFileParameterAttributes(folder.id(), metadata)),
+                new MultipleUploadFileParameter("test.txt", new MultipleUploadFileParameterAttributes(folder.id(), null))));
+
+        List<BatchUploadResult> results = webTestClient.post().uri(RestApiVersion.API_PREFIX + "/documents/upload-batch")
+                .contentType(MediaType.MULTIPART_FORM_DATA)
+                .body(BodyInserters.fromMultipartData(builder.build()))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(BatchUploadResult.class)
+                .returnResult().getResponseBody();
+        Assertions.assertNotNull(results);
+        Assertions.assertEquals(List.of(0, 1, 2), results.stream().map(BatchUploadResult::index).toList());
+        Assertions.assertNotNull(results.get(0).document());
+        Assertions.assertNotNull(results.get(1).document());
+        // the second test.txt has the name of the first one
+        Assertions.assertEquals(HttpStatus.CONFLICT.value(), results.get(2).errorStatus());
+
+        checkFileInfo(results.get(0).document(), new MultipleUploadFileParameter("schema.sql", null), metadata);
+        webTestClient.get().uri(RestApiVersion.API_PREFIX + "/documents/{id}/download", results.get(1).document().id())
+                .exchange()
+                .expectStatus().isOk();
+    }
+
 
 
     private void checkFileInfo(UploadResponse uploadResponse, MultipleUploadFileParameter param, Map<String, Object> metadata) {
@@ -615,6 +880,50 @@ public class DocumentManagementLocalStorageIT extends TestContainersBaseConfig {
 
     }
 
+    @Test
+    void whenUploadSameNameConcurrently_thenOnlyOneCreated() {
+        FolderResponse folder = createFolder("test-folder-concurrent-upload" + UUID.randomUUID(), null);
+        int uploads = 8;
+
+        List<HttpStatus> statuses = Flux.range(0, uploads)
+                .flatMap(_ -> Mono.fromCallable(() -> webTestClient.post().uri(RestApiVersion.API_PREFIX + "/documents/upload")
+                                .contentType(MediaType.MULTIPART_FORM_DATA)
+                                .body(BodyInserters.fromMultipartData(newFileInFolderBuilder(folder).build()))
+                                .exchange()
+                                .returnResult(UploadResponse.class)
+                                .getStatus())
+                        .subscribeOn(Schedulers.boundedElastic()), uploads)
+                .map(status -> HttpStatus.valueOf(status.value()))
+                .collectList()
+                .block();
+
+        Assertions.assertNotNull(statuses);
+        Assertions.assertEquals(1, statuses.stream().filter(status -> status == HttpStatus.CREATED).count());
+        Assertions.assertEquals(uploads - 1, statuses.stream().filter(status -> status == HttpStatus.CONFLICT).count());
+
+        // allowDuplicateFileNames : created without taking the name, which stays held by the first file
+        webTestClient.post().uri(uri -> uri.path(RestApiVersion.API_PREFIX + "/documents/upload")
+                        .queryParam("allowDuplicateFileNames", true)
+                        .build())
+                .contentType(MediaType.MULTIPART_FORM_DATA)
+                .body(BodyInserters.fromMultipartData(newFileInFolderBuilder(folder).build()))
+                .exchange()
+                .expectStatus().isCreated();
+
+        Long count = databaseClient.sql("select count(*) from documents where parent_id = :parentId and name = 'schema.sql'")
+                .bind("parentId", folder.id())
+                .map(row -> row.get(0, Long.class))
+                .one()
+                .block();
+        Assertions.assertEquals(2L, count);
+    }
+
+    private MultipartBodyBuilder newFileInFolderBuilder(FolderResponse folder) {
+        MultipartBodyBuilder builder = newFileBuilder();
+        builder.part("parentFolderId", folder.id().toString());
+        return builder;
+    }
+
     @Test
     void whenSearchMetadata_thenOK() {
         MultipartBodyBuilder builder = newFileBuilder();
@@ -1036,6 +1345,47 @@ public class DocumentManagementLocalStorageIT extends TestContainersBaseConfig {
                 .expectBody(String.class).isEqualTo(new String(new ClassPathResource("schema.sql").getInputStream().readAllBytes()));
     }
 
+    @Test
+    void whenDownloadDocumentRange_thenPartialContent() throws IOException {
+        MultipartBodyBuilder builder = newFileBuilder();
+
+        UploadResponse response = uploadDocument(builder);
+        byte[] content = new ClassPathResource("schema.sql").getInputStream().readAllBytes();
+
+        String eTag = webTestClient.get().uri(RestApiVersion.API_PREFIX + "/documents/{id}/download", response.id())
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .returnResult(String.class).getResponseHeaders().getETag();
+        Assertions.assertNotNull(eTag);
+
+        webTestClient.get().uri(RestApiVersion.API_PREFIX + "/documents/{id}/download", response.id())
+                .header(HttpHeaders.IF_NONE_MATCH, eTag)
+                .exchange()
+                .expectStatus().isNotModified();
+
+        webTestClient.get().uri(RestApiVersion.API_PREFIX + "/documents/{id}/download", response.id())
+                .header(HttpHeaders.RANGE, "bytes=10-19")
+                .header(HttpHeaders.IF_RANGE, eTag)
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.PARTIAL_CONTENT)
+                .expectHeader().valueEquals(HttpHeaders.CONTENT_RANGE, "bytes 10-19/" + content.length)
+                .expectBody(byte[].class).isEqualTo(Arrays.copyOfRange(content, 10, 20));
+
+        webTestClient.get().uri(RestApiVersion.API_PREFIX + "/documents/{id}/download", response.id())
+                .header(HttpHeaders.RANGE, "bytes=10-19")
+                .header(HttpHeaders.IF_RANGE, "\"outdated\"")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(byte[].class).isEqualTo(content);
+
+        webTestClient.get().uri(RestApiVersion.API_PREFIX + "/documents/{id}/download", response.id())
+                .header(HttpHeaders.RANGE, "bytes=" + content.length + "-")
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                .expectHeader().valueEquals(HttpHeaders.CONTENT_RANGE, "bytes */" + content.length);
+    }
+
     @Test
     void whenDownloadFolder_thenOK() throws IOException {
         String folderName = "whenDownloadFolder_thenOK";
@@ -1109,21 +1459,16 @@ public class DocumentManagementLocalStorageIT extends TestContainersBaseConfig {
     }
 
     @Test
-    void whenDownloadDocumentMultiple_thenError() throws IOException {
+    void whenDownloadDocumentMultiple_thenError() {
         webTestClient.post().uri(RestApiVersion.API_PREFIX + "/documents/download-multiple")
                 .body(BodyInserters.fromValue(Collections.emptyList()))
                 .exchange()
                 .expectStatus().is4xxClientError();
 
-        Resource zip = webTestClient.post().uri(RestApiVersion.API_PREFIX + "/documents/download-multiple")
+        webTestClient.post().uri(RestApiVersion.API_PREFIX + "/documents/download-multiple")
                 .body(BodyInserters.fromValue(List.of(UUID.randomUUID().toString(), UUID.randomUUID().toString())))
                 .exchange()
-                .expectStatus().isOk()
-                .expectBody(Resource.class)
-                .returnResult().getResponseBody();
-        Path targetFolder = Files.createTempDirectory(UUID.randomUUID().toString());
-        unzip(zip, targetFolder);
-        Assertions.assertEquals(0L, Files.list(targetFolder).count());
+                .expectStatus().isNotFound();
     }
 
     @Test
@@ -1628,6 +1973,65 @@ public class DocumentManagementLocalStorageIT extends TestContainersBaseConfig {
                 .jsonPath("$[0].id").isEqualTo(folderResponse1.id().toString());
     }
 
+    @Test
+    void whenMoveFolderIntoDescendantOfMovedFolder_thenForbidden() {
+        FolderResponse folderA = createFolder("test-folder-a-" + UUID.randomUUID(), null);
+        FolderResponse folderB = createFolder("test-folder-b", folderA.id());
+        FolderResponse folderC = createFolder("test-folder-c-" + UUID.randomUUID(), null);
+
+        // the ancestry of B is updated with the move of A : C/A/B
+        webTestClient.post().uri(RestApiVersion.API_PREFIX + "/folders/move")
+                .body(BodyInserters.fromValue(new MoveRequest(Collections.singletonList(folderA.id()), folderC.id(), false)))
+                .exchange()
+                .expectStatus().isOk();
+
+        webTestClient.post().uri(RestApiVersion.API_PREFIX + "/folders/move")
+                .body(BodyInserters.fromValue(new MoveRequest(Collections.singletonList(folderC.id()), folderB.id(), false)))
+                .exchange()
+                .expectStatus().isForbidden();
+    }
+
+    @Test
+    void whenMoveFolderWithItsSubfolder_thenAncestryKept() {
+        FolderResponse folderA = createFolder("test-folder-a-" + UUID.randomUUID(), null);
+        FolderResponse folderB = createFolder("test-folder-b", folderA.id());
+        FolderResponse folderC = createFolder("test-folder-c-" + UUID.randomUUID(), null);
+        MultipartBodyBuilder builder = newFileBuilder();
+        builder.part("parentFolderId", folderB.id().toString());
+        UploadResponse file = getUploadResponse(builder);
+
+        // A and B become siblings in C, the file stays in B
+        webTestClient.post().uri(RestApiVersion.API_PREFIX + "/folders/move")
+                .body(BodyInserters.fromValue(new MoveRequest(List.of(folderA.id(), folderB.id()), folderC.id(), false)))
+                .exchange()
+                .expectStatus().isOk();
+
+        webTestClient.get().uri(RestApiVersion.API_PREFIX + "/folders/list?folderId={id}", folderC.id())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(FolderElementInfo.class).hasSize(2);
+
+        webTestClient.post().uri(RestApiVersion.API_PREFIX + "/folders/move")
+                .body(BodyInserters.fromValue(new MoveRequest(List.of(folderA.id()), folderB.id(), false)))
+                .exchange()
+                .expectStatus().isOk();
+
+        // A is now a descendant of C : C/B/A
+        webTestClient.post().uri(RestApiVersion.API_PREFIX + "/folders/move")
+                .body(BodyInserters.fromValue(new MoveRequest(List.of(folderC.id()), folderA.id(), false)))
+                .exchange()
+                .expectStatus().isForbidden();
+
+        webTestClient.method(HttpMethod.DELETE).uri(RestApiVersion.API_PREFIX + "/folders")
+                .body(BodyInserters.fromValue(new DeleteRequest(List.of(folderC.id()))))
+                .exchange()
+                .expectStatus().isNoContent();
+
+        webTestClient.get().uri(RestApiVersion.API_PREFIX + "/documents/{id}/info", file.id())
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
     @Test
     void whenCopyFolder_thenOk() {
         CreateFolderRequest createFolderRequest1 = new CreateFolderRequest("test-folder-to-copy", null);
@@ -1957,7 +2361,7 @@ public class DocumentManagementLocalStorageIT extends TestContainersBaseConfig {
         Assertions.assertNotNull(uploadResponse);
 
         List<AuditLog> auditTrail = webTestClient.post().uri(RestApiVersion.API_PREFIX + "/audit/search")
-                .body(BodyInserters.fromValue(new SearchByAuditLogRequest(null, null, null, null, Map.of("metadata", Map.of("appId", appId)))))
+                .body(BodyInserters.fromValue(new SearchByAuditLogRequest(null, null, null, null, Map.of("metadata", Map.of("appId", appId)), null, null)))
                 .exchange()
                 .expectStatus().isOk()
                 .expectBodyList(AuditLog.class)
@@ -1967,7 +2371,7 @@ public class DocumentManagementLocalStorageIT extends TestContainersBaseConfig {
         Assertions.assertEquals(1, auditTrail.size());
 
         auditTrail = webTestClient.post().uri(RestApiVersion.API_PREFIX + "/audit/search")
-                .body(BodyInserters.fromValue(new SearchByAuditLogRequest(null, null, null, null, Map.of("metadata", Map.of("owner", "OpenFilz")))))
+                .body(BodyInserters.fromValue(new SearchByAuditLogRequest(null, null, null, null, Map.of("metadata", Map.of("owner", "OpenFilz")), null, null)))
                 .exchange()
                 .expectStatus().isOk()
                 .expectBodyList(AuditLog.class)
@@ -1977,7 +2381,7 @@ public class DocumentManagementLocalStorageIT extends TestContainersBaseConfig {
         Assertions.assertTrue(!auditTrail.isEmpty());
 
         auditTrail = webTestClient.post().uri(RestApiVersion.API_PREFIX + "/audit/search")
-                .body(BodyInserters.fromValue(new SearchByAuditLogRequest(null, null, null, null, Map.of("filename", "schema.sql"))))
+                .body(BodyInserters.fromValue(new SearchByAuditLogRequest(null, null, null, null, Map.of("filename", "schema.sql"), null, null)))
                 .exchange()
                 .expectStatus().isOk()
                 .expectBodyList(AuditLog.class)
@@ -1987,7 +2391,7 @@ public class DocumentManagementLocalStorageIT extends TestContainersBaseConfig {
         Assertions.assertTrue(!auditTrail.isEmpty());
 
         auditTrail = webTestClient.post().uri(RestApiVersion.API_PREFIX + "/audit/search")
-                .body(BodyInserters.fromValue(new SearchByAuditLogRequest(null, uploadResponse.id(), null, UPLOAD_DOCUMENT, null)))
+                .body(BodyInserters.fromValue(new SearchByAuditLogRequest(null, uploadResponse.id(), null, UPLOAD_DOCUMENT, null, null, null)))
                 .exchange()
                 .expectStatus().isOk()
                 .expectBodyList(AuditLog.class)
@@ -2006,7 +2410,7 @@ public class DocumentManagementLocalStorageIT extends TestContainersBaseConfig {
                 .jsonPath("$.name").isEqualTo("new-name-for-search_audit.sql");
 
         auditTrail = webTestClient.post().uri(RestApiVersion.API_PREFIX + "/audit/search")
-                .body(BodyInserters.fromValue(new SearchByAuditLogRequest("anonymousUser", uploadResponse.id(), DocumentType.FILE, null, null)))
+                .body(BodyInserters.fromValue(new SearchByAuditLogRequest("anonymousUser", uploadResponse.id(), DocumentType.FILE, null, null, null, null)))
                 .exchange()
                 .expectStatus().isOk()
                 .expectBodyList(AuditLog.class)
@@ -2015,6 +2419,28 @@ public class DocumentManagementLocalStorageIT extends TestContainersBaseConfig {
         Assertions.assertNotNull(auditTrail);
         Assertions.assertEquals(2, auditTrail.size());
 
+        OffsetDateTime now = OffsetDateTime.now();
+
+        auditTrail = webTestClient.post().uri(RestApiVersion.API_PREFIX + "/audit/search")
+                .body(BodyInserters.fromValue(new SearchByAuditLogRequest(null, uploadResponse.id(), null, null, null, now.minusHours(1), now.plusHours(1))))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(AuditLog.class)
+                .returnResult().getResponseBody();
+
+        Assertions.assertNotNull(auditTrail);
+        Assertions.assertEquals(2, auditTrail.size());
+
+        auditTrail = webTestClient.post().uri(RestApiVersion.API_PREFIX + "/audit/search")
+                .body(BodyInserters.fromValue(new SearchByAuditLogRequest(null, uploadResponse.id(), null, null, null, null, now.minusHours(1))))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(AuditLog.class)
+                .returnResult().getResponseBody();
+
+        Assertions.assertNotNull(auditTrail);
+        Assertions.assertTrue(auditTrail.isEmpty());
+
     }
 
     @Test
@@ -0,0 +1,107 @@
+package org.openfilz.dms.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.openfilz.dms.dto.audit.AuditLog;
+import org.openfilz.dms.dto.audit.DeleteAudit;
+import org.openfilz.dms.repository.AuditDAO;
+import org.openfilz.dms.service.impl.AuditLogWriter;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+import static org.openfilz.dms.enums.AuditAction.DELETE_FILE_CHILD;
+import static org.openfilz.dms.enums.DocumentType.FILE;
+
+@ExtendWith(MockitoExtension.class)
+class AuditLogWriterTest {
+
+    @Mock
+    private AuditDAO auditDAO;
+
+    @TempDir
+    private Path tempDir;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private AuditLogWriter auditLogWriter;
+
+    @AfterEach
+    void tearDown() {
+        auditLogWriter.stop();
+    }
+
+    @Test
+    void groupCommit_shouldWriteConcurrentLogsInOneInsert() {
+        auditLogWriter = newWriter("group-commit", 50);
+        when(auditDAO.logActions(anyList())).thenReturn(Mono.empty());
+
+        Mono<Void> first = auditLogWriter.write(List.of(auditLog()));
+        Mono<Void> second = auditLogWriter.write(List.of(auditLog(), auditLog()));
+        auditLogWriter.start();
+
+        StepVerifier.create(Mono.when(first, second)).expectComplete().verify(Duration.ofSeconds(5));
+
+        ArgumentCaptor<List<AuditLog>> auditLogs = ArgumentCaptor.captor();
+        verify(auditDAO).logActions(auditLogs.capture());
+        assertEquals(3, auditLogs.getValue().size());
+        assertEquals(1, meterRegistry.get("dms.audit.flush").timer().count());
+        assertEquals(0, meterRegistry.get("dms.audit.queue.depth").gauge().value());
+    }
+
+    @Test
+    void async_shouldSpillLogsWhenDatabaseUnavailableAndWriteThemLater() {
+        auditLogWriter = newWriter("async", 50);
+        AuditLog auditLog = auditLog();
+        when(auditDAO.logActions(anyList()))
+                .thenReturn(Mono.error(new IllegalStateException("database unavailable")))
+                .thenReturn(Mono.empty());
+
+        StepVerifier.create(auditLogWriter.write(List.of(auditLog))).verifyComplete();
+        auditLogWriter.start();
+
+        ArgumentCaptor<List<AuditLog>> auditLogs = ArgumentCaptor.captor();
+        verify(auditDAO, timeout(5000).times(2)).logActions(auditLogs.capture());
+        AuditLog replayed = auditLogs.getAllValues().get(1).getFirst();
+        assertEquals(auditLog.id(), replayed.id());
+        assertEquals(auditLog.timestamp().toInstant(), replayed.timestamp().toInstant());
+        assertEquals(auditLog.action(), replayed.action());
+        assertEquals(((DeleteAudit) auditLog.details()).getDeletedParentFolderId(), ((DeleteAudit) replayed.details()).getDeletedParentFolderId());
+        assertEquals(1, meterRegistry.get("dms.audit.spilled").counter().count());
+    }
+
+    @Test
+    void sync_shouldWriteImmediately() {
+        auditLogWriter = newWriter("sync", 50);
+        when(auditDAO.logActions(anyList())).thenReturn(Mono.error(new IllegalStateException("database unavailable")));
+
+        // an audit failure never fails the audited operation
+        StepVerifier.create(auditLogWriter.write(List.of(auditLog()))).verifyComplete();
+
+        verify(auditDAO).logActions(anyList());
+    }
+
+    private AuditLogWriter newWriter(String durability, int batchSize) {
+        return new AuditLogWriter(auditDAO, new ObjectMapper().findAndRegisterModules(), meterRegistry, durability,
+                100, batchSize, 10, 1000, tempDir.resolve("spill.jsonl").toString());
+    }
+
+    private static AuditLog auditLog() {
+        return new AuditLog(UUID.randomUUID(), OffsetDateTime.now(), "user", DELETE_FILE_CHILD, FILE, new DeleteAudit(UUID.randomUUID()));
+    }
+}
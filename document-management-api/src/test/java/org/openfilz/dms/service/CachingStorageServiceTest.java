@@ -0,0 +1,125 @@
+package org.openfilz.dms.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.openfilz.dms.service.impl.CachingStorageService;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.PathResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CachingStorageServiceTest {
+
+    private static final byte[] CONTENT = "Lorem ipsum dolor sit amet ".repeat(100).getBytes(StandardCharsets.UTF_8);
+
+    @Mock
+    private StorageService storageService;
+
+    @TempDir
+    private Path directory;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private CachingStorageService cachingStorageService;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        cachingStorageService = newCachingStorageService(10L * CONTENT.length);
+    }
+
+    @Test
+    void whenContentReadToTheEnd_thenServedFromTheCache() throws IOException {
+        doReturn(Mono.just(new ByteArrayResource(CONTENT))).when(storageService).loadFile("a#file.txt");
+
+        assertArrayEquals(CONTENT, readFully(cachingStorageService.loadFile("a#file.txt").block()));
+        Resource cached = cachingStorageService.loadFile("a#file.txt").block();
+
+        assertInstanceOf(PathResource.class, cached);
+        assertArrayEquals(CONTENT, readFully(cached));
+        byte[] range = DataBufferUtils.join(cachingStorageService.loadFile("a#file.txt", 6, 5))
+                .map(buffer -> {
+                    byte[] bytes = new byte[buffer.readableByteCount()];
+                    buffer.read(bytes);
+                    DataBufferUtils.release(buffer);
+                    return bytes;
+                })
+                .block();
+        assertEquals("ipsum", new String(range, StandardCharsets.UTF_8));
+        verify(storageService, times(1)).loadFile("a#file.txt");
+        assertEquals(2, meterRegistry.get("dms.storage.cache.hits").counter().count());
+        assertEquals(1, meterRegistry.get("dms.storage.cache.misses").counter().count());
+        assertEquals(CONTENT.length + 5, meterRegistry.get("dms.storage.cache.bytes.saved").counter().count());
+
+        // reloaded on restart
+        assertEquals(1, newCachingStorageService(10L * CONTENT.length).loadFile("a#file.txt")
+                .map(resource -> resource instanceof PathResource ? 1 : 0).block());
+    }
+
+    @Test
+    void whenContentNotReadToTheEnd_thenNotCached() throws IOException {
+        doReturn(Mono.just(new ByteArrayResource(CONTENT))).when(storageService).loadFile("a#file.txt");
+
+        try (InputStream is = cachingStorageService.loadFile("a#file.txt").block().getInputStream()) {
+            is.readNBytes(10);
+        }
+        readFully(cachingStorageService.loadFile("a#file.txt").block());
+
+        verify(storageService, times(2)).loadFile("a#file.txt");
+        assertEquals(0, meterRegistry.get("dms.storage.cache.hits").counter().count());
+    }
+
+    @Test
+    void whenCacheFull_thenLeastRecentlyReadEvicted() throws IOException {
+        cachingStorageService = newCachingStorageService(2L * CONTENT.length);
+        doAnswer(_ -> Mono.just(new ByteArrayResource(CONTENT))).when(storageService).loadFile(anyString());
+
+        readFully(cachingStorageService.loadFile("a").block());
+        readFully(cachingStorageService.loadFile("b").block());
+        readFully(cachingStorageService.loadFile("a").block()); // hit : b is now the least recently read
+        readFully(cachingStorageService.loadFile("c").block());
+
+        assertInstanceOf(PathResource.class, cachingStorageService.loadFile("a").block());
+        assertInstanceOf(PathResource.class, cachingStorageService.loadFile("c").block());
+        assertFalse(cachingStorageService.loadFile("b").block() instanceof PathResource);
+        assertEquals(1, meterRegistry.get("dms.storage.cache.evictions").counter().count());
+    }
+
+    @Test
+    void whenDeleted_thenEvicted() throws IOException {
+        doAnswer(_ -> Mono.just(new ByteArrayResource(CONTENT))).when(storageService).loadFile("a#file.txt");
+        when(storageService.deleteFile("a#file.txt")).thenReturn(Mono.empty());
+
+        readFully(cachingStorageService.loadFile("a#file.txt").block());
+        cachingStorageService.deleteFile("a#file.txt").block();
+
+        assertFalse(cachingStorageService.loadFile("a#file.txt").block() instanceof PathResource);
+        assertEquals(0, meterRegistry.get("dms.storage.cache.bytes").gauge().value());
+    }
+
+    private CachingStorageService newCachingStorageService(long maxSizeBytes) {
+        return new CachingStorageService(storageService, directory, maxSizeBytes, maxSizeBytes, meterRegistry);
+    }
+
+    private static byte[] readFully(Resource resource) throws IOException {
+        try (InputStream is = resource.getInputStream()) {
+            return is.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package org.openfilz.dms.service;
+
+import org.junit.jupiter.api.Test;
+import org.openfilz.dms.service.impl.ContentTextExtractor;
+import org.openfilz.dms.service.impl.ContentTextExtractor.Format;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ContentTextExtractorTest {
+
+    private final ContentTextExtractor extractor = new ContentTextExtractor(1000, 10_000);
+
+    @Test
+    void getFormat_shouldUseContentTypeThenExtension() {
+        assertEquals(Format.TEXT, extractor.getFormat("text/plain; charset=ISO-8859-1", "a.bin"));
+        assertEquals(Format.MARKUP, extractor.getFormat("image/svg+xml", null));
+        assertEquals(Format.OFFICE_OPEN_XML, extractor.getFormat("application/octet-stream", "report.DOCX"));
+        assertEquals(Format.OPEN_DOCUMENT, extractor.getFormat(null, "report.odt"));
+        assertNull(extractor.getFormat("image/png", "image.png"));
+    }
+
+    @Test
+    void extract_shouldDecodeTextWithItsCharset() throws Exception {
+        String text = extractor.extract(Format.TEXT, "text/plain; charset=ISO-8859-1", "été\u0000".getBytes(StandardCharsets.ISO_8859_1));
+        assertEquals("été ", text);
+    }
+
+    @Test
+    void extract_shouldStripHtml() throws Exception {
+        String html = "<html><head><style>p {color: red}</style><script>var hidden;</script></head>"
+                + "<body><p>Fish &amp; chips</p><!-- comment --><p>caf&#233;</p></body></html>";
+        String text = extractor.extract(Format.MARKUP, "text/html", html.getBytes(StandardCharsets.UTF_8));
+        assertEquals("Fish & chips café", text.replaceAll("\\s+", " ").trim());
+    }
+
+    @Test
+    void extract_shouldReplaceInvalidCharacterReferences() throws Exception {
+        String html = "<p>a&#99999999999;b&#xFFFFFFFFFF;c&#1114112;d</p>";
+        String text = extractor.extract(Format.MARKUP, "text/html", html.getBytes(StandardCharsets.UTF_8));
+        assertEquals("a b c d", text.trim());
+    }
+
+    @Test
+    void extract_shouldReadTextPartsOfOfficeDocuments() throws Exception {
+        byte[] docx = zip(Map.of(
+                "word/document.xml", "<w:document xmlns:w=\"w\"><w:body><w:p><w:r><w:t>Quar</w:t></w:r><w:r><w:t>terly</w:t></w:r></w:p>"
+                        + "<w:p><w:r><w:t>report</w:t></w:r></w:p></w:body></w:document>",
+                "word/styles.xml", "<w:styles xmlns:w=\"w\"><w:t>ignored</w:t></w:styles>"));
+        String text = extractor.extract(Format.OFFICE_OPEN_XML, null, docx);
+        assertEquals("Quarterly report", text.trim());
+    }
+
+    @Test
+    void extract_shouldRejectContentsDecompressingIntoHugeSizes() throws Exception {
+        byte[] odt = zip(Map.of("content.xml", "<text>" + "a".repeat(20_000) + "</text>"));
+        ContentTextExtractor extractor = new ContentTextExtractor(100_000, 10_000);
+        Exception e = assertThrows(Exception.class, () -> extractor.extract(Format.OPEN_DOCUMENT, null, odt));
+        assertTrue(e.getMessage().contains("Content larger than 10000 bytes once decompressed"));
+    }
+
+    private static byte[] zip(Map<String, String> entries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                zip.putNextEntry(new ZipEntry(entry.getKey()));
+                zip.write(entry.getValue().getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+        }
+        return bytes.toByteArray();
+    }
+}
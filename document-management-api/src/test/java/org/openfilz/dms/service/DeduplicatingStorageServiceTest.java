@@ -0,0 +1,223 @@
+package org.openfilz.dms.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.openfilz.dms.repository.StorageBlobDAO;
+import org.openfilz.dms.service.impl.DeduplicatingStorageService;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.codec.multipart.FilePart;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class DeduplicatingStorageServiceTest {
+
+    @Mock
+    private StorageService storageService;
+
+    private InMemoryStorageBlobDAO storageBlobDAO;
+
+    private DeduplicatingStorageService deduplicatingStorageService;
+
+    private final AtomicInteger storedObjects = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        storageBlobDAO = new InMemoryStorageBlobDAO();
+        deduplicatingStorageService = new DeduplicatingStorageService(storageService, storageBlobDAO);
+    }
+
+    /**
+     * The backend reads the whole content (so that it is hashed) and stores it in a new object
+     */
+    private void storeContents() {
+        when(storageService.saveFile(any())).thenAnswer(invocation -> DataBufferUtils.join(invocation.<FilePart>getArgument(0).content())
+                .doOnNext(DataBufferUtils::release)
+                .map(_ -> "object-" + storedObjects.incrementAndGet()));
+    }
+
+    @Test
+    void saveFile_whenSameContentSavedAgain_thenReferencesTheBlobAndDropsTheNewObject() {
+        storeContents();
+        when(storageService.deleteFile("object-2")).thenReturn(Mono.empty());
+
+        StepVerifier.create(deduplicatingStorageService.saveFile(filePart("a.txt", "same content"))).expectNext("object-1").verifyComplete();
+        StepVerifier.create(deduplicatingStorageService.saveFile(filePart("b.txt", "same content"))).expectNext("object-1").verifyComplete();
+
+        assertEquals(2, storageBlobDAO.refCount("object-1"));
+        // the content is hashed while streaming to the backend : the second object is deleted, only one remains
+        verify(storageService).deleteFile("object-2");
+        verify(storageService, never()).deleteFile("object-1");
+    }
+
+    @Test
+    void saveFile_whenDifferentContent_thenNewBlob() {
+        storeContents();
+
+        StepVerifier.create(deduplicatingStorageService.saveFile(filePart("a.txt", "content a"))).expectNext("object-1").verifyComplete();
+        StepVerifier.create(deduplicatingStorageService.saveFile(filePart("a.txt", "content b"))).expectNext("object-2").verifyComplete();
+
+        assertEquals(1, storageBlobDAO.refCount("object-1"));
+        assertEquals(1, storageBlobDAO.refCount("object-2"));
+        verify(storageService, never()).deleteFile(anyString());
+    }
+
+    @Test
+    void copyFile_whenBlob_thenReferenceAddedWithoutCopy() {
+        storeContents();
+        deduplicatingStorageService.saveFile(filePart("a.txt", "content")).block();
+
+        StepVerifier.create(deduplicatingStorageService.copyFile("object-1")).expectNext("object-1").verifyComplete();
+
+        assertEquals(2, storageBlobDAO.refCount("object-1"));
+        verify(storageService, never()).copyFile(anyString());
+    }
+
+    @Test
+    void copyFile_whenNotBlob_thenCopiedByTheBackend() {
+        when(storageService.copyFile("legacy")).thenReturn(Mono.just("legacy-copy"));
+
+        StepVerifier.create(deduplicatingStorageService.copyFile("legacy")).expectNext("legacy-copy").verifyComplete();
+    }
+
+    @Test
+    void deleteFile_thenBlobRemovedWithItsLastReference() {
+        storeContents();
+        when(storageService.deleteFile("object-1")).thenReturn(Mono.empty());
+        deduplicatingStorageService.saveFile(filePart("a.txt", "content")).block();
+        deduplicatingStorageService.copyFile("object-1").block();
+
+        StepVerifier.create(deduplicatingStorageService.deleteFile("object-1")).verifyComplete();
+        assertEquals(1, storageBlobDAO.refCount("object-1"));
+        verify(storageService, never()).deleteFile("object-1");
+
+        StepVerifier.create(deduplicatingStorageService.deleteFile("object-1")).verifyComplete();
+        assertFalse(storageBlobDAO.exists("object-1"));
+        verify(storageService).deleteFile("object-1");
+    }
+
+    @Test
+    void deleteFile_whenNotBlob_thenDeletedByTheBackend() {
+        when(storageService.deleteFile("legacy")).thenReturn(Mono.empty());
+
+        StepVerifier.create(deduplicatingStorageService.deleteFile("legacy")).verifyComplete();
+
+        verify(storageService).deleteFile("legacy");
+    }
+
+    @Test
+    void saveFile_whenSameContentSavedConcurrently_thenOneBlobReferencedTwice() {
+        // both contents are stored before any of them is registered
+        CountDownLatch bothStored = new CountDownLatch(2);
+        when(storageService.saveFile(any())).thenAnswer(invocation -> DataBufferUtils.join(invocation.<FilePart>getArgument(0).content())
+                .doOnNext(DataBufferUtils::release)
+                .map(_ -> "object-" + storedObjects.incrementAndGet())
+                .publishOn(Schedulers.boundedElastic())
+                .doOnNext(_ -> {
+                    bothStored.countDown();
+                    try {
+                        assertTrue(bothStored.await(5, TimeUnit.SECONDS));
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }));
+        when(storageService.deleteFile(anyString())).thenReturn(Mono.empty());
+
+        StepVerifier.create(Mono.zip(
+                        deduplicatingStorageService.saveFile(filePart("a.txt", "same content")).subscribeOn(Schedulers.parallel()),
+                        deduplicatingStorageService.saveFile(filePart("b.txt", "same content")).subscribeOn(Schedulers.parallel())))
+                .expectNextMatches(paths -> paths.getT1().equals(paths.getT2()))
+                .verifyComplete();
+
+        String blob = storageBlobDAO.paths().iterator().next();
+        assertEquals(1, storageBlobDAO.paths().size());
+        assertEquals(2, storageBlobDAO.refCount(blob));
+        // the object which lost the race is dropped, the blob is kept
+        verify(storageService, times(1)).deleteFile(anyString());
+        verify(storageService, never()).deleteFile(blob);
+    }
+
+    private static FilePart filePart(String filename, String content) {
+        FilePart filePart = mock(FilePart.class);
+        DataBuffer buffer = DefaultDataBufferFactory.sharedInstance.wrap(content.getBytes(StandardCharsets.UTF_8));
+        lenient().when(filePart.filename()).thenReturn(filename);
+        when(filePart.content()).thenReturn(Flux.just(buffer));
+        return filePart;
+    }
+
+    /**
+     * Same semantics as the statements of the DAO, each of them being atomic
+     */
+    private static class InMemoryStorageBlobDAO implements StorageBlobDAO {
+
+        private final Map<String, String> pathsByHash = new HashMap<>();
+        private final Map<String, Integer> refCounts = new HashMap<>();
+
+        @Override
+        public synchronized Mono<String> register(String hash, String storagePath) {
+            String blobPath = pathsByHash.putIfAbsent(hash, storagePath);
+            if (blobPath == null) {
+                refCounts.put(storagePath, 1);
+                return Mono.just(storagePath);
+            }
+            refCounts.merge(blobPath, 1, Integer::sum);
+            return Mono.just(blobPath);
+        }
+
+        @Override
+        public synchronized Mono<String> addReference(String storagePath) {
+            return Mono.justOrEmpty(refCounts.computeIfPresent(storagePath, (_, count) -> count + 1) != null ? storagePath : null);
+        }
+
+        @Override
+        public synchronized Mono<Integer> removeReference(String storagePath) {
+            return Mono.justOrEmpty(refCounts.computeIfPresent(storagePath, (_, count) -> count - 1));
+        }
+
+        @Override
+        public synchronized Mono<Boolean> deleteUnreferenced(String storagePath) {
+            Integer count = refCounts.get(storagePath);
+            if (count == null || count > 0) {
+                return Mono.just(false);
+            }
+            refCounts.remove(storagePath);
+            pathsByHash.values().remove(storagePath);
+            return Mono.just(true);
+        }
+
+        synchronized int refCount(String storagePath) {
+            return refCounts.getOrDefault(storagePath, 0);
+        }
+
+        synchronized boolean exists(String storagePath) {
+            return refCounts.containsKey(storagePath);
+        }
+
+        synchronized Set<String> paths() {
+            return new HashSet<>(refCounts.keySet());
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package org.openfilz.dms.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.openfilz.dms.entity.Document;
+import org.openfilz.dms.repository.DocumentRepository;
+import org.openfilz.dms.service.impl.DocumentCacheServiceImpl;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.*;
+import static org.openfilz.dms.enums.DocumentType.FILE;
+import static org.openfilz.dms.enums.DocumentType.FOLDER;
+
+@ExtendWith(MockitoExtension.class)
+class DocumentCacheServiceImplTest {
+
+    @Mock
+    private DocumentRepository documentRepository;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private DocumentCacheServiceImpl cache;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        cache = newCache(1024 * 1024);
+    }
+
+    private DocumentCacheServiceImpl newCache(long maxSizeBytes) {
+        DocumentCacheServiceImpl documentCache = new DocumentCacheServiceImpl(documentRepository, null, meterRegistry, true, maxSizeBytes);
+        // as if the notifications connection was listening
+        ReflectionTestUtils.setField(documentCache, "listening", true);
+        return documentCache;
+    }
+
+    @Test
+    void findById_shouldReadTheDatabaseOnlyOnce() {
+        Document folder = folder();
+        when(documentRepository.findById(folder.getId())).thenReturn(Mono.just(folder));
+
+        StepVerifier.create(cache.findById(folder.getId())).expectNext(folder).verifyComplete();
+        StepVerifier.create(cache.findById(folder.getId())).expectNext(folder).verifyComplete();
+        StepVerifier.create(cache.existsByIdAndType(folder.getId(), FOLDER)).expectNext(true).verifyComplete();
+        StepVerifier.create(cache.existsByIdAndType(folder.getId(), FILE)).expectNext(false).verifyComplete();
+
+        verify(documentRepository, times(1)).findById(folder.getId());
+        assertEquals(1, meterRegistry.counter("dms.document.cache.misses").count());
+        assertEquals(3, meterRegistry.counter("dms.document.cache.hits").count());
+    }
+
+    @Test
+    void findById_shouldReturnCopies() {
+        Document folder = folder();
+        when(documentRepository.findById(folder.getId())).thenReturn(Mono.just(folder));
+
+        cache.findById(folder.getId()).block().setName("modified");
+
+        StepVerifier.create(cache.findById(folder.getId()).map(Document::getName)).expectNext("folder").verifyComplete();
+    }
+
+    @Test
+    void onNotification_shouldEvictTheDocument() {
+        Document folder = folder();
+        when(documentRepository.findById(folder.getId())).thenReturn(Mono.just(folder));
+
+        cache.findById(folder.getId()).block();
+        cache.onNotification(folder.getId().toString());
+        cache.findById(folder.getId()).block();
+
+        verify(documentRepository, times(2)).findById(folder.getId());
+    }
+
+    @Test
+    void onNotification_duringRead_shouldNotCacheTheDocument() {
+        Document folder = folder();
+        when(documentRepository.findById(folder.getId())).thenReturn(Mono.fromSupplier(() -> {
+            // the document is changed while it is read
+            cache.onNotification(DocumentCacheServiceImpl.ALL_DOCUMENTS);
+            return folder;
+        }));
+
+        cache.findById(folder.getId()).block();
+        cache.findById(folder.getId()).block();
+
+        verify(documentRepository, times(2)).findById(folder.getId());
+    }
+
+    @Test
+    void findById_shouldEvictLeastRecentlyUsedDocuments() {
+        cache = newCache(600); // 2 folders
+        Document folder1 = folder();
+        Document folder2 = folder();
+        Document folder3 = folder();
+        when(documentRepository.findById(any(UUID.class))).thenAnswer(invocation -> Mono.just(
+                Stream.of(folder1, folder2, folder3).filter(f -> f.getId().equals(invocation.getArgument(0))).findFirst().orElseThrow()));
+
+        cache.findById(folder1.getId()).block();
+        cache.findById(folder2.getId()).block();
+        cache.findById(folder1.getId()).block();
+        cache.findById(folder3.getId()).block(); // folder2 is evicted
+        cache.findById(folder1.getId()).block();
+        cache.findById(folder2.getId()).block();
+
+        verify(documentRepository, times(1)).findById(folder1.getId());
+        verify(documentRepository, times(2)).findById(folder2.getId());
+        assertEquals(2, meterRegistry.counter("dms.document.cache.evictions").count());
+    }
+
+    @Test
+    void findById_whenNotListening_shouldAlwaysReadTheDatabase() {
+        Document folder = folder();
+        ReflectionTestUtils.setField(cache, "listening", false);
+        when(documentRepository.findById(folder.getId())).thenReturn(Mono.just(folder));
+
+        cache.findById(folder.getId()).block();
+        cache.findById(folder.getId()).block();
+
+        verify(documentRepository, times(2)).findById(folder.getId());
+    }
+
+    private static Document folder() {
+        return Document.builder().id(UUID.randomUUID()).name("folder").type(FOLDER).build();
+    }
+}
@@ -4,16 +4,21 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import io.r2dbc.postgresql.codec.Json;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.openfilz.dms.dto.audit.AuditLog;
 import org.openfilz.dms.dto.audit.AuditLogDetails;
 import org.openfilz.dms.dto.audit.CreateFolderAudit;
+import org.openfilz.dms.dto.audit.DeleteAudit;
 import org.openfilz.dms.dto.request.*;
 import org.openfilz.dms.dto.response.*;
 import org.openfilz.dms.entity.Document;
@@ -22,15 +27,21 @@ import org.openfilz.dms.enums.DocumentType;
 import org.openfilz.dms.exception.DocumentNotFoundException;
 import org.openfilz.dms.exception.DuplicateNameException;
 import org.openfilz.dms.exception.OperationForbiddenException;
+import org.openfilz.dms.exception.StorageException;
 import org.openfilz.dms.repository.DocumentDAO;
 import org.openfilz.dms.repository.DocumentRepository;
+import org.openfilz.dms.service.impl.DocumentCacheServiceImpl;
+import org.openfilz.dms.service.impl.DocumentMetrics;
 import org.openfilz.dms.service.impl.DocumentServiceImpl;
 import org.openfilz.dms.utils.JsonUtils;
+import org.openfilz.dms.utils.SqlUtils;
 import org.springframework.core.io.Resource;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.codec.multipart.FilePart;
 import org.springframework.security.authentication.TestingAuthenticationToken;
 import org.springframework.security.core.Authentication;
+import org.springframework.test.util.ReflectionTestUtils;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
@@ -38,9 +49,13 @@ import reactor.test.StepVerifier;
 import java.time.OffsetDateTime;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyMap;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
 import static org.openfilz.dms.enums.AuditAction.*;
@@ -76,27 +91,27 @@ class DocumentServiceImplTest {
     @BeforeEach
     void setUp() {
         mockAuthentication = new TestingAuthenticationToken("testuser", null, "ROLE_USER");
+        // cache disabled : the lookups go to the mocked repository
+        ReflectionTestUtils.setField(documentService, "documentCacheService",
+                new DocumentCacheServiceImpl(documentRepository, null, new SimpleMeterRegistry(), false, 0));
+        ReflectionTestUtils.setField(documentService, "documentMetrics", new DocumentMetrics(new SimpleMeterRegistry()));
+    }
+
+    private DocumentCacheServiceImpl enableCache() {
+        DocumentCacheServiceImpl cache = new DocumentCacheServiceImpl(documentRepository, null, new SimpleMeterRegistry(), true, 1024 * 1024);
+        // as if the notifications connection was listening
+        ReflectionTestUtils.setField(cache, "listening", true);
+        ReflectionTestUtils.setField(documentService, "documentCacheService", cache);
+        return cache;
     }
 
     @Test
     void createFolder_success() {
         UUID parentId = UUID.randomUUID();
         CreateFolderRequest request = new CreateFolderRequest("New Folder", parentId);
-        Document savedFolder = Document.builder()
-                .id(UUID.randomUUID())
-                .name(request.name())
-                .parentId(request.parentId())
-                .type(FOLDER)
-                .createdAt(OffsetDateTime.now())
-                .updatedAt(OffsetDateTime.now())
-                .createdBy("testuser")
-                .updatedBy("testuser")
-                .metadata(Json.of("{}"))
-                .build();
 
         when(documentRepository.existsByIdAndType(parentId, FOLDER)).thenReturn(Mono.just(true));
-        when(documentRepository.existsByNameAndParentId(request.name(), request.parentId())).thenReturn(Mono.just(false));
-        when(documentRepository.save(any(Document.class))).thenReturn(Mono.just(savedFolder));
+        when(documentDAO.insertDocument(any(Document.class), eq(false))).thenReturn(Mono.just(true));
         when(auditService.logAction(anyString(), any(AuditAction.class), any(DocumentType.class), any(UUID.class), any(AuditLogDetails.class))).thenReturn(Mono.empty());
 
         Mono<FolderResponse> result = documentService.createFolder(request, mockAuthentication);
@@ -106,28 +121,17 @@ class DocumentServiceImplTest {
                         response.parentId().equals(request.parentId()))
                 .verifyComplete();
 
-        verify(documentRepository).save(any(Document.class));
+        ArgumentCaptor<Document> inserted = ArgumentCaptor.forClass(Document.class);
+        verify(documentDAO).insertDocument(inserted.capture(), eq(false));
         verify(auditService).logAction(eq("testuser"), eq(CREATE_FOLDER), eq(FOLDER),
-                eq(savedFolder.getId()), any(CreateFolderAudit.class));
+                eq(inserted.getValue().getId()), any(CreateFolderAudit.class));
     }
 
     @Test
     void createFolder_atRoot_success() {
         CreateFolderRequest request = new CreateFolderRequest("Root Folder", null);
-        Document savedFolder = Document.builder()
-                .id(UUID.randomUUID())
-                .name(request.name())
-                .parentId(null)
-                .type(FOLDER)
-                .createdAt(OffsetDateTime.now())
-                .updatedAt(OffsetDateTime.now())
-                .createdBy("testuser")
-                .updatedBy("testuser")
-                .metadata(jsonUtils.emptyJson())
-                .build();
-
-        when(documentRepository.existsByNameAndParentIdIsNull(request.name())).thenReturn(Mono.just(false));
-        when(documentRepository.save(any(Document.class))).thenReturn(Mono.just(savedFolder));
+
+        when(documentDAO.insertDocument(any(Document.class), eq(false))).thenReturn(Mono.just(true));
         when(auditService.logAction(anyString(), any(AuditAction.class), any(DocumentType.class), any(UUID.class), any(AuditLogDetails.class))).thenReturn(Mono.empty());
 
         Mono<FolderResponse> result = documentService.createFolder(request, mockAuthentication);
@@ -138,7 +142,7 @@ class DocumentServiceImplTest {
                 .verifyComplete();
 
         verify(auditService).logAction(eq("testuser"), eq(CREATE_FOLDER), eq(FOLDER),
-                eq(savedFolder.getId()), any(CreateFolderAudit.class));
+                any(UUID.class), any(CreateFolderAudit.class));
     }
 
     @Test
@@ -146,13 +150,17 @@ class DocumentServiceImplTest {
         UUID parentId = UUID.randomUUID();
         CreateFolderRequest request = new CreateFolderRequest("Existing Folder", parentId);
 
-        when(documentRepository.existsByNameAndParentId(request.name(), request.parentId())).thenReturn(Mono.just(true));
+        when(documentRepository.existsByIdAndType(parentId, FOLDER)).thenReturn(Mono.just(true));
+        // the name is already held in the folder : the insert does nothing
+        when(documentDAO.insertDocument(any(Document.class), eq(false))).thenReturn(Mono.just(false));
 
         Mono<FolderResponse> result = documentService.createFolder(request, mockAuthentication);
 
         StepVerifier.create(result)
                 .expectError(DuplicateNameException.class)
                 .verify();
+
+        verify(auditService, never()).logAction(anyString(), any(AuditAction.class), any(DocumentType.class), any(UUID.class), any(AuditLogDetails.class));
     }
 
     @Test
@@ -166,9 +174,8 @@ class DocumentServiceImplTest {
         headers.add(HttpHeaders.CONTENT_TYPE, "text/plain");
         when(filePart.headers()).thenReturn(headers);
         when(documentRepository.existsByIdAndType(parentId, FOLDER)).thenReturn(Mono.just(true));
-        when(documentRepository.existsByNameAndParentId(filename, parentId)).thenReturn(Mono.just(false));
         when(jsonUtils.toJson(metadata)).thenReturn(Json.of("{}"));
-        when(documentRepository.save(any(Document.class))).thenReturn(Mono.just(Document.builder().id(UUID.randomUUID()).name(filename).type(FILE).build()));
+        when(documentDAO.insertDocument(any(Document.class), eq(false))).thenReturn(Mono.just(true));
         when(auditService.logAction(anyString(), any(AuditAction.class), any(DocumentType.class), any(UUID.class), any(AuditLogDetails.class))).thenReturn(Mono.empty());
         when(storageService.saveFile(filePart)).thenReturn(Mono.just("storage/path"));
 
@@ -179,6 +186,24 @@ class DocumentServiceImplTest {
                 .verifyComplete();
     }
 
+    @Test
+    void uploadDocument_duplicateName_shouldDeleteStoredFile() {
+        FilePart filePart = mockFilePart("file.txt");
+        when(filePart.headers()).thenReturn(new HttpHeaders());
+        when(jsonUtils.toJson(Map.<String, Object>of())).thenReturn(Json.of("{}"));
+        when(storageService.saveFile(filePart)).thenReturn(Mono.just("storage/path"));
+        when(documentDAO.insertDocument(any(Document.class), eq(false))).thenReturn(Mono.just(false));
+        when(storageService.deleteFile("storage/path")).thenReturn(Mono.empty());
+
+        Mono<UploadResponse> result = documentService.uploadDocument(filePart, 123L, null, Map.of(), false, mockAuthentication);
+
+        StepVerifier.create(result)
+                .expectError(DuplicateNameException.class)
+                .verify();
+
+        verify(storageService).deleteFile("storage/path");
+    }
+
     @Test
     void uploadDocument_folderNotFound_shouldError() {
         UUID parentId = UUID.randomUUID();
@@ -193,6 +218,49 @@ class DocumentServiceImplTest {
                 .verify();
     }
 
+    @Test
+    void uploadDocumentsInBatch_shouldReportFailuresPerFile() {
+        UUID missingFolderId = UUID.randomUUID();
+        FilePart a = mockFilePart("a.txt");
+        FilePart b = mockFilePart("b.txt");
+        FilePart c = mockFilePart("c.txt");
+        FilePart sameNameAsA = mockFilePart("a.txt");
+        FilePart d = mockFilePart("d.txt");
+        when(a.headers()).thenReturn(new HttpHeaders());
+        when(documentDAO.getFolderIds(Set.of(missingFolderId))).thenReturn(Flux.empty());
+        when(documentDAO.findNameConflicts(anyList())).thenReturn(Flux.just(Document.builder().name("c.txt").build()));
+        when(storageService.saveFile(a)).thenReturn(Mono.just("a-path"));
+        when(storageService.getFileLength("a-path")).thenReturn(Mono.just(10L));
+        when(storageService.saveFile(d)).thenReturn(Mono.error(new StorageException("unavailable")));
+        when(jsonUtils.emptyJson()).thenReturn(Json.of("{}"));
+        when(documentDAO.insertDocuments(anyList(), eq(false))).thenReturn(Flux.empty());
+        when(auditService.logActions(anyList())).thenReturn(Mono.empty());
+        ReflectionTestUtils.setField(documentService, "uploadBatchSize", 500);
+        ReflectionTestUtils.setField(documentService, "uploadBatchParallelism", 2);
+
+        Flux<BatchUploadResult> result = documentService.uploadDocumentsInBatch(Flux.just(a, b, c, sameNameAsA, d),
+                Map.of("b.txt", new MultipleUploadFileParameterAttributes(missingFolderId, null)), false, mockAuthentication);
+
+        StepVerifier.create(result)
+                .expectNextMatches(r -> r.index() == 0 && r.document() != null && r.document().size() == 10L)
+                .expectNextMatches(r -> r.index() == 1 && r.errorStatus() == 404)
+                .expectNextMatches(r -> r.index() == 2 && r.errorStatus() == 409)
+                .expectNextMatches(r -> r.index() == 3 && r.errorStatus() == 409)
+                .expectNextMatches(r -> r.index() == 4 && r.errorStatus() == 500)
+                .verifyComplete();
+
+        ArgumentCaptor<List<Document>> documents = ArgumentCaptor.captor();
+        verify(documentDAO).insertDocuments(documents.capture(), eq(false));
+        assertEquals(List.of("a-path"), documents.getValue().stream().map(Document::getStoragePath).toList());
+        verify(documentRepository, never()).save(any(Document.class));
+    }
+
+    private static FilePart mockFilePart(String filename) {
+        FilePart filePart = mock(FilePart.class);
+        when(filePart.filename()).thenReturn(filename);
+        return filePart;
+    }
+
     @Test
     void downloadDocument_success() {
         UUID docId = UUID.randomUUID();
@@ -227,22 +295,42 @@ class DocumentServiceImplTest {
     @Test
     void deleteFolders_success() {
         UUID folderId = UUID.randomUUID();
+        UUID subFolderId = UUID.randomUUID();
+        UUID fileId = UUID.randomUUID();
         DeleteRequest request = new DeleteRequest(List.of(folderId));
         Document folder = Document.builder().id(folderId).type(FOLDER).build();
 
-        when(documentRepository.findById(folderId)).thenReturn(Mono.just(folder));
-        when(documentRepository.findByParentIdAndType(folderId, FILE)).thenReturn(Flux.empty());
-        when(documentRepository.findByParentIdAndType(folderId, FOLDER)).thenReturn(Flux.empty());
-        when(documentRepository.delete(folder)).thenReturn(Mono.empty());
-        when(auditService.logAction(anyString(), any(AuditAction.class), any(DocumentType.class), any(UUID.class))).thenReturn(Mono.empty());
+        when(documentRepository.findAllById(List.of(folderId))).thenReturn(Flux.just(folder));
+        when(documentDAO.deleteFoldersRecursive(List.of(folderId))).thenReturn(Flux.just(
+                folder,
+                Document.builder().id(subFolderId).type(FOLDER).parentId(folderId).build(),
+                Document.builder().id(fileId).type(FILE).parentId(subFolderId).build()));
+        when(auditService.logActions(anyList())).thenReturn(Mono.empty());
 
         Mono<Void> result = documentService.deleteFolders(request, mockAuthentication);
 
         StepVerifier.create(result)
                 .verifyComplete();
 
-        verify(documentRepository).delete(folder);
-        verify(auditService).logAction(eq("testuser"), eq(DELETE_FOLDER), eq(FOLDER), eq(folderId));
+        ArgumentCaptor<List<AuditLog>> auditLogs = ArgumentCaptor.captor();
+        verify(auditService).logActions(auditLogs.capture());
+        assertEquals(List.of(DELETE_FOLDER, DELETE_FOLDER, DELETE_FILE_CHILD), auditLogs.getValue().stream().map(AuditLog::action).toList());
+        assertEquals(subFolderId, ((DeleteAudit) auditLogs.getValue().get(2).details()).getDeletedParentFolderId());
+        verifyNoInteractions(storageService);
+    }
+
+    @Test
+    void deleteFolders_notAFolder() {
+        UUID fileId = UUID.randomUUID();
+        DeleteRequest request = new DeleteRequest(List.of(fileId));
+
+        when(documentRepository.findAllById(List.of(fileId))).thenReturn(Flux.just(Document.builder().id(fileId).type(FILE).build()));
+
+        StepVerifier.create(documentService.deleteFolders(request, mockAuthentication))
+                .expectError(OperationForbiddenException.class)
+                .verify();
+
+        verifyNoInteractions(documentDAO);
     }
 
     @Test
@@ -250,46 +338,113 @@ class DocumentServiceImplTest {
         UUID fileId = UUID.randomUUID();
         UUID targetFolderId = UUID.randomUUID();
         MoveRequest request = new MoveRequest(List.of(fileId), targetFolderId, false);
-        Document fileToMove = Document.builder().id(fileId).type(FILE).build();
         Document targetFolder = Document.builder().id(targetFolderId).type(FOLDER).build();
 
-        when(documentRepository.findById(fileId)).thenReturn(Mono.just(fileToMove));
         when(documentRepository.findById(targetFolderId)).thenReturn(Mono.just(targetFolder));
-        when(documentRepository.existsByNameAndParentId(any(), any())).thenReturn(Mono.just(false));
-        when(documentRepository.save(any(Document.class))).thenReturn(Mono.just(fileToMove));
-        when(auditService.logAction(anyString(), any(AuditAction.class), any(DocumentType.class), any(UUID.class), any(AuditLogDetails.class))).thenReturn(Mono.empty());
+        when(documentDAO.getElementsToMove(List.of(fileId))).thenReturn(Flux.just(
+                new DocumentDAO.ElementToMove(fileId, "file.txt", FILE, null, label(fileId))));
+        when(documentDAO.moveDocuments(List.of(fileId), targetFolderId, "testuser", false)).thenReturn(Mono.just(1L));
+        when(auditService.logActions(anyList())).thenReturn(Mono.empty());
 
         Mono<Void> result = documentService.moveFiles(request, mockAuthentication);
 
         StepVerifier.create(result)
                 .verifyComplete();
 
-        verify(documentRepository).save(any(Document.class));
-        verify(auditService).logAction(eq("testuser"), eq(MOVE_FILE), eq(FILE), eq(fileId), any(AuditLogDetails.class));
+        ArgumentCaptor<List<AuditLog>> auditLogs = ArgumentCaptor.captor();
+        verify(auditService).logActions(auditLogs.capture());
+        assertEquals(List.of(fileId), auditLogs.getValue().stream().map(AuditLog::id).toList());
+        assertEquals(MOVE_FILE, auditLogs.getValue().getFirst().action());
+        verify(documentRepository, never()).save(any(Document.class));
+    }
+
+    @Test
+    void moveFiles_shouldEvictMovedDocumentsFromTheCache() {
+        UUID fileId = UUID.randomUUID();
+        UUID targetFolderId = UUID.randomUUID();
+        DocumentCacheServiceImpl cache = enableCache();
+        when(documentRepository.findById(fileId)).thenReturn(Mono.just(Document.builder().id(fileId).type(FILE).name("file.txt").build()));
+        when(documentRepository.findById(targetFolderId)).thenReturn(Mono.just(Document.builder().id(targetFolderId).type(FOLDER).build()));
+        when(documentDAO.getElementsToMove(List.of(fileId))).thenReturn(Flux.just(
+                new DocumentDAO.ElementToMove(fileId, "file.txt", FILE, null, label(fileId))));
+        when(documentDAO.moveDocuments(List.of(fileId), targetFolderId, "testuser", false)).thenReturn(Mono.just(1L));
+        when(auditService.logActions(anyList())).thenReturn(Mono.empty());
+
+        cache.findById(fileId).block();
+        StepVerifier.create(documentService.moveFiles(new MoveRequest(List.of(fileId), targetFolderId, false), mockAuthentication))
+                .verifyComplete();
+        cache.findById(fileId).block();
+
+        // moved with an update of the DAO, not seen by the save callback of the cache
+        verify(documentRepository, times(2)).findById(fileId);
+    }
+
+    @Test
+    void moveFiles_nameCollision_shouldFail() {
+        UUID fileId1 = UUID.randomUUID();
+        UUID fileId2 = UUID.randomUUID();
+        MoveRequest request = new MoveRequest(List.of(fileId1, fileId2), null, false);
+
+        when(documentDAO.getElementsToMove(List.of(fileId1, fileId2))).thenReturn(Flux.just(
+                new DocumentDAO.ElementToMove(fileId1, "file.txt", FILE, UUID.randomUUID(), null),
+                new DocumentDAO.ElementToMove(fileId2, "file.txt", FILE, UUID.randomUUID(), null)));
+
+        StepVerifier.create(documentService.moveFiles(request, mockAuthentication))
+                .expectError(DuplicateNameException.class)
+                .verify();
+
+        verify(documentDAO, never()).moveDocuments(anyList(), any(), anyString(), anyBoolean());
     }
 
     @Test
     void moveFolders_success() throws Exception {
         UUID folderId = UUID.randomUUID();
+        UUID subfolderId = UUID.randomUUID();
         UUID targetFolderId = UUID.randomUUID();
-        MoveRequest request = new MoveRequest(List.of(folderId), targetFolderId, false);
-        Document folderToMove = Document.builder().id(folderId).type(FOLDER).build();
+        MoveRequest request = new MoveRequest(List.of(subfolderId, folderId), targetFolderId, false);
         Document targetFolder = Document.builder().id(targetFolderId).type(FOLDER).build();
 
-        when(documentRepository.findById(folderId)).thenReturn(Mono.just(folderToMove));
         when(documentRepository.findById(targetFolderId)).thenReturn(Mono.just(targetFolder));
-        when(documentRepository.existsByNameAndParentId(any(), any())).thenReturn(Mono.just(false));
-        when(documentRepository.save(any(Document.class))).thenReturn(Mono.just(folderToMove));
-        when(auditService.logAction(anyString(), any(AuditAction.class), any(DocumentType.class), any(UUID.class), any(AuditLogDetails.class))).thenReturn(Mono.empty());
-        //when(documentService.isDescendant(any(), any())).thenReturn(Mono.just(false));
+        when(documentDAO.isDescendantOfAny(targetFolderId, List.of(subfolderId, folderId))).thenReturn(Mono.just(false));
+        when(documentDAO.getElementsToMove(List.of(subfolderId, folderId))).thenReturn(Flux.just(
+                new DocumentDAO.ElementToMove(folderId, "folder", FOLDER, null, label(folderId)),
+                new DocumentDAO.ElementToMove(subfolderId, "subfolder", FOLDER, folderId, label(folderId) + "." + label(subfolderId))));
+        when(documentDAO.moveDocuments(anyList(), eq(targetFolderId), eq("testuser"), eq(false))).thenReturn(Mono.just(1L));
+        when(auditService.logActions(anyList())).thenReturn(Mono.empty());
 
         Mono<Void> result = documentService.moveFolders(request, mockAuthentication);
 
         StepVerifier.create(result)
                 .verifyComplete();
 
-        verify(documentRepository).save(any(Document.class));
-        verify(auditService).logAction(eq("testuser"), eq(MOVE_FOLDER), eq(FOLDER), eq(folderId), any(AuditLogDetails.class));
+        // the subfolder is moved by a second statement, once the ancestry of its content is rewritten by the move of its parent
+        InOrder inOrder = inOrder(documentDAO);
+        inOrder.verify(documentDAO).moveDocuments(List.of(folderId), targetFolderId, "testuser", false);
+        inOrder.verify(documentDAO).moveDocuments(List.of(subfolderId), targetFolderId, "testuser", false);
+        verify(auditService).logActions(anyList());
+    }
+
+    @Test
+    void moveFolders_intoDescendant_shouldFail() {
+        UUID folderId = UUID.randomUUID();
+        UUID targetFolderId = UUID.randomUUID();
+        MoveRequest request = new MoveRequest(List.of(folderId), targetFolderId, false);
+        Document targetFolder = Document.builder().id(targetFolderId).type(FOLDER).build();
+
+        when(documentRepository.findById(targetFolderId)).thenReturn(Mono.just(targetFolder));
+        when(documentDAO.getElementsToMove(List.of(folderId))).thenReturn(Flux.just(
+                new DocumentDAO.ElementToMove(folderId, "folder", FOLDER, null, label(folderId))));
+        when(documentDAO.isDescendantOfAny(targetFolderId, List.of(folderId))).thenReturn(Mono.just(true));
+
+        StepVerifier.create(documentService.moveFolders(request, mockAuthentication))
+                .expectError(OperationForbiddenException.class)
+                .verify();
+
+        verify(documentDAO, never()).moveDocuments(anyList(), any(), anyString(), anyBoolean());
+    }
+
+    private static String label(UUID id) {
+        return id.toString().replace("-", "");
     }
 
     @Test
@@ -299,13 +454,11 @@ class DocumentServiceImplTest {
         CopyRequest request = new CopyRequest(List.of(fileId), targetFolderId, false);
         Document fileToCopy = Document.builder().id(fileId).name("file-to-copy").type(FILE).storagePath("original-path").build();
         Document targetFolder = Document.builder().id(targetFolderId).type(FOLDER).build();
-        Document copiedFile = Document.builder().id(UUID.randomUUID()).name("file-to-copy").type(FILE).storagePath("new-path").build();
 
         when(documentRepository.findById(fileId)).thenReturn(Mono.just(fileToCopy));
         when(documentRepository.findById(targetFolderId)).thenReturn(Mono.just(targetFolder));
-        when(documentRepository.existsByNameAndParentId("file-to-copy", targetFolderId)).thenReturn(Mono.just(false));
         when(storageService.copyFile(anyString())).thenReturn(Mono.just("new-path"));
-        when(documentRepository.save(any(Document.class))).thenReturn(Mono.just(copiedFile));
+        when(documentDAO.insertDocument(any(Document.class), eq(false))).thenReturn(Mono.just(true));
         when(auditService.logAction(anyString(), any(AuditAction.class), any(DocumentType.class), any(UUID.class), any(AuditLogDetails.class))).thenReturn(Mono.empty());
         when(jsonUtils.cloneOrNewEmptyJson(any())).thenReturn(Json.of("{}"));
 
@@ -315,36 +468,69 @@ class DocumentServiceImplTest {
                 .expectNextCount(1)
                 .verifyComplete();
 
-        verify(documentRepository).save(any(Document.class));
+        verify(documentDAO).insertDocument(argThat(doc -> "new-path".equals(doc.getStoragePath())), eq(false));
         verify(auditService).logAction(eq("testuser"), eq(COPY_FILE), eq(FILE), any(UUID.class), any(AuditLogDetails.class));
     }
 
     @Test
     void copyFolders_success() {
         UUID folderId = UUID.randomUUID();
+        UUID fileId = UUID.randomUUID();
         UUID targetFolderId = UUID.randomUUID();
+        UUID copiedFolderId = UUID.randomUUID();
+        UUID copiedFileId = UUID.randomUUID();
         CopyRequest request = new CopyRequest(List.of(folderId), targetFolderId, false);
         Document folderToCopy = Document.builder().id(folderId).type(FOLDER).name("folder").build();
         Document targetFolder = Document.builder().id(targetFolderId).type(FOLDER).build();
-        Document copiedFolder = Document.builder().id(UUID.randomUUID()).type(FOLDER).build();
 
         when(documentRepository.findById(folderId)).thenReturn(Mono.just(folderToCopy));
         when(documentRepository.findById(targetFolderId)).thenReturn(Mono.just(targetFolder));
-        when(documentRepository.existsByNameAndParentId(any(), any())).thenReturn(Mono.just(false));
-        when(documentRepository.existsByIdAndType(any(), any())).thenReturn(Mono.just(true));
-        when(documentRepository.save(any(Document.class))).thenReturn(Mono.just(copiedFolder));
-        when(auditService.logAction(anyString(), any(AuditAction.class), any(DocumentType.class), any(UUID.class), any(AuditLogDetails.class))).thenReturn(Mono.empty());
-        when(jsonUtils.cloneOrNewEmptyJson(any())).thenReturn(Json.of("{}"));
-        when(documentRepository.findByParentIdAndType(any(), any(DocumentType.class))).thenReturn(Flux.empty());
+        when(documentDAO.copyFolderRecursive(folderId, targetFolderId, "testuser", false)).thenReturn(Flux.just(
+                new CopiedElementInfo(folderId, null, copiedFolderId, targetFolderId, "folder", FOLDER, null),
+                new CopiedElementInfo(fileId, folderId, copiedFileId, copiedFolderId, "file.txt", FILE, "source-path")));
+        when(storageService.copyFile("source-path")).thenReturn(Mono.just("copy-path"));
+        when(documentDAO.updateStoragePaths(Map.of(copiedFileId, "copy-path"))).thenReturn(Mono.empty());
+        when(auditService.logActions(anyList())).thenReturn(Mono.empty());
+        ReflectionTestUtils.setField(documentService, "copyStorageParallelism", 2);
+        ReflectionTestUtils.setField(documentService, "copyStorageMaxRetries", 0);
 
         Flux<UUID> result = documentService.copyFolders(request, mockAuthentication);
 
         StepVerifier.create(result)
-                .expectNextCount(1)
+                .expectNext(copiedFolderId)
                 .verifyComplete();
 
-        verify(documentRepository, times(1)).save(any(Document.class));
-        verify(auditService, times(1)).logAction(anyString(), any(AuditAction.class), any(DocumentType.class), any(UUID.class), any(AuditLogDetails.class));
+        ArgumentCaptor<List<AuditLog>> auditLogs = ArgumentCaptor.captor();
+        verify(auditService).logActions(auditLogs.capture());
+        assertEquals(List.of(COPY_FOLDER, COPY_FILE_CHILD), auditLogs.getValue().stream().map(AuditLog::action).toList());
+        verify(documentRepository, never()).save(any(Document.class));
+    }
+
+    @Test
+    void copyFolders_storageFailure_shouldDeleteCopiedContents() {
+        UUID folderId = UUID.randomUUID();
+        UUID targetFolderId = UUID.randomUUID();
+        UUID copiedFolderId = UUID.randomUUID();
+        CopyRequest request = new CopyRequest(List.of(folderId), targetFolderId, true);
+
+        when(documentRepository.findById(folderId)).thenReturn(Mono.just(Document.builder().id(folderId).type(FOLDER).name("folder").build()));
+        when(documentRepository.findById(targetFolderId)).thenReturn(Mono.just(Document.builder().id(targetFolderId).type(FOLDER).build()));
+        when(documentDAO.copyFolderRecursive(folderId, targetFolderId, "testuser", true)).thenReturn(Flux.just(
+                new CopiedElementInfo(folderId, null, copiedFolderId, targetFolderId, "folder", FOLDER, null),
+                new CopiedElementInfo(UUID.randomUUID(), folderId, UUID.randomUUID(), copiedFolderId, "a.txt", FILE, "a"),
+                new CopiedElementInfo(UUID.randomUUID(), folderId, UUID.randomUUID(), copiedFolderId, "b.txt", FILE, "b")));
+        when(storageService.copyFile("a")).thenReturn(Mono.just("a-copy"));
+        when(storageService.copyFile("b")).thenReturn(Mono.error(new StorageException("unavailable")));
+        when(storageService.deleteFile("a-copy")).thenReturn(Mono.empty());
+        ReflectionTestUtils.setField(documentService, "copyStorageParallelism", 1);
+        ReflectionTestUtils.setField(documentService, "copyStorageMaxRetries", 0);
+
+        StepVerifier.create(documentService.copyFolders(request, mockAuthentication))
+                .expectError(StorageException.class)
+                .verify();
+
+        verify(storageService).deleteFile("a-copy");
+        verify(documentDAO, never()).updateStoragePaths(anyMap());
     }
 
     @Test
@@ -354,8 +540,7 @@ class DocumentServiceImplTest {
         Document fileToRename = Document.builder().id(fileId).type(FILE).name("old-name.txt").build();
 
         when(documentRepository.findById(fileId)).thenReturn(Mono.just(fileToRename));
-        when(documentRepository.existsByNameAndParentIdIsNull(any())).thenReturn(Mono.just(false));
-        when(documentRepository.save(any(Document.class))).thenReturn(Mono.just(fileToRename));
+        when(documentDAO.renameDocument(fileId, "new-name.txt", "testuser")).thenReturn(Mono.just(1L));
         when(auditService.logAction(anyString(), any(AuditAction.class), any(DocumentType.class), any(UUID.class), any(AuditLogDetails.class))).thenReturn(Mono.empty());
 
         Mono<Document> result = documentService.renameFile(fileId, request, mockAuthentication);
@@ -364,10 +549,44 @@ class DocumentServiceImplTest {
                 .expectNextMatches(doc -> doc.getName().equals("new-name.txt"))
                 .verifyComplete();
 
-        verify(documentRepository).save(any(Document.class));
+        verify(documentRepository, never()).save(any(Document.class));
         verify(auditService).logAction(eq("testuser"), eq(RENAME_FILE), eq(FILE), eq(fileId), any(AuditLogDetails.class));
     }
 
+    @Test
+    void renameFile_shouldEvictRenamedFileFromTheCache() {
+        UUID fileId = UUID.randomUUID();
+        DocumentCacheServiceImpl cache = enableCache();
+        when(documentRepository.findById(fileId)).thenAnswer(_ -> Mono.just(Document.builder().id(fileId).type(FILE).name("old-name.txt").build()));
+        when(documentDAO.renameDocument(fileId, "new-name.txt", "testuser")).thenReturn(Mono.just(1L));
+        when(auditService.logAction(anyString(), any(AuditAction.class), any(DocumentType.class), any(UUID.class), any(AuditLogDetails.class))).thenReturn(Mono.empty());
+
+        cache.findById(fileId).block();
+        StepVerifier.create(documentService.renameFile(fileId, new RenameRequest("new-name.txt"), mockAuthentication))
+                .expectNextCount(1)
+                .verifyComplete();
+        cache.findById(fileId).block();
+
+        // once for the cache, once for the rename, and again for the cache once evicted
+        verify(documentRepository, times(3)).findById(fileId);
+    }
+
+    @Test
+    void renameFile_duplicateName_shouldFail() {
+        UUID fileId = UUID.randomUUID();
+        Document fileToRename = Document.builder().id(fileId).type(FILE).name("old-name.txt").build();
+
+        when(documentRepository.findById(fileId)).thenReturn(Mono.just(fileToRename));
+        when(documentDAO.renameDocument(fileId, "taken.txt", "testuser")).thenReturn(Mono.error(new DuplicateKeyException(
+                "duplicate key value violates unique constraint \"" + SqlUtils.UNIQUE_NAME_INDEX + "\"")));
+
+        StepVerifier.create(documentService.renameFile(fileId, new RenameRequest("taken.txt"), mockAuthentication))
+                .expectError(DuplicateNameException.class)
+                .verify();
+
+        assertEquals("old-name.txt", fileToRename.getName());
+    }
+
     @Test
     void renameFolder_success() {
         UUID folderId = UUID.randomUUID();
@@ -375,8 +594,7 @@ class DocumentServiceImplTest {
         Document folderToRename = Document.builder().id(folderId).parentId(UUID.randomUUID()).type(FOLDER).name("old-name").build();
 
         when(documentRepository.findById(folderId)).thenReturn(Mono.just(folderToRename));
-        when(documentRepository.existsByNameAndParentId(any(), any())).thenReturn(Mono.just(false));
-        when(documentRepository.save(any(Document.class))).thenReturn(Mono.just(folderToRename));
+        when(documentDAO.renameDocument(folderId, "new-name", "testuser")).thenReturn(Mono.just(1L));
         when(auditService.logAction(anyString(), any(AuditAction.class), any(DocumentType.class), any(UUID.class), any(AuditLogDetails.class))).thenReturn(Mono.empty());
 
         Mono<Document> result = documentService.renameFolder(folderId, request, mockAuthentication);
@@ -385,7 +603,6 @@ class DocumentServiceImplTest {
                 .expectNextMatches(doc -> doc.getName().equals("new-name"))
                 .verifyComplete();
 
-        verify(documentRepository).save(any(Document.class));
         verify(auditService).logAction(eq("testuser"), eq(RENAME_FOLDER), eq(FOLDER), eq(folderId), any(AuditLogDetails.class));
     }
 
@@ -0,0 +1,156 @@
+package org.openfilz.dms.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.openfilz.dms.exception.StorageException;
+import org.openfilz.dms.repository.StorageBlobDAO;
+import org.openfilz.dms.repository.StoragePurgeQueueDAO;
+import org.openfilz.dms.repository.StoragePurgeQueueDAO.QueuedPath;
+import org.openfilz.dms.service.impl.StoragePurgeServiceImpl;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.ReactiveTransaction;
+import org.springframework.transaction.reactive.TransactionCallback;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class StoragePurgeServiceImplTest {
+
+    @Mock
+    private StorageService storageService;
+
+    @Mock
+    private StoragePurgeQueueDAO storagePurgeQueueDAO;
+
+    @Mock
+    private StorageBlobDAO storageBlobDAO;
+
+    @Mock
+    private TransactionalOperator transactionalOperator;
+
+    @Mock
+    private ReactiveTransaction transaction;
+
+    @InjectMocks
+    private StoragePurgeServiceImpl storagePurgeService;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(storagePurgeService, "batchSize", 2);
+        ReflectionTestUtils.setField(storagePurgeService, "parallelism", 2);
+        ReflectionTestUtils.setField(storagePurgeService, "leaseMs", 60_000L);
+        lenient().when(transactionalOperator.execute(any())).thenAnswer(invocation ->
+                Flux.from(invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(transaction)));
+        // not deduplicated blobs, unless stated otherwise
+        lenient().when(storageBlobDAO.removeReference(anyString())).thenReturn(Mono.empty());
+    }
+
+    @Test
+    void purge_whenContentsDeleted_thenRemovedFromTheQueueBatchAfterBatch() {
+        when(storagePurgeQueueDAO.claim(2, Duration.ofMinutes(1))).thenReturn(
+                Flux.just(new QueuedPath(1, "a"), new QueuedPath(2, "b")),
+                Flux.just(new QueuedPath(3, "c")));
+        when(storageService.deleteFile(anyString())).thenReturn(Mono.empty());
+        when(storagePurgeQueueDAO.delete(anyList())).thenReturn(Mono.empty());
+
+        // a full batch is followed by another claim, until a batch is not full
+        StepVerifier.create(storagePurgeService.purge())
+                .expectNext(3L)
+                .verifyComplete();
+
+        verify(storagePurgeQueueDAO, times(2)).claim(2, Duration.ofMinutes(1));
+        verify(storagePurgeQueueDAO).delete(argThat(ids -> ids.size() == 2 && ids.containsAll(List.of(1L, 2L))));
+        verify(storagePurgeQueueDAO).delete(List.of(3L));
+    }
+
+    @Test
+    void purge_whenContentNotDeleted_thenKeptInTheQueue() {
+        when(storagePurgeQueueDAO.claim(2, Duration.ofMinutes(1))).thenReturn(Flux.just(new QueuedPath(1, "a")));
+        when(storageService.deleteFile("a")).thenReturn(Mono.error(new StorageException("MinIO unavailable")));
+        when(storagePurgeQueueDAO.delete(anyList())).thenReturn(Mono.empty());
+
+        StepVerifier.create(storagePurgeService.purge())
+                .expectNext(1L)
+                .verifyComplete();
+
+        // claimed again when its lease expires
+        verify(storagePurgeQueueDAO).delete(List.of());
+    }
+
+    @Test
+    void purge_whenBlobStillReferenced_thenReferenceReleasedWithTheQueuedPath() {
+        when(storagePurgeQueueDAO.claim(2, Duration.ofMinutes(1))).thenReturn(Flux.just(new QueuedPath(1, "blob")));
+        when(storageBlobDAO.removeReference("blob")).thenReturn(Mono.just(1));
+        when(storagePurgeQueueDAO.delete(1L)).thenReturn(Mono.just(true));
+        when(storagePurgeQueueDAO.delete(anyList())).thenReturn(Mono.empty());
+
+        StepVerifier.create(storagePurgeService.purge())
+                .expectNext(1L)
+                .verifyComplete();
+
+        verify(transaction, never()).setRollbackOnly();
+        verify(storageBlobDAO, never()).deleteUnreferenced(anyString());
+        verifyNoInteractions(storageService);
+    }
+
+    @Test
+    void purge_whenBlobLastReference_thenQueuedAgainAsAPlainPath() {
+        when(storagePurgeQueueDAO.claim(2, Duration.ofMinutes(1))).thenReturn(Flux.just(new QueuedPath(1, "blob")));
+        when(storageBlobDAO.removeReference("blob")).thenReturn(Mono.just(0));
+        when(storagePurgeQueueDAO.delete(1L)).thenReturn(Mono.just(true));
+        when(storageBlobDAO.deleteUnreferenced("blob")).thenReturn(Mono.just(true));
+        when(storagePurgeQueueDAO.enqueue("blob")).thenReturn(Mono.empty());
+        when(storagePurgeQueueDAO.delete(anyList())).thenReturn(Mono.empty());
+
+        StepVerifier.create(storagePurgeService.purge())
+                .expectNext(1L)
+                .verifyComplete();
+
+        // its content is deleted when claimed again, as it is no longer a blob
+        verify(storagePurgeQueueDAO).enqueue("blob");
+        verifyNoInteractions(storageService);
+    }
+
+    @Test
+    void purge_whenBlobPathAlreadyReleased_thenReleaseRolledBack() {
+        when(storagePurgeQueueDAO.claim(2, Duration.ofMinutes(1))).thenReturn(Flux.just(new QueuedPath(1, "blob")));
+        when(storageBlobDAO.removeReference("blob")).thenReturn(Mono.just(0));
+        when(storagePurgeQueueDAO.delete(1L)).thenReturn(Mono.just(false));
+        when(storagePurgeQueueDAO.delete(anyList())).thenReturn(Mono.empty());
+
+        StepVerifier.create(storagePurgeService.purge())
+                .expectNext(1L)
+                .verifyComplete();
+
+        // claimed again once its lease expired, while the first claim was released : the reference is released once
+        verify(transaction).setRollbackOnly();
+        verify(storageBlobDAO, never()).deleteUnreferenced(anyString());
+        verify(storagePurgeQueueDAO, never()).enqueue(anyString());
+        verifyNoInteractions(storageService);
+    }
+
+    @Test
+    void purge_whenQueueUnavailable_thenNothingDeleted() {
+        when(storagePurgeQueueDAO.claim(2, Duration.ofMinutes(1))).thenReturn(Flux.error(new IllegalStateException("database unavailable")));
+
+        StepVerifier.create(storagePurgeService.purge())
+                .expectError(IllegalStateException.class)
+                .verify();
+
+        verifyNoInteractions(storageService);
+    }
+}
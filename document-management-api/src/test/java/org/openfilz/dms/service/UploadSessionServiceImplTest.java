@@ -0,0 +1,245 @@
+package org.openfilz.dms.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.openfilz.dms.dto.audit.UploadAudit;
+import org.openfilz.dms.dto.request.CreateUploadSessionRequest;
+import org.openfilz.dms.entity.UploadSession;
+import org.openfilz.dms.exception.DocumentNotFoundException;
+import org.openfilz.dms.exception.DuplicateNameException;
+import org.openfilz.dms.exception.OperationForbiddenException;
+import org.openfilz.dms.exception.StorageException;
+import org.openfilz.dms.repository.DocumentDAO;
+import org.openfilz.dms.repository.UploadSessionDAO;
+import org.openfilz.dms.service.impl.UploadSessionServiceImpl;
+import org.openfilz.dms.utils.JsonUtils;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+import static org.openfilz.dms.enums.AuditAction.UPLOAD_DOCUMENT;
+import static org.openfilz.dms.enums.DocumentType.FILE;
+
+@ExtendWith(MockitoExtension.class)
+class UploadSessionServiceImplTest {
+
+    private static final long CHUNK_SIZE = 5L * 1024 * 1024;
+
+    @Mock
+    private UploadSessionDAO uploadSessionDAO;
+
+    @Mock
+    private StorageService storageService;
+
+    @Mock
+    private DocumentDAO documentDAO;
+
+    @Mock
+    private DocumentCacheService documentCacheService;
+
+    @Mock
+    private AuditService auditService;
+
+    @Mock
+    private JsonUtils jsonUtils;
+
+    private UploadSessionServiceImpl uploadSessionService;
+
+    private Authentication auth;
+
+    private UploadSession session;
+
+    @BeforeEach
+    void setUp() {
+        uploadSessionService = new UploadSessionServiceImpl(uploadSessionDAO, storageService, documentDAO, documentCacheService,
+                auditService, jsonUtils, CHUNK_SIZE, 60_000, 60_000, 10);
+        auth = new TestingAuthenticationToken("testuser", null, "ROLE_USER");
+        // 3 chunks : 2 full ones and a last one of 1 KiB
+        session = UploadSession.builder()
+                .id(UUID.randomUUID())
+                .name("big.bin")
+                .contentType("application/octet-stream")
+                .size(2 * CHUNK_SIZE + 1024)
+                .chunkSize(CHUNK_SIZE)
+                .chunkCount(3)
+                .allowDuplicateFileNames(false)
+                .storagePath("uuid#big.bin")
+                .storageUploadId("upload-1")
+                .createdBy("testuser")
+                .expiresAt(OffsetDateTime.now().plusMinutes(1))
+                .build();
+    }
+
+    @Test
+    void uploadChunks_whenOutOfOrder_thenWrittenAtTheirPlaceAndAssembledInOrder() {
+        when(uploadSessionDAO.findById(session.getId())).thenReturn(Mono.just(session));
+        when(storageService.writeChunk(eq("uuid#big.bin"), eq("upload-1"), anyInt(), anyLong(), anyLong(), any()))
+                .thenAnswer(invocation -> Mono.just("tag-" + invocation.getArgument(2)));
+        when(uploadSessionDAO.saveChunk(eq(session.getId()), anyInt(), anyString(), any(Duration.class))).thenReturn(Mono.just(true));
+
+        for (int chunkNumber : new int[]{3, 1, 2}) {
+            StepVerifier.create(uploadSessionService.uploadChunk(session.getId(), chunkNumber, session.getChunkLength(chunkNumber), Flux.empty(), auth))
+                    .verifyComplete();
+        }
+
+        verify(storageService).writeChunk(eq("uuid#big.bin"), eq("upload-1"), eq(3), eq(2 * CHUNK_SIZE), eq(1024L), any());
+        verify(storageService).writeChunk(eq("uuid#big.bin"), eq("upload-1"), eq(1), eq(0L), eq(CHUNK_SIZE), any());
+        verify(storageService).writeChunk(eq("uuid#big.bin"), eq("upload-1"), eq(2), eq(CHUNK_SIZE), eq(CHUNK_SIZE), any());
+        verify(uploadSessionDAO).saveChunk(eq(session.getId()), eq(3), eq("tag-3"), any(Duration.class));
+
+        // the tags are read in the order of the chunks
+        when(uploadSessionDAO.findByIdForUpdate(session.getId())).thenReturn(Mono.just(session));
+        when(uploadSessionDAO.getChunkTags(session.getId())).thenReturn(Flux.just("tag-1", "tag-2", "tag-3"));
+        when(documentDAO.findNameConflicts(anyList())).thenReturn(Flux.empty());
+        when(documentDAO.insertDocument(any(), eq(false))).thenReturn(Mono.just(true));
+        when(uploadSessionDAO.delete(session.getId())).thenReturn(Mono.empty());
+        when(storageService.completeChunkedUpload("uuid#big.bin", "upload-1", List.of("tag-1", "tag-2", "tag-3"))).thenReturn(Mono.empty());
+        when(auditService.logAction(eq("testuser"), eq(UPLOAD_DOCUMENT), eq(FILE), any(UUID.class), any(UploadAudit.class))).thenReturn(Mono.empty());
+
+        StepVerifier.create(uploadSessionService.completeSession(session.getId(), auth))
+                .expectNextMatches(response -> response.name().equals("big.bin") && response.size() == 2 * CHUNK_SIZE + 1024)
+                .verifyComplete();
+
+        // the file is assembled last : a failure rolls back the document and keeps the session
+        InOrder inOrder = inOrder(documentDAO, uploadSessionDAO, storageService);
+        inOrder.verify(documentDAO).insertDocument(any(), eq(false));
+        inOrder.verify(uploadSessionDAO).delete(session.getId());
+        inOrder.verify(storageService).completeChunkedUpload("uuid#big.bin", "upload-1", List.of("tag-1", "tag-2", "tag-3"));
+    }
+
+    @Test
+    void createSession_whenNameEscapesTheFolder_thenBadRequest() {
+        for (String name : new String[]{"../x", "a/b", "a\\b", "#"}) {
+            StepVerifier.create(uploadSessionService.createSession(new CreateUploadSessionRequest(name, null, 1024L, null, null, false), auth))
+                    .expectError(IllegalArgumentException.class)
+                    .verify();
+        }
+
+        verifyNoInteractions(storageService, uploadSessionDAO);
+    }
+
+    @Test
+    void uploadChunk_whenLengthDiffersFromTheChunk_thenBadRequest() {
+        when(uploadSessionDAO.findById(session.getId())).thenReturn(Mono.just(session));
+
+        StepVerifier.create(uploadSessionService.uploadChunk(session.getId(), 3, CHUNK_SIZE, Flux.empty(), auth))
+                .expectError(IllegalArgumentException.class)
+                .verify();
+        StepVerifier.create(uploadSessionService.uploadChunk(session.getId(), 4, 1024L, Flux.empty(), auth))
+                .expectError(IllegalArgumentException.class)
+                .verify();
+
+        verifyNoInteractions(storageService);
+    }
+
+    @Test
+    void completeSession_whenChunkMissing_thenForbiddenAndNothingCreated() {
+        when(uploadSessionDAO.findByIdForUpdate(session.getId())).thenReturn(Mono.just(session));
+        when(uploadSessionDAO.getChunkTags(session.getId())).thenReturn(Flux.just("tag-1", "tag-3"));
+        when(uploadSessionDAO.getChunkNumbers(session.getId())).thenReturn(Flux.just(1, 3));
+
+        StepVerifier.create(uploadSessionService.completeSession(session.getId(), auth))
+                .expectErrorMatches(e -> e instanceof OperationForbiddenException && e.getMessage().endsWith("[2]"))
+                .verify();
+
+        verify(documentDAO, never()).insertDocument(any(), anyBoolean());
+        verify(uploadSessionDAO, never()).delete(any());
+        verifyNoInteractions(storageService);
+    }
+
+    @Test
+    void completeSession_whenNameTakenMeanwhile_thenConflictAndSessionKept() {
+        when(uploadSessionDAO.findByIdForUpdate(session.getId())).thenReturn(Mono.just(session));
+        when(uploadSessionDAO.getChunkTags(session.getId())).thenReturn(Flux.just("tag-1", "tag-2", "tag-3"));
+        when(documentDAO.findNameConflicts(anyList())).thenReturn(Flux.empty());
+        when(documentDAO.insertDocument(any(), eq(false))).thenReturn(Mono.just(false));
+
+        StepVerifier.create(uploadSessionService.completeSession(session.getId(), auth))
+                .expectError(DuplicateNameException.class)
+                .verify();
+
+        verify(uploadSessionDAO, never()).delete(any());
+        verifyNoInteractions(storageService);
+    }
+
+    @Test
+    void completeSession_whenStorageCompletionFails_thenError() {
+        when(uploadSessionDAO.findByIdForUpdate(session.getId())).thenReturn(Mono.just(session));
+        when(uploadSessionDAO.getChunkTags(session.getId())).thenReturn(Flux.just("tag-1", "tag-2", "tag-3"));
+        when(documentDAO.findNameConflicts(anyList())).thenReturn(Flux.empty());
+        when(documentDAO.insertDocument(any(), eq(false))).thenReturn(Mono.just(true));
+        when(uploadSessionDAO.delete(session.getId())).thenReturn(Mono.empty());
+        when(storageService.completeChunkedUpload(anyString(), anyString(), anyList()))
+                .thenReturn(Mono.error(new StorageException("MinIO complete multipart upload failed")));
+
+        // the error rolls back the transaction : the document is not created, and the session is kept for a retry
+        StepVerifier.create(uploadSessionService.completeSession(session.getId(), auth))
+                .expectError(StorageException.class)
+                .verify();
+
+        verifyNoInteractions(auditService);
+    }
+
+    @Test
+    void completeSession_whenOtherUser_thenNotFound() {
+        session.setCreatedBy("otheruser");
+        when(uploadSessionDAO.findByIdForUpdate(session.getId())).thenReturn(Mono.just(session));
+
+        StepVerifier.create(uploadSessionService.completeSession(session.getId(), auth))
+                .expectError(DocumentNotFoundException.class)
+                .verify();
+
+        verifyNoInteractions(storageService);
+    }
+
+    @Test
+    void abortSession_thenSessionDeletedAndUploadAborted() {
+        when(uploadSessionDAO.findById(session.getId())).thenReturn(Mono.just(session));
+        when(uploadSessionDAO.delete(session.getId())).thenReturn(Mono.empty());
+        when(storageService.abortChunkedUpload("uuid#big.bin", "upload-1")).thenReturn(Mono.empty());
+
+        StepVerifier.create(uploadSessionService.abortSession(session.getId(), auth))
+                .verifyComplete();
+
+        InOrder inOrder = inOrder(uploadSessionDAO, storageService);
+        inOrder.verify(uploadSessionDAO).delete(session.getId());
+        inOrder.verify(storageService).abortChunkedUpload("uuid#big.bin", "upload-1");
+    }
+
+    @Test
+    void purgeExpiredSessions_thenUploadsAbortedEvenWhenOneFails() {
+        UploadSession other = UploadSession.builder()
+                .id(UUID.randomUUID())
+                .storagePath("uuid#other.bin")
+                .storageUploadId("upload-2")
+                .build();
+        when(uploadSessionDAO.deleteExpired(10)).thenReturn(Flux.just(session, other));
+        when(storageService.abortChunkedUpload("uuid#big.bin", "upload-1")).thenReturn(Mono.error(new StorageException("MinIO unavailable")));
+        when(storageService.abortChunkedUpload("uuid#other.bin", "upload-2")).thenReturn(Mono.empty());
+
+        StepVerifier.create(uploadSessionService.purgeExpiredSessions())
+                .expectNext(2L)
+                .verifyComplete();
+
+        verify(storageService).abortChunkedUpload("uuid#other.bin", "upload-2");
+    }
+}
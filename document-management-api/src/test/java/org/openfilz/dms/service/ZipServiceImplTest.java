@@ -0,0 +1,145 @@
+package org.openfilz.dms.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.openfilz.dms.dto.response.ChildElementInfo;
+import org.openfilz.dms.enums.DocumentType;
+import org.openfilz.dms.service.impl.ZipServiceImpl;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ZipServiceImplTest {
+
+    private static final byte[] TEXT = "Lorem ipsum dolor sit amet ".repeat(10_000).getBytes(StandardCharsets.UTF_8);
+    private static final byte[] IMAGE = "not really a jpeg".getBytes(StandardCharsets.UTF_8);
+
+    @Mock
+    private StorageService storageService;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private ZipServiceImpl zipService;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        zipService = new ZipServiceImpl(storageService, meterRegistry);
+        ReflectionTestUtils.setField(zipService, "storeCompressedContent", false);
+        ReflectionTestUtils.setField(zipService, "prefetchDepth", 4);
+        ReflectionTestUtils.setField(zipService, "prefetchMaxBufferedBytes", 4L * 1024 * 1024);
+    }
+
+    @Test
+    void zip_shouldStreamFoldersAndFilesInOrder() throws IOException {
+        ReflectionTestUtils.setField(zipService, "storeCompressedContent", true);
+        ReflectionTestUtils.setField(zipService, "compressedContentTypes", List.of("image/*"));
+        ReflectionTestUtils.setField(zipService, "storedEntryMaxSize", 1024L);
+        when(storageService.loadFile("text", 0, TEXT.length)).thenReturn(chunks(TEXT));
+        when(storageService.loadFile("image", 0, IMAGE.length)).thenReturn(chunks(IMAGE));
+
+        Flux<ChildElementInfo> elements = Flux.just(
+                ChildElementInfo.builder().type(DocumentType.FOLDER).path("folder").build(),
+                ChildElementInfo.builder().type(DocumentType.FILE).path("folder/file.txt").storagePath("text")
+                        .size((long) TEXT.length).contentType("text/plain").build(),
+                ChildElementInfo.builder().type(DocumentType.FILE).path("folder/image.jpg").storagePath("image")
+                        .size((long) IMAGE.length).contentType("image/jpeg").build());
+
+        Map<String, ZipEntry> entries = new LinkedHashMap<>();
+        Map<String, byte[]> contents = new LinkedHashMap<>();
+        unzip(zipService.zip(elements), entries, contents);
+
+        assertEquals(List.of("folder/", "folder/file.txt", "folder/image.jpg"), List.copyOf(entries.keySet()));
+        assertEquals(ZipEntry.DEFLATED, entries.get("folder/file.txt").getMethod());
+        assertEquals(ZipEntry.STORED, entries.get("folder/image.jpg").getMethod());
+        assertArrayEquals(TEXT, contents.get("folder/file.txt"));
+        assertArrayEquals(IMAGE, contents.get("folder/image.jpg"));
+        assertEquals(1, meterRegistry.get("dms.zip.entries").tag("mode", "folder").counter().count());
+        assertEquals(1, meterRegistry.get("dms.zip.entries").tag("mode", "deflated").counter().count());
+        assertEquals(1, meterRegistry.get("dms.zip.entries").tag("mode", "stored").counter().count());
+    }
+
+    @Test
+    void zip_shouldPrefetchNextFilesAndKeepEntryOrder() throws IOException {
+        AtomicInteger openedFiles = new AtomicInteger();
+        List<Integer> openedFilesWhenFirstCompleted = new ArrayList<>();
+        // the first file is held until the prefetch depth is reached : the 3 next files must be opened meanwhile
+        Sinks.Empty<Void> prefetched = Sinks.empty();
+        when(storageService.loadFile(anyString(), eq(0L), eq((long) IMAGE.length))).thenAnswer(invocation -> {
+            String storagePath = invocation.getArgument(0);
+            return Flux.defer(() -> {
+                if (openedFiles.incrementAndGet() == 4) {
+                    prefetched.tryEmitEmpty();
+                }
+                return storagePath.equals("0")
+                        ? prefetched.asMono().timeout(Duration.ofSeconds(5)).thenMany(chunks(IMAGE))
+                                .doOnComplete(() -> openedFilesWhenFirstCompleted.add(openedFiles.get()))
+                        : chunks(IMAGE);
+            });
+        });
+
+        Flux<ChildElementInfo> elements = Flux.range(0, 10)
+                .map(i -> ChildElementInfo.builder().type(DocumentType.FILE).path(i + ".bin").storagePath(String.valueOf(i))
+                        .size((long) IMAGE.length).build());
+
+        Map<String, ZipEntry> entries = new LinkedHashMap<>();
+        Map<String, byte[]> contents = new LinkedHashMap<>();
+        unzip(zipService.zip(elements), entries, contents);
+
+        assertEquals(IntStream.range(0, 10).mapToObj(i -> i + ".bin").toList(), List.copyOf(entries.keySet()));
+        contents.values().forEach(content -> assertArrayEquals(IMAGE, content));
+        // the 3 next files were read while the first one was still loading
+        assertEquals(List.of(4), openedFilesWhenFirstCompleted);
+    }
+
+    private static void unzip(Flux<DataBuffer> zip, Map<String, ZipEntry> entries, Map<String, byte[]> contents) throws IOException {
+        byte[] bytes = DataBufferUtils.join(zip)
+                .map(buffer -> {
+                    byte[] result = new byte[buffer.readableByteCount()];
+                    buffer.read(result);
+                    return result;
+                })
+                .block();
+        try (ZipInputStream zipInputStream = new ZipInputStream(new ByteArrayInputStream(bytes))) {
+            ZipEntry entry;
+            while ((entry = zipInputStream.getNextEntry()) != null) {
+                entries.put(entry.getName(), entry);
+                contents.put(entry.getName(), zipInputStream.readAllBytes());
+            }
+        }
+    }
+
+    private static Flux<DataBuffer> chunks(byte[] content) {
+        return Flux.range(0, (content.length + 4095) / 4096)
+                .map(i -> DefaultDataBufferFactory.sharedInstance.wrap(
+                        Arrays.copyOfRange(content, i * 4096, Math.min(content.length, (i + 1) * 4096))));
+    }
+}